@@ -1,2 +1,19 @@
 #!/bin/sh
-java -cp "target/lib/*:target/exprcalculator-0.1.jar" stincmale.exprcalculator.Main "$@"
+CLASS_PATH="target/lib/*:target/exprcalculator-0.1.jar"
+CDS_ARCHIVE="target/exprcalculator.jsa"
+JVM_OPTIONS=""
+if [ -f "$CDS_ARCHIVE" ]; then
+  # the archive is built by the appcds profile, the JVM silently ignores it if it does not match the class path
+  JVM_OPTIONS="-XX:SharedArchiveFile=$CDS_ARCHIVE"
+fi
+BATCH=false
+for ARG in "$@"; do
+  case "$ARG" in
+    -b|-batch) BATCH=true ;;
+  esac
+done
+if [ "$BATCH" = false ]; then
+  # a single expression is calculated faster than C2 or a concurrent GC pay off
+  JVM_OPTIONS="$JVM_OPTIONS -XX:TieredStopAtLevel=1 -XX:+UseSerialGC"
+fi
+exec java $JVM_OPTIONS -cp "$CLASS_PATH" stincmale.exprcalculator.Main "$@"
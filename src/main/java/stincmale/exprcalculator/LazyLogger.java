@@ -0,0 +1,166 @@
+package stincmale.exprcalculator;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.spi.StandardLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link Logger} that does not initialize the logging library until a message is actually logged.
+ * <p>
+ * Initializing the logging library takes much longer than calculating an expression, so the application specifies
+ * the {@linkplain #setThreshold(StandardLevel) threshold} before anything is logged, and a {@link LazyLogger} decides whether a message is enabled
+ * based on the threshold alone. Thus the logging library is only initialized if a message is logged, which never happens with {@link StandardLevel#OFF}.
+ * If the threshold is not specified, e.g. when the calculator is used as a library, a {@link LazyLogger} behaves exactly as the {@link Logger} it wraps.
+ */
+@ThreadSafe public final class LazyLogger {
+  private static final String APPLICATION_ROOT_LOGGER_NAME = "stincmale.exprcalculator";
+  @Nullable private static volatile StandardLevel threshold = null;
+  @GuardedBy("LazyLogger.class") private static boolean configured = false;
+
+  private final Class<?> owner;
+  @Nullable private volatile Logger logger;
+
+  private LazyLogger(final Class<?> owner) {
+    this.owner = owner;
+  }
+
+  public static final LazyLogger getLogger(final Class<?> owner) {
+    checkNotNull(owner, "The argument %s must not be null", "owner");
+    return new LazyLogger(owner);
+  }
+
+  /**
+   * Specifies the level of the application loggers. Must be called before anything is logged.
+   *
+   * @param level {@code null} means that the level is specified by the configuration of the logging library.
+   */
+  static final void setThreshold(@Nullable final StandardLevel level) {
+    threshold = level;
+  }
+
+  public final boolean isDebugEnabled() {
+    @Nullable final StandardLevel threshold = LazyLogger.threshold;
+    return threshold == null ? logger().isDebugEnabled() : threshold.intLevel() >= StandardLevel.DEBUG.intLevel();
+  }
+
+  public final boolean isInfoEnabled() {
+    @Nullable final StandardLevel threshold = LazyLogger.threshold;
+    return threshold == null ? logger().isInfoEnabled() : threshold.intLevel() >= StandardLevel.INFO.intLevel();
+  }
+
+  public final boolean isWarnEnabled() {
+    @Nullable final StandardLevel threshold = LazyLogger.threshold;
+    return threshold == null ? logger().isWarnEnabled() : threshold.intLevel() >= StandardLevel.WARN.intLevel();
+  }
+
+  public final boolean isErrorEnabled() {
+    @Nullable final StandardLevel threshold = LazyLogger.threshold;
+    return threshold == null ? logger().isErrorEnabled() : threshold.intLevel() >= StandardLevel.ERROR.intLevel();
+  }
+
+  public final void debug(@Nullable final String msg) {
+    if (isDebugEnabled()) {
+      logger().debug(msg);
+    }
+  }
+
+  public final void debug(@Nullable final String format, @Nullable final Object arg) {
+    if (isDebugEnabled()) {
+      logger().debug(format, arg);
+    }
+  }
+
+  public final void debug(@Nullable final String format, @Nullable final Object arg1, @Nullable final Object arg2) {
+    if (isDebugEnabled()) {
+      logger().debug(format, arg1, arg2);
+    }
+  }
+
+  public final void debug(@Nullable final String format, final Object... args) {
+    if (isDebugEnabled()) {
+      logger().debug(format, args);
+    }
+  }
+
+  public final void info(@Nullable final String msg) {
+    if (isInfoEnabled()) {
+      logger().info(msg);
+    }
+  }
+
+  public final void info(@Nullable final String format, @Nullable final Object arg) {
+    if (isInfoEnabled()) {
+      logger().info(format, arg);
+    }
+  }
+
+  public final void info(@Nullable final String format, @Nullable final Object arg1, @Nullable final Object arg2) {
+    if (isInfoEnabled()) {
+      logger().info(format, arg1, arg2);
+    }
+  }
+
+  public final void warn(@Nullable final String msg) {
+    if (isWarnEnabled()) {
+      logger().warn(msg);
+    }
+  }
+
+  public final void warn(@Nullable final String format, @Nullable final Object arg) {
+    if (isWarnEnabled()) {
+      logger().warn(format, arg);
+    }
+  }
+
+  public final void warn(@Nullable final String msg, @Nullable final Throwable t) {
+    if (isWarnEnabled()) {
+      logger().warn(msg, t);
+    }
+  }
+
+  public final void error(@Nullable final String msg) {
+    if (isErrorEnabled()) {
+      logger().error(msg);
+    }
+  }
+
+  public final void error(@Nullable final String msg, @Nullable final Throwable t) {
+    if (isErrorEnabled()) {
+      logger().error(msg, t);
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{owner=" + owner.getName() + ", threshold=" + threshold + '}';
+  }
+
+  private final Logger logger() {
+    @Nullable Logger result = logger;
+    if (result == null) {
+      result = newLogger(owner);
+      logger = result;
+    }
+    return result;
+  }
+
+  /**
+   * Is synchronized because SLF4J does not honor logging calls made by other threads while it is being initialized by one thread.
+   */
+  private static final synchronized Logger newLogger(final Class<?> owner) {
+    if (!configured) {
+      @Nullable final StandardLevel threshold = LazyLogger.threshold;
+      if (threshold != null) {
+        Configurator.setAllLevels(APPLICATION_ROOT_LOGGER_NAME, Level.toLevel(threshold.name()));
+      }
+      configured = true;
+    }
+    return LoggerFactory.getLogger(owner);
+  }
+}
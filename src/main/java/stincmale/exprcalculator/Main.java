@@ -1,9 +1,16 @@
 package stincmale.exprcalculator;
 
 import com.beust.jcommander.ParameterException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.net.ConnectException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
@@ -11,13 +18,19 @@ import java.time.ZoneOffset;
 import java.util.Locale;
 import java.util.TimeZone;
 import javax.annotation.Nullable;
-import org.apache.logging.log4j.core.config.Configurator;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import stincmale.exprcalculator.arg.Args;
 import stincmale.exprcalculator.arg.InputAndArgs;
+import stincmale.exprcalculator.daemon.Daemon;
+import stincmale.exprcalculator.daemon.DaemonClient;
+import stincmale.exprcalculator.http.HttpEndpoint;
+import stincmale.exprcalculator.logic.BatchCalculator;
 import stincmale.exprcalculator.logic.CalculationException;
+import stincmale.exprcalculator.logic.CalculationResult;
 import stincmale.exprcalculator.logic.ExpressionCalculator;
+import stincmale.exprcalculator.logic.ExpressionPlanCache;
+import stincmale.exprcalculator.logic.ExpressionValidator;
+import stincmale.exprcalculator.logic.ParallelBatchCalculator;
+import stincmale.exprcalculator.metrics.CalculationMetrics;
 
 public final class Main {
   public static final int EXIT_STATUS_FAILURE = 1;
@@ -27,8 +40,13 @@ public final class Main {
   public static final String LN = "\n";
   public static final Charset charset = StandardCharsets.UTF_8;
   public static final Locale locale = Locale.ROOT;
-  private static final String APPLICATION_ROOT_LOGGER_NAME = "stincmale.exprcalculator";
-  private static final Logger logger;
+  private static final int BATCH_PLAN_CACHE_SIZE = 10_000;
+  private static final int BATCH_OUTPUT_BUFFER_SIZE = 1 << 16;
+  /**
+   * The output for a valid expression in the {@linkplain Args#isCheck() check mode}.
+   */
+  private static final String VALID = "valid";
+  private static final LazyLogger logger = LazyLogger.getLogger(Main.class);
 
   static {
     Locale.setDefault(Locale.ROOT);
@@ -38,31 +56,51 @@ public final class Main {
       System.setOut(new PrintStream(System.out, true, charset));
       System.setErr(new PrintStream(System.err, true, charset));
     }
-    logger = LoggerFactory.getLogger(Main.class);
   }
 
   public static final void main(@Nullable final String[] args) {
     @Nullable Integer exitStatus = null;
     try {
       final InputAndArgs inputAndArgs = new InputAndArgs(args, System.in);
-      Configurator.setAllLevels(
-          APPLICATION_ROOT_LOGGER_NAME,
-          inputAndArgs.getArguments()
-              .getLoggingLevel());
+      LazyLogger.setThreshold(inputAndArgs.getArguments()
+          .getStandardLoggingLevel());
       logger.debug("Application start");
       logger.debug("Arguments {}", inputAndArgs.getArguments());
-      logger.info("Expression to calculate '{}'", inputAndArgs.getInput());
-      final MathContext mc = inputAndArgs.getArguments()
-          .getMathContext();
-      final ExpressionCalculator calculator = new ExpressionCalculator(new MathContext(
-          //by using increased precision and then rounding we can achieve mult(div(1, 3), 3) == 1 instead of 0.999...
-          mc.getPrecision() == 0 ? 0 : mc.getPrecision() + 1, mc.getRoundingMode()));
-      final BigDecimal result = calculator.calculate(inputAndArgs.getInput())
-          .round(inputAndArgs.getArguments()
-              .getMathContext());
-      final String strResult = result.toPlainString();
-      logger.info("Calculation result {}", strResult);
-      System.out.println(strResult);
+      if (inputAndArgs.getArguments()
+          .isDaemon()) {
+        runDaemon(inputAndArgs.getArguments());
+      } else if (inputAndArgs.getArguments()
+          .isServer()) {
+        runServer(inputAndArgs.getArguments());
+      } else if (inputAndArgs.getArguments()
+          .isDaemonClient()) {
+        if (sendToDaemon(inputAndArgs) > 0) {
+          exitStatus = EXIT_STATUS_FAILURE;
+        }
+      } else if (inputAndArgs.getArguments()
+          .isBatch()) {
+        if ((inputAndArgs.getArguments()
+            .isCheck() ? checkBatch(inputAndArgs) : calculateBatch(inputAndArgs)) > 0) {
+          exitStatus = EXIT_STATUS_FAILURE;
+        }
+      } else if (inputAndArgs.getArguments()
+          .isCheck()) {
+        logger.info("Expression to check '{}'", inputAndArgs.getInput());
+        @Nullable final CalculationResult problem = new ExpressionValidator().validate(inputAndArgs.getInput());
+        if (problem != null) {
+          throw problem.toException();
+        }
+        System.out.println(VALID);
+      } else {
+        logger.info("Expression to calculate '{}'", inputAndArgs.getInput());
+        final ExpressionCalculator calculator = newCalculator(inputAndArgs.getArguments(), null);
+        final BigDecimal result = calculator.calculate(inputAndArgs.getInput())
+            .round(inputAndArgs.getArguments()
+                .getMathContext());
+        final String strResult = result.toPlainString();
+        logger.info("Calculation result {}", strResult);
+        System.out.println(strResult);
+      }
     } catch (final ParameterException e) {
       System.err.println(e.getLocalizedMessage());
       Args.printUsage();
@@ -86,6 +124,159 @@ public final class Main {
     }
   }
 
+  /**
+   * Creates a calculator with the {@link MathContext} specified by the user, and {@linkplain CalculationMetrics#register() registers}
+   * {@link CalculationMetrics} if they are {@linkplain Args#isMetrics() requested}.
+   *
+   * @param planCache Is not used if the calculator {@linkplain Args#isExact() calculates exactly}.
+   */
+  private static final ExpressionCalculator newCalculator(final Args arguments, @Nullable final ExpressionPlanCache planCache) {
+    final MathContext mc = arguments.getMathContext();
+    @Nullable final CalculationMetrics metrics;
+    if (arguments.isMetrics()) {
+      metrics = new CalculationMetrics();
+      metrics.register();
+    } else {
+      metrics = null;
+    }
+    return arguments.isExact()
+        ? new ExpressionCalculator(mc, null, null, true, metrics)//results are rounded with mc by the calculator
+        : new ExpressionCalculator(new MathContext(
+            //by using increased precision and then rounding we can achieve mult(div(1, 3), 3) == 1 instead of 0.999...
+            mc.getPrecision() == 0 ? 0 : mc.getPrecision() + 1, mc.getRoundingMode()), planCache, null, false, metrics);
+  }
+
+  /**
+   * @return The number of expressions which could not be calculated.
+   */
+  private static final long calculateBatch(final InputAndArgs inputAndArgs) {
+    final Args arguments = inputAndArgs.getArguments();
+    final MathContext mc = arguments.getMathContext();
+    final ExpressionCalculator calculator = newCalculator(arguments, new ExpressionPlanCache(BATCH_PLAN_CACHE_SIZE));
+    final long result;
+    try (BufferedReader in = inputAndArgs.newBatchInputReader();
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, charset), BATCH_OUTPUT_BUFFER_SIZE)) {
+      if (arguments.getWorkers() == 1) {
+        result = new BatchCalculator(calculator, mc).calculate(in, out);
+      } else {
+        result = new ParallelBatchCalculator(calculator, mc, arguments.getWorkers(), arguments.getReorderBufferSize()).calculate(in, out);
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    logger.info("Batch calculation completed, the number of expressions that could not be calculated is {}", result);
+    return result;
+  }
+
+  private static final void runDaemon(final Args arguments) {
+    if (arguments.isDaemonClient() || arguments.isCheck() || arguments.isServer()) {
+      throw new ParameterException("Neither the daemon client mode, nor the check mode, nor the HTTP server mode can be combined with the daemon mode");
+    }
+    final MathContext mc = arguments.getMathContext();
+    try {
+      final Daemon daemon = new Daemon(
+          newCalculator(arguments, new ExpressionPlanCache(BATCH_PLAN_CACHE_SIZE)), mc, arguments.getWorkers(), arguments.getDaemonPort());
+      Runtime.getRuntime()
+          .addShutdownHook(new Thread(() -> {
+            try {
+              daemon.close();
+            } catch (final IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          }));
+      daemon.run();//releases resources when returns
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static final void runServer(final Args arguments) {
+    if (arguments.isDaemonClient() || arguments.isCheck()) {
+      throw new ParameterException("Neither the daemon client mode nor the check mode can be combined with the HTTP server mode");
+    }
+    final MathContext mc = arguments.getMathContext();
+    try {
+      final HttpEndpoint server = new HttpEndpoint(
+          newCalculator(arguments, new ExpressionPlanCache(BATCH_PLAN_CACHE_SIZE)), mc, arguments.getWorkers(), arguments.getServerPort());
+      Runtime.getRuntime()
+          .addShutdownHook(new Thread(server::close));
+      server.run();//releases resources when returns
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread()
+          .interrupt();
+    }
+  }
+
+  /**
+   * Sends either the input, or the expressions read in the {@linkplain Args#isBatch() batch mode} to {@link Daemon},
+   * and prints replies the same way as if the expressions were calculated by this process.
+   *
+   * @return The number of expressions which could not be calculated.
+   */
+  private static final long sendToDaemon(final InputAndArgs inputAndArgs) throws CalculationException {
+    final Args arguments = inputAndArgs.getArguments();
+    if (arguments.isCheck()) {
+      throw new ParameterException("The check mode can not be combined with the daemon client mode");
+    }
+    long result = 0;
+    try (DaemonClient client = newDaemonClient(arguments.getDaemonPort())) {
+      if (arguments.isBatch()) {
+        try (BufferedReader in = inputAndArgs.newBatchInputReader();
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, charset), BATCH_OUTPUT_BUFFER_SIZE)) {
+          result = client.calculate(in, out);
+        }
+      } else {
+        logger.info("Expression to send '{}'", inputAndArgs.getInput());
+        final CalculationResult calculationResult = client.tryCalculate(inputAndArgs.getInput());
+        if (!calculationResult.isSuccess()) {
+          throw calculationResult.toException();
+        }
+        final String strResult = calculationResult.getValue()
+            .toPlainString();
+        logger.info("Calculation result {}", strResult);
+        System.out.println(strResult);
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return result;
+  }
+
+  private static final DaemonClient newDaemonClient(final int port) throws IOException {
+    try {
+      return new DaemonClient(port);
+    } catch (final ConnectException e) {
+      throw new ParameterException(String.format("There is no daemon listening on port %s", port));
+    }
+  }
+
+  /**
+   * @return The number of expressions which are not valid.
+   */
+  private static final long checkBatch(final InputAndArgs inputAndArgs) {
+    final ExpressionValidator validator = new ExpressionValidator();
+    long result = 0;
+    try (BufferedReader in = inputAndArgs.newBatchInputReader();
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, charset), BATCH_OUTPUT_BUFFER_SIZE)) {
+      for (@Nullable String expr = in.readLine(); expr != null; expr = in.readLine()) {
+        @Nullable final CalculationResult problem = validator.validate(expr);
+        if (problem == null) {
+          out.write(VALID);
+        } else {
+          result++;
+          out.write(problem.summary());
+        }
+        out.write(LN);
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    logger.info("Batch check completed, the number of expressions that are not valid is {}", result);
+    return result;
+  }
+
   private Main() {
     throw new UnsupportedOperationException("This class is not designed to be instantiated");
   }
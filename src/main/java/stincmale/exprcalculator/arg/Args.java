@@ -4,31 +4,94 @@ import com.beust.jcommander.IStringConverter;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.converters.PathConverter;
 import com.google.common.collect.ImmutableSet;
 import java.math.MathContext;
 import java.math.RoundingMode;
+import java.nio.file.Path;
 import java.util.Set;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.spi.StandardLevel;
 import stincmale.exprcalculator.Main;
+import stincmale.exprcalculator.metrics.CalculationMetrics;
 import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * Represents application arguments.
  */
 public final class Args {
+  static final String BATCH_SHORT_NAME = "-b";
+  static final String BATCH_NAME = "-batch";
+  static final String DAEMON_SHORT_NAME = "-d";
+  static final String DAEMON_NAME = "-daemon";
+  static final String SERVER_SHORT_NAME = "-s";
+  static final String SERVER_NAME = "-server";
+  private static final int MAX_PORT = 0xFFFF;
   private static final String NAME_OF_EXECUTABLE = "java -jar exprcalculator.jar";
 
   @Parameter(names = {"-v", "-log"},
       description = "Logging level. Possible values: OFF, ERROR, WARN, INFO, DEBUG",
-      converter = LoggingLevelConverter.class) private Level loggingLevel = Level.ERROR;
+      converter = LoggingLevelConverter.class) private String loggingLevel = StandardLevel.ERROR.name();
 
   @Parameter(names = {"-p", "-precision"},
       description = "Precision: the number of digits to be used. Must not be negative. Use 0 for unlimited precision, " +
-          "but this will result in failures to calculate expressions which lead to irrational or repeating decimals (e.g. 'div(1, 3)')",
+          "but this will result in failures to calculate expressions which lead to irrational or repeating decimals (e.g. 'div(1, 3)'), " +
+          "see also -e",
       converter = MathContextConverter.class) private MathContext mc = MathContext.DECIMAL32;
 
+  @Parameter(names = {"-e", "-exact"},
+      description = "Exact mode: calculate using fractions instead of decimals, and only round results with the precision specified via -p. " +
+          "With unlimited precision, only expressions whose results are repeating decimals fail, " +
+          "e.g. 'div(1, 3)' fails, but 'mult(div(1, 3), 3)' does not") private boolean exact = false;
+
+  @Parameter(names = {BATCH_SHORT_NAME, BATCH_NAME},
+      description = "Batch mode: read expressions line by line from the standard input stream, or from the file specified via -f, " +
+          "and print either a result or a problem for each line") private boolean batch = false;
+
+  @Parameter(names = {"-c", "-check"},
+      description = "Check mode: check whether expressions are syntactically valid without calculating them, " +
+          "and print either 'valid' or a problem for each expression. Problems which can only be detected by calculating, " +
+          "e.g. division by zero, are not detected") private boolean check = false;
+
+  @Parameter(names = {DAEMON_SHORT_NAME, DAEMON_NAME},
+      description = "Daemon mode: calculate expressions sent by clients, see -dc, until the process is terminated. " +
+          "The daemon listens on the loopback interface on the port specified via -dp") private boolean daemon = false;
+
+  @Parameter(names = {"-dc", "-daemonClient"},
+      description = "Daemon client mode: send expressions to the daemon listening on the port specified via -dp instead of calculating them, " +
+          "and print replies. Expressions are calculated with the options the daemon was started with") private boolean daemonClient = false;
+
+  @Parameter(names = {"-dp", "-daemonPort"},
+      description = "The port the daemon listens on",
+      converter = PortConverter.class) private int daemonPort = 9753;
+
+  @Parameter(names = {SERVER_SHORT_NAME, SERVER_NAME},
+      description = "HTTP server mode: calculate expressions sent in HTTP requests until the process is terminated. " +
+          "The server listens on the loopback interface on the port specified via -sp") private boolean server = false;
+
+  @Parameter(names = {"-sp", "-serverPort"},
+      description = "The port the HTTP server listens on",
+      converter = PortConverter.class) private int serverPort = 9754;
+
+  @Parameter(names = {"-m", "-metrics"},
+      description = "Record metrics of calculations and expose them via JMX as the MBean " + CalculationMetrics.OBJECT_NAME +
+          ", e.g. to be seen in JDK Mission Control or JConsole") private boolean metrics = false;
+
+  @Parameter(names = {"-f", "-file"},
+      description = "The file to read expressions from in the batch mode",
+      converter = PathConverter.class) @Nullable private Path file = null;
+
+  @Parameter(names = {"-w", "-workers"},
+      description = "The number of threads calculating expressions in the batch mode, the daemon mode and the HTTP server mode. Must be positive",
+      converter = PositiveIntegerConverter.class) private int workers = Runtime.getRuntime()
+      .availableProcessors();
+
+  @Parameter(names = {"-rb", "-reorderBuffer"},
+      description = "The maximum number of lines read in the batch mode whose results are not yet printed. Must be positive",
+      converter = PositiveIntegerConverter.class) private int reorderBufferSize = 10_000;
+
   public Args(@Nullable final String[] args) throws ParameterException {
     this(args, 0, args == null ? 0 : Math.max(0, args.length - 1));
   }
@@ -64,16 +127,120 @@ public final class Args {
   }
 
   public final Level getLoggingLevel() {
-    return loggingLevel;
+    return Level.toLevel(loggingLevel);
+  }
+
+  /**
+   * @return The same level as {@link #getLoggingLevel()}, but represented by a type that, unlike {@link Level}, does not read the configuration of the logging library when loaded.
+   */
+  public final StandardLevel getStandardLoggingLevel() {
+    return StandardLevel.valueOf(loggingLevel);
   }
 
   public final MathContext getMathContext() {
     return mc;
   }
 
+  /**
+   * @return {@code true} if expressions must be calculated exactly, and only results must be rounded according to {@link #getMathContext()}.
+   */
+  public final boolean isExact() {
+    return exact;
+  }
+
+  public final boolean isBatch() {
+    return batch;
+  }
+
+  /**
+   * @return {@code true} if expressions must be checked by {@link stincmale.exprcalculator.logic.ExpressionValidator} instead of being calculated.
+   */
+  public final boolean isCheck() {
+    return check;
+  }
+
+  /**
+   * @return {@code true} if the application must run {@link stincmale.exprcalculator.daemon.Daemon}.
+   */
+  public final boolean isDaemon() {
+    return daemon;
+  }
+
+  /**
+   * @return {@code true} if expressions must be sent to {@link stincmale.exprcalculator.daemon.Daemon} instead of being calculated.
+   */
+  public final boolean isDaemonClient() {
+    return daemonClient;
+  }
+
+  /**
+   * @return The port {@link stincmale.exprcalculator.daemon.Daemon} listens on.
+   */
+  public final int getDaemonPort() {
+    return daemonPort;
+  }
+
+  /**
+   * @return {@code true} if the application must run {@link stincmale.exprcalculator.http.HttpEndpoint}.
+   */
+  public final boolean isServer() {
+    return server;
+  }
+
+  /**
+   * @return The port {@link stincmale.exprcalculator.http.HttpEndpoint} listens on.
+   */
+  public final int getServerPort() {
+    return serverPort;
+  }
+
+  /**
+   * @return The file to read expressions from in the {@linkplain #isBatch() batch mode},
+   * or {@code null} if expressions must be read from the standard input stream.
+   */
+  @Nullable
+  public final Path getFile() {
+    return file;
+  }
+
+  /**
+   * @return The number of threads calculating expressions in the {@linkplain #isBatch() batch mode}.
+   */
+  public final int getWorkers() {
+    return workers;
+  }
+
+  /**
+   * @return The maximum number of lines read in the {@linkplain #isBatch() batch mode} whose results are not yet printed.
+   */
+  public final int getReorderBufferSize() {
+    return reorderBufferSize;
+  }
+
+  /**
+   * @return {@code true} if {@link CalculationMetrics} must be recorded and registered in the platform MBean server.
+   */
+  public final boolean isMetrics() {
+    return metrics;
+  }
+
   @Override
   public final String toString() {
-    return "{loggingLevel=" + loggingLevel + ", mc=" + mc + '}';
+    return "{loggingLevel=" + loggingLevel +
+        ", mc=" + mc +
+        ", exact=" + exact +
+        ", metrics=" + metrics +
+        ", batch=" + batch +
+        ", check=" + check +
+        ", daemon=" + daemon +
+        ", daemonClient=" + daemonClient +
+        ", daemonPort=" + daemonPort +
+        ", server=" + server +
+        ", serverPort=" + serverPort +
+        ", file=" + file +
+        ", workers=" + workers +
+        ", reorderBufferSize=" + reorderBufferSize +
+        '}';
   }
 
   /**
@@ -92,20 +259,26 @@ public final class Args {
         .programName(NAME_OF_EXECUTABLE);
   }
 
-  @ThreadSafe private static final class LoggingLevelConverter implements IStringConverter<Level> {
-    private static final Set<Level> validValues = ImmutableSet.of(Level.OFF, Level.ERROR, Level.WARN, Level.INFO, Level.DEBUG);
+  /**
+   * Produces the name of a {@link StandardLevel} rather than the {@link StandardLevel} itself,
+   * because otherwise {@link JCommander} would print all {@link StandardLevel}s as possible values.
+   */
+  @ThreadSafe private static final class LoggingLevelConverter implements IStringConverter<String> {
+    private static final Set<StandardLevel> validValues =
+        ImmutableSet.of(StandardLevel.OFF, StandardLevel.ERROR, StandardLevel.WARN, StandardLevel.INFO, StandardLevel.DEBUG);
 
     private LoggingLevelConverter() {
     }
 
     @Override
-    public final Level convert(final String v) throws ParameterException {
-      final Level result;
+    public final String convert(final String v) throws ParameterException {
+      final String result;
       try {
-        result = Level.valueOf(v.toUpperCase(Main.locale));
-        if (!validValues.contains(result)) {
+        final StandardLevel level = StandardLevel.valueOf(v.toUpperCase(Main.locale));
+        if (!validValues.contains(level)) {
           throw new RuntimeException();
         }
+        result = level.name();
       } catch (final RuntimeException e) {
         throw new ParameterException(String.format("Invalid value %s", v), e);
       }
@@ -128,4 +301,42 @@ public final class Args {
       return result;
     }
   }
-}
\ No newline at end of file
+
+  @ThreadSafe private static final class PositiveIntegerConverter implements IStringConverter<Integer> {
+    private PositiveIntegerConverter() {
+    }
+
+    @Override
+    public final Integer convert(final String v) throws ParameterException {
+      final int result;
+      try {
+        result = Integer.parseInt(v);
+        if (result <= 0) {
+          throw new RuntimeException();
+        }
+      } catch (final RuntimeException e) {
+        throw new ParameterException(String.format("Invalid value %s", v), e);
+      }
+      return result;
+    }
+  }
+
+  @ThreadSafe private static final class PortConverter implements IStringConverter<Integer> {
+    private PortConverter() {
+    }
+
+    @Override
+    public final Integer convert(final String v) throws ParameterException {
+      final int result;
+      try {
+        result = Integer.parseInt(v);
+        if (result <= 0 || result > MAX_PORT) {
+          throw new RuntimeException();
+        }
+      } catch (final RuntimeException e) {
+        throw new ParameterException(String.format("Invalid value %s", v), e);
+      }
+      return result;
+    }
+  }
+}
@@ -1,28 +1,39 @@
 package stincmale.exprcalculator.arg;
 
 import com.beust.jcommander.ParameterException;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import javax.annotation.Nullable;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 import stincmale.exprcalculator.Main;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Represents both input to the application and its arguments.
+ * In the {@linkplain Args#isBatch() batch mode} the input is not read eagerly, but is {@linkplain #newBatchInputReader() streamed}.
+ * In the {@linkplain Args#isDaemon() daemon mode} and in the {@linkplain Args#isServer() HTTP server mode} there is no input.
  */
 public final class InputAndArgs {
   private static final String MESSAGE_NO_INPUT = "Input has not been provided";
-  private final String input;
+  @Nullable private final String input;
   private final Args arguments;
+  @Nullable private final InputStream in;
 
   /**
    * @param args Whatever was supplied to the {@code main} method.
    * @param in {@link InputAndArgs} tries to read the {@linkplain #getInput() input} from {@code in} if {@code in} is provided.
    */
   public InputAndArgs(@Nullable final String[] args, @Nullable InputStream in) throws ParameterException {
+    this.in = in;
     try {
-      if (in != null && in.available() > 0) {//check if input is provided via std_in
+      if (isWithoutInput(args)) {//all args are options
+        input = null;
+        arguments = new Args(args);
+      } else if (in != null && in.available() > 0) {//check if input is provided via std_in
         input = validateInput(IOUtils.toString(in, Main.charset));
         arguments = new Args(args);
       } else if (args == null || args.length == 0) {
@@ -36,10 +47,40 @@ public final class InputAndArgs {
     }
   }
 
+  /**
+   * Must not be called in the {@linkplain Args#isBatch() batch mode}, in the {@linkplain Args#isDaemon() daemon mode}
+   * or in the {@linkplain Args#isServer() HTTP server mode}.
+   */
   public final String getInput() {
+    checkState(input != null, "There is no input in the batch mode, in the daemon mode and in the HTTP server mode");
     return input;
   }
 
+  /**
+   * Must only be called in the {@linkplain Args#isBatch() batch mode}.
+   *
+   * @return A new {@link BufferedReader} that reads expressions from either {@link Args#getFile()}, which is {@linkplain MappedFileReader mapped},
+   * or the {@link InputStream}
+   * specified in the {@linkplain #InputAndArgs(String[], InputStream) constructor}.
+   * It is the responsibility of the caller to close the reader.
+   */
+  public final BufferedReader newBatchInputReader() throws IOException {
+    checkState(arguments.isBatch(), "This is not the batch mode");
+    @Nullable final Path file = arguments.getFile();
+    final BufferedReader result;
+    if (file != null) {
+      if (!Files.isReadable(file)) {
+        throw new ParameterException(String.format("Can not read %s", file));
+      }
+      result = new MappedFileReader(file);
+    } else if (in != null) {
+      result = new BufferedReader(new InputStreamReader(in, Main.charset));
+    } else {
+      throw new ParameterException(MESSAGE_NO_INPUT);
+    }
+    return result;
+  }
+
   public final Args getArguments() {
     return arguments;
   }
@@ -49,8 +90,22 @@ public final class InputAndArgs {
     return "{input=" + input + ", arguments=" + arguments + '}';
   }
 
+  private static final boolean isWithoutInput(@Nullable final String[] args) {
+    boolean result = false;
+    if (args != null) {
+      for (final String arg : args) {
+        if (Args.BATCH_SHORT_NAME.equals(arg) || Args.BATCH_NAME.equals(arg) || Args.DAEMON_SHORT_NAME.equals(arg) || Args.DAEMON_NAME.equals(arg) ||
+            Args.SERVER_SHORT_NAME.equals(arg) || Args.SERVER_NAME.equals(arg)) {
+          result = true;
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
   private static final String validateInput(final String input) throws ParameterException {
-    if (StringUtils.isBlank(input)) {
+    if (input.isBlank()) {
       throw new ParameterException(MESSAGE_NO_INPUT);
     }
     return input;
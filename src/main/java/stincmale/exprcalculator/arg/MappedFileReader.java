@@ -0,0 +1,275 @@
+package stincmale.exprcalculator.arg;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import stincmale.exprcalculator.Main;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link BufferedReader} that reads a file by mapping it into memory {@linkplain FileChannel#map(FileChannel.MapMode, long, long) window}
+ * by window. Line boundaries are found directly in the mapped bytes, and bytes of a line are decoded straight into the resulting {@link String}.
+ * Methods that read characters rather than lines, e.g. {@link #read(char[], int, int)}, also decode the file line by line,
+ * but include line terminators.
+ * Since a window is mapped outside of the heap and only one line at a time is decoded,
+ * heap usage depends on the length of the longest line, but not on the size of the file, which may exceed both 2 GB and the heap size.
+ * <p>
+ * Lines are terminated, and reading lines may be mixed with reading characters, the same way as for {@link BufferedReader}.
+ * {@link #mark(int)} is not supported.
+ */
+@NotThreadSafe final class MappedFileReader extends BufferedReader {
+  static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+  private static final byte LF = '\n';
+  private static final byte CR = '\r';
+
+  private final FileChannel channel;
+  private final long fileSize;
+  private final int windowSize;
+  @Nullable private MappedByteBuffer window;
+  /**
+   * The position in the file of the first byte of the {@link #window}.
+   */
+  private long windowPosition;
+  /**
+   * The position in the file of the first byte of the next line.
+   */
+  private long position;
+  /**
+   * {@code true} if the previous line was terminated by {@link #CR}, and hence {@link #LF} at the {@link #position} must be skipped.
+   */
+  private boolean skipLf;
+  private byte[] lineBytes;
+  /**
+   * A line with its terminator, if any, decoded by methods that read characters.
+   */
+  private String pending;
+  /**
+   * The index of the first character of the {@link #pending} line that has not been read.
+   */
+  private int pendingIdx;
+  private boolean closed;
+
+  MappedFileReader(final Path file) throws IOException {
+    this(file, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * @param windowSize The number of bytes to map at once. A window is enlarged if a line does not fit in it.
+   */
+  MappedFileReader(final Path file, final int windowSize) throws IOException {
+    super(Reader.nullReader(), 1);
+    checkNotNull(file, "The argument %s must not be null", "file");
+    checkArgument(windowSize > 0, "The argument %s=%s must be positive", "windowSize", windowSize);
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+    fileSize = channel.size();
+    this.windowSize = windowSize;
+    window = null;
+    windowPosition = 0;
+    position = 0;
+    skipLf = false;
+    lineBytes = new byte[128];
+    pending = "";
+    pendingIdx = 0;
+    closed = false;
+  }
+
+  @Nullable
+  @Override
+  public final String readLine() throws IOException {
+    ensureOpen();
+    @Nullable final String result;
+    if (pendingIdx < pending.length()) {//the rest of a line that has been partially read by methods that read characters
+      final char last = pending.charAt(pending.length() - 1);
+      final boolean terminated = last == LF || last == CR;
+      result = pending.substring(pendingIdx, terminated ? pending.length() - 1 : pending.length());
+      skipLf = last == CR;
+      pending = "";
+      pendingIdx = 0;
+    } else {
+      result = nextLine(false);
+    }
+    return result;
+  }
+
+  @Override
+  public final int read() throws IOException {
+    ensureOpen();
+    return fillPending() ? pending.charAt(pendingIdx++) : -1;
+  }
+
+  @Override
+  public final int read(final char[] cbuf, final int off, final int len) throws IOException {
+    ensureOpen();
+    Objects.checkFromIndexSize(off, len, cbuf.length);
+    int result = 0;
+    while (result < len && fillPending()) {
+      final int n = Math.min(len - result, pending.length() - pendingIdx);
+      pending.getChars(pendingIdx, pendingIdx + n, cbuf, off + result);
+      pendingIdx += n;
+      result += n;
+    }
+    return result == 0 && len > 0 ? -1 : result;
+  }
+
+  @Override
+  public final long skip(final long n) throws IOException {
+    checkArgument(n >= 0, "The argument %s=%s must not be negative", "n", n);
+    ensureOpen();
+    long result = 0;
+    while (result < n && fillPending()) {
+      final int skipped = (int)Math.min(n - result, pending.length() - pendingIdx);
+      pendingIdx += skipped;
+      result += skipped;
+    }
+    return result;
+  }
+
+  @Override
+  public final boolean ready() throws IOException {
+    ensureOpen();
+    return pendingIdx < pending.length() || position < fileSize;
+  }
+
+  @Override
+  public final boolean markSupported() {
+    return false;
+  }
+
+  /**
+   * @throws IOException Always.
+   */
+  @Override
+  public final void mark(final int readAheadLimit) throws IOException {
+    throw new IOException("mark() is not supported");
+  }
+
+  /**
+   * @throws IOException Always.
+   */
+  @Override
+  public final void reset() throws IOException {
+    throw new IOException("reset() is not supported");
+  }
+
+  @Override
+  public final void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      window = null;
+      pending = "";
+      channel.close();
+    }
+  }
+
+  /**
+   * @param withTerminator Specifies whether the line terminator is included in the result,
+   * in which case {@link #LF} that follows {@link #CR} is not skipped, because it is a separate line terminator
+   * from the standpoint of methods that read characters.
+   * @return {@code null} if the end of the file has been reached.
+   */
+  @Nullable
+  private final String nextLine(final boolean withTerminator) throws IOException {
+    if (skipLf) {
+      skipLf = false;
+      if (position < fileSize && byteAt(position) == LF) {
+        position++;
+      }
+    }
+    @Nullable final String result;
+    if (position >= fileSize) {
+      result = null;
+    } else {
+      long endPosition = position;
+      byte b = 0;
+      for (; endPosition < fileSize; endPosition++) {
+        b = byteAt(endPosition);
+        if (b == LF || b == CR) {
+          break;
+        }
+      }
+      if (endPosition < fileSize) {//skip the line terminator
+        result = decode(position, withTerminator ? endPosition + 1 : endPosition);
+        skipLf = !withTerminator && b == CR;
+        position = endPosition + 1;
+      } else {
+        result = decode(position, endPosition);
+        position = endPosition;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Decodes the next line with its terminator if all characters of the {@link #pending} line have been read.
+   *
+   * @return {@code false} if there are no more characters.
+   */
+  private final boolean fillPending() throws IOException {
+    if (pendingIdx == pending.length()) {
+      @Nullable final String line = nextLine(true);
+      pending = line == null ? "" : line;
+      pendingIdx = 0;
+    }
+    return pendingIdx < pending.length();
+  }
+
+  /**
+   * Maps a new window if the {@code filePosition} is outside of the current one.
+   * A new window always starts at the first byte of the current line,
+   * so that the whole line is in the window when its end is found.
+   */
+  private final byte byteAt(final long filePosition) throws IOException {
+    if (window == null || filePosition < windowPosition || filePosition >= windowPosition + window.limit()) {
+      final long lineStartPosition = position;
+      final long requiredSize = filePosition - lineStartPosition + 1;
+      if (requiredSize > Integer.MAX_VALUE) {
+        throw new IOException(String.format("The line starting at the position %s is too long", lineStartPosition));
+      }
+      final long size = Math.min(
+          fileSize - lineStartPosition,
+          Math.max(windowSize, Math.min(Integer.MAX_VALUE, 2 * requiredSize)));
+      window = channel.map(FileChannel.MapMode.READ_ONLY, lineStartPosition, size);
+      windowPosition = lineStartPosition;
+    }
+    return window.get((int)(filePosition - windowPosition));
+  }
+
+  /**
+   * @return A {@link String} decoded from the bytes {@code [fromPosition, toPosition)} of the current window.
+   */
+  private final String decode(final long fromPosition, final long toPosition) {
+    assert window != null || fromPosition == toPosition;
+    final int length = (int)(toPosition - fromPosition);
+    final String result;
+    if (length == 0) {
+      result = "";
+    } else {
+      if (lineBytes.length < length) {
+        lineBytes = new byte[Math.max(length, (int)Math.min(Integer.MAX_VALUE, 2L * lineBytes.length))];
+      }
+      window.position((int)(fromPosition - windowPosition));
+      window.get(lineBytes, 0, length);
+      result = new String(lineBytes, 0, length, Main.charset);
+    }
+    return result;
+  }
+
+  private final void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("The reader is closed");
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{fileSize=" + fileSize + ", windowSize=" + windowSize + ", position=" + position + '}';
+  }
+}
@@ -0,0 +1,335 @@
+package stincmale.exprcalculator.daemon;
+
+import java.io.IOException;
+import java.math.MathContext;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.LazyLogger;
+import stincmale.exprcalculator.Main;
+import stincmale.exprcalculator.logic.CalculationResult;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Calculates expressions sent by {@linkplain DaemonClient clients} over TCP connections to the loopback interface, see {@link Protocol}.
+ * <p>
+ * All connections are served by a single thread that {@linkplain #run() runs} the daemon: it accepts connections,
+ * reads requests and writes replies without ever blocking, and submits expressions to worker threads, which only calculate.
+ * Expressions sent via the same connection are calculated concurrently, but replies are written in the order of requests.
+ * A connection stops being read while it has {@link #MAX_PENDING_REQUESTS} requests without written replies,
+ * or {@link #MAX_BUFFERED_REPLIES_SIZE} bytes of replies the client has not yet received,
+ * so a client that does not read replies can not make the daemon run out of memory.
+ */
+@ThreadSafe public final class Daemon implements AutoCloseable {
+  private static final LazyLogger logger = LazyLogger.getLogger(Daemon.class);
+  private static final int MAX_PENDING_REQUESTS = 1 << 10;
+  private static final int MAX_BUFFERED_REPLIES_SIZE = 1 << 20;
+  private static final int BUFFER_SIZE = 1 << 14;
+  private static final int MAX_PORT = 0xFFFF;
+  private static final int STATE_NEW = 0;
+  private static final int STATE_RUNNING = 1;
+  private static final int STATE_CLOSED = 2;
+
+  private final ExpressionCalculator calculator;
+  private final MathContext resultMc;
+  private final ServerSocketChannel serverChannel;
+  private final Selector selector;
+  private final ExecutorService workers;
+  /**
+   * Connections for which workers have calculated expressions since the selecting thread last checked.
+   */
+  private final Queue<Connection> calculated;
+  private final AtomicBoolean wakeupRequested;
+  private final AtomicInteger state;
+
+  /**
+   * Binds the daemon to the {@code port}, but does not accept connections until the daemon is {@linkplain #run() run}.
+   *
+   * @param calculator Must be {@link ThreadSafe}.
+   * @param resultMc {@link MathContext} used to round results produced by the {@code calculator}.
+   * @param parallelism The number of worker threads. Must be positive.
+   * @param port The port on the loopback interface. {@code 0} means an ephemeral port, see {@link #getPort()}.
+   */
+  public Daemon(final ExpressionCalculator calculator, final MathContext resultMc, final int parallelism, final int port) throws IOException {
+    checkNotNull(calculator, "The argument %s must not be null", "calculator");
+    checkNotNull(resultMc, "The argument %s must not be null", "resultMc");
+    checkArgument(parallelism > 0, "The argument %s=%s must be positive", "parallelism", parallelism);
+    checkArgument(port >= 0 && port <= MAX_PORT, "The argument %s=%s must be within [0, %s]", "port", port, MAX_PORT);
+    this.calculator = calculator;
+    this.resultMc = resultMc;
+    selector = Selector.open();
+    try {
+      serverChannel = ServerSocketChannel.open();
+      try {
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      } catch (final IOException | RuntimeException e) {
+        serverChannel.close();
+        throw e;
+      }
+    } catch (final IOException | RuntimeException e) {
+      selector.close();
+      throw e;
+    }
+    final AtomicInteger workersCount = new AtomicInteger();
+    workers = Executors.newFixedThreadPool(parallelism, task -> {
+      final Thread result = new Thread(task, Daemon.class.getSimpleName() + "-worker-" + workersCount.incrementAndGet());
+      result.setDaemon(true);
+      return result;
+    });
+    calculated = new ConcurrentLinkedQueue<>();
+    wakeupRequested = new AtomicBoolean();
+    state = new AtomicInteger(STATE_NEW);
+  }
+
+  /**
+   * @return The port the daemon is bound to.
+   */
+  public final int getPort() throws IOException {
+    return ((InetSocketAddress)serverChannel.getLocalAddress()).getPort();
+  }
+
+  /**
+   * Serves clients in the calling thread until the daemon is {@linkplain #close() closed}. May be called at most once.
+   */
+  public final void run() throws IOException {
+    checkState(state.compareAndSet(STATE_NEW, STATE_RUNNING), "The daemon was either run or closed");
+    logger.info("Daemon listens on {}", serverChannel.getLocalAddress());
+    try {
+      while (state.get() == STATE_RUNNING) {
+        selector.select();
+        /* Clearing the flag before polling guarantees that a worker which adds a connection after the polling is done,
+         * also wakes up the next selection. */
+        wakeupRequested.set(false);
+        for (@Nullable Connection connection = calculated.poll(); connection != null; connection = calculated.poll()) {
+          connection.reply();
+        }
+        for (final Iterator<SelectionKey> keys = selector.selectedKeys()
+            .iterator(); keys.hasNext(); ) {
+          final SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+          } else {
+            final Connection connection = (Connection)key.attachment();
+            if (key.isReadable()) {
+              connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+              connection.write();
+            }
+          }
+        }
+      }
+    } finally {
+      state.set(STATE_CLOSED);
+      release();
+    }
+  }
+
+  /**
+   * Stops the daemon and disconnects all clients. Replies to the requests that were accepted but not yet replied to are not sent.
+   */
+  @Override
+  public final void close() throws IOException {
+    if (state.compareAndSet(STATE_NEW, STATE_CLOSED)) {
+      release();
+    } else if (state.compareAndSet(STATE_RUNNING, STATE_CLOSED)) {
+      selector.wakeup();
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{serverChannel=" + serverChannel + ", resultMc=" + resultMc + ", state=" + state + '}';
+  }
+
+  private final void release() throws IOException {
+    workers.shutdownNow();
+    try {
+      for (final SelectionKey key : selector.keys()) {
+        key.channel()
+            .close();
+      }
+    } finally {
+      selector.close();
+    }
+    logger.info("Daemon stopped");
+  }
+
+  private final void accept() throws IOException {
+    @Nullable final SocketChannel channel = serverChannel.accept();
+    if (channel != null) {
+      channel.configureBlocking(false);
+      final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+      key.attach(new Connection(channel, key));
+      logger.debug("Accepted {}", channel);
+    }
+  }
+
+  private final void onCalculated(final Connection connection) {
+    calculated.add(connection);
+    if (wakeupRequested.compareAndSet(false, true)) {
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Apart from {@link Request#reply}, is only accessed by the thread {@linkplain #run() running} the daemon.
+   */
+  @NotThreadSafe private final class Connection {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final Deque<Request> pendingRequests;
+    private ByteBuffer in;
+    private ByteBuffer out;
+    private boolean endOfInput;
+
+    private Connection(final SocketChannel channel, final SelectionKey key) {
+      this.channel = channel;
+      this.key = key;
+      pendingRequests = new ArrayDeque<>();
+      in = ByteBuffer.allocate(BUFFER_SIZE);
+      out = ByteBuffer.allocate(BUFFER_SIZE);
+      endOfInput = false;
+    }
+
+    private final void read() throws IOException {
+      try {
+        if (channel.read(in) < 0) {
+          endOfInput = true;
+        }
+        in.flip();
+        int incompleteFrameLength = 0;
+        while (in.remaining() >= Integer.BYTES) {
+          final int payloadLength = in.getInt(in.position());
+          Protocol.checkPayloadLength(payloadLength);
+          if (in.remaining() - Integer.BYTES < payloadLength) {
+            incompleteFrameLength = Integer.BYTES + payloadLength;
+            break;
+          }
+          in.position(in.position() + Integer.BYTES);
+          final String expr = new String(in.array(), in.arrayOffset() + in.position(), payloadLength, Main.charset);
+          in.position(in.position() + payloadLength);
+          submit(expr);
+        }
+        if (incompleteFrameLength > in.capacity()) {
+          in = ByteBuffer.allocate(incompleteFrameLength)
+              .put(in);
+        } else {
+          in.compact();
+        }
+      } catch (final IOException e) {
+        logger.debug(null, e);
+        close();
+        return;
+      }
+      updateInterest();
+    }
+
+    private final void submit(final String expr) {
+      final Request request = new Request();
+      pendingRequests.add(request);
+      workers.execute(() -> {
+        CalculationResult result;
+        try {
+          result = calculator.tryCalculate(expr);
+        } catch (final RuntimeException | StackOverflowError e) {//e.g. an expression nested too deeply, the client must still get a reply
+          logger.warn(null, e);
+          result = CalculationResult.failure(expr, -1, null);
+        }
+        request.reply = Protocol.encodeReply(result, resultMc);
+        onCalculated(this);
+      });
+    }
+
+    /**
+     * Moves the replies to the earliest calculated requests to the {@link #out} buffer and writes it.
+     */
+    private final void reply() throws IOException {
+      if (!channel.isOpen()) {
+        return;
+      }
+      for (@Nullable Request request = pendingRequests.peek(); request != null; request = pendingRequests.peek()) {
+        @Nullable final byte[] reply = request.reply;
+        if (reply == null) {
+          break;
+        }
+        if (out.remaining() < reply.length) {
+          out = ByteBuffer.allocate(Math.max(2 * out.capacity(), out.position() + reply.length))
+              .put(out.flip());
+        }
+        out.put(reply);
+        pendingRequests.poll();
+      }
+      write();
+    }
+
+    private final void write() throws IOException {
+      try {
+        out.flip();
+        channel.write(out);
+        out.compact();
+      } catch (final IOException e) {
+        logger.debug(null, e);
+        close();
+        return;
+      }
+      updateInterest();
+    }
+
+    private final void updateInterest() throws IOException {
+      if (endOfInput && pendingRequests.isEmpty() && out.position() == 0) {
+        close();
+      } else {
+        int ops = 0;
+        if (!endOfInput && pendingRequests.size() < MAX_PENDING_REQUESTS && out.position() < MAX_BUFFERED_REPLIES_SIZE) {
+          ops |= SelectionKey.OP_READ;
+        }
+        if (out.position() > 0) {
+          ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+      }
+    }
+
+    private final void close() throws IOException {
+      logger.debug("Disconnecting {}", channel);
+      key.cancel();
+      channel.close();
+    }
+  }
+
+  @ThreadSafe private static final class Request {
+    /**
+     * Is written by a worker thread and read by the thread {@linkplain #run() running} the daemon.
+     */
+    @Nullable private volatile byte[] reply;
+
+    private Request() {
+    }
+  }
+}
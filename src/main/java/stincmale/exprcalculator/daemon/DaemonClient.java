@@ -0,0 +1,189 @@
+package stincmale.exprcalculator.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+import stincmale.exprcalculator.Main;
+import stincmale.exprcalculator.logic.BatchCalculator;
+import stincmale.exprcalculator.logic.CalculationResult;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A client of a {@link Daemon} listening on the loopback interface.
+ * Results are produced with the {@link java.math.MathContext} the daemon uses, and are already rounded by the daemon.
+ */
+@NotThreadSafe public final class DaemonClient implements AutoCloseable {
+  /**
+   * The maximum number of requests sent by {@link #calculate(BufferedReader, Writer)} without receiving replies.
+   */
+  private static final int MAX_PIPELINED_REQUESTS = 1 << 10;
+  private static final int BUFFER_SIZE = 1 << 14;
+
+  private final Socket socket;
+  private final DataInputStream in;
+  private final DataOutputStream out;
+
+  /**
+   * @param port The port the {@link Daemon} listens on.
+   */
+  public DaemonClient(final int port) throws IOException {
+    socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    try {
+      socket.setTcpNoDelay(true);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+    } catch (final IOException | RuntimeException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Sends the expression to the daemon and waits for the reply.
+   *
+   * @return See {@link stincmale.exprcalculator.logic.ExpressionCalculator#tryCalculate(String)}.
+   */
+  public final CalculationResult tryCalculate(final String expr) throws IOException {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    send(expr);
+    out.flush();
+    return receive(expr);
+  }
+
+  /**
+   * Does the same as {@link BatchCalculator#calculate(BufferedReader, Writer)}, but the expressions are calculated by the daemon.
+   * Requests are pipelined: the expressions are sent by a separate thread without waiting for replies,
+   * at most {@link #MAX_PIPELINED_REQUESTS} at a time.
+   *
+   * @return The number of expressions which could not be calculated.
+   */
+  public final long calculate(final BufferedReader in, final Writer out) throws IOException {
+    checkNotNull(in, "The argument %s must not be null", "in");
+    checkNotNull(out, "The argument %s must not be null", "out");
+    /* The sending thread puts an expression into the queue before sending it, so that this thread knows
+     * which expression a reply belongs to, and Sent.END marks the end of the input.
+     * An expression that can not be sent is put into the queue with its problem instead of being sent,
+     * because there will be no reply to it. */
+    final BlockingQueue<Sent> sent = new ArrayBlockingQueue<>(MAX_PIPELINED_REQUESTS);
+    final FutureTask<Void> sending = new FutureTask<>(() -> {
+      try {
+        for (@Nullable String expr = in.readLine(); expr != null; expr = in.readLine()) {
+          @Nullable byte[] request;
+          @Nullable CalculationResult problem;
+          try {
+            request = Protocol.encodeRequest(expr);
+            problem = null;
+          } catch (final ProtocolException e) {//the expression is too long
+            request = null;
+            problem = CalculationResult.failure(expr, -1, null);
+          }
+          final Sent s = new Sent(expr, problem);
+          if (!sent.offer(s)) {//the daemon must receive all requests that are waiting for replies before this thread blocks
+            this.out.flush();
+            sent.put(s);
+          }
+          if (request != null) {
+            this.out.write(request);
+          }
+          if (!in.ready()) {//the next line may take a while to read
+            this.out.flush();
+          }
+        }
+        this.out.flush();
+      } finally {
+        sent.put(Sent.END);
+      }
+      return null;
+    });
+    final Thread sender = new Thread(sending, getClass().getSimpleName() + "-sender");
+    sender.setDaemon(true);
+    sender.start();
+    long problemsCount = 0;
+    try {
+      for (Sent s = sent.take(); s != Sent.END; s = sent.take()) {
+        final CalculationResult result = s.problem == null ? receive(s.expr) : s.problem;
+        if (result.isSuccess()) {
+          out.write(result.getValue()
+              .toPlainString());
+        } else {
+          problemsCount++;
+          out.write(result.summary());
+        }
+        out.write(Main.LN);
+      }
+      sending.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread()
+          .interrupt();
+      throw new InterruptedIOException();
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      } else {
+        throw new RuntimeException(cause);
+      }
+    } finally {
+      sending.cancel(true);
+    }
+    return problemsCount;
+  }
+
+  @Override
+  public final void close() throws IOException {
+    socket.close();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{socket=" + socket + '}';
+  }
+
+  private final void send(final String expr) throws IOException {
+    out.write(Protocol.encodeRequest(expr));
+  }
+
+  private final CalculationResult receive(final String expr) throws IOException {
+    final int payloadLength = in.readInt();
+    Protocol.checkPayloadLength(payloadLength);
+    final byte[] payload = new byte[payloadLength];
+    in.readFully(payload);
+    return Protocol.decodeReply(expr, ByteBuffer.wrap(payload));
+  }
+
+  /**
+   * An expression sent to the daemon.
+   */
+  @Immutable private static final class Sent {
+    private static final Sent END = new Sent("", null);
+
+    private final String expr;
+    /**
+     * Not {@code null} if the expression was not sent, because it can not be.
+     */
+    @Nullable private final CalculationResult problem;
+
+    private Sent(final String expr, @Nullable final CalculationResult problem) {
+      this.expr = expr;
+      this.problem = problem;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package stincmale.exprcalculator.daemon;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+import stincmale.exprcalculator.Main;
+import stincmale.exprcalculator.logic.CalculationResult;
+
+/**
+ * The protocol spoken by {@link Daemon} and {@link DaemonClient}.
+ * <p>
+ * Both a request and a reply are frames: a big-endian {@code int} length of the payload followed by the payload.
+ * The payload of a request is the expression encoded with {@link Main#charset}.
+ * The payload of a reply starts with a status byte.
+ * {@link #STATUS_SUCCESS} is followed by the result in the {@linkplain BigDecimal#toPlainString() plain notation},
+ * {@link #STATUS_FAILURE} is followed by the {@code int} {@linkplain CalculationResult#getProblemIdx() index of the problem}
+ * and the {@linkplain CalculationResult#getProblemWord() word that caused the problem}, which is empty if there is no such word.
+ * <p>
+ * A client may send any number of requests without waiting for replies, and replies are sent in the order of requests.
+ */
+final class Protocol {
+  /**
+   * The maximum length of the payload of a frame, a peer that sends a longer frame is disconnected.
+   */
+  static final int MAX_PAYLOAD_LENGTH = 1 << 20;
+  static final byte STATUS_SUCCESS = 0;
+  static final byte STATUS_FAILURE = 1;
+
+  /**
+   * @return A frame with the payload of a request.
+   */
+  static final byte[] encodeRequest(final String expr) throws ProtocolException {
+    final byte[] payload = expr.getBytes(Main.charset);
+    checkPayloadLength(payload.length);
+    return ByteBuffer.allocate(Integer.BYTES + payload.length)
+        .putInt(payload.length)
+        .put(payload)
+        .array();
+  }
+
+  /**
+   * @param resultMc {@link MathContext} used to round the {@linkplain CalculationResult#getValue() value}.
+   * @return A frame with the payload of a reply.
+   */
+  static final byte[] encodeReply(final CalculationResult result, final MathContext resultMc) {
+    final ByteBuffer frame;
+    if (result.isSuccess()) {
+      final byte[] value = result.getValue()
+          .round(resultMc)
+          .toPlainString()
+          .getBytes(Main.charset);
+      frame = ByteBuffer.allocate(Integer.BYTES + 1 + value.length)
+          .putInt(1 + value.length)
+          .put(STATUS_SUCCESS)
+          .put(value);
+    } else {
+      @Nullable final String problemWord = result.getProblemWord();
+      final byte[] word = problemWord == null ? new byte[0] : problemWord.getBytes(Main.charset);
+      frame = ByteBuffer.allocate(Integer.BYTES + 1 + Integer.BYTES + word.length)
+          .putInt(1 + Integer.BYTES + word.length)
+          .put(STATUS_FAILURE)
+          .putInt(result.getProblemIdx())
+          .put(word);
+    }
+    return frame.array();
+  }
+
+  /**
+   * @param expr The expression sent in the request the {@code payload} replies to.
+   * @param payload The payload of a reply.
+   */
+  static final CalculationResult decodeReply(final String expr, final ByteBuffer payload) throws ProtocolException {
+    final CalculationResult result;
+    try {
+      final byte status = payload.get();
+      if (status == STATUS_SUCCESS) {
+        result = CalculationResult.success(expr, new BigDecimal(decode(payload)));
+      } else if (status == STATUS_FAILURE) {
+        final int problemIdx = payload.getInt();
+        final String problemWord = decode(payload);
+        result = CalculationResult.failure(expr, problemIdx, problemWord.isEmpty() ? null : problemWord);
+      } else {
+        throw new ProtocolException(String.format("Unknown status %s", status));
+      }
+    } catch (final RuntimeException e) {
+      final ProtocolException malformed = new ProtocolException("Malformed reply");
+      malformed.initCause(e);
+      throw malformed;
+    }
+    return result;
+  }
+
+  static final void checkPayloadLength(final int length) throws ProtocolException {
+    if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+      throw new ProtocolException(String.format("The payload length %s is not within [0, %s]", length, MAX_PAYLOAD_LENGTH));
+    }
+  }
+
+  private static final String decode(final ByteBuffer buffer) {
+    final String result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), Main.charset);
+    buffer.position(buffer.limit());
+    return result;
+  }
+
+  private Protocol() {
+    throw new UnsupportedOperationException("This class is not designed to be instantiated");
+  }
+}
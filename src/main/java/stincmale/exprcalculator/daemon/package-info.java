@@ -0,0 +1,4 @@
+/**
+ * Contains a daemon that calculates expressions sent by clients, and a client of the daemon.
+ */
+package stincmale.exprcalculator.daemon;
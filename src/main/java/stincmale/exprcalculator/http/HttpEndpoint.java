@@ -0,0 +1,326 @@
+package stincmale.exprcalculator.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.MathContext;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.LazyLogger;
+import stincmale.exprcalculator.Main;
+import stincmale.exprcalculator.logic.CalculationResult;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import stincmale.exprcalculator.metrics.LatencyHistogram;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An HTTP server listening on the loopback interface, which calculates expressions sent in requests.
+ * Responses are {@code text/plain} encoded with {@link Main#charset}.
+ * <ul>
+ * <li>{@code POST} {@value #CALCULATE_PATH} calculates the expression in the body of the request,
+ * a single trailing line separator is ignored.
+ * Responds with {@code 200} and the result, or with {@code 422} and the {@linkplain CalculationResult#description() description of the problem}.</li>
+ * <li>{@code POST} {@value #BATCH_PATH} calculates expressions in the body of the request, one expression per line.
+ * Responds with {@code 200} and exactly one line per expression, the same as the batch mode of {@link Main} does.
+ * The response is streamed, so the size of the request is not limited.</li>
+ * <li>{@code GET} {@value #STATS_PATH} responds with the statistics of the requests to the above resources, one {@code name value} pair per line:
+ * the number of requests, requests per second, the 50th and the 99th percentiles of the latency in microseconds,
+ * the number of calculated expressions and the number of micro-batches they were calculated in.
+ * {@code DELETE} {@value #STATS_PATH} resets the statistics, e.g. to exclude a warmup from a load test.</li>
+ * </ul>
+ * Requests are handled by a pool of at most {@link #MAX_HANDLERS} threads, which only wait for expressions to be calculated
+ * by {@link MicroBatcher}.
+ */
+@ThreadSafe public final class HttpEndpoint implements AutoCloseable {
+  public static final String CALCULATE_PATH = "/calculate";
+  public static final String BATCH_PATH = "/batch";
+  public static final String STATS_PATH = "/stats";
+  static final int STATUS_PROBLEM = 422;
+  private static final LazyLogger logger = LazyLogger.getLogger(HttpEndpoint.class);
+  private static final String CONTENT_TYPE = "text/plain; charset=" + Main.charset.name();
+  private static final int MAX_EXPRESSION_LENGTH = 1 << 20;
+  /**
+   * The maximum number of expressions from a single {@value #BATCH_PATH} request that are submitted but whose results are not yet sent.
+   */
+  private static final int MAX_PENDING_BATCH_EXPRESSIONS = 1 << 10;
+  private static final int MAX_HANDLERS = 1 << 8;
+  private static final int BATCH_OUTPUT_BUFFER_SIZE = 1 << 14;
+  private static final int MAX_PORT = 0xFFFF;
+  private static final int STATE_NEW = 0;
+  private static final int STATE_RUNNING = 1;
+  private static final int STATE_CLOSED = 2;
+  private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+  static {
+    /* Otherwise the server does not disable Nagle's algorithm, and because it writes the headers and the body of a response separately,
+     * the body of each response is delayed until the client acknowledges the headers, which may take tens of milliseconds. */
+    if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+      System.setProperty(NO_DELAY_PROPERTY, Boolean.TRUE.toString());
+    }
+  }
+
+  private final MathContext resultMc;
+  private final HttpServer server;
+  private final ThreadPoolExecutor handlers;
+  private final MicroBatcher batcher;
+  private final LongAdder requestsCount;
+  private final LatencyHistogram latency;
+  private volatile StatsBaseline statsBaseline;
+  private final CountDownLatch stopped;
+  private final AtomicInteger state;
+
+  /**
+   * Binds the server to the {@code port}, but does not accept connections until the server is {@linkplain #run() run}.
+   *
+   * @param calculator Must be {@link ThreadSafe}.
+   * @param resultMc {@link MathContext} used to round results produced by the {@code calculator}.
+   * @param parallelism The number of threads calculating expressions. Must be positive.
+   * @param port The port on the loopback interface. {@code 0} means an ephemeral port, see {@link #getPort()}.
+   */
+  public HttpEndpoint(final ExpressionCalculator calculator, final MathContext resultMc, final int parallelism, final int port) throws IOException {
+    checkNotNull(calculator, "The argument %s must not be null", "calculator");
+    checkNotNull(resultMc, "The argument %s must not be null", "resultMc");
+    checkArgument(parallelism > 0, "The argument %s=%s must be positive", "parallelism", parallelism);
+    checkArgument(port >= 0 && port <= MAX_PORT, "The argument %s=%s must be within [0, %s]", "port", port, MAX_PORT);
+    this.resultMc = resultMc;
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    final AtomicInteger handlersCount = new AtomicInteger();
+    handlers = new ThreadPoolExecutor(MAX_HANDLERS, MAX_HANDLERS, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), task -> {
+      final Thread result = new Thread(task, HttpEndpoint.class.getSimpleName() + "-handler-" + handlersCount.incrementAndGet());
+      result.setDaemon(true);
+      return result;
+    });
+    handlers.allowCoreThreadTimeOut(true);
+    server.setExecutor(handlers);
+    batcher = new MicroBatcher(calculator, parallelism);
+    requestsCount = new LongAdder();
+    latency = new LatencyHistogram();
+    statsBaseline = new StatsBaseline(System.nanoTime(), 0, 0);
+    stopped = new CountDownLatch(1);
+    state = new AtomicInteger(STATE_NEW);
+    server.createContext(CALCULATE_PATH, exchange -> handle(exchange, Set.of("POST"), this::calculate, true));
+    server.createContext(BATCH_PATH, exchange -> handle(exchange, Set.of("POST"), this::calculateBatch, true));
+    server.createContext(STATS_PATH, exchange -> handle(exchange, Set.of("GET", "DELETE"), this::stats, false));
+  }
+
+  /**
+   * @return The port the server is bound to.
+   */
+  public final int getPort() {
+    return server.getAddress()
+        .getPort();
+  }
+
+  /**
+   * Serves clients until the server is {@linkplain #close() closed}, the calling thread only waits. May be called at most once.
+   */
+  public final void run() throws InterruptedException {
+    checkState(state.compareAndSet(STATE_NEW, STATE_RUNNING), "The server was either run or closed");
+    try {
+      server.start();
+      logger.info("HTTP server listens on {}", server.getAddress());
+      stopped.await();
+    } finally {
+      state.set(STATE_CLOSED);
+      release();
+    }
+  }
+
+  /**
+   * Stops the server and disconnects all clients.
+   */
+  @Override
+  public final void close() {
+    if (state.compareAndSet(STATE_NEW, STATE_CLOSED)) {
+      release();
+    } else if (state.compareAndSet(STATE_RUNNING, STATE_CLOSED)) {
+      stopped.countDown();
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{address=" + server.getAddress() + ", resultMc=" + resultMc + ", state=" + state + '}';
+  }
+
+  private final void release() {
+    try {
+      server.stop(0);
+    } finally {
+      batcher.close();
+      handlers.shutdownNow();
+      logger.info("HTTP server stopped");
+    }
+  }
+
+  private final void handle(final HttpExchange exchange, final Set<String> methods, final HttpHandler handler, final boolean measured)
+      throws IOException {
+    final long startNanos = System.nanoTime();
+    try {
+      if (!exchange.getRequestURI()
+          .getPath()
+          .equals(exchange.getHttpContext()
+              .getPath())) {
+        respond(exchange, 404, "");
+      } else if (!methods.contains(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders()
+            .set("Allow", String.join(", ", methods));
+        respond(exchange, 405, "");
+      } else {
+        handler.handle(exchange);
+      }
+    } catch (final CancellationException e) {//the server is being stopped
+      respondIfNotResponded(exchange, 503);
+    } catch (final RuntimeException e) {
+      logger.error(null, e);
+      respondIfNotResponded(exchange, 500);
+    } finally {
+      exchange.close();
+      if (measured) {
+        latency.record(System.nanoTime() - startNanos);
+        requestsCount.increment();
+      }
+    }
+  }
+
+  private final void calculate(final HttpExchange exchange) throws IOException {
+    final byte[] body;
+    try (InputStream in = exchange.getRequestBody()) {
+      body = in.readNBytes(MAX_EXPRESSION_LENGTH + 1);
+    }
+    if (body.length > MAX_EXPRESSION_LENGTH) {
+      respond(exchange, 413, String.format("The expression is longer than %s bytes", MAX_EXPRESSION_LENGTH));
+    } else {
+      final CalculationResult result = batcher.submit(withoutTrailingLineSeparator(new String(body, Main.charset)))
+          .join();
+      if (result.isSuccess()) {
+        respond(exchange, 200, result.getValue()
+            .round(resultMc)
+            .toPlainString());
+      } else {
+        respond(exchange, STATUS_PROBLEM, result.description());
+      }
+    }
+  }
+
+  private final void calculateBatch(final HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders()
+        .set("Content-Type", CONTENT_TYPE);
+    exchange.sendResponseHeaders(200, 0);//the length of the response is unknown
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), Main.charset));
+        Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), Main.charset), BATCH_OUTPUT_BUFFER_SIZE)) {
+      final Deque<CompletableFuture<CalculationResult>> pending = new ArrayDeque<>();
+      for (@Nullable String expr = in.readLine(); expr != null; expr = in.readLine()) {
+        if (pending.size() == MAX_PENDING_BATCH_EXPRESSIONS) {
+          write(pending.poll()
+              .join(), out);
+        }
+        pending.add(batcher.submit(expr));
+      }
+      for (@Nullable CompletableFuture<CalculationResult> result = pending.poll(); result != null; result = pending.poll()) {
+        write(result.join(), out);
+      }
+    }
+  }
+
+  private final void write(final CalculationResult result, final Writer out) throws IOException {
+    if (result.isSuccess()) {
+      out.write(result.getValue()
+          .round(resultMc)
+          .toPlainString());
+    } else {
+      out.write(result.summary());
+    }
+    out.write(Main.LN);
+  }
+
+  private final void stats(final HttpExchange exchange) throws IOException {
+    if ("DELETE".equals(exchange.getRequestMethod())) {
+      latency.reset();
+      requestsCount.reset();
+      statsBaseline = new StatsBaseline(System.nanoTime(), batcher.calculatedCount(), batcher.batchesCount());
+      respond(exchange, 204, "");
+    } else {
+      final StatsBaseline baseline = statsBaseline;
+      final double seconds = (double)(System.nanoTime() - baseline.nanos) / TimeUnit.SECONDS.toNanos(1);
+      final long requests = requestsCount.sum();
+      respond(exchange, 200, "requests " + requests + Main.LN +
+          "requestsPerSecond " + String.format(Main.locale, "%.1f", requests / seconds) + Main.LN +
+          "latencyP50Micros " + TimeUnit.NANOSECONDS.toMicros(latency.percentile(0.5)) + Main.LN +
+          "latencyP99Micros " + TimeUnit.NANOSECONDS.toMicros(latency.percentile(0.99)) + Main.LN +
+          "expressions " + (batcher.calculatedCount() - baseline.calculatedCount) + Main.LN +
+          "microBatches " + (batcher.batchesCount() - baseline.batchesCount));
+    }
+  }
+
+  /**
+   * @param body A line separator is appended to a non-empty body.
+   */
+  private static final void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+    if (body.isEmpty()) {
+      exchange.sendResponseHeaders(status, -1);//there is no body
+    } else {
+      final byte[] bytes = (body + Main.LN).getBytes(Main.charset);
+      exchange.getResponseHeaders()
+          .set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(status, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+  }
+
+  private static final void respondIfNotResponded(final HttpExchange exchange, final int status) throws IOException {
+    if (exchange.getResponseCode() < 0) {
+      respond(exchange, status, "");
+    }
+  }
+
+  private static final String withoutTrailingLineSeparator(final String s) {
+    final String result;
+    if (s.endsWith("\r\n")) {
+      result = s.substring(0, s.length() - 2);
+    } else if (s.endsWith("\n")) {
+      result = s.substring(0, s.length() - 1);
+    } else {
+      result = s;
+    }
+    return result;
+  }
+
+  @Immutable private static final class StatsBaseline {
+    private final long nanos;
+    private final long calculatedCount;
+    private final long batchesCount;
+
+    private StatsBaseline(final long nanos, final long calculatedCount, final long batchesCount) {
+      this.nanos = nanos;
+      this.calculatedCount = calculatedCount;
+      this.batchesCount = batchesCount;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package stincmale.exprcalculator.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.LazyLogger;
+import stincmale.exprcalculator.logic.CalculationResult;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Calculates {@linkplain #submit(String) submitted} expressions by a fixed number of worker threads.
+ * <p>
+ * Expressions submitted concurrently are gathered into micro-batches: a worker takes all the expressions that are waiting,
+ * but not more than {@link #MAX_BATCH_SIZE}, and calculates them one after another,
+ * so under load a worker neither blocks nor contends for the queue for each expression.
+ * A worker does not wait for more expressions to arrive if there are fewer than {@link #MAX_BATCH_SIZE},
+ * so batching does not increase latency when there is no load.
+ */
+@ThreadSafe final class MicroBatcher implements AutoCloseable {
+  static final int MAX_BATCH_SIZE = 1 << 6;
+  private static final LazyLogger logger = LazyLogger.getLogger(MicroBatcher.class);
+
+  private final ExpressionCalculator calculator;
+  private final BlockingQueue<Task> tasks;
+  private final ExecutorService workers;
+  private final LongAdder batchesCount;
+  private final LongAdder calculatedCount;
+  private volatile boolean closed;
+
+  /**
+   * @param calculator Must be {@link ThreadSafe}.
+   * @param parallelism The number of worker threads. Must be positive.
+   */
+  MicroBatcher(final ExpressionCalculator calculator, final int parallelism) {
+    checkNotNull(calculator, "The argument %s must not be null", "calculator");
+    checkArgument(parallelism > 0, "The argument %s=%s must be positive", "parallelism", parallelism);
+    this.calculator = calculator;
+    tasks = new LinkedBlockingQueue<>();
+    final AtomicInteger workersCount = new AtomicInteger();
+    workers = Executors.newFixedThreadPool(parallelism, task -> {
+      final Thread result = new Thread(task, MicroBatcher.class.getSimpleName() + "-worker-" + workersCount.incrementAndGet());
+      result.setDaemon(true);
+      return result;
+    });
+    batchesCount = new LongAdder();
+    calculatedCount = new LongAdder();
+    closed = false;
+    for (int i = 0; i < parallelism; i++) {
+      workers.execute(this::work);
+    }
+  }
+
+  /**
+   * @return A future which is completed with the result of {@link ExpressionCalculator#tryCalculate(String)},
+   * or is completed exceptionally with {@link CancellationException} if the {@link MicroBatcher} is {@linkplain #close() closed}.
+   */
+  final CompletableFuture<CalculationResult> submit(final String expr) {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    final Task task = new Task(expr);
+    tasks.add(task);
+    if (closed) {//the task might have been added after the queue was drained by close()
+      cancelAll();
+    }
+    return task.result;
+  }
+
+  /**
+   * @return The number of micro-batches calculated so far.
+   */
+  final long batchesCount() {
+    return batchesCount.sum();
+  }
+
+  /**
+   * @return The number of expressions calculated so far.
+   */
+  final long calculatedCount() {
+    return calculatedCount.sum();
+  }
+
+  /**
+   * Stops the workers. The expressions which are not yet calculated are cancelled.
+   */
+  @Override
+  public final void close() {
+    closed = true;
+    workers.shutdownNow();
+    cancelAll();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{calculator=" + calculator + ", closed=" + closed + '}';
+  }
+
+  private final void work() {
+    final List<Task> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    try {
+      while (!closed) {
+        batch.add(tasks.take());
+        tasks.drainTo(batch, MAX_BATCH_SIZE - 1);
+        //counted before completing, so that the counts include every calculation a submitter has observed
+        batchesCount.increment();
+        for (final Task task : batch) {
+          final CalculationResult result = calculate(task.expr);
+          calculatedCount.increment();
+          task.result.complete(result);
+        }
+        batch.clear();
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread()
+          .interrupt();
+    }
+  }
+
+  private final CalculationResult calculate(final String expr) {
+    CalculationResult result;
+    try {
+      result = calculator.tryCalculate(expr);
+    } catch (final RuntimeException | StackOverflowError e) {//e.g. an expression nested too deeply, the client must still get a reply
+      logger.warn(null, e);
+      result = CalculationResult.failure(expr, -1, null);
+    }
+    return result;
+  }
+
+  private final void cancelAll() {
+    for (@Nullable Task task = tasks.poll(); task != null; task = tasks.poll()) {
+      task.result.completeExceptionally(new CancellationException());
+    }
+  }
+
+  @ThreadSafe private static final class Task {
+    private final String expr;
+    private final CompletableFuture<CalculationResult> result;
+
+    private Task(final String expr) {
+      this.expr = expr;
+      result = new CompletableFuture<>();
+    }
+  }
+}
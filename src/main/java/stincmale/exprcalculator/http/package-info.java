@@ -0,0 +1,4 @@
+/**
+ * Contains an HTTP server that calculates expressions sent in requests.
+ */
+package stincmale.exprcalculator.http;
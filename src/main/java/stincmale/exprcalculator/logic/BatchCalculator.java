@@ -0,0 +1,67 @@
+package stincmale.exprcalculator.logic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.MathContext;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.LazyLogger;
+import stincmale.exprcalculator.Main;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Calculates expressions read line by line, one expression per line,
+ * and writes exactly one line per expression: either the result, or the {@linkplain CalculationResult#summary() summary} of the problem.
+ * A problem with an expression, including an unexpected failure to calculate it, does not prevent calculating the subsequent expressions.
+ * Only one line at a time is kept in memory regardless of the size of the input.
+ */
+@ThreadSafe public final class BatchCalculator {
+  private static final LazyLogger logger = LazyLogger.getLogger(BatchCalculator.class);
+
+  private final ExpressionCalculator calculator;
+  private final MathContext resultMc;
+
+  /**
+   * @param resultMc {@link MathContext} used to round results produced by the {@code calculator}.
+   */
+  public BatchCalculator(final ExpressionCalculator calculator, final MathContext resultMc) {
+    checkNotNull(calculator, "The argument %s must not be null", "calculator");
+    checkNotNull(resultMc, "The argument %s must not be null", "resultMc");
+    this.calculator = calculator;
+    this.resultMc = resultMc;
+  }
+
+  /**
+   * Reads {@code in} until the end of the stream. Neither closes nor flushes {@code out}.
+   *
+   * @return The number of expressions which could not be calculated.
+   */
+  public final long calculate(final BufferedReader in, final Writer out) throws IOException {
+    checkNotNull(in, "The argument %s must not be null", "in");
+    checkNotNull(out, "The argument %s must not be null", "out");
+    long problemsCount = 0;
+    for (@Nullable String expr = in.readLine(); expr != null; expr = in.readLine()) {
+      CalculationResult result;
+      try {
+        result = calculator.tryCalculate(expr);
+      } catch (final RuntimeException | StackOverflowError e) {//e.g. an expression nested too deeply, must not prevent calculating the rest
+        logger.warn(null, e);
+        result = CalculationResult.failure(expr, -1, null);
+      }
+      if (result.isSuccess()) {
+        out.write(result.getValue()
+            .round(resultMc)
+            .toPlainString());
+      } else {
+        problemsCount++;
+        if (logger.isWarnEnabled()) {
+          logger.warn(result.description());
+        }
+        out.write(result.summary());
+      }
+      out.write(Main.LN);
+    }
+    return problemsCount;
+  }
+}
@@ -0,0 +1,421 @@
+package stincmale.exprcalculator.logic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.logic.ExpressionPlan.Constant;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Node;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Shared;
+import stincmale.exprcalculator.logic.ExpressionPlan.Variable;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compiles an {@link ExpressionPlan} to JVM bytecode: a class with a single straight-line method
+ * where {@code let} variables are local variables and arithmetic operations are direct {@link BigDecimal} calls.
+ * <p>
+ * Each generated class is defined by its own {@link ClassLoader},
+ * so the class is unloaded as soon as the {@link Compiled} object that refers to it becomes unreachable.
+ * The generated code does not report problems the way {@link ExpressionPlan} does:
+ * it just lets {@link RuntimeException}s propagate, and it is the responsibility of the caller to
+ * {@linkplain ExpressionPlan#evaluate() re-evaluate} the plan in order to get a proper {@link CalculationException}.
+ */
+@ThreadSafe final class BytecodeCompiler {
+  /**
+   * HotSpot does not JIT-compile methods bigger than this by default (see {@code -XX:-DontCompileHugeMethods}),
+   * and interpreting such a method is slower than {@linkplain ExpressionPlan#evaluate() evaluating} the plan.
+   */
+  private static final int MAX_CODE_LENGTH = 8000;
+  private static final int MAX_LOCALS = 256;
+  private static final int CLASS_FILE_VERSION = 56;//Java SE 12
+  private static final String CLASS_NAME = BytecodeCompiler.class.getPackageName()
+      .replace('.', '/') + "/GeneratedExpression";
+  private static final String OBJECT = "java/lang/Object";
+  private static final String BIG_DECIMAL = "java/math/BigDecimal";
+  private static final String MATH_CONTEXT = "java/math/MathContext";
+  private static final String OPERATION_DESCRIPTOR = "(Ljava/math/BigDecimal;Ljava/math/MathContext;)Ljava/math/BigDecimal;";
+  /**
+   * The generated method is {@link BiFunction#apply(Object, Object)}, local 1 is the array of constants, local 2 is the {@link MathContext}.
+   */
+  private static final int LOCAL_CONSTANTS = 1;
+  private static final int LOCAL_MC = 2;
+  private static final int FIRST_LOCAL_VAR = 3;
+
+  private BytecodeCompiler() {
+    throw new UnsupportedOperationException("This class is not designed to be instantiated");
+  }
+
+  /**
+   * @return {@code null} if the plan is too big to be compiled.
+   */
+  @Nullable
+  static final Compiled compile(final ExpressionPlan plan) {
+    checkNotNull(plan, "The argument %s must not be null", "plan");
+    final ConstantPool cp = new ConstantPool();
+    final MethodWriter method = new MethodWriter(cp);
+    @Nullable final Compiled result;
+    if (method.writeBody(plan.getRoot())) {
+      final byte[] classFile = new ClassWriter().write(cp, method);
+      final Class<?> generatedClass = new GeneratedClassLoader(BytecodeCompiler.class.getClassLoader())
+          .define(CLASS_NAME.replace('/', '.'), classFile);
+      final Object function;
+      try {
+        function = generatedClass.getDeclaredConstructor()
+            .newInstance();
+      } catch (final NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+        throw new AssertionError(e);
+      }
+      @SuppressWarnings("unchecked")
+      final BiFunction<BigDecimal[], MathContext, BigDecimal> typedFunction = (BiFunction<BigDecimal[], MathContext, BigDecimal>)function;
+      result = new Compiled(typedFunction, method.constants.toArray(new BigDecimal[0]));
+    } else {
+      result = null;
+    }
+    return result;
+  }
+
+  /**
+   * A compiled {@link ExpressionPlan}.
+   */
+  @Immutable static final class Compiled {
+    private final BiFunction<BigDecimal[], MathContext, BigDecimal> function;
+    private final BigDecimal[] constants;
+
+    private Compiled(final BiFunction<BigDecimal[], MathContext, BigDecimal> function, final BigDecimal[] constants) {
+      this.function = function;
+      this.constants = constants;
+    }
+
+    /**
+     * @throws RuntimeException If there is an arithmetic problem, e.g. division by zero.
+     */
+    final BigDecimal evaluate(final MathContext mc) throws RuntimeException {
+      return function.apply(constants, mc);
+    }
+  }
+
+  private static final class GeneratedClassLoader extends ClassLoader {
+    private GeneratedClassLoader(final ClassLoader parent) {
+      super(parent);
+    }
+
+    private final Class<?> define(final String name, final byte[] classFile) {
+      return defineClass(name, classFile, 0, classFile.length);
+    }
+  }
+
+  private static final class ConstantPool {
+    private final ByteArrayOutputStream bytes;
+    private final DataOutputStream out;
+    private final Map<String, Integer> index;
+    private int count;
+
+    private ConstantPool() {
+      bytes = new ByteArrayOutputStream();
+      out = new DataOutputStream(bytes);
+      index = new HashMap<>();
+      count = 1;//index 0 is not used
+    }
+
+    private final int utf8(final String v) {
+      return entry("Utf8:" + v, () -> {
+        out.writeByte(1);
+        out.writeUTF(v);
+      });
+    }
+
+    private final int classRef(final String internalName) {
+      final int nameIdx = utf8(internalName);
+      return entry("Class:" + internalName, () -> {
+        out.writeByte(7);
+        out.writeShort(nameIdx);
+      });
+    }
+
+    private final int methodRef(final String owner, final String name, final String descriptor) {
+      final int classIdx = classRef(owner);
+      final int nameIdx = utf8(name);
+      final int descriptorIdx = utf8(descriptor);
+      final int nameAndTypeIdx = entry("NameAndType:" + name + descriptor, () -> {
+        out.writeByte(12);
+        out.writeShort(nameIdx);
+        out.writeShort(descriptorIdx);
+      });
+      return entry("Methodref:" + owner + '.' + name + descriptor, () -> {
+        out.writeByte(10);
+        out.writeShort(classIdx);
+        out.writeShort(nameAndTypeIdx);
+      });
+    }
+
+    private final int entry(final String key, final EntryWriter writer) {
+      @Nullable Integer result = index.get(key);
+      if (result == null) {
+        try {
+          writer.write();
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        result = count++;
+        index.put(key, result);
+      }
+      return result;
+    }
+
+    @FunctionalInterface
+    private interface EntryWriter {
+      void write() throws IOException;
+    }
+  }
+
+  /**
+   * Writes the code of the {@link BiFunction#apply(Object, Object)} method.
+   */
+  private static final class MethodWriter {
+    private final ConstantPool cp;
+    private final ByteArrayOutputStream code;
+    private final List<BigDecimal> constants;
+    private int stackSize;
+    private int maxStackSize;
+    private int maxLocals;
+
+    private MethodWriter(final ConstantPool cp) {
+      this.cp = cp;
+      code = new ByteArrayOutputStream();
+      constants = new ArrayList<>();
+      stackSize = 0;
+      maxStackSize = 0;
+      maxLocals = FIRST_LOCAL_VAR;
+    }
+
+    /**
+     * @return {@code false} if the code is too big.
+     */
+    private final boolean writeBody(final Node root) {
+      emit(1, Opcode.ALOAD_0 + LOCAL_CONSTANTS);
+      emitWithIndex(0, Opcode.CHECKCAST, cp.classRef("[L" + BIG_DECIMAL + ';'));
+      emit(-1, Opcode.ASTORE_0 + LOCAL_CONSTANTS);
+      emit(1, Opcode.ALOAD_0 + LOCAL_MC);
+      emitWithIndex(0, Opcode.CHECKCAST, cp.classRef(MATH_CONTEXT));
+      emit(-1, Opcode.ASTORE_0 + LOCAL_MC);
+      final boolean result = write(root) && maxLocals <= MAX_LOCALS;
+      emit(-1, Opcode.ARETURN);
+      return result;
+    }
+
+    private final boolean write(final Node node) {
+      final boolean result;
+      if (code.size() > MAX_CODE_LENGTH) {
+        result = false;
+      } else if (node instanceof Constant) {
+        final int constantIdx = constants.size();
+        constants.add(((Constant)node).getValue());
+        if (constantIdx > Short.MAX_VALUE) {
+          result = false;
+        } else {
+          emit(1, Opcode.ALOAD_0 + LOCAL_CONSTANTS);
+          if (constantIdx <= 5) {
+            emit(1, Opcode.ICONST_0 + constantIdx);
+          } else if (constantIdx <= Byte.MAX_VALUE) {
+            emit(1, Opcode.BIPUSH, constantIdx);
+          } else {
+            emit(1, Opcode.SIPUSH, constantIdx >>> 8, constantIdx & 0xFF);
+          }
+          emit(-1, Opcode.AALOAD);
+          result = true;
+        }
+      } else if (node instanceof Variable) {
+        final int local = FIRST_LOCAL_VAR + ((Variable)node).getSlot();
+        if (local <= 3) {
+          emit(1, Opcode.ALOAD_0 + local);
+        } else {
+          emit(1, Opcode.ALOAD, local);
+        }
+        result = true;
+      } else if (node instanceof Operation) {
+        final Operation operation = (Operation)node;
+        if (write(operation.getOperand1()) && write(operation.getOperand2())) {
+          emit(1, Opcode.ALOAD_0 + LOCAL_MC);
+          emitWithIndex(-2, Opcode.INVOKEVIRTUAL, cp.methodRef(BIG_DECIMAL, methodName(operation.getOperator()), OPERATION_DESCRIPTOR));
+          result = true;
+        } else {
+          result = false;
+        }
+      } else if (node instanceof Let) {
+        final Let let = (Let)node;
+        if (write(let.getValue())) {
+          final int local = FIRST_LOCAL_VAR + let.getVariable()
+              .getSlot();
+          maxLocals = Math.max(maxLocals, local + 1);
+          if (local <= 3) {
+            emit(-1, Opcode.ASTORE_0 + local);
+          } else {
+            emit(-1, Opcode.ASTORE, local);
+          }
+          result = write(let.getBody());
+        } else {
+          result = false;
+        }
+      } else if (node instanceof Shared) {
+        final Shared shared = (Shared)node;
+        if (write(shared.getExpression())) {
+          emit(1, Opcode.DUP);
+          final int local = FIRST_LOCAL_VAR + shared.getSlot();
+          maxLocals = Math.max(maxLocals, local + 1);
+          if (local <= 3) {
+            emit(-1, Opcode.ASTORE_0 + local);
+          } else {
+            emit(-1, Opcode.ASTORE, local);
+          }
+          result = true;
+        } else {
+          result = false;
+        }
+      } else {
+        throw new AssertionError(String.format("%s is not accounted", node));
+      }
+      return result;
+    }
+
+    private final void emit(final int stackDelta, final int... bytes) {
+      for (final int b : bytes) {
+        code.write(b);
+      }
+      stackSize += stackDelta;
+      maxStackSize = Math.max(maxStackSize, stackSize);
+    }
+
+    private final void emitWithIndex(final int stackDelta, final int opcode, final int cpIdx) {
+      emit(stackDelta, opcode, cpIdx >>> 8, cpIdx & 0xFF);
+    }
+
+    private static final String methodName(final Word.LogicalType operator) {
+      final String result;
+      switch (operator) {
+        case OPERATOR_ADD: {
+          result = "add";
+          break;
+        }
+        case OPERATOR_SUB: {
+          result = "subtract";
+          break;
+        }
+        case OPERATOR_MULT: {
+          result = "multiply";
+          break;
+        }
+        case OPERATOR_DIV: {
+          result = "divide";
+          break;
+        }
+        default: {
+          throw new AssertionError(String.format("%s is not accounted", operator));
+        }
+      }
+      return result;
+    }
+  }
+
+  private static final class ClassWriter {
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private ClassWriter() {
+    }
+
+    private final byte[] write(final ConstantPool cp, final MethodWriter method) {
+      final int thisClass = cp.classRef(CLASS_NAME);
+      final int superClass = cp.classRef(OBJECT);
+      final int biFunction = cp.classRef("java/util/function/BiFunction");
+      final int codeAttributeName = cp.utf8("Code");
+      final int initName = cp.utf8("<init>");
+      final int initDescriptor = cp.utf8("()V");
+      final int objectInit = cp.methodRef(OBJECT, "<init>", "()V");
+      final int applyName = cp.utf8("apply");
+      final int applyDescriptor = cp.utf8("(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+      final byte[] applyCode = method.code.toByteArray();
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_FILE_VERSION);
+        out.writeShort(cp.count);
+        cp.bytes.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);//interfaces_count
+        out.writeShort(biFunction);
+        out.writeShort(0);//fields_count
+        out.writeShort(2);//methods_count
+        writeMethod(out, ACC_PUBLIC, initName, initDescriptor, codeAttributeName, 1, 1,
+            new byte[] {(byte)Opcode.ALOAD_0, (byte)Opcode.INVOKESPECIAL, (byte)(objectInit >>> 8), (byte)objectInit, (byte)Opcode.RETURN});
+        writeMethod(out, ACC_PUBLIC | ACC_FINAL, applyName, applyDescriptor, codeAttributeName,
+            method.maxStackSize, method.maxLocals, applyCode);
+        out.writeShort(0);//attributes_count
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return bytes.toByteArray();
+    }
+
+    private static final void writeMethod(
+        final DataOutputStream out,
+        final int accessFlags,
+        final int nameIdx,
+        final int descriptorIdx,
+        final int codeAttributeNameIdx,
+        final int maxStack,
+        final int maxLocals,
+        final byte[] code) throws IOException {
+      out.writeShort(accessFlags);
+      out.writeShort(nameIdx);
+      out.writeShort(descriptorIdx);
+      out.writeShort(1);//attributes_count
+      out.writeShort(codeAttributeNameIdx);
+      out.writeInt(12 + code.length);//attribute_length
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(code.length);
+      out.write(code);
+      out.writeShort(0);//exception_table_length
+      out.writeShort(0);//attributes_count
+    }
+  }
+
+  private static final class Opcode {
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int AALOAD = 0x32;
+    private static final int ASTORE = 0x3a;
+    private static final int ASTORE_0 = 0x4b;
+    private static final int DUP = 0x59;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int CHECKCAST = 0xc0;
+
+    private Opcode() {
+      throw new UnsupportedOperationException("This class is not designed to be instantiated");
+    }
+  }
+}
@@ -28,6 +28,13 @@ public final class CalculationException extends RuntimeException {
     this(problemIdx, null, expr, null, cause);
   }
 
+  /**
+   * @param word See {@link CalculationResult#getProblemWord()}.
+   */
+  CalculationException(final int problemIdx, @Nullable final String word, @Nullable final String expr) {
+    this(problemIdx, word, expr, null, null);
+  }
+
   CalculationException(final Word word) {
     this(word.getPosition(), word.getWord(), null, null, null);
   }
@@ -42,6 +49,8 @@ public final class CalculationException extends RuntimeException {
 
   /**
    * @param problemIdx Negative when it is impossible to specify the exact place that caused the exception.
+   * @param message If {@code null}, then the {@linkplain #getMessage() message} is the {@linkplain #description() description},
+   * which is only formatted when requested.
    */
   private CalculationException(
       final int problemIdx,
@@ -49,12 +58,19 @@ public final class CalculationException extends RuntimeException {
       @Nullable final String expr,
       @Nullable final String message,
       @Nullable final Throwable cause) {
-    super((message == null && expr != null) ? description(problemIdx, word, expr) : message, cause);
+    super(message, cause);
     this.problemIdx = problemIdx;
     this.word = word;
     this.expr = expr;
   }
 
+  @Nullable
+  @Override
+  public final String getMessage() {
+    @Nullable final String message = super.getMessage();
+    return (message == null && expr != null) ? description(problemIdx, word, expr) : message;
+  }
+
   final boolean isExpressionSet() {
     return expr != null;
   }
@@ -70,10 +86,33 @@ public final class CalculationException extends RuntimeException {
     return description(problemIdx, word, expr);
   }
 
-  private static final String description(final int problemIdx, @Nullable final String word, final String expr) {
+  /**
+   * @return A {@linkplain CalculationResult#isSuccess() failed} result that describes the same problem.
+   */
+  final CalculationResult toResult() {
+    assert this.expr != null : String.format("%s has not been set", "expr");
+    return CalculationResult.failure(expr, problemIdx, word);
+  }
+
+  /**
+   * @return The first line of the {@linkplain #description() description} without the trailing colon,
+   * e.g. {@code Problem with 'div' at index 0}.
+   */
+  public final String summary() {
+    assert this.expr != null : String.format("%s has not been set", "expr");
+    return summary(problemIdx, word, expr);
+  }
+
+  static final String summary(final int problemIdx, @Nullable final String word, final String expr) {
+    return problemIdx < 0
+        ? "Can not calculate expression"
+        : String.format("Problem with '%s' at index %s", word == null ? expr.charAt(problemIdx) : word, problemIdx);
+  }
+
+  static final String description(final int problemIdx, @Nullable final String word, final String expr) {
     final String result;
     if (problemIdx < 0) {
-      result = String.format("Can not calculate expression:%s%s", Main.LN, expr);
+      result = summary(problemIdx, word, expr) + ':' + Main.LN + expr;
     } else {
       final String spaces;
       {
@@ -88,9 +127,8 @@ public final class CalculationException extends RuntimeException {
         }
         spaces = new String(spaceChars);
       }
-      result =
-          String.format("Problem with '%s' at index %s:", word == null ? expr.charAt(problemIdx) : word, problemIdx) + Main.LN + expr + Main.LN + spaces + '^';
+      result = summary(problemIdx, word, expr) + ':' + Main.LN + expr + Main.LN + spaces + '^';
     }
     return result;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Either the result of a calculation or a problem with the expression, see {@link ExpressionCalculator#tryCalculate(String)}.
+ * A problem is described by the same data as a {@link CalculationException} and is {@linkplain #description() described}
+ * the same way, but the description is only formatted when requested.
+ */
+@Immutable public final class CalculationResult {
+  @Nullable private final BigDecimal value;
+  private final int problemIdx;
+  @Nullable private final String problemWord;
+  private final String expr;
+
+  private CalculationResult(@Nullable final BigDecimal value, final int problemIdx, @Nullable final String problemWord, final String expr) {
+    this.value = value;
+    this.problemIdx = problemIdx;
+    this.problemWord = problemWord;
+    this.expr = expr;
+  }
+
+  public static final CalculationResult success(final String expr, final BigDecimal value) {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    checkNotNull(value, "The argument %s must not be null", "value");
+    return new CalculationResult(value, -1, null, expr);
+  }
+
+  /**
+   * @param problemIdx See {@link #getProblemIdx()}.
+   * @param problemWord See {@link #getProblemWord()}.
+   */
+  public static final CalculationResult failure(final String expr, final int problemIdx, @Nullable final String problemWord) {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    return new CalculationResult(null, problemIdx, problemWord, expr);
+  }
+
+  /**
+   * @return {@code true} if the expression was calculated, {@code false} if there is a problem with it.
+   */
+  public final boolean isSuccess() {
+    return value != null;
+  }
+
+  /**
+   * @throws IllegalStateException If the expression was not {@linkplain #isSuccess() calculated}.
+   */
+  public final BigDecimal getValue() throws IllegalStateException {
+    checkState(value != null, "There is a problem with the expression, see %s", this);
+    return value;
+  }
+
+  /**
+   * @return The index in the {@linkplain #getExpression() expression} of the problem,
+   * or a negative value if the expression was {@linkplain #isSuccess() calculated}
+   * or it is impossible to specify the exact place that caused the problem.
+   */
+  public final int getProblemIdx() {
+    return problemIdx;
+  }
+
+  /**
+   * @return The word of the {@linkplain #getExpression() expression} which caused the problem, e.g. {@code div},
+   * or {@code null} if the expression was {@linkplain #isSuccess() calculated}, the problem is caused by the symbol at {@link #getProblemIdx()},
+   * or it is impossible to specify the exact place that caused the problem.
+   */
+  @Nullable
+  public final String getProblemWord() {
+    return problemWord;
+  }
+
+  public final String getExpression() {
+    return expr;
+  }
+
+  /**
+   * @return See {@link CalculationException#summary()}.
+   * @throws IllegalStateException If the expression was {@linkplain #isSuccess() calculated}.
+   */
+  public final String summary() throws IllegalStateException {
+    checkState(value == null, "The expression was calculated, see %s", this);
+    return CalculationException.summary(problemIdx, problemWord, expr);
+  }
+
+  /**
+   * @return See {@link CalculationException#description()}.
+   * @throws IllegalStateException If the expression was {@linkplain #isSuccess() calculated}.
+   */
+  public final String description() throws IllegalStateException {
+    checkState(value == null, "The expression was calculated, see %s", this);
+    return CalculationException.description(problemIdx, problemWord, expr);
+  }
+
+  /**
+   * @return An exception that describes the problem the same way {@link ExpressionCalculator#calculate(String)} would.
+   * @throws IllegalStateException If the expression was {@linkplain #isSuccess() calculated}.
+   */
+  public final CalculationException toException() throws IllegalStateException {
+    checkState(value == null, "The expression was calculated, see %s", this);
+    return new CalculationException(problemIdx, problemWord, expr);
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{expr='" + expr + "'" + (value == null
+        ? ", problemIdx=" + problemIdx + ", problemWord=" + (problemWord == null ? null : "'" + problemWord + "'")
+        : ", value=" + value) + '}';
+  }
+}
@@ -0,0 +1,260 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import javax.annotation.concurrent.Immutable;
+import stincmale.exprcalculator.logic.ExpressionPlan.Constant;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Node;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Shared;
+import stincmale.exprcalculator.logic.ExpressionPlan.Variable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Evaluates an {@link ExpressionPlan} with free variables for many rows at once using IEEE 754 binary64 ({@code double}) arithmetic.
+ * <p>
+ * The plan is compiled to the instructions of a stack machine, like the one used by {@link SpeculativeEvaluator},
+ * but an element of the stack is a block of up to {@link #BLOCK_SIZE} rows rather than a single value.
+ * Rows are processed block by block, and each instruction is a simple loop over the block,
+ * e.g. {@code v1[i] += v2[i]}, which the JIT compiler vectorizes to SIMD instructions.
+ * Thus the cost of interpreting the instructions is amortized over a block, and the blocks are small enough to stay in the CPU cache.
+ * The last block of the rows may be shorter than the others.
+ * <p>
+ * Constants are {@link BigDecimal#doubleValue()} of the constants of the plan. Arithmetic problems are not reported:
+ * e.g. division by zero produces an infinity or {@link Double#NaN}, as specified by IEEE 754.
+ */
+@Immutable final class ColumnarEvaluator {
+  static final int BLOCK_SIZE = 1 << 10;
+  private static final int CONST = 0;
+  private static final int LOAD = 1;
+  private static final int STORE = 2;
+  private static final int ADD = 3;
+  private static final int SUB = 4;
+  private static final int MULT = 5;
+  private static final int DIV = 6;
+
+  /**
+   * Instructions of a stack machine in postfix order. {@link #CONST}, {@link #LOAD}, {@link #STORE} are followed by an argument.
+   */
+  private final int[] code;
+  private final double[] constants;
+  private final int maxStackSize;
+  private final int freeVariablesCount;
+  private final int slotsCount;
+
+  private ColumnarEvaluator(
+      final int[] code, final double[] constants, final int maxStackSize, final int freeVariablesCount, final int slotsCount) {
+    this.code = code;
+    this.constants = constants;
+    this.maxStackSize = maxStackSize;
+    this.freeVariablesCount = freeVariablesCount;
+    this.slotsCount = slotsCount;
+  }
+
+  /**
+   * @param freeVariablesCount The number of free variables of the plan, see {@link ExpressionPlan#compile(ParsedExpression, java.util.List, boolean)}.
+   */
+  static final ColumnarEvaluator compile(final ExpressionPlan plan, final int freeVariablesCount) {
+    checkNotNull(plan, "The argument %s must not be null", "plan");
+    checkArgument(freeVariablesCount >= 0 && freeVariablesCount <= plan.getSlotsCount(),
+        "The argument %s=%s must be within [0, %s]", "freeVariablesCount", freeVariablesCount, plan.getSlotsCount());
+    final Writer writer = new Writer();
+    writer.write(plan.getRoot());
+    return new ColumnarEvaluator(
+        Arrays.copyOf(writer.code, writer.codeSize),
+        Arrays.copyOf(writer.constants, writer.constantsCount),
+        writer.maxStackSize,
+        freeVariablesCount,
+        plan.getSlotsCount());
+  }
+
+  /**
+   * @param columns {@code columns[i][r]} is the value of the free variable {@code i} in the row {@code r}.
+   * Each column must have at least {@code results.length} values.
+   * @param results An array where the results of the rows {@code [0, results.length)} are stored.
+   */
+  final void evaluate(final double[][] columns, final double[] results) {
+    assert columns.length == freeVariablesCount;
+    final int rowsCount = results.length;
+    final double[][] stack = new double[maxStackSize][Math.min(BLOCK_SIZE, rowsCount)];
+    final double[][] vars = new double[slotsCount][];
+    for (int slot = freeVariablesCount; slot < slotsCount; slot++) {
+      vars[slot] = new double[Math.min(BLOCK_SIZE, rowsCount)];
+    }
+    for (int fromRow = 0; fromRow < rowsCount; fromRow += BLOCK_SIZE) {
+      final int length = Math.min(BLOCK_SIZE, rowsCount - fromRow);
+      int top = -1;
+      for (int i = 0; i < code.length; i++) {
+        final int instruction = code[i];
+        switch (instruction) {
+          case CONST: {
+            top++;
+            Arrays.fill(stack[top], 0, length, constants[code[++i]]);
+            break;
+          }
+          case LOAD: {
+            final int slot = code[++i];
+            top++;
+            if (slot < freeVariablesCount) {
+              System.arraycopy(columns[slot], fromRow, stack[top], 0, length);
+            } else {
+              System.arraycopy(vars[slot], 0, stack[top], 0, length);
+            }
+            break;
+          }
+          case STORE: {//swap the blocks instead of copying
+            final int slot = code[++i];
+            final double[] block = vars[slot];
+            vars[slot] = stack[top];
+            stack[top] = block;
+            top--;
+            break;
+          }
+          case ADD: {
+            top--;
+            add(stack[top], stack[top + 1], length);
+            break;
+          }
+          case SUB: {
+            top--;
+            sub(stack[top], stack[top + 1], length);
+            break;
+          }
+          case MULT: {
+            top--;
+            mult(stack[top], stack[top + 1], length);
+            break;
+          }
+          case DIV: {
+            top--;
+            div(stack[top], stack[top + 1], length);
+            break;
+          }
+          default: {
+            throw new AssertionError(String.format("Instruction %s is not accounted", instruction));
+          }
+        }
+      }
+      assert top == 0;
+      System.arraycopy(stack[0], 0, results, fromRow, length);
+    }
+  }
+
+  private static final void add(final double[] v1, final double[] v2, final int length) {
+    for (int i = 0; i < length; i++) {
+      v1[i] += v2[i];
+    }
+  }
+
+  private static final void sub(final double[] v1, final double[] v2, final int length) {
+    for (int i = 0; i < length; i++) {
+      v1[i] -= v2[i];
+    }
+  }
+
+  private static final void mult(final double[] v1, final double[] v2, final int length) {
+    for (int i = 0; i < length; i++) {
+      v1[i] *= v2[i];
+    }
+  }
+
+  private static final void div(final double[] v1, final double[] v2, final int length) {
+    for (int i = 0; i < length; i++) {
+      v1[i] /= v2[i];
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{codeLength=" + code.length + ", maxStackSize=" + maxStackSize +
+        ", freeVariablesCount=" + freeVariablesCount + '}';
+  }
+
+  private static final class Writer {
+    private int[] code;
+    private int codeSize;
+    private double[] constants;
+    private int constantsCount;
+    private int stackSize;
+    private int maxStackSize;
+
+    private Writer() {
+      code = new int[16];
+      codeSize = 0;
+      constants = new double[8];
+      constantsCount = 0;
+      stackSize = 0;
+      maxStackSize = 0;
+    }
+
+    private final void write(final Node node) {
+      if (node instanceof Constant) {
+        if (constantsCount == constants.length) {
+          constants = Arrays.copyOf(constants, 2 * constantsCount);
+        }
+        constants[constantsCount] = ((Constant)node).getValue()
+            .doubleValue();
+        emit(1, CONST, constantsCount);
+        constantsCount++;
+      } else if (node instanceof Variable) {
+        emit(1, LOAD, ((Variable)node).getSlot());
+      } else if (node instanceof Operation) {
+        final Operation operation = (Operation)node;
+        write(operation.getOperand1());
+        write(operation.getOperand2());
+        emit(-1, instructionOf(operation.getOperator()));
+      } else if (node instanceof Let) {
+        final Let let = (Let)node;
+        write(let.getValue());
+        emit(-1, STORE, let.getVariable()
+            .getSlot());
+        write(let.getBody());
+      } else if (node instanceof Shared) {
+        final Shared shared = (Shared)node;
+        write(shared.getExpression());
+        emit(-1, STORE, shared.getSlot());
+        emit(1, LOAD, shared.getSlot());
+      } else {
+        throw new AssertionError(String.format("%s is not accounted", node));
+      }
+    }
+
+    private final void emit(final int stackDelta, final int... instruction) {
+      if (codeSize + instruction.length > code.length) {
+        code = Arrays.copyOf(code, 2 * code.length);
+      }
+      System.arraycopy(instruction, 0, code, codeSize, instruction.length);
+      codeSize += instruction.length;
+      stackSize += stackDelta;
+      maxStackSize = Math.max(maxStackSize, stackSize);
+    }
+
+    private static final int instructionOf(final Word.LogicalType operator) {
+      final int result;
+      switch (operator) {
+        case OPERATOR_ADD: {
+          result = ADD;
+          break;
+        }
+        case OPERATOR_SUB: {
+          result = SUB;
+          break;
+        }
+        case OPERATOR_MULT: {
+          result = MULT;
+          break;
+        }
+        case OPERATOR_DIV: {
+          result = DIV;
+          break;
+        }
+        default: {
+          throw new AssertionError(String.format("%s is not accounted", operator));
+        }
+      }
+      return result;
+    }
+  }
+}
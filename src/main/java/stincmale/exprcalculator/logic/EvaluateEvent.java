@@ -0,0 +1,66 @@
+package stincmale.exprcalculator.logic;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A JDK Flight Recorder event emitted by {@link ExpressionCalculator} for each calculated expression, including expressions
+ * that could not be calculated. The duration of the event is the duration of the calculation.
+ * <p>
+ * Fields that describe tokenization are only filled if the expression is calculated by the stack-based algorithm,
+ * which tokenizes the expression while calculating it, rather than being found in an {@link ExpressionPlanCache}.
+ */
+@Name(EvaluateEvent.NAME)
+@Label("Evaluate")
+@Category(EvaluateEvent.CATEGORY)
+@Description("Calculation of an expression")
+@StackTrace(false)
+@NotThreadSafe final class EvaluateEvent extends jdk.jfr.Event {
+  static final String NAME = "stincmale.exprcalculator.Evaluate";
+  static final String CATEGORY = "Expression Calculator";
+
+  @Label("Expression Length")
+  @DataAmount(DataAmount.BYTES)
+  int expressionLength;
+
+  @Label("Token Count")
+  int tokenCount;
+
+  @Label("Max Stack Depth")
+  int maxStackDepth;
+
+  @Label("Tokenizing Time")
+  @Description("The part of the duration spent tokenizing the expression")
+  @Timespan(Timespan.NANOSECONDS)
+  long tokenizingTime;
+
+  @Label("Success")
+  boolean success;
+
+  EvaluateEvent() {
+  }
+
+  /**
+   * Fills the fields of the event and commits it if the event {@linkplain #shouldCommit() should be committed}.
+   *
+   * @param failure {@code null} if the expression was calculated.
+   */
+  final void complete(final String expr, final int tokenCount, final int maxStackDepth, final long tokenizingTime,
+      @Nullable final CalculationResult failure) {
+    if (shouldCommit()) {
+      expressionLength = expr.length();
+      this.tokenCount = tokenCount;
+      this.maxStackDepth = maxStackDepth;
+      this.tokenizingTime = tokenizingTime;
+      success = failure == null;
+      commit();
+    }
+  }
+}
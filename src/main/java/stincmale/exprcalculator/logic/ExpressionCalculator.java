@@ -10,129 +10,341 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.LazyLogger;
 import stincmale.exprcalculator.Main;
 import stincmale.exprcalculator.logic.Word.LogicalType;
+import stincmale.exprcalculator.metrics.CalculationMetrics;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-public final class ExpressionCalculator {
-  private static final Logger logger = LoggerFactory.getLogger(ExpressionCalculator.class);
+/**
+ * A calculator may be shared by any number of threads: the state of a calculation is kept in a {@link Frame}
+ * which is reused by all calculations in the same thread.
+ * <p>
+ * Each calculation emits the {@link EvaluateEvent} and, if it fails, the {@link FailureEvent}, which are recorded by JDK Flight Recorder
+ * if they are enabled, and cost next to nothing otherwise.
+ */
+@ThreadSafe public final class ExpressionCalculator {
+  private static final LazyLogger logger = LazyLogger.getLogger(ExpressionCalculator.class);
+  private static final ThreadLocal<Frame> frames = ThreadLocal.withInitial(Frame::new);
+  private static final ExpressionValidator validator = new ExpressionValidator();
 
   private final MathContext mc;
-  private final Deque<Word> stack;
-  private final Deque<LetOperatorScope> letOperatorScopesStack;
-  private final Deque<Word> operatorStack;
-  private final Map<String, BigDecimal> context;
-  private final List<Word> reversedOperands;
+  @Nullable private final ExpressionPlanCache planCache;
+  @Nullable private final SubexpressionMemo memo;
+  private final boolean exact;
+  @Nullable private final CalculationMetrics metrics;
 
   public ExpressionCalculator(final MathContext mc) {
+    this(mc, null);
+  }
+
+  public ExpressionCalculator(final MathContext mc, @Nullable final ExpressionPlanCache planCache) {
+    this(mc, planCache, null);
+  }
+
+  public ExpressionCalculator(final MathContext mc, @Nullable final ExpressionPlanCache planCache, @Nullable final SubexpressionMemo memo) {
+    this(mc, planCache, memo, false);
+  }
+
+  public ExpressionCalculator(
+      final MathContext mc, @Nullable final ExpressionPlanCache planCache, @Nullable final SubexpressionMemo memo, final boolean exact) {
+    this(mc, planCache, memo, exact, null);
+  }
+
+  /**
+   * @param planCache If provided, then the calculator caches pre-parsed and validated expressions in the {@code planCache}
+   * and calculates expressions found there without parsing them.
+   * @param memo If provided, then the calculator looks up subexpressions of expressions that are not found in the {@code planCache}
+   * in the {@code memo} instead of calculating them.
+   * @param exact Specifies whether expressions are calculated {@linkplain RationalEvaluator exactly}, in which case
+   * only the results are rounded according to the {@code mc}, and neither the {@code planCache} nor the {@code memo} may be provided.
+   * Arithmetic problems, e.g. division by zero, create exceptions when calculating exactly.
+   * @param metrics If provided, then the calculator records each calculation in the {@code metrics}.
+   */
+  public ExpressionCalculator(
+      final MathContext mc,
+      @Nullable final ExpressionPlanCache planCache,
+      @Nullable final SubexpressionMemo memo,
+      final boolean exact,
+      @Nullable final CalculationMetrics metrics) {
     checkNotNull(mc, "The argument %s must not be null", "mc");
+    checkArgument(!exact || (planCache == null && memo == null), "The arguments %s and %s must be null if %s is true", "planCache", "memo", "exact");
     this.mc = mc;
-    stack = new ArrayDeque<>();
-    letOperatorScopesStack = new ArrayDeque<>();
-    context = new HashMap<>();
-    reversedOperands = new ArrayList<>();
-    operatorStack = new ArrayDeque<>();
+    this.planCache = planCache;
+    this.memo = memo;
+    this.exact = exact;
+    this.metrics = metrics;
   }
 
   public final BigDecimal calculate(final String expr) throws CalculationException {
     checkNotNull(expr, "The argument %s must not be null", "expr");
     logger.debug("Calculating '{}'", expr);
+    final EvaluateEvent event = new EvaluateEvent();
+    event.begin();
+    final long startNanos = metrics == null ? 0 : System.nanoTime();
     final BigDecimal result;
+    final Frame frame = frames.get();
+    frame.startMonitoring(event.isEnabled());
     try {
-      result = calculate(new ParsedExpression(expr, mc));
+      @Nullable final BigDecimal value = exact
+          ? calculateExactly(expr, frame)
+          : planCache == null ? calculate(expr, frame) : calculateUsingPlan(expr, frame);
+      if (value == null) {
+        throw frame.toException(expr);
+      }
+      result = value;
     } catch (final CalculationException e) {
       if (!e.isExpressionSet()) {
         e.setExpression(expr);
       }
+      monitor(expr, frame, event, startNanos, e.toResult());
       throw e;
     } catch (final RuntimeException e) {
-      throw new CalculationException(expr, e);
+      final CalculationException calculationException = new CalculationException(expr, e);
+      monitor(expr, frame, event, startNanos, calculationException.toResult());
+      throw calculationException;
     } finally {
-      stack.clear();
-      letOperatorScopesStack.clear();
-      context.clear();
-      reversedOperands.clear();
-      operatorStack.clear();
+      frame.clear();
     }
+    monitor(expr, frame, event, startNanos, null);
     logger.debug("Calculation result for '{}' is {}", expr, result);
     return result;
   }
 
-  private final BigDecimal calculate(final ParsedExpression parsedExpr) throws CalculationException {
-    parsedExpr.stream()
-        .forEach(word -> {
-          try {
-            switch (word.getLogicalType()) {
-              case OPERATOR_LET: {
-                operatorStack.push(word);
-                stack.push(word);
-                letOperatorScopesStack.push(new LetOperatorScope(word));
-                break;
-              }
-              case OPERATOR_ADD:
-              case OPERATOR_SUB:
-              case OPERATOR_MULT:
-              case OPERATOR_DIV: {
-                operatorStack.push(word);
-                stack.push(word);
-                break;
-              }
-              case OPERAND:
-              case OPERAND_VAR: {
-                stack.push(word);
-                assert letOperatorScopesStack.isEmpty() || !operatorStack.isEmpty();
-                if (!letOperatorScopesStack.isEmpty() && operatorStack.peek().getLogicalType() == LogicalType.OPERATOR_LET) {
-                  letOperatorScopesStack.peek()
-                      .register(word, context);
-                }
-                break;
-              }
-              case CALCULATION: {
-                final Word intermediateResult = calculateIntermediateResult(word, stack, letOperatorScopesStack, context, reversedOperands, mc);
-                stack.push(intermediateResult);
-                operatorStack.pop();
-                assert letOperatorScopesStack.isEmpty() || !operatorStack.isEmpty();
-                if (!letOperatorScopesStack.isEmpty() && operatorStack.peek().getLogicalType() == LogicalType.OPERATOR_LET) {
-                  letOperatorScopesStack.peek()
-                      .register(intermediateResult, context);
-                }
-                break;
+  /**
+   * Does the same as {@link #calculate(String)}, but instead of throwing {@link CalculationException} returns the problem.
+   * Problems with syntactically invalid expressions, which are the most common ones, are detected without creating exceptions,
+   * and the {@linkplain CalculationResult#description() description} of a problem is only formatted when requested.
+   * <p>
+   * If the calculator uses an {@link ExpressionPlanCache}, then an expression that is not found there is calculated without the cache,
+   * and is only added to the cache if it is calculated successfully.
+   */
+  public final CalculationResult tryCalculate(final String expr) {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    logger.debug("Calculating '{}'", expr);
+    final EvaluateEvent event = new EvaluateEvent();
+    event.begin();
+    final long startNanos = metrics == null ? 0 : System.nanoTime();
+    CalculationResult result;
+    final Frame frame = frames.get();
+    frame.startMonitoring(event.isEnabled());
+    try {
+      @Nullable final BigDecimal value = exact
+          ? calculateExactly(expr, frame)
+          : planCache == null ? calculate(expr, frame) : tryCalculateUsingPlan(expr, frame);
+      result = value == null ? frame.toResult(expr) : CalculationResult.success(expr, value);
+    } catch (final CalculationException e) {//a cached expression is syntactically valid, so this may only be an arithmetic problem
+      if (!e.isExpressionSet()) {
+        e.setExpression(expr);
+      }
+      result = e.toResult();
+    } catch (final RuntimeException e) {
+      result = CalculationResult.failure(expr, -1, null);
+    } finally {
+      frame.clear();
+    }
+    monitor(expr, frame, event, startNanos, result.isSuccess() ? null : result);
+    logger.debug("Calculation result for '{}' is {}", expr, result);
+    return result;
+  }
+
+  /**
+   * Records the calculation in the {@link #metrics} if there are any, and commits JDK Flight Recorder events if they are enabled.
+   * Must be called after {@linkplain Frame#clear() clearing} the {@code frame}, which does not clear what is needed for monitoring.
+   *
+   * @param failure {@code null} if the expression was calculated.
+   */
+  private final void monitor(
+      final String expr, final Frame frame, final EvaluateEvent event, final long startNanos, @Nullable final CalculationResult failure) {
+    if (metrics != null) {
+      metrics.record(System.nanoTime() - startNanos, failure == null, frame.tokensCount, frame.maxStackDepth);
+    }
+    event.complete(expr, frame.tokensCount, frame.maxStackDepth, frame.tokenizingNanos, failure);
+    if (failure != null) {
+      FailureEvent.commit(failure);
+    }
+  }
+
+  /**
+   * @return {@code null} if the expression could not be calculated, in which case the problem is recorded in the {@code frame}.
+   */
+  @Nullable
+  private final BigDecimal calculateUsingPlan(final String expr, final Frame frame) throws CalculationException {
+    assert planCache != null;
+    @Nullable ExpressionPlan plan;
+    try {
+      plan = planCache.get(expr, mc);
+    } catch (final CalculationException e) {
+      /* The expression is invalid, but ExpressionPlan may report a different problem than the one we must report
+       * (see ExpressionPlan.compile), so we let the stack-based algorithm report the problem.*/
+      plan = null;
+    }
+    return plan == null ? calculate(expr, frame) : plan.evaluate();
+  }
+
+  /**
+   * Unlike {@link #calculateUsingPlan(String, Frame)}, does not compile an expression before finding out whether it is valid,
+   * because compiling an invalid expression creates exceptions.
+   *
+   * @return See {@link #calculateUsingPlan(String, Frame)}.
+   */
+  @Nullable
+  private final BigDecimal tryCalculateUsingPlan(final String expr, final Frame frame) throws CalculationException {
+    assert planCache != null;
+    @Nullable final ExpressionPlan plan = planCache.getIfPresent(expr, mc);
+    @Nullable final BigDecimal result;
+    if (plan == null) {
+      result = calculate(expr, frame);
+      if (result != null) {
+        planCache.add(expr, mc);
+      }
+    } else {
+      result = plan.evaluate();
+    }
+    return result;
+  }
+
+  /**
+   * Does not create exceptions if the expression is syntactically invalid.
+   *
+   * @return See {@link #calculate(ParsedExpression, Frame)}.
+   */
+  @Nullable
+  private final BigDecimal calculateExactly(final String expr, final Frame frame) throws CalculationException {
+    @Nullable final CalculationResult problem = validator.validate(expr);
+    @Nullable BigDecimal result = null;
+    if (problem == null) {
+      result = RationalEvaluator.evaluate(ExpressionPlan.compile(new ParsedExpression(expr, MathContext.UNLIMITED)), mc);
+    } else {
+      frame.fail(problem.getProblemIdx(), problem.getProblemWord());
+    }
+    return result;
+  }
+
+  /**
+   * Calculates an expression using the {@link #memo} if there is one, otherwise using the stack-based algorithm.
+   * Like the stack-based algorithm, does not create exceptions if the expression is syntactically invalid.
+   *
+   * @return See {@link #calculate(ParsedExpression, Frame)}.
+   */
+  @Nullable
+  private final BigDecimal calculate(final String expr, final Frame frame) {
+    @Nullable final BigDecimal result = memo == null ? null : memo.evaluate(expr, mc);
+    //the memo does not report problems, so we let the stack-based algorithm report the problem
+    return result == null ? calculate(new ParsedExpression(expr, mc), frame) : result;
+  }
+
+  /**
+   * Does not create exceptions unless there is an arithmetic problem other than division by zero,
+   * e.g. a non-terminating decimal expansion, or a bug.
+   *
+   * @return {@code null} if the expression could not be calculated, in which case the problem is recorded in the {@code frame}.
+   */
+  @Nullable
+  private final BigDecimal calculate(final ParsedExpression parsedExpr, final Frame frame) {
+    final Deque<Word> stack = frame.stack;
+    final Deque<LetOperatorScope> letOperatorScopesStack = frame.letOperatorScopesStack;
+    final Deque<Word> operatorStack = frame.operatorStack;
+    final Map<String, BigDecimal> context = frame.context;
+    final ExpressionSpliterator words = parsedExpr.spliterator();
+    while (!frame.failed) {
+      final long tokenizingStartNanos = frame.tokenizingTimed ? System.nanoTime() : 0;
+      @Nullable final Word word = words.next();
+      if (frame.tokenizingTimed) {
+        frame.tokenizingNanos += System.nanoTime() - tokenizingStartNanos;
+      }
+      if (word == null) {
+        if (words.isFailed()) {
+          frame.fail(words.getProblemIdx(), null);
+        }
+        break;
+      }
+      frame.tokensCount++;
+      try {
+        switch (word.getLogicalType()) {
+          case OPERATOR_LET: {
+            operatorStack.push(word);
+            stack.push(word);
+            letOperatorScopesStack.push(new LetOperatorScope(word));
+            break;
+          }
+          case OPERATOR_ADD:
+          case OPERATOR_SUB:
+          case OPERATOR_MULT:
+          case OPERATOR_DIV: {
+            operatorStack.push(word);
+            stack.push(word);
+            break;
+          }
+          case OPERAND:
+          case OPERAND_VAR: {
+            stack.push(word);
+            assert letOperatorScopesStack.isEmpty() || !operatorStack.isEmpty();
+            if (!letOperatorScopesStack.isEmpty() && operatorStack.peek().getLogicalType() == LogicalType.OPERATOR_LET) {
+              @Nullable final Word problemWord = letOperatorScopesStack.peek()
+                  .register(word, context);
+              if (problemWord != null) {
+                frame.fail(problemWord);
               }
-              default: {
-                throw new AssertionError(String.format("%s is not accounted", word.getLogicalType()));
+            }
+            break;
+          }
+          case CALCULATION: {
+            @Nullable final Word intermediateResult = calculateIntermediateResult(word, frame, mc);
+            if (intermediateResult == null) {
+              break;
+            }
+            stack.push(intermediateResult);
+            operatorStack.pop();
+            assert letOperatorScopesStack.isEmpty() || !operatorStack.isEmpty();
+            if (!letOperatorScopesStack.isEmpty() && operatorStack.peek().getLogicalType() == LogicalType.OPERATOR_LET) {
+              @Nullable final Word problemWord = letOperatorScopesStack.peek()
+                  .register(intermediateResult, context);
+              if (problemWord != null) {
+                frame.fail(problemWord);
               }
             }
-          } catch (final CalculationException e) {
-            throw e;
-          } catch (final RuntimeException e) {
-            throw new CalculationException(word, parsedExpr.getExpression(), e);
+            break;
           }
-        });
-    final BigDecimal result;
-    if (stack.isEmpty()) {
-      throw new CalculationException(parsedExpr.getExpression());
+          default: {
+            throw new AssertionError(String.format("%s is not accounted", word.getLogicalType()));
+          }
+        }
+      } catch (final RuntimeException e) {
+        frame.fail(word);
+      }
+      frame.maxStackDepth = Math.max(frame.maxStackDepth, stack.size());
+    }
+    @Nullable BigDecimal result = null;
+    if (frame.failed) {
+      //the problem has already been recorded
+    } else if (stack.isEmpty()) {
+      frame.fail(-1, null);
     } else if (stack.size() > 1) {
-      throw new CalculationException(stack.peek(), parsedExpr.getExpression());
+      frame.fail(stack.peek());
     } else {//exactly one element in the stack
       final Word lastWord = stack.peek();
       if (lastWord.getLogicalType() == LogicalType.OPERAND) {
         result = lastWord.getValue();
       } else {
-        throw new CalculationException(lastWord, parsedExpr.getExpression());
+        frame.fail(lastWord);
       }
     }
     return result;
   }
 
-  private static final Word calculateIntermediateResult(
-      final Word calculationWord,
-      final Deque<Word> stack,
-      final Deque<LetOperatorScope> letOperatorScopesStack,
-      final Map<String, BigDecimal> context,
-      final List<Word> reversedOperands,
-      final MathContext mc) throws CalculationException {
+  /**
+   * @return {@code null} if there is a problem, in which case it is recorded in the {@code frame}.
+   */
+  @Nullable
+  private static final Word calculateIntermediateResult(final Word calculationWord, final Frame frame, final MathContext mc) {
+    final Deque<Word> stack = frame.stack;
+    final Deque<LetOperatorScope> letOperatorScopesStack = frame.letOperatorScopesStack;
+    final Map<String, BigDecimal> context = frame.context;
+    final List<Word> reversedOperands = frame.reversedOperands;
     if (logger.isDebugEnabled()) {
       logger.debug(
           "Calculating intermediate result for {}, stack{}[{}],{}letOperatorScopesStack{}[{}]{}context {}",
@@ -150,7 +362,7 @@ public final class ExpressionCalculator {
           context);
     }
     reversedOperands.clear();
-    final Word result;
+    @Nullable final Word result;
     @Nullable Word wordFromStack;
     for (wordFromStack = stack.peek();
         wordFromStack != null && !wordFromStack.getLogicalType()
@@ -160,23 +372,23 @@ public final class ExpressionCalculator {
         reversedOperands.add(wordFromStack);
         stack.pop();//remove wordFromStack from stack
       } else {
-        throw new CalculationException(wordFromStack);
+        return frame.fail(wordFromStack);
       }
     }
     if (wordFromStack == null) {
-      throw new CalculationException(calculationWord);
+      return frame.fail(calculationWord);
     } else {
       final Word operator = wordFromStack;
       stack.pop();//remove operator from stack
       logger.debug("Calculating intermediate result for operator {}, reversed operands {}", operator, reversedOperands);
       if (operator.getLogicalType()
           .isCalculationSupported()) {//OPERATOR_ADD, SUB, MULT, DIV
-        result = calculateIntermediateResultForCalculableOperator(calculationWord, operator, reversedOperands, context, mc);
+        result = calculateIntermediateResultForCalculableOperator(calculationWord, operator, frame, mc);
       } else {//OPERATOR_LET
-        result = calculateIntermediateResultForLetOperator(calculationWord, operator, reversedOperands, context, letOperatorScopesStack);
+        result = calculateIntermediateResultForLetOperator(calculationWord, operator, frame);
       }
     }
-    if (logger.isDebugEnabled()) {
+    if (result != null && logger.isDebugEnabled()) {
       logger.debug(
           "Intermediate result {}, stack{}[{}],{}letOperatorScopesStack{}[{}]{}context {}",
           result,
@@ -195,60 +407,82 @@ public final class ExpressionCalculator {
     return result;
   }
 
+  /**
+   * @return {@code null} if there is a problem, in which case it is recorded in the {@code frame}.
+   */
+  @Nullable
   private static final Word calculateIntermediateResultForCalculableOperator(
       final Word calculationWord,
       final Word operator,
-      final List<Word> reversedOperands,
-      final Map<String, BigDecimal> context,
-      final MathContext mc) throws CalculationException {
+      final Frame frame,
+      final MathContext mc) {
+    final List<Word> reversedOperands = frame.reversedOperands;
     final BigDecimal intermediateResult;
     if (reversedOperands.size() < 2) {
-      throw new CalculationException(calculationWord);
+      return frame.fail(calculationWord);
     } else if (reversedOperands.size() > 2) {
-      throw new CalculationException(reversedOperands.get(reversedOperands.size() - 3));
+      return frame.fail(reversedOperands.get(reversedOperands.size() - 3));
     } else {//exactly 2 operands
       final Word operand2 = reversedOperands.get(reversedOperands.size() - 2);
       final Word operand1 = reversedOperands.get(reversedOperands.size() - 1);
+      @Nullable final BigDecimal v1 = operandValue(operand1, frame.context);
+      @Nullable final BigDecimal v2 = operandValue(operand2, frame.context);
+      if (v1 == null || v2 == null || (operator.getLogicalType() == LogicalType.OPERATOR_DIV && v2.signum() == 0)) {
+        return frame.fail(operator);
+      }
       try {
         intermediateResult = operator.getLogicalType()
-            .calculate(operandValue(operand1, context), operandValue(operand2, context), mc);
+            .calculate(v1, v2, mc);
       } catch (final RuntimeException e) {
-        throw new CalculationException(operator);
+        return frame.fail(operator);
       }
     }
     return new Word(operator, intermediateResult);
   }
 
+  /**
+   * @return {@code null} if there is a problem, in which case it is recorded in the {@code frame}.
+   */
+  @Nullable
   private static final Word calculateIntermediateResultForLetOperator(
       final Word calculationWord,
       final Word operator,
-      final List<Word> reversedOperands,
-      final Map<String, BigDecimal> context,
-      final Deque<LetOperatorScope> letOperatorScopesStack) throws CalculationException {
+      final Frame frame) {
+    final List<Word> reversedOperands = frame.reversedOperands;
+    final Map<String, BigDecimal> context = frame.context;
     final BigDecimal intermediateResult;
     if (reversedOperands.size() < 3) {
-      throw new CalculationException(calculationWord);
+      return frame.fail(calculationWord);
     } else if (reversedOperands.size() > 3) {
-      throw new CalculationException(reversedOperands.get(reversedOperands.size() - 4));
+      return frame.fail(reversedOperands.get(reversedOperands.size() - 4));
     } else {//exactly 3 operands
       final Word operand3 = reversedOperands.get(reversedOperands.size() - 3);
       final Word operand2 = reversedOperands.get(reversedOperands.size() - 2);
       if (operand2.getLogicalType() != LogicalType.OPERAND) {
-        throw new CalculationException(operand2);
+        return frame.fail(operand2);
       }
       final Word operand1 = reversedOperands.get(reversedOperands.size() - 1);
       if (operand1.getLogicalType() != LogicalType.OPERAND_VAR) {
-        throw new CalculationException(operand1);
+        return frame.fail(operand1);
       }
-      intermediateResult = operandValue(operand3, context);
-      assert context.remove(operand1.getWord()) != null : String.format("context=%s does not contain variable %s", context, operand1.getWord());
+      @Nullable final BigDecimal value = operandValue(operand3, context);
+      if (value == null) {
+        return frame.fail(operand3);
+      }
+      intermediateResult = value;
+      @Nullable final BigDecimal removedVarValue = context.remove(operand1.getWord());
+      assert removedVarValue != null : String.format("context=%s does not contain variable %s", context, operand1.getWord());
       logger.debug("New context ({} was removed) {}", operand1.getWord(), context);
-      letOperatorScopesStack.pop();
+      frame.letOperatorScopesStack.pop();
     }
     return new Word(operator, intermediateResult);
   }
 
-  private static final BigDecimal operandValue(final Word operand, final Map<String, BigDecimal> context) throws CalculationException {
+  /**
+   * @return {@code null} if the {@code operand} is an undefined variable.
+   */
+  @Nullable
+  private static final BigDecimal operandValue(final Word operand, final Map<String, BigDecimal> context) {
     @Nullable final BigDecimal result;
     switch (operand.getLogicalType()) {
       case OPERAND: {
@@ -257,9 +491,6 @@ public final class ExpressionCalculator {
       }
       case OPERAND_VAR: {
         result = context.get(operand.getWord());
-        if (result == null) {
-          throw new CalculationException(operand);
-        }
         break;
       }
       default: {
@@ -269,6 +500,87 @@ public final class ExpressionCalculator {
     return result;
   }
 
+  /**
+   * The state of a calculation.
+   */
+  @NotThreadSafe private static final class Frame {
+    private final Deque<Word> stack;
+    private final Deque<LetOperatorScope> letOperatorScopesStack;
+    private final Deque<Word> operatorStack;
+    private final Map<String, BigDecimal> context;
+    private final List<Word> reversedOperands;
+    /**
+     * {@code true} if there is a problem with the expression, which is described by {@link #problemIdx} and {@link #problemWord}
+     * the same way it would be described by a {@link CalculationException}.
+     */
+    private boolean failed;
+    private int problemIdx;
+    @Nullable private String problemWord;
+    /**
+     * Specifies whether {@link #tokenizingNanos} is measured.
+     * This and the subsequent fields are used for monitoring and are not {@linkplain #clear() cleared}.
+     */
+    private boolean tokenizingTimed;
+    private long tokenizingNanos;
+    private int tokensCount;
+    private int maxStackDepth;
+
+    private Frame() {
+      stack = new ArrayDeque<>();
+      letOperatorScopesStack = new ArrayDeque<>();
+      operatorStack = new ArrayDeque<>();
+      context = new HashMap<>();
+      reversedOperands = new ArrayList<>();
+      failed = false;
+      problemIdx = -1;
+      problemWord = null;
+    }
+
+    /**
+     * @return {@code null}.
+     */
+    @Nullable
+    private final Word fail(final Word word) {
+      fail(word.getPosition(), word.getWord());
+      return null;
+    }
+
+    private final void fail(final int problemIdx, @Nullable final String problemWord) {
+      assert !failed;
+      failed = true;
+      this.problemIdx = problemIdx;
+      this.problemWord = problemWord;
+    }
+
+    private final CalculationException toException(final String expr) {
+      assert failed;
+      return new CalculationException(problemIdx, problemWord, expr);
+    }
+
+    private final CalculationResult toResult(final String expr) {
+      assert failed;
+      return CalculationResult.failure(expr, problemIdx, problemWord);
+    }
+
+    private final void startMonitoring(final boolean tokenizingTimed) {
+      this.tokenizingTimed = tokenizingTimed;
+      tokenizingNanos = 0;
+      tokensCount = 0;
+      maxStackDepth = 0;
+    }
+
+    private final void clear() {
+      stack.clear();
+      letOperatorScopesStack.clear();
+      operatorStack.clear();
+      context.clear();
+      reversedOperands.clear();
+      failed = false;
+      problemIdx = -1;
+      problemWord = null;
+    }
+  }
+
   private static final class LetOperatorScope {
     private final Word operator;
     @Nullable private Word operandVar;
@@ -279,18 +591,22 @@ public final class ExpressionCalculator {
       operandVar = null;
     }
 
-    private void register(final Word word, final Map<String, BigDecimal> context) throws CalculationException {
+    /**
+     * @return The word which causes a problem, or {@code null} if there is no problem.
+     */
+    @Nullable
+    private final Word register(final Word word, final Map<String, BigDecimal> context) {
       if (operandVar == null) {//expecting OPERAND_VAR
         if (word.getLogicalType() == LogicalType.OPERAND_VAR) {
           operandVar = word;
         } else {
-          throw new CalculationException(word);
+          return word;
         }
       } else if (operand == null) {//expecting OPERAND
         if (word.getLogicalType() == LogicalType.OPERAND) {//expecting OPERAND and getting OPERAND
           final String varName = operandVar.getWord();
           if (context.containsKey(varName)) {//variable with the same name has already been defined
-            throw new CalculationException(operandVar);
+            return operandVar;
           } else {
             operand = word;
             final BigDecimal varValue = word.getValue();
@@ -298,10 +614,11 @@ public final class ExpressionCalculator {
             logger.debug("New context ({} was added) {}", varName, context);
           }
         } else {//expecting OPERAND but getting something invalid
-          throw new CalculationException(word);
+          return word;
         }
       } else {//expecting nothing
       }
+      return null;
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,837 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.logic.Word.LogicalType;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A pre-parsed and validated form of an expression: a tree of operators and operands
+ * which can be {@linkplain #evaluate() evaluated} any number of times without tokenizing the expression
+ * and without checking its syntax.
+ * <p>
+ * A plan is {@linkplain #compile(ParsedExpression) compiled} by the same stack-based algorithm that is used by
+ * {@link ExpressionCalculator}, but instead of calculating intermediate results the algorithm builds {@linkplain Node nodes}.
+ * Therefore the plan of an expression exists if and only if the expression is syntactically valid, and evaluation of the plan
+ * may only fail because of arithmetic problems (e.g. division by zero),
+ * which are reported exactly like {@link ExpressionCalculator} reports them.
+ * <p>
+ * Variables are resolved while compiling: each {@code let} variable is assigned a slot equal to the number of {@code let} variables
+ * declared in the enclosing scopes, and each use of a variable refers to the slot of its declaration.
+ * Thus evaluation stores values of variables in a flat array instead of looking them up by name.
+ * A plan may also have free variables, which are not declared by {@code let}s and occupy the first slots,
+ * see {@link #compile(ParsedExpression, List, boolean)}.
+ * <p>
+ * Execution is tiered: a plan is evaluated by walking the tree until it has been evaluated {@code compilationThreshold} times,
+ * after which it is {@linkplain BytecodeCompiler compiled} to bytecode which is used for subsequent evaluations.
+ * If speculative evaluation is enabled, then each evaluation is first attempted by the {@link SpeculativeEvaluator}.
+ * If fixed-point evaluation is enabled and {@linkplain FixedPointEvaluator#supports(MathContext) supported} for the {@link MathContext},
+ * then the plan is evaluated by the {@link FixedPointEvaluator} instead of being walked or compiled to bytecode.
+ * <p>
+ * A plan may be {@linkplain PlanOptimizer optimized} when compiled, which does not change results of the evaluation.
+ * <p>
+ * The tree is walked recursively, except for plans whose {@linkplain Node#getDepth() depth} exceeds {@link #MAX_RECURSION_DEPTH}:
+ * such plans are walked {@linkplain #evaluate(Node, Object[], Evaluation) without recursion} and are neither optimized,
+ * nor compiled to bytecode, nor evaluated speculatively or by the {@link FixedPointEvaluator}, because all of these walk the tree recursively.
+ * Thus evaluation of a plan does not fail with {@link StackOverflowError} if the stack-based algorithm does not.
+ */
+@ThreadSafe final class ExpressionPlan {
+  /**
+   * The maximal {@linkplain Node#getDepth() depth} of a plan which may be walked recursively.
+   */
+  static final int MAX_RECURSION_DEPTH = 1 << 10;
+
+  private final String expr;
+  private final MathContext mc;
+  private final Node root;
+  private final int slotsCount;
+  private final int compilationThreshold;
+  /**
+   * The number of times the plan was evaluated before being compiled.
+   * Updated without synchronization, hence the compilation may happen a bit later than after {@link #compilationThreshold}
+   * evaluations, or may happen more than once, which does not matter.
+   */
+  private int evaluationCount;
+  @Nullable private volatile BytecodeCompiler.Compiled compiled;
+  @Nullable private final SpeculativeEvaluator.Counters speculationCounters;
+  @Nullable private final SpeculativeEvaluator speculativeEvaluator;
+  @Nullable private final FixedPointEvaluator fixedPointEvaluator;
+
+  private ExpressionPlan(
+      final String expr,
+      final MathContext mc,
+      final Node root,
+      final int slotsCount,
+      final int compilationThreshold,
+      @Nullable final SpeculativeEvaluator.Counters speculationCounters,
+      final boolean fixedPoint) {
+    this.expr = expr;
+    this.mc = mc;
+    this.root = root;
+    this.slotsCount = slotsCount;
+    final boolean deep = isDeep(root);
+    this.compilationThreshold = deep ? Integer.MAX_VALUE : compilationThreshold;
+    evaluationCount = 0;
+    compiled = null;
+    this.speculationCounters = speculationCounters;
+    speculativeEvaluator = (speculationCounters == null || deep) ? null : SpeculativeEvaluator.compile(this);
+    fixedPointEvaluator = (fixedPoint && !deep && FixedPointEvaluator.supports(mc)) ? FixedPointEvaluator.compile(this) : null;
+  }
+
+  /**
+   * @throws CalculationException If the expression is not syntactically valid.
+   * The exception does not necessarily point to the same problem {@link ExpressionCalculator} would have reported,
+   * because {@link ExpressionCalculator} may encounter an arithmetic problem before encountering a syntax problem.
+   */
+  static final ExpressionPlan compile(final ParsedExpression parsedExpr) throws CalculationException {
+    return compile(parsedExpr, Integer.MAX_VALUE, null, false);
+  }
+
+  /**
+   * @param compilationThreshold See {@link ExpressionPlan}. {@link Integer#MAX_VALUE} means that the plan is never compiled to bytecode.
+   * @param speculationCounters If provided, then speculative evaluation is enabled and is accounted by these counters.
+   * @param optimize Specifies whether the plan is {@linkplain PlanOptimizer optimized}.
+   * @throws CalculationException See {@link #compile(ParsedExpression)}.
+   */
+  static final ExpressionPlan compile(
+      final ParsedExpression parsedExpr,
+      final int compilationThreshold,
+      @Nullable final SpeculativeEvaluator.Counters speculationCounters,
+      final boolean optimize) throws CalculationException {
+    return compile(parsedExpr, compilationThreshold, speculationCounters, optimize, false);
+  }
+
+  /**
+   * @param fixedPoint Specifies whether the plan is evaluated by the {@link FixedPointEvaluator} if it is supported.
+   * @throws CalculationException See {@link #compile(ParsedExpression)}.
+   * @see #compile(ParsedExpression, int, SpeculativeEvaluator.Counters, boolean)
+   */
+  static final ExpressionPlan compile(
+      final ParsedExpression parsedExpr,
+      final int compilationThreshold,
+      @Nullable final SpeculativeEvaluator.Counters speculationCounters,
+      final boolean optimize,
+      final boolean fixedPoint) throws CalculationException {
+    return compile(parsedExpr, List.of(), compilationThreshold, speculationCounters, optimize, fixedPoint);
+  }
+
+  /**
+   * Compiles an expression which may use variables that are not declared by {@code let}s.
+   * The free variable {@code freeVariables.get(i)} is assigned the slot {@code i},
+   * and the plan must be evaluated by {@link #evaluateInterpreted(BigDecimal[])}.
+   * A {@code let} must not declare a variable with the same name as a free variable.
+   *
+   * @param freeVariables Distinct names of variables.
+   * @param optimize Specifies whether the plan is {@linkplain PlanOptimizer optimized}.
+   * @throws CalculationException See {@link #compile(ParsedExpression)}.
+   */
+  static final ExpressionPlan compile(
+      final ParsedExpression parsedExpr, final List<String> freeVariables, final boolean optimize) throws CalculationException {
+    checkNotNull(freeVariables, "The argument %s must not be null", "freeVariables");
+    return compile(parsedExpr, freeVariables, Integer.MAX_VALUE, null, optimize, false);
+  }
+
+  private static final ExpressionPlan compile(
+      final ParsedExpression parsedExpr,
+      final List<String> freeVariables,
+      final int compilationThreshold,
+      @Nullable final SpeculativeEvaluator.Counters speculationCounters,
+      final boolean optimize,
+      final boolean fixedPoint) throws CalculationException {
+    checkNotNull(parsedExpr, "The argument %s must not be null", "parsedExpr");
+    checkArgument(compilationThreshold >= 0, "The argument %s=%s must not be negative", "compilationThreshold", compilationThreshold);
+    final ParseEvent event = new ParseEvent();
+    event.begin();
+    final Compiler compiler = new Compiler(parsedExpr, freeVariables);
+    parsedExpr.stream()
+        .forEach(word -> {
+          try {
+            compiler.accept(word);
+          } catch (final CalculationException e) {
+            throw e;
+          } catch (final RuntimeException e) {
+            throw new CalculationException(word, parsedExpr.getExpression(), e);
+          }
+        });
+    Node root = compiler.root();
+    int slotsCount = compiler.slotsCount;
+    if (optimize && !isDeep(root)) {
+      final PlanOptimizer optimizer = new PlanOptimizer(parsedExpr.getMathContext(), slotsCount);
+      root = optimizer.optimize(root);
+      slotsCount = optimizer.getSlotsCount();
+    }
+    if (event.shouldCommit()) {
+      event.expressionLength = parsedExpr.getExpression()
+          .length();
+      event.tokenCount = compiler.wordsCount;
+      event.commit();
+    }
+    return new ExpressionPlan(parsedExpr.getExpression(), parsedExpr.getMathContext(), root, slotsCount, compilationThreshold, speculationCounters,
+        fixedPoint);
+  }
+
+  final String getExpression() {
+    return expr;
+  }
+
+  final MathContext getMathContext() {
+    return mc;
+  }
+
+  final Node getRoot() {
+    return root;
+  }
+
+  /**
+   * @return The number of slots needed to store values of variables,
+   * which is the number of free variables plus the maximal depth of nested {@code let} scopes.
+   */
+  final int getSlotsCount() {
+    return slotsCount;
+  }
+
+  final boolean isCompiled() {
+    return compiled != null;
+  }
+
+  /**
+   * @return {@code true} if the {@linkplain Node#getDepth() depth} of the plan exceeds {@link #MAX_RECURSION_DEPTH},
+   * in which case the plan must not be walked recursively.
+   */
+  final boolean isDeep() {
+    return isDeep(root);
+  }
+
+  private static final boolean isDeep(final Node root) {
+    return root.getDepth() > MAX_RECURSION_DEPTH;
+  }
+
+  final BigDecimal evaluate() throws CalculationException {
+    if (speculationCounters != null) {
+      @Nullable final BigDecimal result = speculativeEvaluator == null ? null : speculativeEvaluator.evaluate();
+      speculationCounters.evaluation(result == null);
+      if (result != null) {
+        return result;
+      }
+    }
+    if (fixedPointEvaluator != null) {
+      try {
+        return fixedPointEvaluator.evaluate();
+      } catch (final ArithmeticException e) {
+        //walk the tree in order to report the problem properly
+        return evaluateInterpreted();
+      }
+    }
+    @Nullable final BytecodeCompiler.Compiled compiled = this.compiled;
+    if (compiled != null) {
+      try {
+        return compiled.evaluate(mc);
+      } catch (final RuntimeException e) {
+        //walk the tree in order to report the problem properly
+      }
+    } else if (evaluationCount < compilationThreshold && ++evaluationCount == compilationThreshold) {
+      this.compiled = BytecodeCompiler.compile(this);
+    }
+    return evaluateInterpreted();
+  }
+
+  /**
+   * Evaluates the plan by walking the tree regardless of whether the plan has been compiled to bytecode.
+   */
+  final BigDecimal evaluateInterpreted() throws CalculationException {
+    return evaluateInterpreted(new BigDecimal[slotsCount]);
+  }
+
+  /**
+   * Evaluates the plan by walking the tree.
+   *
+   * @param values An array of {@link #getSlotsCount()} elements with the values of free variables in the first slots.
+   * Other slots are overwritten by the evaluation, so the array may be reused by subsequent evaluations.
+   */
+  final BigDecimal evaluateInterpreted(final BigDecimal[] values) throws CalculationException {
+    assert values.length == slotsCount;
+    try {
+      return isDeep(root) ? evaluate(root, values, new DecimalEvaluation(mc)) : root.evaluate(values, mc);
+    } catch (final CalculationException e) {
+      if (!e.isExpressionSet()) {
+        e.setExpression(expr);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Evaluates a tree without recursion, hence regardless of its {@linkplain Node#getDepth() depth},
+   * in the same order as {@link Node#evaluate(BigDecimal[], MathContext)} does.
+   *
+   * @param values Values of variables indexed by {@linkplain Variable#getSlot() slots}.
+   * @param <T> The type of values.
+   */
+  static final <T> T evaluate(final Node root, final T[] values, final Evaluation<T> evaluation) throws CalculationException {
+    final int depth = root.getDepth();
+    //the nodes on the path from the root to the node being evaluated, and the numbers of their children that have been visited
+    final Node[] path = new Node[depth];
+    final int[] visitedChildren = new int[depth];
+    //results of the visited children of the nodes on the path, there is at most one per node
+    final Deque<T> results = new ArrayDeque<>(depth);
+    int top = 0;
+    path[top] = root;
+    while (top >= 0) {
+      final Node node = path[top];
+      final int visited = visitedChildren[top]++;
+      @Nullable Node child = null;
+      if (node instanceof Operation) {
+        final Operation operation = (Operation)node;
+        if (visited == 0) {
+          child = operation.getOperand1();
+        } else if (visited == 1) {
+          child = operation.getOperand2();
+        } else {
+          final T v2 = results.pop();
+          final T v1 = results.pop();
+          results.push(evaluation.operation(operation, v1, v2));
+        }
+      } else if (node instanceof Let) {
+        final Let let = (Let)node;
+        if (visited == 0) {
+          child = let.getValue();
+        } else if (visited == 1) {
+          values[let.getVariable()
+              .getSlot()] = results.pop();
+          child = let.getBody();
+        } else {//the result of the body is the result of the let
+        }
+      } else if (node instanceof Shared) {
+        final Shared shared = (Shared)node;
+        if (visited == 0) {
+          child = shared.getExpression();
+        } else {
+          values[shared.getSlot()] = results.element();
+        }
+      } else if (node instanceof Constant) {
+        results.push(evaluation.constant((Constant)node));
+      } else if (node instanceof Variable) {
+        final T value = values[((Variable)node).getSlot()];
+        assert value != null : String.format("Variable %s is not initialized", node);
+        results.push(value);
+      } else {
+        throw new AssertionError(String.format("%s is not accounted", node));
+      }
+      if (child == null) {
+        top--;
+      } else {
+        top++;
+        path[top] = child;
+        visitedChildren[top] = 0;
+      }
+    }
+    assert results.size() == 1;
+    return results.pop();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{expr='" + expr + "'" + ", mc=" + mc + '}';
+  }
+
+  /**
+   * Specifies how {@link ExpressionPlan#evaluate(Node, Object[], Evaluation)} evaluates constants and operations.
+   *
+   * @param <T> The type of values.
+   */
+  interface Evaluation<T> {
+    T constant(Constant constant) throws CalculationException;
+
+    T operation(Operation operation, T v1, T v2) throws CalculationException;
+  }
+
+  /**
+   * Evaluates exactly like {@link Node#evaluate(BigDecimal[], MathContext)}.
+   */
+  @Immutable private static final class DecimalEvaluation implements Evaluation<BigDecimal> {
+    private final MathContext mc;
+
+    private DecimalEvaluation(final MathContext mc) {
+      this.mc = mc;
+    }
+
+    @Override
+    public final BigDecimal constant(final Constant constant) {
+      return constant.getValue();
+    }
+
+    @Override
+    public final BigDecimal operation(final Operation operation, final BigDecimal v1, final BigDecimal v2) throws CalculationException {
+      try {
+        return operation.getOperator()
+            .calculate(v1, v2, mc);
+      } catch (final RuntimeException e) {
+        throw new CalculationException(operation.getWord());
+      }
+    }
+  }
+
+  /**
+   * A node of an {@link ExpressionPlan}.
+   * {@link #getWord()} is the word {@link CalculationException} refers to if there is a problem with the node.
+   */
+  @Immutable abstract static class Node {
+    private final Word word;
+    private final int size;
+    private final int depth;
+
+    private Node(final Word word, final int size, final int depth) {
+      this.word = word;
+      this.size = size;
+      this.depth = depth;
+    }
+
+    final Word getWord() {
+      return word;
+    }
+
+    /**
+     * @return The number of nodes in the subtree rooted at this node, excluding variables declared by {@link Let}s.
+     */
+    final int getSize() {
+      return size;
+    }
+
+    /**
+     * @return The number of nodes on the longest path from this node to a leaf, including both of them.
+     */
+    final int getDepth() {
+      return depth;
+    }
+
+    /**
+     * @return {@link LogicalType} this node has from the standpoint of the stack-based algorithm,
+     * i.e. either {@link LogicalType#OPERAND} or {@link LogicalType#OPERAND_VAR}.
+     */
+    abstract LogicalType getLogicalType();
+
+    /**
+     * @param values Values of variables indexed by {@linkplain Variable#getSlot() slots}.
+     */
+    abstract BigDecimal evaluate(BigDecimal[] values, MathContext mc) throws CalculationException;
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "{word=" + word + '}';
+    }
+  }
+
+  @Immutable static final class Constant extends Node {
+    private final BigDecimal value;
+
+    Constant(final Word word) {
+      super(word, 1, 1);
+      value = word.getValue();
+    }
+
+    final BigDecimal getValue() {
+      return value;
+    }
+
+    @Override
+    final LogicalType getLogicalType() {
+      return LogicalType.OPERAND;
+    }
+
+    @Override
+    final BigDecimal evaluate(final BigDecimal[] values, final MathContext mc) {
+      return value;
+    }
+  }
+
+  /**
+   * A use of either a {@code let} variable, or of a {@link Shared} subexpression.
+   */
+  @Immutable static final class Variable extends Node {
+    private final int slot;
+
+    /**
+     * @param slot A negative value means that the variable has not been declared yet.
+     */
+    Variable(final Word word, final int slot) {
+      super(word, 1, 1);
+      this.slot = slot;
+    }
+
+    final String getName() {
+      return getWord().getWord();
+    }
+
+    final int getSlot() {
+      return slot;
+    }
+
+    @Override
+    final LogicalType getLogicalType() {
+      return LogicalType.OPERAND_VAR;
+    }
+
+    @Override
+    final BigDecimal evaluate(final BigDecimal[] values, final MathContext mc) {
+      final BigDecimal result = values[slot];
+      assert result != null : String.format("Variable %s is not initialized", getName());
+      return result;
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName() + "{word=" + getWord() + ", slot=" + slot + '}';
+    }
+  }
+
+  /**
+   * Represents one of {@link LogicalType#OPERATOR_ADD}, {@link LogicalType#OPERATOR_SUB},
+   * {@link LogicalType#OPERATOR_MULT}, {@link LogicalType#OPERATOR_DIV}.
+   */
+  @Immutable static final class Operation extends Node {
+    private final Node operand1;
+    private final Node operand2;
+
+    Operation(final Word operator, final Node operand1, final Node operand2) {
+      super(operator, 1 + operand1.getSize() + operand2.getSize(), 1 + Math.max(operand1.getDepth(), operand2.getDepth()));
+      this.operand1 = operand1;
+      this.operand2 = operand2;
+    }
+
+    final LogicalType getOperator() {
+      return getWord().getLogicalType();
+    }
+
+    final Node getOperand1() {
+      return operand1;
+    }
+
+    final Node getOperand2() {
+      return operand2;
+    }
+
+    @Override
+    final LogicalType getLogicalType() {
+      return LogicalType.OPERAND;
+    }
+
+    @Override
+    final BigDecimal evaluate(final BigDecimal[] values, final MathContext mc) throws CalculationException {
+      final BigDecimal v1 = operand1.evaluate(values, mc);
+      final BigDecimal v2 = operand2.evaluate(values, mc);
+      try {
+        return getOperator().calculate(v1, v2, mc);
+      } catch (final RuntimeException e) {
+        throw new CalculationException(getWord());
+      }
+    }
+  }
+
+  /**
+   * Represents {@link LogicalType#OPERATOR_LET}. {@link #getVariable()} has the slot of the declared variable.
+   */
+  @Immutable static final class Let extends Node {
+    private final Variable variable;
+    private final Node value;
+    private final Node body;
+
+    Let(final Word operator, final Variable variable, final Node value, final Node body) {
+      super(operator, 1 + value.getSize() + body.getSize(), 1 + Math.max(value.getDepth(), body.getDepth()));
+      this.variable = variable;
+      this.value = value;
+      this.body = body;
+    }
+
+    final Variable getVariable() {
+      return variable;
+    }
+
+    final Node getValue() {
+      return value;
+    }
+
+    final Node getBody() {
+      return body;
+    }
+
+    @Override
+    final LogicalType getLogicalType() {
+      return LogicalType.OPERAND;
+    }
+
+    @Override
+    final BigDecimal evaluate(final BigDecimal[] values, final MathContext mc) throws CalculationException {
+      values[variable.getSlot()] = value.evaluate(values, mc);
+      return body.evaluate(values, mc);
+    }
+  }
+
+  /**
+   * A subexpression which occurs more than once in a plan. This node is the first occurrence of the subexpression in the order of evaluation:
+   * it evaluates the {@linkplain #getExpression() subexpression} and stores its value in the {@linkplain #getSlot() slot},
+   * while the subsequent occurrences are {@link Variable}s that refer to the slot.
+   */
+  @Immutable static final class Shared extends Node {
+    private final int slot;
+    private final Node expression;
+
+    Shared(final int slot, final Node expression) {
+      super(expression.getWord(), expression.getSize(), 1 + expression.getDepth());
+      this.slot = slot;
+      this.expression = expression;
+    }
+
+    final int getSlot() {
+      return slot;
+    }
+
+    final Node getExpression() {
+      return expression;
+    }
+
+    @Override
+    final LogicalType getLogicalType() {
+      return LogicalType.OPERAND;
+    }
+
+    @Override
+    final BigDecimal evaluate(final BigDecimal[] values, final MathContext mc) throws CalculationException {
+      final BigDecimal result = expression.evaluate(values, mc);
+      values[slot] = result;
+      return result;
+    }
+  }
+
+  /**
+   * Mirrors the algorithm implemented by {@link ExpressionCalculator}, see {@link ExpressionPlan}.
+   * A {@code null} element of {@link #stack} stands for the operator on top of the {@link #operatorStack} at the moment
+   * the element was pushed.
+   */
+  private static final class Compiler {
+    private final ParsedExpression parsedExpr;
+    private final Deque<StackElement> stack;
+    private final Deque<Word> operatorStack;
+    private final Deque<LetOperatorScope> letOperatorScopesStack;
+    /**
+     * Declared variables and their slots.
+     */
+    private final Map<String, Integer> context;
+    private final List<Node> reversedOperands;
+    private int slotsCount;
+    private int wordsCount;
+
+    private Compiler(final ParsedExpression parsedExpr, final List<String> freeVariables) {
+      this.parsedExpr = parsedExpr;
+      stack = new ArrayDeque<>();
+      operatorStack = new ArrayDeque<>();
+      letOperatorScopesStack = new ArrayDeque<>();
+      context = new HashMap<>();
+      for (final String freeVariable : freeVariables) {
+        @Nullable final Integer previousSlot = context.put(freeVariable, context.size());
+        checkArgument(previousSlot == null, "The argument %s=%s contains duplicates", "freeVariables", freeVariables);
+      }
+      reversedOperands = new ArrayList<>();
+      slotsCount = freeVariables.size();
+      wordsCount = 0;
+    }
+
+    private final void accept(final Word word) throws CalculationException {
+      wordsCount++;
+      switch (word.getLogicalType()) {
+        case OPERATOR_LET: {
+          operatorStack.push(word);
+          stack.push(new StackElement(word));
+          letOperatorScopesStack.push(new LetOperatorScope());
+          break;
+        }
+        case OPERATOR_ADD:
+        case OPERATOR_SUB:
+        case OPERATOR_MULT:
+        case OPERATOR_DIV: {
+          operatorStack.push(word);
+          stack.push(new StackElement(word));
+          break;
+        }
+        case OPERAND: {
+          push(new Constant(word));
+          break;
+        }
+        case OPERAND_VAR: {
+          push(new Variable(word, context.getOrDefault(word.getWord(), -1)));
+          break;
+        }
+        case CALCULATION: {
+          final Node intermediateResult = reduce(word);
+          operatorStack.pop();
+          push(intermediateResult);
+          break;
+        }
+        default: {
+          throw new AssertionError(String.format("%s is not accounted", word.getLogicalType()));
+        }
+      }
+    }
+
+    private final void push(final Node node) throws CalculationException {
+      stack.push(new StackElement(node));
+      assert letOperatorScopesStack.isEmpty() || !operatorStack.isEmpty();
+      if (!letOperatorScopesStack.isEmpty() && operatorStack.peek().getLogicalType() == LogicalType.OPERATOR_LET) {
+        final LetOperatorScope scope = letOperatorScopesStack.peek();
+        scope.register(node, context);
+        slotsCount = Math.max(slotsCount, scope.slot + 1);
+      }
+    }
+
+    private final Node reduce(final Word calculationWord) throws CalculationException {
+      reversedOperands.clear();
+      @Nullable StackElement elementFromStack;
+      for (elementFromStack = stack.peek();
+          elementFromStack != null && elementFromStack.node != null;
+          elementFromStack = stack.peek()) {//read top operands and operator
+        reversedOperands.add(elementFromStack.node);
+        stack.pop();
+      }
+      if (elementFromStack == null) {
+        throw new CalculationException(calculationWord);
+      }
+      final Word operator = elementFromStack.operator;
+      assert operator != null;
+      stack.pop();//remove operator from stack
+      final Node result;
+      if (operator.getLogicalType()
+          .isCalculationSupported()) {//OPERATOR_ADD, SUB, MULT, DIV
+        if (reversedOperands.size() < 2) {
+          throw new CalculationException(calculationWord);
+        } else if (reversedOperands.size() > 2) {
+          throw new CalculationException(reversedOperands.get(reversedOperands.size() - 3)
+              .getWord());
+        } else {//exactly 2 operands
+          final Node operand2 = reversedOperands.get(reversedOperands.size() - 2);
+          final Node operand1 = reversedOperands.get(reversedOperands.size() - 1);
+          checkOperand(operand1);
+          checkOperand(operand2);
+          result = new Operation(operator, operand1, operand2);
+        }
+      } else {//OPERATOR_LET
+        if (reversedOperands.size() < 3) {
+          throw new CalculationException(calculationWord);
+        } else if (reversedOperands.size() > 3) {
+          throw new CalculationException(reversedOperands.get(reversedOperands.size() - 4)
+              .getWord());
+        } else {//exactly 3 operands
+          final Node operand3 = reversedOperands.get(reversedOperands.size() - 3);
+          final Node operand2 = reversedOperands.get(reversedOperands.size() - 2);
+          if (operand2.getLogicalType() != LogicalType.OPERAND) {
+            throw new CalculationException(operand2.getWord());
+          }
+          final Node operand1 = reversedOperands.get(reversedOperands.size() - 1);
+          if (operand1.getLogicalType() != LogicalType.OPERAND_VAR) {
+            throw new CalculationException(operand1.getWord());
+          }
+          checkOperand(operand3);
+          final Variable variable = (Variable)operand1;
+          @Nullable final Integer removedSlot = context.remove(variable.getName());
+          assert removedSlot != null : String.format("context=%s does not contain variable %s", context, variable.getName());
+          final LetOperatorScope scope = letOperatorScopesStack.pop();
+          assert scope.slot == removedSlot;
+          result = new Let(operator, new Variable(variable.getWord(), scope.slot), operand2, operand3);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Checks that a variable is declared.
+     */
+    private final void checkOperand(final Node operand) throws CalculationException {
+      if (operand.getLogicalType() == LogicalType.OPERAND_VAR && !context.containsKey(((Variable)operand).getName())) {
+        throw new CalculationException(operand.getWord());
+      }
+    }
+
+    private final Node root() throws CalculationException {
+      final Node result;
+      if (stack.isEmpty()) {
+        throw new CalculationException(parsedExpr.getExpression());
+      } else if (stack.size() > 1) {
+        throw new CalculationException(stack.peek()
+            .getWord(), parsedExpr.getExpression());
+      } else {//exactly one element in the stack
+        final StackElement last = stack.peek();
+        if (last.node != null && last.node.getLogicalType() == LogicalType.OPERAND) {
+          result = last.node;
+        } else {
+          throw new CalculationException(last.getWord(), parsedExpr.getExpression());
+        }
+      }
+      return result;
+    }
+  }
+
+  private static final class StackElement {
+    @Nullable private final Word operator;
+    @Nullable private final Node node;
+
+    private StackElement(final Word operator) {
+      this.operator = operator;
+      node = null;
+    }
+
+    private StackElement(final Node node) {
+      operator = null;
+      this.node = node;
+    }
+
+    private final Word getWord() {
+      assert operator != null || node != null;
+      return node == null ? operator : node.getWord();
+    }
+  }
+
+  private static final class LetOperatorScope {
+    @Nullable private Variable operandVar;
+    @Nullable private Node operand;
+    /**
+     * The slot of the declared variable, negative until the variable is declared.
+     */
+    private int slot;
+
+    private LetOperatorScope() {
+      operandVar = null;
+      operand = null;
+      slot = -1;
+    }
+
+    private void register(final Node node, final Map<String, Integer> context) throws CalculationException {
+      if (operandVar == null) {//expecting OPERAND_VAR
+        if (node.getLogicalType() == LogicalType.OPERAND_VAR) {
+          operandVar = (Variable)node;
+        } else {
+          throw new CalculationException(node.getWord());
+        }
+      } else if (operand == null) {//expecting OPERAND
+        if (node.getLogicalType() == LogicalType.OPERAND) {
+          if (context.containsKey(operandVar.getName())) {//variable with the same name has already been defined
+            throw new CalculationException(operandVar.getWord());
+          }
+          slot = context.size();
+          context.put(operandVar.getName(), slot);
+          operand = node;
+        } else {//expecting OPERAND but getting something invalid
+          throw new CalculationException(node.getWord());
+        }
+      } else {//expecting nothing
+      }
+    }
+  }
+}
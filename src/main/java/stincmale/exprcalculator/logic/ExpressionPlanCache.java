@@ -0,0 +1,203 @@
+package stincmale.exprcalculator.logic;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.math.MathContext;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A bounded cache of pre-parsed and validated expressions keyed by the expression and the {@link MathContext}.
+ * An {@link ExpressionCalculator} which uses the cache neither tokenizes nor validates an expression found in the cache.
+ * <p>
+ * The cache uses a frequency-aware eviction policy (W-TinyLFU), so a stream of rarely repeated expressions
+ * can not evict frequently repeated ones. A single instance may be shared by any number of {@link ExpressionCalculator}s
+ * regardless of their {@link MathContext}s. Syntactically invalid expressions are not cached.
+ * <p>
+ * Cached expressions that are calculated often enough are compiled to JVM bytecode,
+ * which is unloaded when the expression is evicted from the cache.
+ * <p>
+ * Optionally, cached expressions may be calculated speculatively: using primitive {@code double}s instead of {@link java.math.BigDecimal}s
+ * as long as this provably produces the same result, and falling back to {@link java.math.BigDecimal}s otherwise.
+ * <p>
+ * Cached expressions may also be {@linkplain PlanOptimizer optimized}, e.g. by folding constants, which does not change results.
+ * <p>
+ * If the precision of a {@link MathContext} is bounded, then cached expressions may be calculated by the {@link FixedPointEvaluator},
+ * which uses {@code long}s instead of {@link java.math.BigDecimal}s as long as values fit in them, and produces the same results.
+ */
+@ThreadSafe public final class ExpressionPlanCache {
+  public static final int DEFAULT_COMPILATION_THRESHOLD = 1_000;
+
+  private final Cache<Key, ExpressionPlan> cache;
+  private final int compilationThreshold;
+  @Nullable private final SpeculativeEvaluator.Counters speculationCounters;
+  private final boolean optimization;
+  private final boolean fixedPoint;
+
+  /**
+   * Equivalent to {@link #ExpressionPlanCache(long, int, boolean, boolean, boolean) ExpressionPlanCache}{@code (maximumSize, }
+   * {@link #DEFAULT_COMPILATION_THRESHOLD}{@code , false, true, true)}.
+   */
+  public ExpressionPlanCache(final long maximumSize) {
+    this(maximumSize, DEFAULT_COMPILATION_THRESHOLD, false, true, true);
+  }
+
+  /**
+   * @param maximumSize The maximum number of expressions the cache may contain. Must not be negative.
+   * @param compilationThreshold The number of times a cached expression must be calculated before it is compiled to JVM bytecode.
+   * Must not be negative. {@link Integer#MAX_VALUE} disables compilation.
+   * @param speculativeEvaluation Specifies whether cached expressions are calculated speculatively using primitive {@code double}s.
+   * @param optimization Specifies whether cached expressions are optimized.
+   * @param fixedPoint Specifies whether cached expressions are calculated using fixed-point arithmetic when the precision allows.
+   * Expressions calculated this way are never compiled to JVM bytecode.
+   */
+  public ExpressionPlanCache(
+      final long maximumSize,
+      final int compilationThreshold,
+      final boolean speculativeEvaluation,
+      final boolean optimization,
+      final boolean fixedPoint) {
+    checkArgument(maximumSize >= 0, "The argument %s=%s must not be negative", "maximumSize", maximumSize);
+    checkArgument(compilationThreshold >= 0, "The argument %s=%s must not be negative", "compilationThreshold", compilationThreshold);
+    this.compilationThreshold = compilationThreshold;
+    speculationCounters = speculativeEvaluation ? new SpeculativeEvaluator.Counters() : null;
+    this.optimization = optimization;
+    this.fixedPoint = fixedPoint;
+    cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .executor(Runnable::run)//do maintenance in the threads that use the cache instead of a background thread
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @throws CalculationException If the expression is not syntactically valid.
+   */
+  final ExpressionPlan get(final String expr, final MathContext mc) throws CalculationException {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    checkNotNull(mc, "The argument %s must not be null", "mc");
+    return cache.get(
+        new Key(expr, mc),
+        key -> ExpressionPlan.compile(new ParsedExpression(key.expr, key.mc), compilationThreshold, speculationCounters, optimization, fixedPoint));
+  }
+
+  /**
+   * Does not compile the expression if it is not in the cache.
+   *
+   * @return {@code null} if the expression is not in the cache.
+   */
+  @Nullable
+  final ExpressionPlan getIfPresent(final String expr, final MathContext mc) {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    checkNotNull(mc, "The argument %s must not be null", "mc");
+    return cache.getIfPresent(new Key(expr, mc));
+  }
+
+  /**
+   * Compiles the expression and puts it in the cache.
+   * Unlike {@link #get(String, MathContext)}, does not affect the {@linkplain #getHitCount() hit} and {@linkplain #getMissCount() miss} counts.
+   *
+   * @throws CalculationException If the expression is not syntactically valid.
+   */
+  final void add(final String expr, final MathContext mc) throws CalculationException {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    checkNotNull(mc, "The argument %s must not be null", "mc");
+    cache.put(
+        new Key(expr, mc),
+        ExpressionPlan.compile(new ParsedExpression(expr, mc), compilationThreshold, speculationCounters, optimization, fixedPoint));
+  }
+
+  /**
+   * @return The number of times an expression was found in the cache.
+   */
+  public final long getHitCount() {
+    return cache.stats()
+        .hitCount();
+  }
+
+  /**
+   * @return The number of times an expression was not found in the cache,
+   * including the times when it was not possible to cache an expression because it is invalid.
+   */
+  public final long getMissCount() {
+    return cache.stats()
+        .missCount();
+  }
+
+  /**
+   * @return The number of expressions evicted from the cache because it had reached its maximum size.
+   */
+  public final long getEvictionCount() {
+    return cache.stats()
+        .evictionCount();
+  }
+
+  /**
+   * @return The number of times cached expressions were calculated speculatively using primitive {@code double}s,
+   * including the {@linkplain #getSpeculativeEvaluationFallbackCount() fallbacks}.
+   * Always 0 if speculative evaluation is disabled.
+   */
+  public final long getSpeculativeEvaluationCount() {
+    return speculationCounters == null ? 0 : speculationCounters.getEvaluationCount();
+  }
+
+  /**
+   * @return The number of times speculative calculation could not produce a result
+   * and a cached expression was calculated using {@link java.math.BigDecimal}s.
+   */
+  public final long getSpeculativeEvaluationFallbackCount() {
+    return speculationCounters == null ? 0 : speculationCounters.getFallbackCount();
+  }
+
+  /**
+   * @return An approximate number of expressions in the cache.
+   */
+  public final long getSize() {
+    return cache.estimatedSize();
+  }
+
+  /**
+   * Removes all expressions from the cache. Does not reset the counters.
+   */
+  public final void clear() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{size=" + getSize() + ", stats=" + cache.stats() + ", speculation=" + speculationCounters + ", optimization=" + optimization + ", fixedPoint=" + fixedPoint + '}';
+  }
+
+  @Immutable private static final class Key {
+    private final String expr;
+    private final MathContext mc;
+
+    private Key(final String expr, final MathContext mc) {
+      this.expr = expr;
+      this.mc = mc;
+    }
+
+    @Override
+    public final boolean equals(@Nullable final Object o) {
+      final boolean result;
+      if (this == o) {
+        result = true;
+      } else if (o instanceof Key) {
+        final Key obj = (Key)o;
+        result = expr.equals(obj.expr) && mc.equals(obj.mc);
+      } else {
+        result = false;
+      }
+      return result;
+    }
+
+    @Override
+    public final int hashCode() {
+      return Objects.hash(expr, mc);
+    }
+  }
+}
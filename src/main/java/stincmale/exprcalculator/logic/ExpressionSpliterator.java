@@ -6,7 +6,6 @@ import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import stincmale.exprcalculator.logic.Word.Type;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Preconditions.checkState;
 
 public final class ExpressionSpliterator extends AbstractSpliterator<Word> {
   private final String expr;
@@ -16,6 +15,8 @@ public final class ExpressionSpliterator extends AbstractSpliterator<Word> {
   private final BracketsValidator bracketsValidator;
   private final CommasValidator commasValidator;
   private final Word.LogicalTypeValuePair ltypeAndValueHolder;
+  private boolean failed;
+  private int problemIdx;
 
   ExpressionSpliterator(final String expr, final MathContext mc) {
     super(Long.MAX_VALUE, DISTINCT | IMMUTABLE | NONNULL | ORDERED);
@@ -28,94 +29,134 @@ public final class ExpressionSpliterator extends AbstractSpliterator<Word> {
     bracketsValidator = new BracketsValidator();
     commasValidator = new CommasValidator();
     ltypeAndValueHolder = new Word.LogicalTypeValuePair();
+    failed = false;
+    problemIdx = -1;
   }
 
   @Override
   public final boolean tryAdvance(final Consumer<? super Word> action) throws CalculationException {
     checkNotNull(action, "The argument %s must not be null", "action");
+    @Nullable final Word word = next();
+    if (failed) {
+      throw new CalculationException(problemIdx, expr);
+    }
     final boolean result;
+    if (word == null) {
+      result = false;
+    } else {
+      action.accept(word);
+      result = true;
+    }
+    return result;
+  }
+
+  /**
+   * Does the same as {@link #tryAdvance(Consumer)}, but instead of throwing {@link CalculationException} records the problem,
+   * see {@link #isFailed()}, {@link #getProblemIdx()}. Creates no exceptions for syntactically invalid expressions.
+   *
+   * @return The next word, or {@code null} if there are no more words or there is a problem with the expression.
+   */
+  @Nullable
+  final Word next() {
     @Nullable Word word = null;
-    for (; word == null && idx <= expr.length(); idx++) {
+    for (; word == null && !failed && idx <= expr.length(); idx++) {
       final boolean endOfExpression = idx == expr.length();
       final int problemIdx = endOfExpression ? expr.length() - 1 : idx;
-      try {
-        final char symbol = endOfExpression ? ' ' : expr.charAt(idx);
-        if (idx == 0) {
-          wordInfo.reset(idx, symbol);
-          bracketsValidator.reset();
-          commasValidator.reset();
-        } else {
-          assert bracketsValidator != null;
-          assert wordInfo != null;
-          switch (wordInfo.type) {
-            case EMPTY: {
-              wordInfo.startNew(idx, symbol);//ignore the word
-              break;
-            }
-            case COMMA: {
-              commasValidator.account();
-              wordInfo.startNew(idx, symbol);//ignore the word
-              break;
-            }
-            case OPENING_BRACKET: {
-              bracketsValidator.accountOpening();
-              commasValidator.reset();
-              wordInfo.startNew(idx, symbol);//ignore the word
-              break;
-            }
-            case CLOSING_BRACKET: {
-              bracketsValidator.accountClosing();
-              commasValidator.reset();
+      final char symbol = endOfExpression ? ' ' : expr.charAt(idx);
+      boolean valid = true;
+      if (idx == 0) {
+        valid = wordInfo.reset(idx, symbol);
+        bracketsValidator.reset();
+        commasValidator.reset();
+      } else {
+        assert bracketsValidator != null;
+        assert wordInfo != null;
+        switch (wordInfo.type) {
+          case EMPTY: {
+            valid = wordInfo.startNew(idx, symbol);//ignore the word
+            break;
+          }
+          case COMMA: {
+            valid = commasValidator.account() && wordInfo.startNew(idx, symbol);//ignore the word
+            break;
+          }
+          case OPENING_BRACKET: {
+            bracketsValidator.accountOpening();
+            commasValidator.reset();
+            valid = wordInfo.startNew(idx, symbol);//ignore the word
+            break;
+          }
+          case CLOSING_BRACKET: {
+            valid = bracketsValidator.accountClosing();
+            commasValidator.reset();
+            if (valid) {
               word = wordInfo.buildWordAndStartNew(idx, symbol, expr, mc, ltypeAndValueHolder);
-              break;
-            }
-            case LITERAL: {
-              commasValidator.reset();
-              if (symbol == '_' || Character.isAlphabetic(symbol) || Character.isDigit(symbol)) {
-                //continue reading the current word
-              } else if (isTrailerSymbol(symbol)) {
-                word = wordInfo.buildWordAndStartNew(idx, symbol, expr, mc, ltypeAndValueHolder);
-              } else {//invalid symbol
-                throw new CalculationException(problemIdx, expr);
-              }
-              break;
+              valid = word != null;
             }
-            case NUMERIC: {
-              commasValidator.reset();
-              if (symbol == '.' || Character.isDigit(symbol)) {
-                //continue reading the current word
-              } else if (isTrailerSymbol(symbol)) {
-                word = wordInfo.buildWordAndStartNew(idx, symbol, expr, mc, ltypeAndValueHolder);
-              } else {//invalid symbol
-                throw new CalculationException(problemIdx, expr);
-              }
-              break;
+            break;
+          }
+          case LITERAL: {
+            commasValidator.reset();
+            if (symbol == '_' || Character.isAlphabetic(symbol) || Character.isDigit(symbol)) {
+              //continue reading the current word
+            } else if (isTrailerSymbol(symbol)) {
+              word = wordInfo.buildWordAndStartNew(idx, symbol, expr, mc, ltypeAndValueHolder);
+              valid = word != null;
+            } else {//invalid symbol
+              valid = false;
             }
-            default: {
-              throw new AssertionError(String.format("%s is not considered", wordInfo.type));
+            break;
+          }
+          case NUMERIC: {
+            commasValidator.reset();
+            if (symbol == '.' || Character.isDigit(symbol)) {
+              //continue reading the current word
+            } else if (isTrailerSymbol(symbol) && isNumber(expr, wordInfo.startIdx, idx)) {
+              word = wordInfo.buildWordAndStartNew(idx, symbol, expr, mc, ltypeAndValueHolder);
+              valid = word != null;
+            } else {//invalid symbol or malformed number
+              valid = false;
             }
+            break;
           }
-          if (endOfExpression) {
-            bracketsValidator.validate();
+          default: {
+            throw new AssertionError(String.format("%s is not considered", wordInfo.type));
           }
         }
-      } catch (final CalculationException e) {
-        throw e;
-      } catch (final RuntimeException e) {
-        throw new CalculationException(problemIdx, expr, e);
+        if (valid && endOfExpression) {
+          valid = bracketsValidator.validate();
+        }
+      }
+      if (!valid) {
+        failed = true;
+        this.problemIdx = problemIdx;
+        word = null;
       }
     }
-    if (word == null) {
-      result = false;
-    } else {
-      action.accept(word);
-      result = true;
-    }
-    return result;
+    return word;
   }
 
-  private static final Type wordTypeFor(final char startingSymbol) throws IllegalArgumentException {
-    final Type result;
+  /**
+   * @return {@code true} if {@link #next()} has detected a problem with the expression.
+   */
+  final boolean isFailed() {
+    return failed;
+  }
+
+  /**
+   * @return The index in the expression of the problem detected by {@link #next()}, see {@link CalculationException}.
+   */
+  final int getProblemIdx() {
+    assert failed;
+    return problemIdx;
+  }
+
+  /**
+   * @return {@code null} if the symbol is unknown.
+   */
+  @Nullable
+  private static final Type wordTypeFor(final char startingSymbol) {
+    @Nullable final Type result;
     if (startingSymbol == '(') {
       result = Type.OPENING_BRACKET;
     } else if (startingSymbol == ')') {
@@ -127,9 +168,9 @@ public final class ExpressionSpliterator extends AbstractSpliterator<Word> {
     } else if (startingSymbol == '_' || Character.isAlphabetic(startingSymbol)) {
       result = Type.LITERAL;
     } else if (isEmptySymbol(startingSymbol)) {
-      return Type.EMPTY;
+      result = Type.EMPTY;
     } else {
-      throw new IllegalArgumentException(String.format("Unknown symbol %s", startingSymbol));
+      result = null;
     }
     return result;
   }
@@ -142,6 +183,28 @@ public final class ExpressionSpliterator extends AbstractSpliterator<Word> {
     return symbol == '(' || symbol == ')' || symbol == ',' || isEmptySymbol(symbol);
   }
 
+  /**
+   * Checks that a {@link Type#NUMERIC} word in the range {@code [fromIdx, toIdx)} is accepted by {@link java.math.BigDecimal#BigDecimal(String)}.
+   * Such a word consists of an optional leading {@code '-'} followed by digits and {@code '.'},
+   * so it is a number if it contains at least one digit and at most one {@code '.'}.
+   */
+  static final boolean isNumber(final String expr, final int fromIdx, final int toIdx) {
+    boolean digit = false;
+    boolean point = false;
+    for (int i = fromIdx; i < toIdx; i++) {
+      final char symbol = expr.charAt(i);
+      if (symbol == '.') {
+        if (point) {
+          return false;
+        }
+        point = true;
+      } else if (symbol != '-') {
+        digit = true;
+      }
+    }
+    return digit;
+  }
+
   private static final class WordInfo {
     private int startIdx;
     private Word.Type type;
@@ -151,21 +214,39 @@ public final class ExpressionSpliterator extends AbstractSpliterator<Word> {
       this.type = Type.EMPTY;
     }
 
-    private final void reset(final int startIdx, final char startingSymbol) {
-      this.startIdx = startIdx;
-      this.type = wordTypeFor(startingSymbol);
+    /**
+     * @return {@code false} if the {@code startingSymbol} is unknown.
+     */
+    private final boolean reset(final int startIdx, final char startingSymbol) {
+      return startNew(startIdx, startingSymbol);
     }
 
+    /**
+     * @return {@code null} if the {@code startingSymbol} is unknown,
+     * or if the word is a number that can not be converted with the {@code mc}, e.g. because it must be rounded but rounding is prohibited.
+     */
+    @Nullable
     private final Word buildWordAndStartNew(final int startIdx, final char startingSymbol, final String expr, final MathContext mc,
         final Word.LogicalTypeValuePair ltypeAndValueHolder) {
-      final Word result = new Word(expr.substring(this.startIdx, startIdx), type, this.startIdx, mc, ltypeAndValueHolder);
-      startNew(startIdx, startingSymbol);
-      return result;
+      final Word result;
+      try {
+        result = new Word(expr.substring(this.startIdx, startIdx), type, this.startIdx, mc, ltypeAndValueHolder);
+      } catch (final RuntimeException e) {
+        return null;
+      }
+      return startNew(startIdx, startingSymbol) ? result : null;
     }
 
-    private final void startNew(final int startIdx, final char startingSymbol) {
+    /**
+     * @return {@code false} if the {@code startingSymbol} is unknown.
+     */
+    private final boolean startNew(final int startIdx, final char startingSymbol) {
       this.startIdx = startIdx;
-      type = wordTypeFor(startingSymbol);
+      @Nullable final Type type = wordTypeFor(startingSymbol);
+      if (type != null) {
+        this.type = type;
+      }
+      return type != null;
     }
   }
 
@@ -184,13 +265,19 @@ public final class ExpressionSpliterator extends AbstractSpliterator<Word> {
       count++;
     }
 
-    private final void accountClosing() {
+    /**
+     * @return {@code false} if there is no matching opening bracket.
+     */
+    private final boolean accountClosing() {
       count--;
-      checkState(count >= 0, "%s must not be negative", "count");
+      return count >= 0;
     }
 
-    private final void validate() {
-      checkState(count == 0, "%s=%s must be 0", "count", count);
+    /**
+     * @return {@code false} if the brackets are not balanced.
+     */
+    private final boolean validate() {
+      return count == 0;
     }
   }
 
@@ -205,9 +292,12 @@ public final class ExpressionSpliterator extends AbstractSpliterator<Word> {
       count = 0;
     }
 
-    private final void account() {
-      checkState(count == 0, "%s must be 0", "count");
+    /**
+     * @return {@code false} if there are two commas in a row.
+     */
+    private final boolean account() {
       count++;
+      return count == 1;
     }
   }
 }
\ No newline at end of file
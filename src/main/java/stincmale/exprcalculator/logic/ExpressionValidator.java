@@ -0,0 +1,360 @@
+package stincmale.exprcalculator.logic;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.logic.Word.LogicalType;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Checks whether an expression is syntactically valid without calculating it.
+ * <p>
+ * The validator checks everything {@link ExpressionCalculator} checks, i.e. symbols, numbers, brackets, commas,
+ * the number of operands of operators and declarations and scopes of variables, and reports the same problem
+ * {@link ExpressionCalculator#calculate(String)} would. But it neither converts numeric literals to numbers nor does arithmetic,
+ * hence problems that can only be detected by calculating, e.g. division by zero, are not detected.
+ * <p>
+ * The expression is {@linkplain PackedTokenizer#advance() tokenized} token by token, and the tokens are processed by the same
+ * stack-based algorithm {@link ExpressionCalculator} uses, except that the stacks contain indices of tokens instead of {@link Word}s,
+ * and the result of an operator is represented by the token of the operator.
+ * Once the arrays used for that are large enough, validation of a valid expression does not allocate objects,
+ * and validation of an invalid expression only allocates the {@link CalculationResult}. No exceptions are created.
+ * <p>
+ * A validator may be shared by any number of threads: the state of a validation is kept in a {@link Frame}
+ * which is reused by all validations in the same thread.
+ */
+@ThreadSafe public final class ExpressionValidator {
+  private static final LogicalType[] logicalTypes = LogicalType.values();
+  private static final ThreadLocal<Frame> frames = ThreadLocal.withInitial(Frame::new);
+
+  public ExpressionValidator() {
+  }
+
+  /**
+   * @return {@code null} if the expression is valid, otherwise a {@linkplain CalculationResult#isSuccess() failed} result
+   * that describes the same problem {@link ExpressionCalculator#tryCalculate(String)} would.
+   */
+  @Nullable
+  public final CalculationResult validate(final String expr) {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    final Frame frame = frames.get();
+    frame.reset(expr);
+    return frame.validate() ? null : CalculationResult.failure(expr, frame.problemIdx, frame.problemWord());
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{}";
+  }
+
+  /**
+   * The state of a validation.
+   * An element of a stack is either an index of a token, or an index of an operator token which represents the result of the operator.
+   */
+  @NotThreadSafe private static final class Frame {
+    private final PackedTokenizer tokenizer;
+    @Nullable private String expr;
+    /**
+     * Corresponds to {@code stack} in {@link ExpressionCalculator}.
+     */
+    private int[] stack;
+    /**
+     * {@link LogicalType#ordinal()}s of the elements of the {@link #stack}.
+     */
+    private int[] stackTypes;
+    private int stackSize;
+    private int[] operatorStack;
+    private int operatorStackSize;
+    /**
+     * Variable tokens of the {@code let} scopes, or negative values if a variable is not yet known.
+     */
+    private int[] scopeVariables;
+    /**
+     * Specifies whether the values of the variables of the {@code let} scopes are known.
+     */
+    private boolean[] scopeValues;
+    private int scopesCount;
+    /**
+     * Tokens of the declared variables. Corresponds to the keys of {@code context} in {@link ExpressionCalculator}.
+     */
+    private int[] context;
+    private int contextSize;
+    private int[] reversedOperands;
+    private int reversedOperandsCount;
+    private boolean failed;
+    private int problemIdx;
+    /**
+     * A negative value if the problem is caused by the symbol at {@link #problemIdx}.
+     */
+    private int problemToken;
+
+    private Frame() {
+      tokenizer = new PackedTokenizer();
+      final int initialCapacity = 16;
+      stack = new int[initialCapacity];
+      stackTypes = new int[initialCapacity];
+      operatorStack = new int[initialCapacity];
+      scopeVariables = new int[initialCapacity];
+      scopeValues = new boolean[initialCapacity];
+      context = new int[initialCapacity];
+      reversedOperands = new int[4];
+      reset("");
+    }
+
+    private final void reset(final String expr) {
+      this.expr = expr;
+      tokenizer.reset(expr);
+      stackSize = 0;
+      operatorStackSize = 0;
+      scopesCount = 0;
+      contextSize = 0;
+      reversedOperandsCount = 0;
+      failed = false;
+      problemIdx = -1;
+      problemToken = -1;
+    }
+
+    /**
+     * @return {@code false} if there is a problem, which is described by {@link #problemIdx} and {@link #problemWord()}.
+     */
+    private final boolean validate() {
+      while (!failed && tokenizer.advance()) {
+        final int token = tokenizer.count() - 1;
+        final LogicalType ltype = tokenizer.logicalType(token);
+        switch (ltype) {
+          case OPERATOR_LET: {
+            pushOperator(token);
+            push(token, ltype);
+            pushScope();
+            break;
+          }
+          case OPERATOR_ADD:
+          case OPERATOR_SUB:
+          case OPERATOR_MULT:
+          case OPERATOR_DIV: {
+            pushOperator(token);
+            push(token, ltype);
+            break;
+          }
+          case OPERAND:
+          case OPERAND_VAR: {
+            push(token, ltype);
+            if (isInLetOperator()) {
+              register(token, ltype);
+            }
+            break;
+          }
+          case CALCULATION: {
+            final int result = calculateIntermediateResult(token);
+            if (result < 0) {
+              break;
+            }
+            push(result, LogicalType.OPERAND);
+            operatorStackSize--;
+            if (isInLetOperator()) {
+              register(result, LogicalType.OPERAND);
+            }
+            break;
+          }
+          default: {
+            throw new AssertionError(String.format("%s is not accounted", ltype));
+          }
+        }
+      }
+      if (failed) {
+        //the problem has already been recorded
+      } else if (tokenizer.isFailed()) {
+        fail(tokenizer.getProblemIdx());
+      } else if (stackSize == 0) {
+        fail(-1);
+      } else if (stackSize > 1) {
+        failAt(stack[stackSize - 1]);
+      } else if (stackTypes[0] != LogicalType.OPERAND.ordinal()) {//exactly one element in the stack
+        failAt(stack[0]);
+      }
+      return !failed;
+    }
+
+    private final boolean isInLetOperator() {
+      assert scopesCount == 0 || operatorStackSize > 0;
+      return scopesCount > 0 && tokenizer.logicalType(operatorStack[operatorStackSize - 1]) == LogicalType.OPERATOR_LET;
+    }
+
+    /**
+     * Corresponds to {@code LetOperatorScope.register} in {@link ExpressionCalculator}.
+     */
+    private final void register(final int token, final LogicalType ltype) {
+      final int scope = scopesCount - 1;
+      if (scopeVariables[scope] < 0) {//expecting OPERAND_VAR
+        if (ltype == LogicalType.OPERAND_VAR) {
+          scopeVariables[scope] = token;
+        } else {
+          failAt(token);
+        }
+      } else if (!scopeValues[scope]) {//expecting OPERAND
+        if (ltype == LogicalType.OPERAND) {//expecting OPERAND and getting OPERAND
+          final int variable = scopeVariables[scope];
+          if (indexInContext(variable) >= 0) {//variable with the same name has already been defined
+            failAt(variable);
+          } else {
+            scopeValues[scope] = true;
+            if (contextSize == context.length) {
+              context = Arrays.copyOf(context, 2 * contextSize);
+            }
+            context[contextSize++] = variable;
+          }
+        } else {//expecting OPERAND but getting something invalid
+          failAt(token);
+        }
+      } else {//expecting nothing
+      }
+    }
+
+    /**
+     * Corresponds to {@code calculateIntermediateResult} in {@link ExpressionCalculator}.
+     *
+     * @return The operator token which represents the result, or a negative value if there is a problem.
+     */
+    private final int calculateIntermediateResult(final int calculationToken) {
+      reversedOperandsCount = 0;
+      while (stackSize > 0 && !logicalTypes[stackTypes[stackSize - 1]].isOperator()) {//read top operands and operator
+        final int ltype = stackTypes[stackSize - 1];
+        if (ltype == LogicalType.OPERAND.ordinal() || ltype == LogicalType.OPERAND_VAR.ordinal()) {
+          if (reversedOperandsCount == reversedOperands.length) {
+            reversedOperands = Arrays.copyOf(reversedOperands, 2 * reversedOperandsCount);
+          }
+          reversedOperands[reversedOperandsCount++] = stackSize - 1;//an index in the stack, which keeps the logical type
+          stackSize--;
+        } else {
+          return failAt(stack[stackSize - 1]);
+        }
+      }
+      if (stackSize == 0) {
+        return failAt(calculationToken);
+      }
+      final int operator = stack[--stackSize];
+      if (tokenizer.logicalType(operator)
+          .isCalculationSupported()) {//OPERATOR_ADD, SUB, MULT, DIV
+        if (reversedOperandsCount < 2) {
+          return failAt(calculationToken);
+        } else if (reversedOperandsCount > 2) {
+          return failAt(operandToken(reversedOperandsCount - 3));
+        } else if (!isDefined(reversedOperandsCount - 1) || !isDefined(reversedOperandsCount - 2)) {
+          return failAt(operator);
+        }
+      } else {//OPERATOR_LET
+        if (reversedOperandsCount < 3) {
+          return failAt(calculationToken);
+        } else if (reversedOperandsCount > 3) {
+          return failAt(operandToken(reversedOperandsCount - 4));
+        } else if (operandType(reversedOperandsCount - 2) != LogicalType.OPERAND.ordinal()) {
+          return failAt(operandToken(reversedOperandsCount - 2));
+        } else if (operandType(reversedOperandsCount - 1) != LogicalType.OPERAND_VAR.ordinal()) {
+          return failAt(operandToken(reversedOperandsCount - 1));
+        } else if (!isDefined(reversedOperandsCount - 3)) {
+          return failAt(operandToken(reversedOperandsCount - 3));
+        }
+        final int contextIdx = indexInContext(operandToken(reversedOperandsCount - 1));
+        assert contextIdx >= 0;
+        System.arraycopy(context, contextIdx + 1, context, contextIdx, contextSize - contextIdx - 1);
+        contextSize--;
+        scopesCount--;
+      }
+      return operator;
+    }
+
+    private final int operandToken(final int reversedOperandIdx) {
+      return stack[reversedOperands[reversedOperandIdx]];
+    }
+
+    private final int operandType(final int reversedOperandIdx) {
+      return stackTypes[reversedOperands[reversedOperandIdx]];
+    }
+
+    /**
+     * @return {@code false} if the operand is an undefined variable.
+     */
+    private final boolean isDefined(final int reversedOperandIdx) {
+      return operandType(reversedOperandIdx) != LogicalType.OPERAND_VAR.ordinal() || indexInContext(operandToken(reversedOperandIdx)) >= 0;
+    }
+
+    /**
+     * @return The index in the {@link #context} of the variable with the same name as the {@code variable} token, or a negative value.
+     */
+    private final int indexInContext(final int variable) {
+      assert expr != null;
+      final int start = tokenizer.start(variable);
+      final int length = tokenizer.length(variable);
+      for (int i = 0; i < contextSize; i++) {
+        final int declared = context[i];
+        if (tokenizer.length(declared) == length && expr.regionMatches(tokenizer.start(declared), expr, start, length)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private final void push(final int token, final LogicalType ltype) {
+      if (stackSize == stack.length) {
+        stack = Arrays.copyOf(stack, 2 * stackSize);
+        stackTypes = Arrays.copyOf(stackTypes, 2 * stackSize);
+      }
+      stack[stackSize] = token;
+      stackTypes[stackSize] = ltype.ordinal();
+      stackSize++;
+    }
+
+    private final void pushOperator(final int token) {
+      if (operatorStackSize == operatorStack.length) {
+        operatorStack = Arrays.copyOf(operatorStack, 2 * operatorStackSize);
+      }
+      operatorStack[operatorStackSize++] = token;
+    }
+
+    private final void pushScope() {
+      if (scopesCount == scopeVariables.length) {
+        scopeVariables = Arrays.copyOf(scopeVariables, 2 * scopesCount);
+        scopeValues = Arrays.copyOf(scopeValues, 2 * scopesCount);
+      }
+      scopeVariables[scopesCount] = -1;
+      scopeValues[scopesCount] = false;
+      scopesCount++;
+    }
+
+    /**
+     * Records a problem caused by the {@code token}.
+     *
+     * @return A negative value.
+     */
+    private final int failAt(final int token) {
+      assert !failed;
+      failed = true;
+      problemIdx = tokenizer.start(token);
+      this.problemToken = token;
+      return -1;
+    }
+
+    /**
+     * Records a problem caused by the symbol at {@code problemIdx}.
+     *
+     * @param problemIdx See {@link CalculationException}.
+     */
+    private final void fail(final int problemIdx) {
+      assert !failed;
+      failed = true;
+      this.problemIdx = problemIdx;
+      problemToken = -1;
+    }
+
+    /**
+     * @return See {@link CalculationResult#getProblemWord()}.
+     */
+    @Nullable
+    private final String problemWord() {
+      assert failed;
+      assert expr != null;
+      return problemToken < 0 ? null : expr.substring(tokenizer.start(problemToken), tokenizer.start(problemToken) + tokenizer.length(problemToken));
+    }
+  }
+}
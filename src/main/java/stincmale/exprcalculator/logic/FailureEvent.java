@@ -0,0 +1,50 @@
+package stincmale.exprcalculator.logic;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event emitted by {@link ExpressionCalculator} for each expression that could not be calculated.
+ */
+@Name(FailureEvent.NAME)
+@Label("Failure")
+@Category(EvaluateEvent.CATEGORY)
+@Description("An expression could not be calculated")
+@StackTrace(false)
+@NotThreadSafe final class FailureEvent extends jdk.jfr.Event {
+  static final String NAME = "stincmale.exprcalculator.Failure";
+
+  @Label("Expression Length")
+  @DataAmount(DataAmount.BYTES)
+  int expressionLength;
+
+  @Label("Problem Index")
+  @Description("The index in the expression of the problem, or a negative value if it is impossible to specify the place")
+  int problemIdx;
+
+  @Label("Problem Word")
+  @Nullable String problemWord;
+
+  FailureEvent() {
+  }
+
+  /**
+   * Creates and commits the event if it is enabled.
+   */
+  static final void commit(final CalculationResult failure) {
+    final FailureEvent event = new FailureEvent();
+    if (event.shouldCommit()) {
+      event.expressionLength = failure.getExpression()
+          .length();
+      event.problemIdx = failure.getProblemIdx();
+      event.problemWord = failure.getProblemWord();
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,678 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+import stincmale.exprcalculator.logic.ExpressionPlan.Constant;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Node;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Shared;
+import stincmale.exprcalculator.logic.ExpressionPlan.Variable;
+import stincmale.exprcalculator.logic.Word.LogicalType;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Evaluates an {@link ExpressionPlan} using fixed-point decimal arithmetic on primitive values
+ * if the {@linkplain #supports(MathContext) precision is bounded} by {@link #MAX_PRECISION}.
+ * <p>
+ * A value is represented the same way {@link BigDecimal} represents it: as an unscaled value and a scale,
+ * but the unscaled value is a {@code long}. Operations reproduce the algorithms of
+ * {@link BigDecimal#add(BigDecimal, MathContext)}, {@link BigDecimal#subtract(BigDecimal, MathContext)},
+ * {@link BigDecimal#multiply(BigDecimal, MathContext)}, {@link BigDecimal#divide(BigDecimal, MathContext)}, including rounding
+ * according to the {@link RoundingMode} and the preferred scales of results, hence produce exactly the same unscaled values and scales.
+ * As long as a value fits in a {@code long}, no objects are created.
+ * If an operand or the exact intermediate result of an operation does not fit in a {@code long},
+ * then the operation is done with {@link BigDecimal}s, and so are the subsequent operations on its result.
+ * <p>
+ * Like {@link SpeculativeEvaluator}, the evaluator is a stack machine with instructions in postfix order.
+ * Arithmetic problems are reported by {@link ArithmeticException}s thrown by {@link BigDecimal},
+ * and it is the responsibility of the caller to {@linkplain ExpressionPlan#evaluateInterpreted() re-evaluate} the plan
+ * in order to get a proper {@link CalculationException}.
+ */
+@Immutable final class FixedPointEvaluator {
+  /**
+   * The maximal supported precision: any number of that many digits fits in a {@code long}.
+   */
+  static final int MAX_PRECISION = 18;
+  private static final long[] TEN_POWERS = {
+      1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+      10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+      1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L};
+  /**
+   * A value {@code v} can be multiplied by {@code TEN_POWERS[n]} without overflow if {@code |v| <= MULTIPLICATION_LIMITS[n]}.
+   */
+  private static final long[] MULTIPLICATION_LIMITS;
+  /**
+   * Stands for a value that does not fit in a {@code long}. It is never used as an unscaled value, the same way {@link BigDecimal} does.
+   */
+  private static final long INFLATED = Long.MIN_VALUE;
+  private static final ThreadLocal<Frame> frames = ThreadLocal.withInitial(Frame::new);
+  private static final int CONST = 0;
+  private static final int LOAD = 1;
+  private static final int STORE = 2;
+  private static final int ADD = 3;
+  private static final int SUB = 4;
+  private static final int MULT = 5;
+  private static final int DIV = 6;
+
+  static {
+    MULTIPLICATION_LIMITS = new long[TEN_POWERS.length];
+    for (int n = 0; n < TEN_POWERS.length; n++) {
+      MULTIPLICATION_LIMITS[n] = Long.MAX_VALUE / TEN_POWERS[n];
+    }
+  }
+
+  /**
+   * Instructions of a stack machine in postfix order. {@link #CONST}, {@link #LOAD}, {@link #STORE} are followed by an argument.
+   */
+  private final int[] code;
+  private final long[] constantUnscaledValues;
+  private final int[] constantScales;
+  /**
+   * Constants which do not fit in a {@code long}, {@code null} elements correspond to constants which do.
+   */
+  private final BigDecimal[] inflatedConstants;
+  private final int maxStackSize;
+  private final int slotsCount;
+  private final MathContext mc;
+
+  private FixedPointEvaluator(
+      final int[] code,
+      final long[] constantUnscaledValues,
+      final int[] constantScales,
+      final BigDecimal[] inflatedConstants,
+      final int maxStackSize,
+      final int slotsCount,
+      final MathContext mc) {
+    this.code = code;
+    this.constantUnscaledValues = constantUnscaledValues;
+    this.constantScales = constantScales;
+    this.inflatedConstants = inflatedConstants;
+    this.maxStackSize = maxStackSize;
+    this.slotsCount = slotsCount;
+    this.mc = mc;
+  }
+
+  /**
+   * @return {@code true} if the evaluator can be {@linkplain #compile(ExpressionPlan) compiled} for the {@link MathContext}.
+   */
+  static final boolean supports(final MathContext mc) {
+    return mc.getPrecision() > 0 && mc.getPrecision() <= MAX_PRECISION;
+  }
+
+  /**
+   * @param plan A plan with a {@linkplain #supports(MathContext) supported} {@link MathContext}.
+   */
+  static final FixedPointEvaluator compile(final ExpressionPlan plan) {
+    checkNotNull(plan, "The argument %s must not be null", "plan");
+    checkArgument(supports(plan.getMathContext()), "The argument %s has an unsupported %s", "plan", plan.getMathContext());
+    final Writer writer = new Writer();
+    writer.write(plan.getRoot());
+    return new FixedPointEvaluator(
+        Arrays.copyOf(writer.code, writer.codeSize),
+        Arrays.copyOf(writer.constantUnscaledValues, writer.constantsCount),
+        Arrays.copyOf(writer.constantScales, writer.constantsCount),
+        Arrays.copyOf(writer.inflatedConstants, writer.constantsCount),
+        writer.maxStackSize,
+        plan.getSlotsCount(),
+        plan.getMathContext());
+  }
+
+  /**
+   * Evaluates a plan without free variables using a thread-local {@link Frame}.
+   *
+   * @throws ArithmeticException If there is an arithmetic problem, e.g. division by zero.
+   */
+  final BigDecimal evaluate() throws ArithmeticException {
+    final Frame frame = frames.get();
+    frame.ensureCapacity(maxStackSize, slotsCount);
+    return evaluate(frame);
+  }
+
+  /**
+   * @return A {@link Frame} for {@link #evaluate(Frame)}.
+   */
+  final Frame newFrame() {
+    final Frame result = new Frame();
+    result.ensureCapacity(maxStackSize, slotsCount);
+    return result;
+  }
+
+  /**
+   * Binds a value to a free variable the same way {@link BigDecimal#BigDecimal(long, MathContext)} rounds it.
+   */
+  final void bind(final Frame frame, final int slot, final long value) {
+    if (value == INFLATED || !round(value, 0, frame.varUnscaledValues, frame.varScales, slot)) {
+      frame.varUnscaledValues[slot] = 0;
+      frame.inflatedVars[slot] = new BigDecimal(value, mc);
+    } else {
+      frame.inflatedVars[slot] = null;
+    }
+  }
+
+  /**
+   * Binds a value to a free variable the same way {@link BigDecimal#round(MathContext)} rounds it.
+   */
+  final void bind(final Frame frame, final int slot, final BigDecimal value) {
+    final BigDecimal roundedValue = value.round(mc);
+    if (roundedValue.precision() <= MAX_PRECISION) {
+      frame.varUnscaledValues[slot] = roundedValue.unscaledValue()
+          .longValue();
+      frame.varScales[slot] = roundedValue.scale();
+      frame.inflatedVars[slot] = null;
+    } else {
+      frame.varUnscaledValues[slot] = 0;
+      frame.inflatedVars[slot] = roundedValue;
+    }
+  }
+
+  /**
+   * @param frame A {@link Frame} with values {@linkplain #bind(Frame, int, BigDecimal) bound} to the free variables, if any.
+   * @throws ArithmeticException If there is an arithmetic problem, e.g. division by zero.
+   */
+  final BigDecimal evaluate(final Frame frame) throws ArithmeticException {
+    final long[] unscaledValues = frame.unscaledValues;
+    final int[] scales = frame.scales;
+    final BigDecimal[] inflatedValues = frame.inflatedValues;
+    int top = -1;
+    for (int i = 0; i < code.length; i++) {
+      final int instruction = code[i];
+      switch (instruction) {
+        case CONST: {
+          final int constantIdx = code[++i];
+          top++;
+          unscaledValues[top] = constantUnscaledValues[constantIdx];
+          scales[top] = constantScales[constantIdx];
+          inflatedValues[top] = inflatedConstants[constantIdx];
+          break;
+        }
+        case LOAD: {
+          final int slot = code[++i];
+          top++;
+          unscaledValues[top] = frame.varUnscaledValues[slot];
+          scales[top] = frame.varScales[slot];
+          inflatedValues[top] = frame.inflatedVars[slot];
+          break;
+        }
+        case STORE: {
+          final int slot = code[++i];
+          frame.varUnscaledValues[slot] = unscaledValues[top];
+          frame.varScales[slot] = scales[top];
+          frame.inflatedVars[slot] = inflatedValues[top];
+          inflatedValues[top] = null;
+          top--;
+          break;
+        }
+        default: {
+          top--;
+          final int idx2 = top + 1;
+          @Nullable final BigDecimal inflated1 = inflatedValues[top];
+          @Nullable final BigDecimal inflated2 = inflatedValues[idx2];
+          boolean calculated = false;
+          if (inflated1 == null && inflated2 == null) {
+            calculated = calculate(instruction, unscaledValues[top], scales[top], unscaledValues[idx2], scales[idx2], unscaledValues, scales, top);
+          }
+          if (calculated) {
+            inflatedValues[top] = null;
+          } else {
+            inflatedValues[top] = operatorOf(instruction).calculate(
+                inflated1 == null ? BigDecimal.valueOf(unscaledValues[top], scales[top]) : inflated1,
+                inflated2 == null ? BigDecimal.valueOf(unscaledValues[idx2], scales[idx2]) : inflated2,
+                mc);
+          }
+          inflatedValues[idx2] = null;
+        }
+      }
+    }
+    assert top == 0;
+    @Nullable final BigDecimal inflatedResult = inflatedValues[0];
+    inflatedValues[0] = null;
+    return inflatedResult == null ? BigDecimal.valueOf(unscaledValues[0], scales[0]) : inflatedResult;
+  }
+
+  /**
+   * Calculates the same way the evaluator does, which allows checking the arithmetic against {@link BigDecimal}.
+   *
+   * @param operator One of {@link LogicalType#OPERATOR_ADD}, {@link LogicalType#OPERATOR_SUB},
+   * {@link LogicalType#OPERATOR_MULT}, {@link LogicalType#OPERATOR_DIV}.
+   * @param mc A {@linkplain #supports(MathContext) supported} {@link MathContext}.
+   */
+  static final BigDecimal calculate(final LogicalType operator, final BigDecimal v1, final BigDecimal v2, final MathContext mc)
+      throws ArithmeticException {
+    checkArgument(supports(mc), "The argument %s=%s is not supported", "mc", mc);
+    final long[] unscaledValues = new long[1];
+    final int[] scales = new int[1];
+    final BigDecimal result;
+    if (v1.precision() <= MAX_PRECISION && v2.precision() <= MAX_PRECISION && new FixedPointEvaluator(
+        new int[0], new long[0], new int[0], new BigDecimal[0], 0, 0, mc)
+        .calculate(instructionOf(operator), v1.unscaledValue()
+            .longValue(), v1.scale(), v2.unscaledValue()
+            .longValue(), v2.scale(), unscaledValues, scales, 0)) {
+      result = BigDecimal.valueOf(unscaledValues[0], scales[0]);
+    } else {
+      result = operator.calculate(v1, v2, mc);
+    }
+    return result;
+  }
+
+  /**
+   * Stores the result into {@code unscaledValues[idx]}, {@code scales[idx]}.
+   *
+   * @return {@code false} if the result was not calculated because it does not fit in a {@code long}.
+   */
+  private final boolean calculate(
+      final int instruction, final long u1, final int s1, final long u2, final int s2, final long[] unscaledValues, final int[] scales,
+      final int idx) {
+    final boolean result;
+    switch (instruction) {
+      case ADD: {
+        result = add(u1, s1, u2, s2, unscaledValues, scales, idx);
+        break;
+      }
+      case SUB: {
+        result = add(u1, s1, -u2, s2, unscaledValues, scales, idx);//u2 is not INFLATED, so -u2 does not overflow
+        break;
+      }
+      case MULT: {
+        result = multiply(u1, s1, u2, s2, unscaledValues, scales, idx);
+        break;
+      }
+      case DIV: {
+        result = divide(u1, s1, u2, s2, unscaledValues, scales, idx);
+        break;
+      }
+      default: {
+        throw new AssertionError(String.format("Instruction %s is not accounted", instruction));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The same as {@link BigDecimal#add(BigDecimal, MathContext)}: the exact sum with the scale {@code max(s1, s2)} rounded according to {@link #mc}.
+   */
+  private final boolean add(
+      final long u1, final int s1, final long u2, final int s2, final long[] unscaledValues, final int[] scales, final int idx) {
+    final long alignedU1;
+    final long alignedU2;
+    final long scale;
+    if (s1 == s2) {
+      alignedU1 = u1;
+      alignedU2 = u2;
+      scale = s1;
+    } else if (s1 > s2) {
+      alignedU1 = u1;
+      alignedU2 = multiplyPowerTen(u2, (long)s1 - s2);
+      scale = s1;
+    } else {
+      alignedU1 = multiplyPowerTen(u1, (long)s2 - s1);
+      alignedU2 = u2;
+      scale = s2;
+    }
+    if (alignedU1 == INFLATED || alignedU2 == INFLATED) {
+      return false;
+    }
+    final long sum = alignedU1 + alignedU2;
+    if (((alignedU1 ^ sum) & (alignedU2 ^ sum)) < 0 || sum == INFLATED) {
+      return false;
+    }
+    return round(sum, scale, unscaledValues, scales, idx);
+  }
+
+  /**
+   * The same as {@link BigDecimal#multiply(BigDecimal, MathContext)}: the exact product with the scale {@code s1 + s2}
+   * rounded according to {@link #mc}.
+   */
+  private final boolean multiply(
+      final long u1, final int s1, final long u2, final int s2, final long[] unscaledValues, final int[] scales, final int idx) {
+    final long high = Math.multiplyHigh(u1, u2);
+    final long product = u1 * u2;
+    if ((high != 0 || product < 0) && (high != -1 || product >= 0) || product == INFLATED) {
+      return false;
+    }
+    return round(product, (long)s1 + s2, unscaledValues, scales, idx);
+  }
+
+  /**
+   * The same as {@link BigDecimal#divide(BigDecimal, MathContext)}: the quotient is calculated with {@code mc.getPrecision()} digits
+   * and is rounded according to {@link #mc}; if the quotient is exact, then its trailing zeros are stripped
+   * as long as its scale is greater than the preferred scale {@code s1 - s2}.
+   */
+  private final boolean divide(
+      final long u1, final int s1, final long u2, final int s2, final long[] unscaledValues, final int[] scales, final int idx) {
+    if (u2 == 0) {
+      throw new ArithmeticException(u1 == 0 ? "Division undefined" : "Division by zero");
+    }
+    final long preferredScale = (long)s1 - s2;
+    if (u1 == 0) {
+      unscaledValues[idx] = 0;
+      scales[idx] = (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, preferredScale));
+      return true;
+    }
+    final long absU1 = Math.abs(u1);
+    final long absU2 = Math.abs(u2);
+    if (absU1 >= TEN_POWERS[MAX_PRECISION] || absU2 >= TEN_POWERS[MAX_PRECISION]) {//the normalization below may overflow
+      return false;
+    }
+    final int precision1 = digitsCount(u1);
+    int precision2 = digitsCount(u2);
+    final boolean normalizedU1IsGreater = precision1 < precision2
+        ? absU1 * TEN_POWERS[precision2 - precision1] > absU2
+        : absU1 > absU2 * TEN_POWERS[precision1 - precision2];
+    if (normalizedU1IsGreater) {
+      precision2--;
+    }
+    final int mcPrecision = mc.getPrecision();
+    final long scale = preferredScale + precision2 - precision1 + mcPrecision;
+    final long raise = (long)mcPrecision + precision2 - precision1;
+    final long dividend;
+    final long divisor;
+    if (raise > 0) {
+      dividend = multiplyPowerTen(u1, raise);
+      divisor = u2;
+    } else {
+      dividend = u1;
+      divisor = multiplyPowerTen(u2, -raise);
+    }
+    if (dividend == INFLATED || divisor == INFLATED) {
+      return false;
+    }
+    long quotient = dividend / divisor;
+    final long remainder = dividend % divisor;
+    long quotientScale = scale;
+    if (remainder != 0) {
+      final int quotientSign = (dividend < 0) == (divisor < 0) ? 1 : -1;
+      if (needIncrement(divisor, quotientSign, quotient, remainder)) {
+        quotient += quotientSign;
+      }
+    } else {
+      while (Math.abs(quotient) >= 10 && quotientScale > preferredScale && quotient % 10 == 0) {
+        quotient /= 10;
+        quotientScale--;
+      }
+    }
+    return round(quotient, quotientScale, unscaledValues, scales, idx);
+  }
+
+  /**
+   * Rounds a value according to {@link #mc} the same way {@link BigDecimal} rounds results of operations,
+   * and stores the result into {@code unscaledValues[idx]}, {@code scales[idx]}.
+   *
+   * @param unscaledValue Must not be {@link #INFLATED}.
+   * @return {@code false} if the scale of the result does not fit in an {@code int}.
+   */
+  private final boolean round(long unscaledValue, long scale, final long[] unscaledValues, final int[] scales, final int idx) {
+    final int mcPrecision = mc.getPrecision();
+    for (int drop = digitsCount(unscaledValue) - mcPrecision; drop > 0; drop = digitsCount(unscaledValue) - mcPrecision) {
+      scale -= drop;
+      unscaledValue = divideAndRound(unscaledValue, TEN_POWERS[drop]);
+    }
+    if (scale < Integer.MIN_VALUE || scale > Integer.MAX_VALUE) {
+      return false;
+    }
+    unscaledValues[idx] = unscaledValue;
+    scales[idx] = (int)scale;
+    return true;
+  }
+
+  private final long divideAndRound(final long dividend, final long divisor) {
+    final long quotient = dividend / divisor;
+    final long remainder = dividend % divisor;
+    final long result;
+    if (remainder == 0) {
+      result = quotient;
+    } else {
+      final int quotientSign = (dividend < 0) == (divisor < 0) ? 1 : -1;
+      result = needIncrement(divisor, quotientSign, quotient, remainder) ? quotient + quotientSign : quotient;
+    }
+    return result;
+  }
+
+  /**
+   * @param remainder Must not be 0.
+   * @return {@code true} if the magnitude of the truncated {@code quotient} must be incremented according to the {@link RoundingMode}.
+   */
+  private final boolean needIncrement(final long divisor, final int quotientSign, final long quotient, final long remainder) {
+    final boolean result;
+    switch (mc.getRoundingMode()) {
+      case UP: {
+        result = true;
+        break;
+      }
+      case DOWN: {
+        result = false;
+        break;
+      }
+      case CEILING: {
+        result = quotientSign > 0;
+        break;
+      }
+      case FLOOR: {
+        result = quotientSign < 0;
+        break;
+      }
+      case HALF_UP:
+      case HALF_DOWN:
+      case HALF_EVEN: {
+        final long absRemainder = Math.abs(remainder);
+        final long absDivisor = Math.abs(divisor);
+        //2 * |remainder| compared with |divisor| without overflow
+        final int comparisonWithHalf = absRemainder > absDivisor - absRemainder ? 1 : (absRemainder == absDivisor - absRemainder ? 0 : -1);
+        if (comparisonWithHalf != 0) {
+          result = comparisonWithHalf > 0;
+        } else if (mc.getRoundingMode() == RoundingMode.HALF_UP) {
+          result = true;
+        } else if (mc.getRoundingMode() == RoundingMode.HALF_DOWN) {
+          result = false;
+        } else {
+          result = (quotient & 1) != 0;
+        }
+        break;
+      }
+      case UNNECESSARY: {
+        throw new ArithmeticException("Rounding necessary");
+      }
+      default: {
+        throw new AssertionError(String.format("%s is not accounted", mc.getRoundingMode()));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return {@link #INFLATED} if the result does not fit in a {@code long}.
+   */
+  private static final long multiplyPowerTen(final long value, final long n) {
+    final long result;
+    if (value == 0 || n == 0) {
+      result = value;
+    } else if (n < TEN_POWERS.length && Math.abs(value) <= MULTIPLICATION_LIMITS[(int)n]) {
+      result = value * TEN_POWERS[(int)n];
+    } else {
+      result = INFLATED;
+    }
+    return result;
+  }
+
+  /**
+   * @param value Must not be {@link #INFLATED}.
+   * @return The number of decimal digits in the value, the same as {@link BigDecimal#precision()} of a {@link BigDecimal} with this unscaled value.
+   */
+  private static final int digitsCount(final long value) {
+    final long absValue = Math.abs(value);
+    if (absValue < 10) {
+      return 1;
+    }
+    final int estimate = ((64 - Long.numberOfLeadingZeros(absValue) + 1) * 1233) >>> 12;//log10(2) is approximately 1233 / 4096
+    return (estimate >= TEN_POWERS.length || absValue < TEN_POWERS[estimate]) ? estimate : estimate + 1;
+  }
+
+  private static final LogicalType operatorOf(final int instruction) {
+    final LogicalType result;
+    switch (instruction) {
+      case ADD: {
+        result = LogicalType.OPERATOR_ADD;
+        break;
+      }
+      case SUB: {
+        result = LogicalType.OPERATOR_SUB;
+        break;
+      }
+      case MULT: {
+        result = LogicalType.OPERATOR_MULT;
+        break;
+      }
+      case DIV: {
+        result = LogicalType.OPERATOR_DIV;
+        break;
+      }
+      default: {
+        throw new AssertionError(String.format("Instruction %s is not accounted", instruction));
+      }
+    }
+    return result;
+  }
+
+  private static final int instructionOf(final LogicalType operator) {
+    final int result;
+    switch (operator) {
+      case OPERATOR_ADD: {
+        result = ADD;
+        break;
+      }
+      case OPERATOR_SUB: {
+        result = SUB;
+        break;
+      }
+      case OPERATOR_MULT: {
+        result = MULT;
+        break;
+      }
+      case OPERATOR_DIV: {
+        result = DIV;
+        break;
+      }
+      default: {
+        throw new AssertionError(String.format("%s is not accounted", operator));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{codeLength=" + code.length + ", maxStackSize=" + maxStackSize + ", mc=" + mc + '}';
+  }
+
+  /**
+   * The stack and the variables of an evaluation. May be reused by subsequent evaluations.
+   */
+  @NotThreadSafe static final class Frame {
+    private long[] unscaledValues;
+    private int[] scales;
+    private BigDecimal[] inflatedValues;
+    private long[] varUnscaledValues;
+    private int[] varScales;
+    private BigDecimal[] inflatedVars;
+
+    private Frame() {
+      unscaledValues = new long[0];
+      scales = new int[0];
+      inflatedValues = new BigDecimal[0];
+      varUnscaledValues = new long[0];
+      varScales = new int[0];
+      inflatedVars = new BigDecimal[0];
+    }
+
+    private final void ensureCapacity(final int stackSize, final int varsCount) {
+      if (unscaledValues.length < stackSize) {
+        unscaledValues = new long[stackSize];
+        scales = new int[stackSize];
+        inflatedValues = new BigDecimal[stackSize];
+      }
+      if (varUnscaledValues.length < varsCount) {
+        varUnscaledValues = new long[varsCount];
+        varScales = new int[varsCount];
+        inflatedVars = new BigDecimal[varsCount];
+      }
+    }
+  }
+
+  private static final class Writer {
+    private int[] code;
+    private int codeSize;
+    private long[] constantUnscaledValues;
+    private int[] constantScales;
+    private BigDecimal[] inflatedConstants;
+    private int constantsCount;
+    private int stackSize;
+    private int maxStackSize;
+
+    private Writer() {
+      code = new int[16];
+      codeSize = 0;
+      constantUnscaledValues = new long[8];
+      constantScales = new int[8];
+      inflatedConstants = new BigDecimal[8];
+      constantsCount = 0;
+      stackSize = 0;
+      maxStackSize = 0;
+    }
+
+    private final void write(final Node node) {
+      if (node instanceof Constant) {
+        final BigDecimal value = ((Constant)node).getValue();
+        if (constantsCount == constantScales.length) {
+          constantUnscaledValues = Arrays.copyOf(constantUnscaledValues, 2 * constantsCount);
+          constantScales = Arrays.copyOf(constantScales, 2 * constantsCount);
+          inflatedConstants = Arrays.copyOf(inflatedConstants, 2 * constantsCount);
+        }
+        if (value.precision() <= MAX_PRECISION) {
+          constantUnscaledValues[constantsCount] = value.unscaledValue()
+              .longValue();
+          constantScales[constantsCount] = value.scale();
+        } else {
+          inflatedConstants[constantsCount] = value;
+        }
+        emit(1, CONST, constantsCount);
+        constantsCount++;
+      } else if (node instanceof Variable) {
+        emit(1, LOAD, ((Variable)node).getSlot());
+      } else if (node instanceof Operation) {
+        final Operation operation = (Operation)node;
+        write(operation.getOperand1());
+        write(operation.getOperand2());
+        emit(-1, instructionOf(operation.getOperator()));
+      } else if (node instanceof Let) {
+        final Let let = (Let)node;
+        write(let.getValue());
+        emit(-1, STORE, let.getVariable()
+            .getSlot());
+        write(let.getBody());
+      } else if (node instanceof Shared) {
+        final Shared shared = (Shared)node;
+        write(shared.getExpression());
+        emit(-1, STORE, shared.getSlot());
+        emit(1, LOAD, shared.getSlot());
+      } else {
+        throw new AssertionError(String.format("%s is not accounted", node));
+      }
+    }
+
+    private final void emit(final int stackDelta, final int... instruction) {
+      if (codeSize + instruction.length > code.length) {
+        code = Arrays.copyOf(code, 2 * code.length);
+      }
+      System.arraycopy(instruction, 0, code, codeSize, instruction.length);
+      codeSize += instruction.length;
+      stackSize += stackDelta;
+      maxStackSize = Math.max(maxStackSize, stackSize);
+    }
+  }
+}
@@ -0,0 +1,365 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import stincmale.exprcalculator.LazyLogger;
+import stincmale.exprcalculator.logic.ExpressionPlan.Constant;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Node;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Shared;
+import stincmale.exprcalculator.logic.ExpressionPlan.Variable;
+import stincmale.exprcalculator.logic.Word.LogicalType;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An expression with free variables, like {@link PreparedExpression}, which keeps the value of each of its operations,
+ * so that when values of some variables are {@linkplain #set(int, BigDecimal) changed}, {@linkplain #evaluate() evaluation}
+ * only recalculates the operations that depend on the changed variables, e.g. a spreadsheet cell whose inputs change.
+ * <p>
+ * The {@linkplain PlanOptimizer optimized} {@link ExpressionPlan} is converted to a graph of operations, constants and variables,
+ * where a use of a {@code let} variable or of a {@link Shared} subexpression is an edge to the node that calculates its value.
+ * Nodes are numbered in the order of evaluation of the plan, which is a topological order of the graph.
+ * Evaluation recalculates the dirty nodes in this order, and a node whose value has not changed does not make its dependents dirty.
+ * Therefore the cost of an evaluation is proportional to the number of the operations on the paths from the changed variables to the root,
+ * e.g. to the depth of the changed variable in a tree without {@code let}s, rather than to the size of the expression.
+ * <p>
+ * The result and the reported problems are the same as if the expression were evaluated by {@link PreparedExpression}:
+ * if several operations fail, the one which is the earliest in the order of evaluation is reported.
+ */
+@NotThreadSafe public final class IncrementalExpression {
+  private static final LazyLogger logger = LazyLogger.getLogger(IncrementalExpression.class);
+
+  private final String expr;
+  private final MathContext mc;
+  private final List<String> variables;
+  private final Map<String, Integer> variableIdxs;
+  /**
+   * Operators of nodes indexed by nodes, {@code null} for variables and constants.
+   * The node {@code i}, where {@code i} is less than the number of variables, is the variable {@code i}.
+   */
+  private final Word[] operators;
+  private final int[] operands1;
+  private final int[] operands2;
+  private final int[][] dependents;
+  private final int root;
+  /**
+   * Values of nodes, {@code null} if a node has not been calculated or could not be calculated.
+   */
+  private final BigDecimal[] values;
+  /**
+   * The nodes which could not be calculated even though their operands were calculated.
+   */
+  private final BitSet failed;
+  private final DirtyNodes dirty;
+  private int unboundVariablesCount;
+  private boolean calculated;
+  private int recalculatedCount;
+
+  /**
+   * @param expr An expression which may use the free {@code variables}.
+   * @param variables Distinct names of the free variables, which must be valid variable names. The order defines the indices of variables.
+   * @throws CalculationException If the expression is not syntactically valid, or declares a variable with the same name as a free variable.
+   */
+  public IncrementalExpression(final String expr, final List<String> variables, final MathContext mc) throws CalculationException {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    checkNotNull(variables, "The argument %s must not be null", "variables");
+    checkNotNull(mc, "The argument %s must not be null", "mc");
+    for (final String variable : variables) {
+      checkArgument(PreparedExpression.isVariableName(variable),
+          "The argument %s=%s contains an invalid variable name %s", "variables", variables, variable);
+    }
+    this.expr = expr;
+    this.mc = mc;
+    this.variables = List.copyOf(variables);
+    variableIdxs = new HashMap<>();
+    for (int i = 0; i < this.variables.size(); i++) {
+      variableIdxs.put(this.variables.get(i), i);
+    }
+    logger.debug("Preparing '{}' with variables {} for incremental evaluation", expr, this.variables);
+    final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression(expr, mc), this.variables, true);
+    final GraphBuilder graph = new GraphBuilder(this.variables.size(), plan.getSlotsCount());
+    root = graph.add(plan.getRoot());
+    final int nodesCount = graph.operators.size();
+    operators = graph.operators.toArray(new Word[0]);
+    operands1 = Arrays.copyOf(graph.operands1, nodesCount);
+    operands2 = Arrays.copyOf(graph.operands2, nodesCount);
+    dependents = new int[nodesCount][];
+    for (int i = 0; i < nodesCount; i++) {
+      dependents[i] = graph.dependents.get(i)
+          .stream()
+          .mapToInt(Integer::intValue)
+          .toArray();
+    }
+    values = graph.constants.toArray(new BigDecimal[0]);
+    failed = new BitSet();
+    dirty = new DirtyNodes(nodesCount);
+    unboundVariablesCount = this.variables.size();
+    calculated = false;
+    recalculatedCount = 0;
+  }
+
+  /**
+   * @return Names of the free variables in the order of their indices.
+   */
+  public final List<String> getVariables() {
+    return variables;
+  }
+
+  /**
+   * Changes the value of the variable {@code variableIdx}, the expression is recalculated by the next {@link #evaluate()}.
+   * The value is rounded according to the {@link MathContext} the same way {@link PreparedExpression} rounds values.
+   */
+  public final void set(final int variableIdx, final BigDecimal value) {
+    checkElementIndex(variableIdx, variables.size(), "variableIdx");
+    checkNotNull(value, "The argument %s must not be null", "value");
+    final BigDecimal rounded = value.round(mc);
+    @Nullable final BigDecimal previous = values[variableIdx];
+    if (previous == null) {
+      unboundVariablesCount--;
+    }
+    if (!rounded.equals(previous)) {
+      values[variableIdx] = rounded;
+      dirtyDependents(variableIdx);
+    }
+  }
+
+  /**
+   * @see #set(int, BigDecimal)
+   */
+  public final void set(final String variable, final BigDecimal value) {
+    checkNotNull(variable, "The argument %s must not be null", "variable");
+    @Nullable final Integer variableIdx = variableIdxs.get(variable);
+    checkArgument(variableIdx != null, "The argument %s=%s is not one of %s", "variable", variable, variables);
+    set(variableIdx, value);
+  }
+
+  /**
+   * Recalculates the operations which depend on the variables {@linkplain #set(int, BigDecimal) changed} since the previous evaluation.
+   * The first evaluation calculates all operations.
+   *
+   * @throws IllegalStateException If a value of some variable has never been {@linkplain #set(int, BigDecimal) set}.
+   */
+  public final BigDecimal evaluate() throws CalculationException, IllegalStateException {
+    checkState(unboundVariablesCount == 0, "Values of %s out of %s variables have not been set", unboundVariablesCount, variables.size());
+    recalculatedCount = 0;
+    if (calculated) {
+      for (int node = dirty.poll(); node >= 0; node = dirty.poll()) {
+        recalculate(node);
+      }
+    } else {
+      for (int node = variables.size(); node < operators.length; node++) {
+        if (operators[node] != null) {
+          recalculate(node);
+        }
+      }
+      calculated = true;
+    }
+    final int firstFailed = failed.nextSetBit(0);
+    if (firstFailed >= 0) {
+      throw new CalculationException(operators[firstFailed], expr);
+    }
+    final BigDecimal result = values[root];
+    assert result != null;
+    return result;
+  }
+
+  /**
+   * @return The number of operations recalculated by the last {@link #evaluate()}.
+   */
+  final int getRecalculatedCount() {
+    return recalculatedCount;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{expr='" + expr + "', variables=" + variables + ", mc=" + mc + '}';
+  }
+
+  private final void recalculate(final int node) {
+    recalculatedCount++;
+    @Nullable final BigDecimal v1 = values[operands1[node]];
+    @Nullable final BigDecimal v2 = values[operands2[node]];
+    @Nullable BigDecimal value = null;
+    if (v1 != null && v2 != null) {
+      try {
+        value = operators[node].getLogicalType()
+            .calculate(v1, v2, mc);
+        failed.clear(node);
+      } catch (final RuntimeException e) {
+        failed.set(node);
+      }
+    } else {//an operand could not be calculated
+      failed.clear(node);
+    }
+    if (!Objects.equals(value, values[node])) {
+      values[node] = value;
+      dirtyDependents(node);
+    }
+  }
+
+  /**
+   * Does nothing until all nodes are {@linkplain #calculated calculated}, because the first evaluation calculates all of them anyway.
+   */
+  private final void dirtyDependents(final int node) {
+    if (!calculated) {
+      return;
+    }
+    for (final int dependent : dependents[node]) {
+      dirty.add(dependent);
+    }
+  }
+
+  /**
+   * Converts a tree of {@link Node}s to the graph, see {@link IncrementalExpression}.
+   */
+  private static final class GraphBuilder {
+    private final List<Word> operators;
+    private int[] operands1;
+    private int[] operands2;
+    private final List<List<Integer>> dependents;
+    private final List<BigDecimal> constants;
+    /**
+     * The nodes which calculate the current values of slots.
+     */
+    private final int[] slotNodes;
+
+    private GraphBuilder(final int variablesCount, final int slotsCount) {
+      operators = new ArrayList<>();
+      operands1 = new int[Math.max(variablesCount, 16)];
+      operands2 = new int[operands1.length];
+      dependents = new ArrayList<>();
+      constants = new ArrayList<>();
+      slotNodes = new int[slotsCount];
+      for (int i = 0; i < variablesCount; i++) {
+        slotNodes[i] = newNode(null, -1, -1, null);
+      }
+    }
+
+    /**
+     * @return The node which calculates the value of the {@code node}.
+     */
+    private final int add(final Node node) {
+      final int result;
+      if (node instanceof Constant) {
+        result = newNode(null, -1, -1, ((Constant)node).getValue());
+      } else if (node instanceof Variable) {
+        result = slotNodes[((Variable)node).getSlot()];
+      } else if (node instanceof Operation) {
+        final Operation operation = (Operation)node;
+        final int operand1 = add(operation.getOperand1());
+        final int operand2 = add(operation.getOperand2());
+        result = newNode(operation.getWord(), operand1, operand2, null);
+        dependents.get(operand1)
+            .add(result);
+        if (operand2 != operand1) {
+          dependents.get(operand2)
+              .add(result);
+        }
+      } else if (node instanceof Let) {
+        final Let let = (Let)node;
+        slotNodes[let.getVariable()
+            .getSlot()] = add(let.getValue());
+        result = add(let.getBody());
+      } else if (node instanceof Shared) {
+        final Shared shared = (Shared)node;
+        result = add(shared.getExpression());
+        slotNodes[shared.getSlot()] = result;
+      } else {
+        throw new AssertionError(String.format("%s is not accounted", node.getClass()));
+      }
+      return result;
+    }
+
+    private final int newNode(@Nullable final Word operator, final int operand1, final int operand2, @Nullable final BigDecimal constant) {
+      assert operator == null || operator.getLogicalType() != LogicalType.OPERATOR_LET;
+      final int result = operators.size();
+      if (result == operands1.length) {
+        operands1 = Arrays.copyOf(operands1, 2 * result);
+        operands2 = Arrays.copyOf(operands2, 2 * result);
+      }
+      operators.add(operator);
+      operands1[result] = operand1;
+      operands2[result] = operand2;
+      dependents.add(new ArrayList<>(1));
+      constants.add(constant);
+      return result;
+    }
+  }
+
+  /**
+   * A set of nodes which are {@linkplain #poll() polled} in the ascending order, i.e. in the order of evaluation,
+   * implemented as a binary min-heap.
+   */
+  private static final class DirtyNodes {
+    private final boolean[] contained;
+    private int[] heap;
+    private int size;
+
+    private DirtyNodes(final int nodesCount) {
+      contained = new boolean[nodesCount];
+      heap = new int[16];
+      size = 0;
+    }
+
+    private final void add(final int node) {
+      if (!contained[node]) {
+        contained[node] = true;
+        if (size == heap.length) {
+          heap = Arrays.copyOf(heap, 2 * size);
+        }
+        int idx = size++;
+        while (idx > 0) {
+          final int parentIdx = (idx - 1) >>> 1;
+          if (heap[parentIdx] <= node) {
+            break;
+          }
+          heap[idx] = heap[parentIdx];
+          idx = parentIdx;
+        }
+        heap[idx] = node;
+      }
+    }
+
+    /**
+     * @return The smallest node, or a negative value if there are no nodes.
+     */
+    private final int poll() {
+      if (size == 0) {
+        return -1;
+      }
+      final int result = heap[0];
+      contained[result] = false;
+      final int last = heap[--size];
+      int idx = 0;
+      while (true) {
+        int childIdx = 2 * idx + 1;
+        if (childIdx >= size) {
+          break;
+        }
+        if (childIdx + 1 < size && heap[childIdx + 1] < heap[childIdx]) {
+          childIdx++;
+        }
+        if (last <= heap[childIdx]) {
+          break;
+        }
+        heap[idx] = heap[childIdx];
+        idx = childIdx;
+      }
+      heap[idx] = last;
+      return result;
+    }
+  }
+}
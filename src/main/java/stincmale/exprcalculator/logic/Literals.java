@@ -0,0 +1,127 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Converts {@link Word.Type#NUMERIC} words to numbers the same way {@link BigDecimal#BigDecimal(String, MathContext)} does.
+ * <p>
+ * A literal that consists of an optional leading {@code '-'}, at most {@link #MAX_DIGITS} ASCII digits and at most one {@code '.'}
+ * is parsed directly from the symbols of the expression into an unscaled {@code long} value and a scale.
+ * Numbers produced from such literals are interned in a direct-mapped table, i.e. a literal occupies the entry chosen by its unscaled value and scale
+ * until a different literal that maps to the same entry is seen, so repeatedly used literals, e.g. {@code 1} or {@code 0.5}, do not cause allocations.
+ * Any other literal, including a malformed one, e.g. {@code 1.2.3}, is converted by {@link BigDecimal#BigDecimal(String, MathContext)},
+ * which means that problems are reported exactly the same way.
+ * <p>
+ * Since the numbers depend on the {@link MathContext}, there is a table per {@link MathContext}, see {@link #of(MathContext)}.
+ */
+@ThreadSafe final class Literals {
+  static final int MAX_DIGITS = 18;
+  private static final int MAX_INTERNING_MATH_CONTEXTS = 16;
+  private static final int ENTRIES_COUNT = 1 << 9;
+  private static final ConcurrentMap<MathContext, Literals> instances = new ConcurrentHashMap<>();
+
+  private final MathContext mc;
+  /**
+   * Elements are written and read without synchronization, which is fine because {@link Entry} is immutable.
+   * {@code null} if literals are not interned.
+   */
+  @Nullable private final Entry[] entries;
+
+  private Literals(final MathContext mc, final boolean interning) {
+    this.mc = mc;
+    entries = interning ? new Entry[ENTRIES_COUNT] : null;
+  }
+
+  /**
+   * Interning tables are only created for the first {@link #MAX_INTERNING_MATH_CONTEXTS} distinct {@link MathContext}s,
+   * so the memory they occupy is bounded. Literals are still parsed directly for other {@link MathContext}s, but are not interned.
+   */
+  static final Literals of(final MathContext mc) {
+    checkNotNull(mc, "The argument %s must not be null", "mc");
+    @Nullable Literals result = instances.get(mc);
+    if (result == null) {
+      if (instances.size() < MAX_INTERNING_MATH_CONTEXTS) {
+        result = instances.computeIfAbsent(mc, key -> new Literals(key, true));
+      } else {
+        result = new Literals(mc, false);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param literal A string containing a {@link Word.Type#NUMERIC} word in the range {@code [fromIdx, toIdx)}.
+   * @throws NumberFormatException If the word is not a number.
+   */
+  final BigDecimal parse(final String literal, final int fromIdx, final int toIdx) throws NumberFormatException {
+    checkNotNull(literal, "The argument %s must not be null", "literal");
+    checkArgument(fromIdx >= 0 && fromIdx <= toIdx && toIdx <= literal.length(),
+        "The arguments %s=%s, %s=%s must specify a range within [0, %s]", "fromIdx", fromIdx, "toIdx", toIdx, literal.length());
+    final boolean negative = fromIdx < toIdx && literal.charAt(fromIdx) == '-';
+    long unscaled = 0;
+    int digitsCount = 0;
+    int scale = -1;
+    for (int i = negative ? fromIdx + 1 : fromIdx; i < toIdx; i++) {
+      final char symbol = literal.charAt(i);
+      if (symbol >= '0' && symbol <= '9' && digitsCount < MAX_DIGITS) {
+        unscaled = 10 * unscaled + (symbol - '0');
+        digitsCount++;
+        if (scale >= 0) {
+          scale++;
+        }
+      } else if (symbol == '.' && scale < 0) {
+        scale = 0;
+      } else {//too long, not ASCII or malformed
+        return new BigDecimal(literal.substring(fromIdx, toIdx), mc);
+      }
+    }
+    if (digitsCount == 0) {//malformed
+      return new BigDecimal(literal.substring(fromIdx, toIdx), mc);
+    }
+    return valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+  }
+
+  private final BigDecimal valueOf(final long unscaled, final int scale) {
+    final BigDecimal result;
+    if (entries == null) {
+      result = BigDecimal.valueOf(unscaled, scale)
+          .round(mc);
+    } else {
+      final int idx = (int)((unscaled * 31 + scale) ^ (unscaled >>> 32)) & (ENTRIES_COUNT - 1);
+      @Nullable final Entry entry = entries[idx];
+      if (entry != null && entry.unscaled == unscaled && entry.scale == scale) {
+        result = entry.value;
+      } else {
+        result = BigDecimal.valueOf(unscaled, scale)
+            .round(mc);
+        entries[idx] = new Entry(unscaled, scale, result);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{mc=" + mc + ", interning=" + (entries != null) + '}';
+  }
+
+  @Immutable private static final class Entry {
+    private final long unscaled;
+    private final int scale;
+    private final BigDecimal value;
+
+    private Entry(final long unscaled, final int scale, final BigDecimal value) {
+      this.unscaled = unscaled;
+      this.scale = scale;
+      this.value = value;
+    }
+  }
+}
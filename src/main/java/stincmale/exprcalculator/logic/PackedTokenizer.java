@@ -0,0 +1,360 @@
+package stincmale.exprcalculator.logic;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import stincmale.exprcalculator.logic.Word.LogicalType;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Splits an expression into the same words {@link ExpressionSpliterator} produces and detects the same problems,
+ * but instead of creating a {@link Word} per token writes tokens into primitive arrays which are reused by subsequent
+ * {@linkplain #tokenize(String) tokenizations}. Once the arrays are large enough, tokenization does not allocate objects,
+ * unless there is a problem with the expression.
+ * <p>
+ * A token is described by its start index in the expression, length, {@link LogicalType},
+ * and for {@link LogicalType#OPERAND} tokens also by the literal index, which is the number of preceding numeric literals.
+ * Numeric literals are validated but are not converted to numbers.
+ */
+@NotThreadSafe final class PackedTokenizer {
+  private static final LogicalType[] logicalTypes = LogicalType.values();
+  private static final int EMPTY = 0;
+  private static final int LITERAL = 1;
+  private static final int NUMERIC = 2;
+  private static final int OPENING_BRACKET = 3;
+  private static final int CLOSING_BRACKET = 4;
+  private static final int COMMA = 5;
+  private static final byte DIGIT_SYMBOL = 1;
+  private static final byte ALPHABETIC_SYMBOL = 1 << 1;
+  private static final byte EMPTY_SYMBOL = 1 << 2;
+  /**
+   * Classes of ASCII symbols as specified by {@link Character#isDigit(char)}, {@link Character#isAlphabetic(int)}
+   * and {@link ExpressionSpliterator#isEmptySymbol(char)}, which are noticeably slower than a table lookup.
+   */
+  private static final byte[] asciiSymbolClasses = asciiSymbolClasses();
+
+  private int[] starts;
+  private int[] lengths;
+  private byte[] types;
+  private int[] literalIdxs;
+  private int count;
+  private int literalsCount;
+  @Nullable private String expr;
+  private int idx;
+  private int wordStartIdx;
+  private int wordType;
+  private int bracketsCount;
+  private int commasCount;
+  private boolean failed;
+  private int problemIdx;
+
+  PackedTokenizer() {
+    final int initialCapacity = 16;
+    starts = new int[initialCapacity];
+    lengths = new int[initialCapacity];
+    types = new byte[initialCapacity];
+    literalIdxs = new int[initialCapacity];
+    count = 0;
+    literalsCount = 0;
+    expr = null;
+    idx = 0;
+    wordStartIdx = 0;
+    wordType = EMPTY;
+    bracketsCount = 0;
+    commasCount = 0;
+    failed = false;
+    problemIdx = -1;
+  }
+
+  /**
+   * Discards the tokens of the previously tokenized expression.
+   *
+   * @return The number of tokens.
+   */
+  final int tokenize(final String expr) throws CalculationException {
+    reset(expr);
+    while (advance()) {
+      //produce all tokens
+    }
+    if (failed) {
+      throw new CalculationException(problemIdx, expr);
+    }
+    return count;
+  }
+
+  /**
+   * Discards the tokens of the previously tokenized expression and prepares to {@linkplain #advance() tokenize} the {@code expr}
+   * token by token.
+   */
+  final void reset(final String expr) {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    this.expr = expr;
+    count = 0;
+    literalsCount = 0;
+    idx = 0;
+    wordStartIdx = 0;
+    wordType = EMPTY;
+    bracketsCount = 0;
+    commasCount = 0;
+    failed = false;
+    problemIdx = -1;
+  }
+
+  /**
+   * Produces the next token of the expression specified via {@link #reset(String)}, which becomes the last of the {@link #count()} tokens.
+   * Unlike {@link #tokenize(String)}, does not throw {@link CalculationException} but records the problem, see {@link #isFailed()},
+   * which allows detecting problems in the same order as the {@link ExpressionSpliterator} does while its words are being consumed.
+   *
+   * @return {@code false} if there are no more tokens or there is a problem with the expression.
+   */
+  final boolean advance() {
+    assert expr != null;
+    final String expr = this.expr;
+    final int length = expr.length();
+    final int initialCount = count;
+    for (; count == initialCount && !failed && idx <= length; idx++) {
+      final boolean endOfExpression = idx == length;
+      final int problemIdx = endOfExpression ? length - 1 : idx;
+      final char symbol = endOfExpression ? ' ' : expr.charAt(idx);
+      boolean valid = true;
+      if (idx == 0) {
+        wordType = wordTypeFor(symbol);
+        valid = wordType >= 0;
+        idx = lastIdxOfWord(expr, idx, wordType);
+      } else {
+        boolean wordEnded = true;
+        switch (wordType) {
+          case EMPTY: {
+            break;
+          }
+          case COMMA: {
+            valid = commasCount == 0;
+            commasCount++;
+            break;
+          }
+          case OPENING_BRACKET: {
+            bracketsCount++;
+            commasCount = 0;
+            break;
+          }
+          case CLOSING_BRACKET: {
+            bracketsCount--;
+            valid = bracketsCount >= 0;
+            commasCount = 0;
+            if (valid) {
+              add(wordStartIdx, idx, LogicalType.CALCULATION, -1);
+            }
+            break;
+          }
+          case LITERAL: {
+            commasCount = 0;
+            if (symbol == '_' || isAlphabetic(symbol) || isDigit(symbol)) {
+              wordEnded = false;
+            } else if (isTrailerSymbol(symbol)) {
+              @Nullable final LogicalType operator = LogicalType.operatorOf(expr, wordStartIdx, idx);
+              add(wordStartIdx, idx, operator == null ? LogicalType.OPERAND_VAR : operator, -1);
+            } else {//invalid symbol
+              valid = false;
+            }
+            break;
+          }
+          case NUMERIC: {
+            commasCount = 0;
+            if (symbol == '.' || isDigit(symbol)) {
+              wordEnded = false;
+            } else if (isTrailerSymbol(symbol) && ExpressionSpliterator.isNumber(expr, wordStartIdx, idx)) {
+              add(wordStartIdx, idx, LogicalType.OPERAND, literalsCount++);
+            } else {//invalid symbol or malformed number
+              valid = false;
+            }
+            break;
+          }
+          default: {
+            throw new AssertionError(String.format("%s is not considered", wordType));
+          }
+        }
+        if (valid && wordEnded) {
+          wordStartIdx = idx;
+          wordType = wordTypeFor(symbol);
+          valid = wordType >= 0;
+          idx = lastIdxOfWord(expr, idx, wordType);
+        }
+        if (valid && endOfExpression && bracketsCount != 0) {
+          valid = false;
+        }
+      }
+      if (!valid) {
+        failed = true;
+        this.problemIdx = problemIdx;
+        if (count > initialCount) {//the token is not produced because of the problem
+          count--;
+          if (literalIdxs[count] >= 0) {
+            literalsCount--;
+          }
+        }
+      }
+    }
+    return count > initialCount;
+  }
+
+  /**
+   * @return {@code true} if {@link #advance()} has detected a problem with the expression.
+   */
+  final boolean isFailed() {
+    return failed;
+  }
+
+  /**
+   * @return The index in the expression of the problem detected by {@link #advance()}, see {@link CalculationException}.
+   */
+  final int getProblemIdx() {
+    assert failed;
+    return problemIdx;
+  }
+
+  /**
+   * @return The number of tokens produced by the last {@linkplain #tokenize(String) tokenization}.
+   */
+  final int count() {
+    return count;
+  }
+
+  /**
+   * @return The number of {@link LogicalType#OPERAND} tokens produced by the last {@linkplain #tokenize(String) tokenization}.
+   */
+  final int literalsCount() {
+    return literalsCount;
+  }
+
+  /**
+   * @return The index in the expression of the first symbol of the token.
+   */
+  final int start(final int tokenIdx) {
+    assert tokenIdx < count;
+    return starts[tokenIdx];
+  }
+
+  final int length(final int tokenIdx) {
+    assert tokenIdx < count;
+    return lengths[tokenIdx];
+  }
+
+  final LogicalType logicalType(final int tokenIdx) {
+    assert tokenIdx < count;
+    return logicalTypes[types[tokenIdx]];
+  }
+
+  /**
+   * @return The number of {@link LogicalType#OPERAND} tokens preceding the token,
+   * or a negative value if the token is not {@link LogicalType#OPERAND}.
+   */
+  final int literalIdx(final int tokenIdx) {
+    assert tokenIdx < count;
+    return literalIdxs[tokenIdx];
+  }
+
+  private final void add(final int fromIdx, final int toIdx, final LogicalType ltype, final int literalIdx) {
+    if (count == starts.length) {
+      final int newCapacity = 2 * count;
+      starts = Arrays.copyOf(starts, newCapacity);
+      lengths = Arrays.copyOf(lengths, newCapacity);
+      types = Arrays.copyOf(types, newCapacity);
+      literalIdxs = Arrays.copyOf(literalIdxs, newCapacity);
+    }
+    starts[count] = fromIdx;
+    lengths[count] = toIdx - fromIdx;
+    types[count] = (byte)ltype.ordinal();
+    literalIdxs[count] = literalIdx;
+    count++;
+  }
+
+  /**
+   * Has the same semantics as {@code ExpressionSpliterator.wordTypeFor}.
+   *
+   * @return A negative value if the symbol is unknown.
+   */
+  private static final int wordTypeFor(final char startingSymbol) {
+    final int result;
+    if (startingSymbol == '(') {
+      result = OPENING_BRACKET;
+    } else if (startingSymbol == ')') {
+      result = CLOSING_BRACKET;
+    } else if (startingSymbol == ',') {
+      result = COMMA;
+    } else if (startingSymbol == '-' || isDigit(startingSymbol)) {
+      result = NUMERIC;
+    } else if (startingSymbol == '_' || isAlphabetic(startingSymbol)) {
+      result = LITERAL;
+    } else if (isEmptySymbol(startingSymbol)) {
+      result = EMPTY;
+    } else {
+      result = -1;
+    }
+    return result;
+  }
+
+  /**
+   * Finds where a word ends without going through the symbols one by one in {@link #advance()},
+   * which is noticeably faster because there is no need to choose what to do with each symbol.
+   * This is possible because the symbols that continue a word can not cause problems.
+   *
+   * @param startIdx The index of the first symbol of a word.
+   * @param wordType A negative value if the type of the word is unknown.
+   * @return The index of the last symbol of the word, which is {@code startIdx} if the word consists of a single symbol,
+   * or if symbols of the word are processed one by one.
+   */
+  private static final int lastIdxOfWord(final String expr, final int startIdx, final int wordType) {
+    final int length = expr.length();
+    int result = startIdx;
+    switch (wordType) {
+      case LITERAL: {
+        for (char symbol; result + 1 < length && ((symbol = expr.charAt(result + 1)) == '_' || isAlphabetic(symbol) || isDigit(symbol)); ) {
+          result++;
+        }
+        break;
+      }
+      case NUMERIC: {
+        for (char symbol; result + 1 < length && ((symbol = expr.charAt(result + 1)) == '.' || isDigit(symbol)); ) {
+          result++;
+        }
+        break;
+      }
+      case EMPTY: {
+        while (result + 1 < length && isEmptySymbol(expr.charAt(result + 1))) {
+          result++;
+        }
+        break;
+      }
+      default: {
+        //symbols are processed one by one
+      }
+    }
+    return result;
+  }
+
+  private static final boolean isTrailerSymbol(final char symbol) {
+    return symbol == '(' || symbol == ')' || symbol == ',' || isEmptySymbol(symbol);
+  }
+
+  private static final boolean isDigit(final char symbol) {
+    return symbol < asciiSymbolClasses.length ? (asciiSymbolClasses[symbol] & DIGIT_SYMBOL) != 0 : Character.isDigit(symbol);
+  }
+
+  private static final boolean isAlphabetic(final char symbol) {
+    return symbol < asciiSymbolClasses.length ? (asciiSymbolClasses[symbol] & ALPHABETIC_SYMBOL) != 0 : Character.isAlphabetic(symbol);
+  }
+
+  private static final boolean isEmptySymbol(final char symbol) {
+    return symbol < asciiSymbolClasses.length ? (asciiSymbolClasses[symbol] & EMPTY_SYMBOL) != 0 : ExpressionSpliterator.isEmptySymbol(symbol);
+  }
+
+  private static final byte[] asciiSymbolClasses() {
+    final byte[] result = new byte[128];
+    for (char symbol = 0; symbol < result.length; symbol++) {
+      result[symbol] = (byte)((Character.isDigit(symbol) ? DIGIT_SYMBOL : 0) |
+          (Character.isAlphabetic(symbol) ? ALPHABETIC_SYMBOL : 0) |
+          (ExpressionSpliterator.isEmptySymbol(symbol) ? EMPTY_SYMBOL : 0));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,235 @@
+package stincmale.exprcalculator.logic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.LazyLogger;
+import stincmale.exprcalculator.Main;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Does the same as {@link BatchCalculator}, but calculates expressions in parallel while still writing results in the input order.
+ * <p>
+ * Lines are read into segments which are submitted to a {@link ForkJoinPool}. A segment is recursively split in halves
+ * by the estimated cost of its expressions until the cost of a part is small enough, so that workers steal comparable amounts of work,
+ * and an expression which is much more costly than others is calculated concurrently with the expressions around it.
+ * The cost of an expression is estimated by its length, which is proportional to the number of tokens in it.
+ * <p>
+ * The results of at most {@code bufferSize} lines are held in memory: the reading stops until the earliest submitted segment
+ * is calculated and its results are written if accepting more lines would exceed the buffer.
+ */
+@ThreadSafe public final class ParallelBatchCalculator {
+  private static final LazyLogger logger = LazyLogger.getLogger(ParallelBatchCalculator.class);
+  /**
+   * The estimated cost above which a part of a segment is split further.
+   */
+  private static final long MAX_LEAF_COST = 1 << 12;
+  private static final int SEGMENTS_PER_BUFFER = 4;
+
+  private final ExpressionCalculator calculator;
+  private final MathContext resultMc;
+  private final int parallelism;
+  private final int bufferSize;
+
+  /**
+   * @param calculator Must be {@link ThreadSafe}.
+   * @param resultMc {@link MathContext} used to round results produced by the {@code calculator}.
+   * @param parallelism The number of worker threads. Must be positive.
+   * @param bufferSize The maximum number of lines which are read but whose results are not yet written. Must be positive.
+   */
+  public ParallelBatchCalculator(final ExpressionCalculator calculator, final MathContext resultMc, final int parallelism, final int bufferSize) {
+    checkNotNull(calculator, "The argument %s must not be null", "calculator");
+    checkNotNull(resultMc, "The argument %s must not be null", "resultMc");
+    checkArgument(parallelism > 0, "The argument %s=%s must be positive", "parallelism", parallelism);
+    checkArgument(bufferSize > 0, "The argument %s=%s must be positive", "bufferSize", bufferSize);
+    this.calculator = calculator;
+    this.resultMc = resultMc;
+    this.parallelism = parallelism;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Reads {@code in} until the end of the stream. Neither closes nor flushes {@code out}.
+   * Output is the same as the output of {@link BatchCalculator#calculate(BufferedReader, Writer)}.
+   *
+   * @return The number of expressions which could not be calculated.
+   */
+  public final long calculate(final BufferedReader in, final Writer out) throws IOException {
+    checkNotNull(in, "The argument %s must not be null", "in");
+    checkNotNull(out, "The argument %s must not be null", "out");
+    final int maxSegmentSize = Math.max(1, bufferSize / SEGMENTS_PER_BUFFER);
+    final ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      final Deque<ForkJoinTask<Long>> submittedTasks = new ArrayDeque<>();
+      final Deque<Segment> submittedSegments = new ArrayDeque<>();
+      int bufferedLinesCount = 0;
+      long problemsCount = 0;
+      @Nullable Segment segment = null;
+      for (@Nullable String expr = in.readLine(); ; expr = in.readLine()) {
+        if (expr != null) {
+          if (segment == null) {
+            segment = new Segment(Math.min(maxSegmentSize, bufferSize - bufferedLinesCount));
+          }
+          segment.add(expr);
+          bufferedLinesCount++;
+        }
+        if (segment != null && (expr == null || segment.isFull())) {
+          submittedTasks.addLast(pool.submit(new Task(segment, 0, segment.size())));
+          submittedSegments.addLast(segment);
+          segment = null;
+        }
+        while (!submittedTasks.isEmpty() && (expr == null || bufferedLinesCount == bufferSize || submittedTasks.peekFirst()
+            .isDone())) {
+          problemsCount += submittedTasks.removeFirst()
+              .join();
+          final Segment calculatedSegment = submittedSegments.removeFirst();
+          calculatedSegment.write(out);
+          bufferedLinesCount -= calculatedSegment.size();
+        }
+        if (expr == null) {
+          break;
+        }
+      }
+      return problemsCount;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * @return {@code false} if the expression could not be calculated.
+   */
+  private final boolean calculate(final Segment segment, final int idx) {
+    final String expr = segment.exprs[idx];
+    CalculationResult result;
+    try {
+      result = calculator.tryCalculate(expr);
+    } catch (final RuntimeException | StackOverflowError e) {//e.g. an expression nested too deeply, must not prevent calculating the rest
+      logger.warn(null, e);
+      result = CalculationResult.failure(expr, -1, null);
+    }
+    if (result.isSuccess()) {
+      segment.results[idx] = result.getValue()
+          .round(resultMc)
+          .toPlainString();
+    } else {
+      if (logger.isWarnEnabled()) {
+        logger.warn(result.description());
+      }
+      segment.results[idx] = result.summary();
+    }
+    return result.isSuccess();
+  }
+
+  private static final long costOf(final String expr) {
+    return expr.length() + 1;
+  }
+
+  /**
+   * Consecutive lines and their results.
+   */
+  @NotThreadSafe private static final class Segment {
+    private final String[] exprs;
+    private final String[] results;
+    /**
+     * {@code cumulativeCosts[i]} is the total estimated cost of the expressions {@code [0, i]}.
+     */
+    private final long[] cumulativeCosts;
+    private int size;
+
+    private Segment(final int capacity) {
+      exprs = new String[capacity];
+      results = new String[capacity];
+      cumulativeCosts = new long[capacity];
+      size = 0;
+    }
+
+    private final void add(final String expr) {
+      exprs[size] = expr;
+      cumulativeCosts[size] = (size == 0 ? 0 : cumulativeCosts[size - 1]) + costOf(expr);
+      size++;
+    }
+
+    private final boolean isFull() {
+      return size == exprs.length;
+    }
+
+    private final int size() {
+      return size;
+    }
+
+    /**
+     * @return The total estimated cost of the expressions {@code [fromIdx, toIdx)}.
+     */
+    private final long cost(final int fromIdx, final int toIdx) {
+      return cumulativeCosts[toIdx - 1] - (fromIdx == 0 ? 0 : cumulativeCosts[fromIdx - 1]);
+    }
+
+    /**
+     * @return An index in {@code (fromIdx, toIdx)} which splits the expressions {@code [fromIdx, toIdx)}
+     * into two parts with approximately equal total estimated costs.
+     */
+    private final int split(final int fromIdx, final int toIdx) {
+      final long halfCost = (fromIdx == 0 ? 0 : cumulativeCosts[fromIdx - 1]) + cost(fromIdx, toIdx) / 2;
+      final int searchResult = Arrays.binarySearch(cumulativeCosts, fromIdx, toIdx, halfCost);
+      final int idx = searchResult >= 0 ? searchResult + 1 : -searchResult - 1;
+      return Math.max(fromIdx + 1, Math.min(toIdx - 1, idx));
+    }
+
+    private final void write(final Writer out) throws IOException {
+      for (int i = 0; i < size; i++) {
+        out.write(results[i]);
+        out.write(Main.LN);
+      }
+    }
+  }
+
+  /**
+   * Calculates the expressions {@code [fromIdx, toIdx)} of a {@link Segment}.
+   */
+  private final class Task extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 0;
+
+    private final Segment segment;
+    private final int fromIdx;
+    private final int toIdx;
+
+    private Task(final Segment segment, final int fromIdx, final int toIdx) {
+      this.segment = segment;
+      this.fromIdx = fromIdx;
+      this.toIdx = toIdx;
+    }
+
+    @Override
+    protected final Long compute() {
+      final long result;
+      if (toIdx - fromIdx > 1 && segment.cost(fromIdx, toIdx) > MAX_LEAF_COST) {
+        final int splitIdx = segment.split(fromIdx, toIdx);
+        final Task left = new Task(segment, fromIdx, splitIdx);
+        left.fork();
+        final long rightResult = new Task(segment, splitIdx, toIdx).compute();
+        result = left.join() + rightResult;
+      } else {
+        long problemsCount = 0;
+        for (int i = fromIdx; i < toIdx; i++) {
+          if (!calculate(segment, i)) {
+            problemsCount++;
+          }
+        }
+        result = problemsCount;
+      }
+      return result;
+    }
+  }
+}
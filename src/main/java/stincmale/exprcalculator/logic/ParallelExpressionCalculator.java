@@ -0,0 +1,179 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.LazyLogger;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Node;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Calculates a single expression using multiple threads. Produces the same results and reports the same problems as
+ * {@link ExpressionCalculator}, but is only beneficial for very large expressions with wide trees of operators.
+ * <p>
+ * The expression is {@linkplain ExpressionPlan compiled} to a tree, and whenever both operands of an operator
+ * contain at least {@code forkThreshold} {@linkplain Node#getSize() nodes}, the first operand is evaluated by a separate
+ * {@link ForkJoinPool} task while the current task evaluates the second one. Smaller subtrees are evaluated by the current task.
+ * A forked task gets its own copy of the values of the variables declared by the enclosing {@code let}s.
+ * If both operands can not be calculated, then the problem with the first one is reported,
+ * because this is the problem {@link ExpressionCalculator} encounters first.
+ * <p>
+ * The tree is walked recursively, so an expression whose tree is {@linkplain ExpressionPlan#isDeep() too deep} for that
+ * is calculated sequentially by the stack-based algorithm.
+ */
+@ThreadSafe public final class ParallelExpressionCalculator {
+  public static final int DEFAULT_FORK_THRESHOLD = 1 << 10;
+  private static final LazyLogger logger = LazyLogger.getLogger(ParallelExpressionCalculator.class);
+
+  private final MathContext mc;
+  private final ForkJoinPool pool;
+  private final int forkThreshold;
+  private final ExpressionCalculator sequentialCalculator;
+
+  /**
+   * Equivalent to {@link #ParallelExpressionCalculator(MathContext, ForkJoinPool, int) ParallelExpressionCalculator}{@code (mc, }
+   * {@link ForkJoinPool#commonPool()}{@code , }{@link #DEFAULT_FORK_THRESHOLD}{@code )}.
+   */
+  public ParallelExpressionCalculator(final MathContext mc) {
+    this(mc, ForkJoinPool.commonPool(), DEFAULT_FORK_THRESHOLD);
+  }
+
+  /**
+   * @param forkThreshold The minimal number of nodes each operand must have in order to be evaluated concurrently. Must be positive.
+   */
+  public ParallelExpressionCalculator(final MathContext mc, final ForkJoinPool pool, final int forkThreshold) {
+    checkNotNull(mc, "The argument %s must not be null", "mc");
+    checkNotNull(pool, "The argument %s must not be null", "pool");
+    checkArgument(forkThreshold > 0, "The argument %s=%s must be positive", "forkThreshold", forkThreshold);
+    this.mc = mc;
+    this.pool = pool;
+    this.forkThreshold = forkThreshold;
+    sequentialCalculator = new ExpressionCalculator(mc);
+  }
+
+  public final BigDecimal calculate(final String expr) throws CalculationException {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    logger.debug("Calculating '{}' in parallel", expr);
+    @Nullable final ExpressionPlan plan;
+    try {
+      plan = ExpressionPlan.compile(new ParsedExpression(expr, mc));
+    } catch (final CalculationException e) {
+      //ExpressionPlan may report a different problem than the one we must report (see ExpressionPlan.compile)
+      return sequentialCalculator.calculate(expr);
+    }
+    if (plan.isDeep()) {
+      logger.debug("'{}' is too deep to be calculated in parallel", expr);
+      return sequentialCalculator.calculate(expr);
+    }
+    final SubtreeTask task = new SubtreeTask(plan.getRoot(), new BigDecimal[plan.getSlotsCount()]);
+    pool.invoke(task);
+    final BigDecimal result;
+    try {
+      result = task.result();
+    } catch (final CalculationException e) {
+      if (!e.isExpressionSet()) {
+        e.setExpression(expr);
+      }
+      throw e;
+    }
+    logger.debug("Calculation result for '{}' is {}", expr, result);
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{mc=" + mc + ", forkThreshold=" + forkThreshold + ", pool=" + pool + '}';
+  }
+
+  /**
+   * Evaluates a subtree. {@link CalculationException} is not propagated by {@link #join()}, but is returned by {@link #result()},
+   * so that the exception is exactly the one that was thrown.
+   */
+  private final class SubtreeTask extends RecursiveTask<BigDecimal> {
+    private static final long serialVersionUID = 0;
+
+    private final Node node;
+    private final BigDecimal[] values;
+    @Nullable private CalculationException problem;
+
+    private SubtreeTask(final Node node, final BigDecimal[] values) {
+      this.node = node;
+      this.values = values;
+      problem = null;
+    }
+
+    @Nullable
+    @Override
+    protected final BigDecimal compute() {
+      @Nullable BigDecimal result;
+      try {
+        result = evaluate(node);
+      } catch (final CalculationException e) {
+        problem = e;
+        result = null;
+      }
+      return result;
+    }
+
+    /**
+     * Must be called after the task is completed.
+     */
+    private final BigDecimal result() throws CalculationException {
+      if (problem != null) {
+        throw problem;
+      }
+      final BigDecimal result = getRawResult();
+      assert result != null;
+      return result;
+    }
+
+    private final BigDecimal evaluate(final Node node) throws CalculationException {
+      final BigDecimal result;
+      if (node.getSize() <= forkThreshold) {
+        result = node.evaluate(values, mc);
+      } else if (node instanceof Operation) {
+        final Operation operation = (Operation)node;
+        final Node operand1 = operation.getOperand1();
+        final Node operand2 = operation.getOperand2();
+        final BigDecimal v1;
+        final BigDecimal v2;
+        if (operand1.getSize() >= forkThreshold && operand2.getSize() >= forkThreshold) {
+          final SubtreeTask task1 = new SubtreeTask(operand1, values.clone());
+          task1.fork();
+          try {
+            v2 = evaluate(operand2);
+          } catch (final CalculationException e) {
+            task1.join();
+            task1.result();//the problem with the first operand takes precedence
+            throw e;
+          }
+          task1.join();
+          v1 = task1.result();
+        } else {
+          v1 = evaluate(operand1);
+          v2 = evaluate(operand2);
+        }
+        try {
+          result = operation.getOperator()
+              .calculate(v1, v2, mc);
+        } catch (final RuntimeException e) {
+          throw new CalculationException(operation.getWord());
+        }
+      } else if (node instanceof Let) {
+        final Let let = (Let)node;
+        values[let.getVariable()
+            .getSlot()] = evaluate(let.getValue());
+        result = evaluate(let.getBody());
+      } else {
+        result = node.evaluate(values, mc);
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package stincmale.exprcalculator.logic;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event emitted when an expression is {@linkplain ExpressionPlan#compile(ParsedExpression) compiled}
+ * to an {@link ExpressionPlan}, e.g. when it is added to an {@link ExpressionPlanCache}.
+ * The duration of the event is the duration of the compilation, including tokenization and optimization.
+ * Expressions which are not syntactically valid do not produce the event.
+ */
+@Name(ParseEvent.NAME)
+@Label("Parse")
+@Category(EvaluateEvent.CATEGORY)
+@Description("Compilation of an expression to a plan")
+@StackTrace(false)
+@NotThreadSafe final class ParseEvent extends jdk.jfr.Event {
+  static final String NAME = "stincmale.exprcalculator.Parse";
+
+  @Label("Expression Length")
+  @DataAmount(DataAmount.BYTES)
+  int expressionLength;
+
+  @Label("Token Count")
+  int tokenCount;
+
+  ParseEvent() {
+  }
+}
@@ -21,12 +21,24 @@ import static com.google.common.base.Preconditions.checkNotNull;
     return expr;
   }
 
+  final MathContext getMathContext() {
+    return mc;
+  }
+
   /**
    * @return A new {@link Stream}{@code <}{@link Word}{@code >} which represents the string expression
    * supplied in the {@linkplain #ParsedExpression(String, MathContext) constructor}.
    */
   final Stream<Word> stream() throws CalculationException {
-    return StreamSupport.stream(new ExpressionSpliterator(expr, mc), false);
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * @return A new {@link ExpressionSpliterator} which represents the string expression
+   * supplied in the {@linkplain #ParsedExpression(String, MathContext) constructor}.
+   */
+  final ExpressionSpliterator spliterator() {
+    return new ExpressionSpliterator(expr, mc);
   }
 
   @Override
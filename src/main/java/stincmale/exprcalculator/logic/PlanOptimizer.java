@@ -0,0 +1,314 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import stincmale.exprcalculator.logic.ExpressionPlan.Constant;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Node;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Shared;
+import stincmale.exprcalculator.logic.ExpressionPlan.Variable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Rewrites the tree of an {@link ExpressionPlan} such that evaluation of the optimized tree produces exactly the same
+ * {@link BigDecimal} (including its scale) as evaluation of the original tree, or fails with exactly the same {@link CalculationException}.
+ * The optimizations are:
+ * <ul>
+ * <li>Constant folding. An operation with constant operands is replaced with its result,
+ * unless the operation fails, in which case it is left intact for the evaluation to report the problem.</li>
+ * <li>Inlining of {@code let} variables. A variable with a constant value is replaced with the value.
+ * A variable which is used once is replaced with its value expression if no operation in the body of the {@code let}
+ * is evaluated before the use of the variable, so that inlining does not change which problem is reported first,
+ * and if neither the value expression nor the body before the use assigns variables, because slots are reused by
+ * {@code let}s that are not nested, and an inlined {@code let} could overwrite a variable which is still in use.</li>
+ * <li>Common subexpression elimination. A subexpression which is structurally equal to a subexpression evaluated earlier
+ * and refers to the same {@code let} variables is not evaluated again, see {@link Shared}.</li>
+ * </ul>
+ */
+@NotThreadSafe final class PlanOptimizer {
+  private final MathContext mc;
+  private int slotsCount;
+  /**
+   * Constants substituted for the variables which are currently in scope, indexed by slots.
+   */
+  private final Constant[] constants;
+  /**
+   * Identifiers of the declarations of the variables which are currently in scope, indexed by slots.
+   */
+  private final int[] declarationIds;
+  private int declarationsCount;
+  /**
+   * Identifiers of subexpressions: structurally equal subexpressions which refer to the same declarations have equal identifiers.
+   */
+  private final Map<Node, Integer> subexpressionIds;
+  private final Map<List<Object>, Integer> subexpressionIdsByKey;
+  private final List<Integer> subexpressionOccurrences;
+  /**
+   * Slots of the {@link Shared} subexpressions, indexed by identifiers of subexpressions.
+   */
+  private final Map<Integer, Integer> sharedSlots;
+
+  /**
+   * @param slotsCount {@link ExpressionPlan#getSlotsCount()} of the plan to optimize.
+   */
+  PlanOptimizer(final MathContext mc, final int slotsCount) {
+    checkNotNull(mc, "The argument %s must not be null", "mc");
+    checkArgument(slotsCount >= 0, "The argument %s=%s must not be negative", "slotsCount", slotsCount);
+    this.mc = mc;
+    this.slotsCount = slotsCount;
+    constants = new Constant[slotsCount];
+    declarationIds = new int[slotsCount];
+    for (int slot = 0; slot < slotsCount; slot++) {//free variables, if any, are distinct declarations
+      declarationIds[slot] = slot;
+    }
+    declarationsCount = slotsCount;
+    subexpressionIds = new IdentityHashMap<>();
+    subexpressionIdsByKey = new HashMap<>();
+    subexpressionOccurrences = new ArrayList<>();
+    sharedSlots = new HashMap<>();
+  }
+
+  /**
+   * May be called only once.
+   */
+  final Node optimize(final Node root) {
+    checkNotNull(root, "The argument %s must not be null", "root");
+    final Node folded = fold(root);
+    identify(folded);
+    return eliminateCommonSubexpressions(folded);
+  }
+
+  /**
+   * @return The number of slots needed to evaluate the optimized plan, which includes slots of {@link Shared} subexpressions.
+   */
+  final int getSlotsCount() {
+    return slotsCount;
+  }
+
+  private final Node fold(final Node node) {
+    final Node result;
+    if (node instanceof Constant) {
+      result = node;
+    } else if (node instanceof Variable) {
+      @Nullable final Constant constant = constants[((Variable)node).getSlot()];
+      result = constant == null ? node : constant;
+    } else if (node instanceof Operation) {
+      final Operation operation = (Operation)node;
+      final Node operand1 = fold(operation.getOperand1());
+      final Node operand2 = fold(operation.getOperand2());
+      @Nullable Constant folded = null;
+      if (operand1 instanceof Constant && operand2 instanceof Constant) {
+        try {
+          final BigDecimal value = operation.getOperator()
+              .calculate(((Constant)operand1).getValue(), ((Constant)operand2).getValue(), mc);
+          folded = new Constant(new Word(operation.getWord(), value));
+        } catch (final RuntimeException e) {
+          //the evaluation will report the problem
+        }
+      }
+      if (folded != null) {
+        result = folded;
+      } else if (operand1 == operation.getOperand1() && operand2 == operation.getOperand2()) {
+        result = node;
+      } else {
+        result = new Operation(operation.getWord(), operand1, operand2);
+      }
+    } else if (node instanceof Let) {
+      final Let let = (Let)node;
+      final int slot = let.getVariable()
+          .getSlot();
+      final Node value = fold(let.getValue());
+      if (value instanceof Constant) {
+        constants[slot] = (Constant)value;
+        result = fold(let.getBody());
+        constants[slot] = null;
+      } else {
+        final Node body = fold(let.getBody());
+        if (!assignsVariables(value) && usesCount(body, slot) == 1 && firstUse(body, slot) == Use.FOUND) {
+          result = inline(body, slot, value);
+        } else if (value == let.getValue() && body == let.getBody()) {
+          result = node;
+        } else {
+          result = new Let(let.getWord(), let.getVariable(), value, body);
+        }
+      }
+    } else {
+      throw new AssertionError(String.format("%s is not accounted", node));
+    }
+    return result;
+  }
+
+  private static final int usesCount(final Node node, final int slot) {
+    final int result;
+    if (node instanceof Variable) {
+      result = ((Variable)node).getSlot() == slot ? 1 : 0;
+    } else if (node instanceof Operation) {
+      final Operation operation = (Operation)node;
+      result = usesCount(operation.getOperand1(), slot) + usesCount(operation.getOperand2(), slot);
+    } else if (node instanceof Let) {
+      final Let let = (Let)node;
+      result = usesCount(let.getValue(), slot) + usesCount(let.getBody(), slot);
+    } else {
+      result = 0;
+    }
+    return result;
+  }
+
+  /**
+   * @return {@code true} if evaluation of the {@code node} writes to slots, i.e. the {@code node} contains a {@link Let} or a {@link Shared}.
+   */
+  private static final boolean assignsVariables(final Node node) {
+    final boolean result;
+    if (node instanceof Operation) {
+      final Operation operation = (Operation)node;
+      result = assignsVariables(operation.getOperand1()) || assignsVariables(operation.getOperand2());
+    } else {
+      result = node instanceof Let || node instanceof Shared;
+    }
+    return result;
+  }
+
+  private enum Use {
+    /**
+     * The use of the variable is evaluated before any operation and before any assignment of a variable.
+     */
+    FOUND,
+    /**
+     * An operation is evaluated, or a variable is assigned, before the use of the variable.
+     */
+    BLOCKED,
+    /**
+     * The subtree does not use the variable, does not contain operations and does not assign variables.
+     */
+    NOT_FOUND
+  }
+
+  private static final Use firstUse(final Node node, final int slot) {
+    Use result;
+    if (node instanceof Variable) {
+      result = ((Variable)node).getSlot() == slot ? Use.FOUND : Use.NOT_FOUND;
+    } else if (node instanceof Operation) {
+      final Operation operation = (Operation)node;
+      result = firstUse(operation.getOperand1(), slot);
+      if (result == Use.NOT_FOUND) {
+        result = firstUse(operation.getOperand2(), slot);
+      }
+      if (result == Use.NOT_FOUND) {
+        result = Use.BLOCKED;
+      }
+    } else if (node instanceof Let) {
+      result = firstUse(((Let)node).getValue(), slot);
+      if (result == Use.NOT_FOUND) {//the let assigns its variable before its body is evaluated
+        result = Use.BLOCKED;
+      }
+    } else if (node instanceof Shared) {
+      result = firstUse(((Shared)node).getExpression(), slot);
+      if (result == Use.NOT_FOUND) {
+        result = Use.BLOCKED;
+      }
+    } else {
+      result = Use.NOT_FOUND;
+    }
+    return result;
+  }
+
+  /**
+   * @return {@code node} with the variable in the {@code slot} replaced with {@code value}.
+   */
+  private static final Node inline(final Node node, final int slot, final Node value) {
+    final Node result;
+    if (node instanceof Variable) {
+      result = ((Variable)node).getSlot() == slot ? value : node;
+    } else if (node instanceof Operation) {
+      final Operation operation = (Operation)node;
+      result = new Operation(operation.getWord(), inline(operation.getOperand1(), slot, value), inline(operation.getOperand2(), slot, value));
+    } else if (node instanceof Let) {
+      final Let let = (Let)node;
+      result = new Let(let.getWord(), let.getVariable(), inline(let.getValue(), slot, value), inline(let.getBody(), slot, value));
+    } else {
+      result = node;
+    }
+    return result;
+  }
+
+  /**
+   * Assigns {@linkplain #subexpressionIds identifiers} to {@link Operation}s and counts their occurrences.
+   *
+   * @return The identifier of the subexpression.
+   */
+  private final int identify(final Node node) {
+    final List<Object> key;
+    if (node instanceof Constant) {
+      key = List.of(Constant.class, ((Constant)node).getValue());//BigDecimal.equals also compares scales
+    } else if (node instanceof Variable) {
+      key = List.of(Variable.class, declarationIds[((Variable)node).getSlot()]);
+    } else if (node instanceof Operation) {
+      final Operation operation = (Operation)node;
+      key = List.of(operation.getOperator(), identify(operation.getOperand1()), identify(operation.getOperand2()));
+    } else if (node instanceof Let) {
+      final Let let = (Let)node;
+      identify(let.getValue());
+      final int declarationId = declarationsCount++;
+      declarationIds[let.getVariable()
+          .getSlot()] = declarationId;
+      identify(let.getBody());
+      key = List.of(Let.class, declarationId);//a let is unique because it declares a variable
+    } else {
+      throw new AssertionError(String.format("%s is not accounted", node));
+    }
+    final int result = subexpressionIdsByKey.computeIfAbsent(key, k -> {
+      subexpressionOccurrences.add(0);
+      return subexpressionOccurrences.size() - 1;
+    });
+    if (node instanceof Operation) {
+      subexpressionIds.put(node, result);
+      subexpressionOccurrences.set(result, subexpressionOccurrences.get(result) + 1);
+    }
+    return result;
+  }
+
+  /**
+   * Nodes are visited in the order of evaluation, hence the first visited occurrence of a subexpression is evaluated first.
+   */
+  private final Node eliminateCommonSubexpressions(final Node node) {
+    final Node result;
+    if (node instanceof Operation) {
+      final Operation operation = (Operation)node;
+      final int id = subexpressionIds.get(node);
+      @Nullable final Integer sharedSlot = sharedSlots.get(id);
+      if (sharedSlot != null) {
+        result = new Variable(operation.getWord(), sharedSlot);
+      } else {
+        final Node operand1 = eliminateCommonSubexpressions(operation.getOperand1());
+        final Node operand2 = eliminateCommonSubexpressions(operation.getOperand2());
+        final Node rewritten = (operand1 == operation.getOperand1() && operand2 == operation.getOperand2())
+            ? node
+            : new Operation(operation.getWord(), operand1, operand2);
+        if (subexpressionOccurrences.get(id) > 1) {
+          final int slot = slotsCount++;
+          sharedSlots.put(id, slot);
+          result = new Shared(slot, rewritten);
+        } else {
+          result = rewritten;
+        }
+      }
+    } else if (node instanceof Let) {
+      final Let let = (Let)node;
+      final Node value = eliminateCommonSubexpressions(let.getValue());
+      final Node body = eliminateCommonSubexpressions(let.getBody());
+      result = (value == let.getValue() && body == let.getBody()) ? node : new Let(let.getWord(), let.getVariable(), value, body);
+    } else {
+      result = node;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,279 @@
+package stincmale.exprcalculator.logic;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.LazyLogger;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An expression with free variables, i.e. variables which are not declared by {@code let}s,
+ * that is parsed once and then evaluated any number of times with different values of the variables.
+ * For example, {@code new PreparedExpression("add(x, mult(y, 2))", List.of("x", "y"), mc)}
+ * can be evaluated for many rows of {@code x} and {@code y} given as columns.
+ * <p>
+ * The expression is {@linkplain ExpressionPlan#compile(ParsedExpression, List, boolean) compiled} and {@linkplain PlanOptimizer optimized}
+ * by the constructor, and values of the variables are bound to slots by their positions in {@link #getVariables()},
+ * so an evaluation neither parses the expression nor looks up variables by name.
+ * If the precision of the {@link MathContext} is {@linkplain FixedPointEvaluator#supports(MathContext) bounded},
+ * then rows are evaluated by the {@link FixedPointEvaluator}.
+ * A value of a variable is rounded according to the {@link MathContext} the same way a numeric literal is,
+ * hence the result is the same as the result of calculating the expression where each free variable
+ * is declared by an enclosing {@code let} with the literal value.
+ * <p>
+ * If {@code double} precision is acceptable, then the expression may be {@linkplain #evaluateBinary64(double[][], double[]) evaluated}
+ * for whole columns using {@code double} arithmetic, which is much faster.
+ */
+@ThreadSafe public final class PreparedExpression {
+  private static final LazyLogger logger = LazyLogger.getLogger(PreparedExpression.class);
+
+  private final ExpressionPlan plan;
+  private final List<String> variables;
+  private final ColumnarEvaluator columnarEvaluator;
+  @Nullable private final FixedPointEvaluator fixedPointEvaluator;
+
+  /**
+   * @param expr An expression which may use the free {@code variables}.
+   * @param variables Distinct names of the free variables, which must be valid variable names. The order defines the order of bindings.
+   * @throws CalculationException If the expression is not syntactically valid, or declares a variable with the same name as a free variable.
+   */
+  public PreparedExpression(final String expr, final List<String> variables, final MathContext mc) throws CalculationException {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    checkNotNull(variables, "The argument %s must not be null", "variables");
+    checkNotNull(mc, "The argument %s must not be null", "mc");
+    for (final String variable : variables) {
+      checkArgument(isVariableName(variable), "The argument %s=%s contains an invalid variable name %s", "variables", variables, variable);
+    }
+    this.variables = List.copyOf(variables);
+    logger.debug("Preparing '{}' with variables {}", expr, this.variables);
+    plan = ExpressionPlan.compile(new ParsedExpression(expr, mc), this.variables, true);
+    columnarEvaluator = ColumnarEvaluator.compile(plan, this.variables.size());
+    fixedPointEvaluator = FixedPointEvaluator.supports(mc) ? FixedPointEvaluator.compile(plan) : null;
+  }
+
+  /**
+   * @return Names of the free variables in the order of bindings.
+   */
+  public final List<String> getVariables() {
+    return variables;
+  }
+
+  /**
+   * @param values Values of the {@linkplain #getVariables() variables}.
+   */
+  public final BigDecimal evaluate(final BigDecimal... values) throws CalculationException {
+    checkNotNull(values, "The argument %s must not be null", "values");
+    checkArgument(values.length == variables.size(),
+        "The argument %s must have %s elements, but has %s", "values", variables.size(), values.length);
+    for (final BigDecimal value : values) {
+      checkNotNull(value, "The argument %s must not contain null elements", "values");
+    }
+    if (fixedPointEvaluator != null) {
+      final FixedPointEvaluator.Frame frame = fixedPointEvaluator.newFrame();
+      for (int i = 0; i < values.length; i++) {
+        fixedPointEvaluator.bind(frame, i, values[i]);
+      }
+      try {
+        return fixedPointEvaluator.evaluate(frame);
+      } catch (final ArithmeticException e) {
+        //walk the tree in order to report the problem properly
+      }
+    }
+    final BigDecimal[] slots = new BigDecimal[plan.getSlotsCount()];
+    final MathContext mc = plan.getMathContext();
+    for (int i = 0; i < values.length; i++) {
+      slots[i] = values[i].round(mc);
+    }
+    return plan.evaluateInterpreted(slots);
+  }
+
+  /**
+   * Evaluates the expression for each row {@code r} in {@code [0, results.length)},
+   * where the value of the variable {@code i} is {@code columns[i][r]}.
+   *
+   * @param columns Columns of values of the {@linkplain #getVariables() variables}, each column must have at least {@code results.length} values.
+   * @param results An array where the results are stored. The result of a row which can not be calculated is {@code null},
+   * and the problem can be found out by {@linkplain #evaluate(BigDecimal...) evaluating} the row separately.
+   * @return The number of rows which could not be calculated.
+   */
+  public final int evaluate(final BigDecimal[][] columns, final BigDecimal[] results) {
+    checkColumns(columns, results);
+    final BigDecimal[] slots = new BigDecimal[plan.getSlotsCount()];
+    @Nullable final FixedPointEvaluator.Frame frame = fixedPointEvaluator == null ? null : fixedPointEvaluator.newFrame();
+    final MathContext mc = plan.getMathContext();
+    int problemsCount = 0;
+    for (int row = 0; row < results.length; row++) {
+      for (int i = 0; i < columns.length; i++) {
+        checkNotNull(columns[i][row], "The argument %s must not contain null elements", "columns");
+      }
+      if (frame != null) {
+        for (int i = 0; i < columns.length; i++) {
+          fixedPointEvaluator.bind(frame, i, columns[i][row]);
+        }
+        if (evaluate(frame, results, row)) {
+          continue;
+        }
+      }
+      for (int i = 0; i < columns.length; i++) {
+        slots[i] = columns[i][row].round(mc);
+      }
+      if (!evaluate(slots, results, row)) {
+        problemsCount++;
+      }
+    }
+    return problemsCount;
+  }
+
+  /**
+   * Does the same as {@link #evaluate(BigDecimal[][], BigDecimal[])} for {@code long} values.
+   */
+  public final int evaluate(final long[][] columns, final BigDecimal[] results) {
+    checkColumns(columns, results);
+    final BigDecimal[] slots = new BigDecimal[plan.getSlotsCount()];
+    @Nullable final FixedPointEvaluator.Frame frame = fixedPointEvaluator == null ? null : fixedPointEvaluator.newFrame();
+    final MathContext mc = plan.getMathContext();
+    int problemsCount = 0;
+    for (int row = 0; row < results.length; row++) {
+      if (frame != null) {
+        for (int i = 0; i < columns.length; i++) {
+          fixedPointEvaluator.bind(frame, i, columns[i][row]);
+        }
+        if (evaluate(frame, results, row)) {
+          continue;
+        }
+      }
+      for (int i = 0; i < columns.length; i++) {
+        slots[i] = new BigDecimal(columns[i][row], mc);
+      }
+      if (!evaluate(slots, results, row)) {
+        problemsCount++;
+      }
+    }
+    return problemsCount;
+  }
+
+  /**
+   * Does the same as {@link #evaluate(BigDecimal[][], BigDecimal[])} for {@code double} values,
+   * each of which is treated as {@link BigDecimal#valueOf(double)}, i.e. as the shortest decimal that represents it.
+   *
+   * @param columns Values must be finite.
+   */
+  public final int evaluate(final double[][] columns, final BigDecimal[] results) {
+    checkColumns(columns, results);
+    final BigDecimal[] slots = new BigDecimal[plan.getSlotsCount()];
+    @Nullable final FixedPointEvaluator.Frame frame = fixedPointEvaluator == null ? null : fixedPointEvaluator.newFrame();
+    final MathContext mc = plan.getMathContext();
+    int problemsCount = 0;
+    for (int row = 0; row < results.length; row++) {
+      for (int i = 0; i < columns.length; i++) {
+        final double value = columns[i][row];
+        if (!Double.isFinite(value)) {
+          throw new IllegalArgumentException(String.format("The argument %s must only contain finite values, but contains %s", "columns", value));
+        }
+      }
+      if (frame != null) {
+        for (int i = 0; i < columns.length; i++) {
+          fixedPointEvaluator.bind(frame, i, BigDecimal.valueOf(columns[i][row]));
+        }
+        if (evaluate(frame, results, row)) {
+          continue;
+        }
+      }
+      for (int i = 0; i < columns.length; i++) {
+        slots[i] = BigDecimal.valueOf(columns[i][row])
+            .round(mc);
+      }
+      if (!evaluate(slots, results, row)) {
+        problemsCount++;
+      }
+    }
+    return problemsCount;
+  }
+
+  /**
+   * Evaluates the expression for each row the same way as {@link #evaluate(double[][], BigDecimal[])} does, but uses IEEE 754 binary64
+   * ({@code double}) arithmetic instead of {@link BigDecimal} arithmetic, see {@link ColumnarEvaluator}.
+   * Therefore the {@link MathContext} is not applied to the values of the variables and to the results of operations,
+   * except for numeric literals and constant subexpressions, which are calculated as {@link BigDecimal}s and then converted to {@code double}s.
+   * Arithmetic problems are not detected, e.g. the result of a division by zero is an infinity or {@link Double#NaN}.
+   *
+   * @param columns See {@link #evaluate(double[][], BigDecimal[])}.
+   * @param results An array where the results are stored.
+   */
+  public final void evaluateBinary64(final double[][] columns, final double[] results) {
+    checkNotNull(results, "The argument %s must not be null", "results");
+    checkColumns(columns, results.length);
+    columnarEvaluator.evaluate(columns, results);
+  }
+
+  /**
+   * @return {@code false} if the row could not be calculated by the {@link FixedPointEvaluator},
+   * in which case it must be evaluated by {@link #evaluate(BigDecimal[], BigDecimal[], int)} in order to find out the result.
+   */
+  private final boolean evaluate(final FixedPointEvaluator.Frame frame, final BigDecimal[] results, final int row) {
+    assert fixedPointEvaluator != null;
+    boolean result;
+    try {
+      results[row] = fixedPointEvaluator.evaluate(frame);
+      result = true;
+    } catch (final ArithmeticException e) {
+      result = false;
+    }
+    return result;
+  }
+
+  /**
+   * @return {@code false} if the row could not be calculated.
+   */
+  private final boolean evaluate(final BigDecimal[] slots, final BigDecimal[] results, final int row) {
+    boolean result;
+    try {
+      results[row] = plan.evaluateInterpreted(slots);
+      result = true;
+    } catch (final CalculationException e) {
+      results[row] = null;
+      result = false;
+    }
+    return result;
+  }
+
+  private final void checkColumns(final Object[] columns, final BigDecimal[] results) {
+    checkNotNull(results, "The argument %s must not be null", "results");
+    checkColumns(columns, results.length);
+  }
+
+  /**
+   * @param columns An array of arrays.
+   */
+  private final void checkColumns(final Object[] columns, final int rowsCount) {
+    checkNotNull(columns, "The argument %s must not be null", "columns");
+    checkArgument(columns.length == variables.size(),
+        "The argument %s must have %s columns, but has %s", "columns", variables.size(), columns.length);
+    for (final Object column : columns) {
+      checkNotNull(column, "The argument %s must not contain null columns", "columns");
+      checkArgument(Array.getLength(column) >= rowsCount,
+          "The argument %s must have columns with at least %s values, but has a column with %s", "columns", rowsCount, Array.getLength(column));
+    }
+  }
+
+  /**
+   * @return {@code true} if {@link ExpressionSpliterator} recognizes {@code name} as a variable.
+   */
+  static final boolean isVariableName(final String name) {
+    boolean result = !name.isEmpty() && Word.LogicalType.operatorOf(name, 0, name.length()) == null;
+    for (int i = 0; result && i < name.length(); i++) {
+      final char symbol = name.charAt(i);
+      result = symbol == '_' || Character.isAlphabetic(symbol) || (i > 0 && Character.isDigit(symbol));
+    }
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{expr='" + plan.getExpression() + "'" + ", variables=" + variables + ", mc=" + plan.getMathContext() + '}';
+  }
+}
@@ -0,0 +1,250 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import javax.annotation.concurrent.Immutable;
+import stincmale.exprcalculator.logic.ExpressionPlan.Constant;
+import stincmale.exprcalculator.logic.ExpressionPlan.Evaluation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Node;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Evaluates an {@link ExpressionPlan} exactly: values are represented as fractions of {@link BigInteger}s,
+ * and only the result is converted to a {@link BigDecimal}, which is rounded according to a {@link MathContext}.
+ * Hence, {@code mult(div(1, 3), 3)} is exactly 1, and a repeating decimal is only a problem if it is the result
+ * and the precision is unlimited. Fractions are reduced lazily, when their numerators or denominators become longer than
+ * twice the length they had after the previous reduction, which avoids computing the greatest common divisor after each operation.
+ * <p>
+ * Each fraction also has the scale that the {@link BigDecimal} arithmetic would have given it, e.g. {@code add(1.10, 1)} has the scale 2,
+ * and the result has this scale whenever it is exact at this scale and this does not exceed the precision,
+ * so that results have the same trailing zeros as when calculating with decimals, e.g. {@code 2.10} rather than {@code 2.1}.
+ * <p>
+ * Constants must be parsed with {@link MathContext#UNLIMITED} in order not to be rounded,
+ * and their scales must not exceed {@link #MAX_CONSTANT_SCALE} in absolute value.
+ */
+@Immutable final class RationalEvaluator {
+  /**
+   * The maximal absolute value of the scale of a constant, which limits the length of its numerator or denominator.
+   */
+  static final int MAX_CONSTANT_SCALE = 1 << 16;
+  private static final int MIN_REDUCTION_BIT_LENGTH = 1 << 10;
+
+  /**
+   * @param plan A plan which is not {@linkplain PlanOptimizer optimized}, because optimization does inexact arithmetic.
+   * @param resultMc {@link MathContext} used to round the result.
+   * @throws CalculationException If there is a division by zero, a constant has a too large scale,
+   * or the precision of the {@code resultMc} is unlimited and the result is a repeating decimal.
+   */
+  static final BigDecimal evaluate(final ExpressionPlan plan, final MathContext resultMc) throws CalculationException {
+    checkNotNull(plan, "The argument %s must not be null", "plan");
+    checkNotNull(resultMc, "The argument %s must not be null", "resultMc");
+    final Node root = plan.getRoot();
+    final Rational result = ExpressionPlan.evaluate(root, new Rational[plan.getSlotsCount()], RATIONAL_EVALUATION);
+    try {
+      return result.toBigDecimal(resultMc);
+    } catch (final ArithmeticException e) {
+      throw new CalculationException(root.getWord());
+    }
+  }
+
+  /**
+   * Evaluates constants and operations for {@link ExpressionPlan#evaluate(Node, Object[], ExpressionPlan.Evaluation)},
+   * which walks the tree without recursion, so that deep plans are evaluated exactly like shallow ones.
+   */
+  private static final Evaluation<Rational> RATIONAL_EVALUATION = new Evaluation<>() {
+    @Override
+    public final Rational constant(final Constant constant) throws CalculationException {
+      try {
+        return Rational.of(constant.getValue());
+      } catch (final ArithmeticException e) {
+        throw new CalculationException(constant.getWord());
+      }
+    }
+
+    @Override
+    public final Rational operation(final Operation operation, final Rational v1, final Rational v2) throws CalculationException {
+      final Rational result;
+      switch (operation.getOperator()) {
+        case OPERATOR_ADD: {
+          result = v1.add(v2);
+          break;
+        }
+        case OPERATOR_SUB: {
+          result = v1.add(v2.negate());
+          break;
+        }
+        case OPERATOR_MULT: {
+          result = v1.multiply(v2);
+          break;
+        }
+        case OPERATOR_DIV: {
+          if (v2.signum() == 0) {
+            throw new CalculationException(operation.getWord());
+          }
+          result = v1.multiply(v2.reciprocal());
+          break;
+        }
+        default: {
+          throw new AssertionError(String.format("%s is not accounted", operation.getOperator()));
+        }
+      }
+      return result;
+    }
+  };
+
+  private RationalEvaluator() {
+    throw new UnsupportedOperationException("This class is not designed to be instantiated");
+  }
+
+  /**
+   * A fraction with a positive denominator, which is not necessarily reduced.
+   */
+  @Immutable static final class Rational {
+    private final BigInteger numerator;
+    private final BigInteger denominator;
+    /**
+     * The scale the value would have if it were calculated with {@link BigDecimal}s: the scale of a constant,
+     * the maximal scale of the operands of an addition, the sum of the scales of the operands of a multiplication,
+     * or the difference of the scales of the operands of a division, i.e. the preferred scales of the corresponding operations.
+     */
+    private final int scale;
+    /**
+     * The result of an operation is reduced if its numerator or denominator is longer than this number of bits.
+     */
+    private final int reductionBitLength;
+
+    private Rational(final BigInteger numerator, final BigInteger denominator, final int scale, final int reductionBitLength) {
+      this.numerator = numerator;
+      this.denominator = denominator;
+      this.scale = scale;
+      this.reductionBitLength = reductionBitLength;
+    }
+
+    /**
+     * @throws ArithmeticException If the absolute value of the scale of the {@code value} exceeds {@link #MAX_CONSTANT_SCALE}.
+     */
+    static final Rational of(final BigDecimal value) throws ArithmeticException {
+      final int scale = value.scale();
+      if (Math.abs((long)scale) > MAX_CONSTANT_SCALE) {
+        throw new ArithmeticException(String.format("The scale %s of %s is too large", scale, value));
+      }
+      final BigInteger unscaledValue = value.unscaledValue();
+      return scale > 0
+          ? of(unscaledValue, BigInteger.TEN.pow(scale), scale, MIN_REDUCTION_BIT_LENGTH)
+          : new Rational(unscaledValue.multiply(BigInteger.TEN.pow(-scale)), BigInteger.ONE, scale, MIN_REDUCTION_BIT_LENGTH);
+    }
+
+    /**
+     * @param denominator A positive value.
+     */
+    private static final Rational of(final BigInteger numerator, final BigInteger denominator, final int scale, final int reductionBitLength) {
+      final Rational result;
+      if (Math.max(numerator.bitLength(), denominator.bitLength()) > reductionBitLength) {
+        final BigInteger gcd = numerator.gcd(denominator);
+        final BigInteger reducedNumerator = gcd.equals(BigInteger.ONE) ? numerator : numerator.divide(gcd);
+        final BigInteger reducedDenominator = gcd.equals(BigInteger.ONE) ? denominator : denominator.divide(gcd);
+        result = new Rational(
+            reducedNumerator,
+            reducedDenominator,
+            scale,
+            Math.max(MIN_REDUCTION_BIT_LENGTH, 2 * Math.max(reducedNumerator.bitLength(), reducedDenominator.bitLength())));
+      } else {
+        result = new Rational(numerator, denominator, scale, reductionBitLength);
+      }
+      return result;
+    }
+
+    final int signum() {
+      return numerator.signum();
+    }
+
+    final Rational add(final Rational other) {
+      final int reductionBitLength = Math.max(this.reductionBitLength, other.reductionBitLength);
+      final int scale = Math.max(this.scale, other.scale);
+      return denominator.equals(other.denominator)
+          ? of(numerator.add(other.numerator), denominator, scale, reductionBitLength)
+          : of(numerator.multiply(other.denominator)
+              .add(other.numerator.multiply(denominator)), denominator.multiply(other.denominator), scale, reductionBitLength);
+    }
+
+    final Rational negate() {
+      return new Rational(numerator.negate(), denominator, scale, reductionBitLength);
+    }
+
+    final Rational multiply(final Rational other) {
+      return of(
+          numerator.multiply(other.numerator),
+          denominator.multiply(other.denominator),
+          saturatedScale((long)scale + other.scale),
+          Math.max(reductionBitLength, other.reductionBitLength));
+    }
+
+    /**
+     * The scale of the result is the negated scale of this value, so that multiplying by it has the scale of a division.
+     *
+     * @throws ArithmeticException If this value is zero.
+     */
+    final Rational reciprocal() throws ArithmeticException {
+      if (numerator.signum() == 0) {
+        throw new ArithmeticException("Division by zero");
+      }
+      return numerator.signum() > 0
+          ? new Rational(denominator, numerator, saturatedScale(-(long)scale), reductionBitLength)
+          : new Rational(denominator.negate(), numerator.negate(), saturatedScale(-(long)scale), reductionBitLength);
+    }
+
+    /**
+     * @return The value rounded according to the {@code mc}. If the rounded value is exact, it has the {@link #scale}
+     * unless the value is not exact at the {@link #scale}, or the precision of the {@code mc} is not enough for the {@link #scale}.
+     *
+     * @throws ArithmeticException If the precision of the {@code mc} is unlimited and the value is a repeating decimal,
+     * or if the rounding mode of the {@code mc} is {@link java.math.RoundingMode#UNNECESSARY} and the value must be rounded.
+     */
+    final BigDecimal toBigDecimal(final MathContext mc) throws ArithmeticException {
+      final BigInteger gcd = numerator.gcd(denominator);
+      final BigInteger reducedNumerator = numerator.divide(gcd);
+      final BigInteger reducedDenominator = denominator.divide(gcd);
+      final BigDecimal rounded = mc.getPrecision() == 0
+          ? new BigDecimal(reducedNumerator).divide(new BigDecimal(reducedDenominator))
+          : new BigDecimal(reducedNumerator).divide(new BigDecimal(reducedDenominator), mc);
+      BigDecimal result = rounded;
+      if (rounded.scale() != scale && (mc.getPrecision() == 0 || isExactly(rounded, reducedNumerator, reducedDenominator))) {
+        if (scale > rounded.scale()) {//append trailing zeros
+          final long precision = rounded.signum() == 0 ? 1 : (long)rounded.precision() + scale - rounded.scale();
+          if ((mc.getPrecision() == 0 && scale != Integer.MAX_VALUE) || precision <= mc.getPrecision()) {
+            result = rounded.setScale(scale);
+          }
+        } else if (rounded.signum() == 0 || rounded.stripTrailingZeros()
+            .scale() <= scale) {//remove trailing zeros
+          result = rounded.setScale(scale);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return {@code true} if the {@code value} is exactly {@code numerator / denominator}.
+     */
+    private static final boolean isExactly(final BigDecimal value, final BigInteger numerator, final BigInteger denominator) {
+      final int scale = value.scale();
+      final BigInteger unscaledValue = value.unscaledValue();
+      return scale >= 0
+          ? unscaledValue.multiply(denominator)
+              .equals(numerator.multiply(BigInteger.TEN.pow(scale)))
+          : unscaledValue.multiply(BigInteger.TEN.pow(-scale))
+              .multiply(denominator)
+              .equals(numerator);
+    }
+
+    private static final int saturatedScale(final long scale) {
+      return (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, scale));
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName() + "{numerator=" + numerator + ", denominator=" + denominator + '}';
+    }
+  }
+}
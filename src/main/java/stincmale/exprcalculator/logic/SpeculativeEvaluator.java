@@ -0,0 +1,355 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.logic.ExpressionPlan.Constant;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Node;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Shared;
+import stincmale.exprcalculator.logic.ExpressionPlan.Variable;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Evaluates an {@link ExpressionPlan} using primitive {@code double}s instead of {@link BigDecimal}s.
+ * <p>
+ * A value is represented as an integer unscaled value held in a {@code double} and an {@code int} scale,
+ * the same way {@link BigDecimal} represents it. The evaluator only proceeds while the unscaled values are exactly representable
+ * (their absolute values do not exceed 2<sup>53</sup>) and no operation requires rounding according to the {@link MathContext},
+ * i.e. while the accumulated error is zero. Under these conditions {@link BigDecimal} arithmetic produces exactly
+ * the same unscaled value and scale, hence the result is the same {@link BigDecimal} the plan would have produced.
+ * As soon as an operation can not be done exactly, {@linkplain #evaluate() evaluation} gives up
+ * and the caller must evaluate the plan with {@link BigDecimal}s.
+ */
+@Immutable final class SpeculativeEvaluator {
+  private static final double MAX_EXACT_INTEGER = 0x1p53;
+  /**
+   * Powers of ten exactly representable as {@code double}s.
+   */
+  private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16};
+  private static final int CONST = 0;
+  private static final int LOAD = 1;
+  private static final int STORE = 2;
+  private static final int ADD = 3;
+  private static final int SUB = 4;
+  private static final int MULT = 5;
+  private static final int DIV = 6;
+
+  /**
+   * Instructions of a stack machine in postfix order. {@link #CONST}, {@link #LOAD}, {@link #STORE} are followed by an argument.
+   */
+  private final int[] code;
+  private final double[] constantUnscaledValues;
+  private final int[] constantScales;
+  private final int maxStackSize;
+  private final int maxVars;
+  /**
+   * The maximum absolute unscaled value that does not require rounding, exclusive.
+   */
+  private final double maxUnscaledValue;
+
+  private SpeculativeEvaluator(
+      final int[] code,
+      final double[] constantUnscaledValues,
+      final int[] constantScales,
+      final int maxStackSize,
+      final int maxVars,
+      final MathContext mc) {
+    this.code = code;
+    this.constantUnscaledValues = constantUnscaledValues;
+    this.constantScales = constantScales;
+    this.maxStackSize = maxStackSize;
+    this.maxVars = maxVars;
+    final int precision = mc.getPrecision();
+    maxUnscaledValue = (precision == 0 || precision >= POWERS_OF_TEN.length)
+        ? MAX_EXACT_INTEGER
+        : Math.min(POWERS_OF_TEN[precision], MAX_EXACT_INTEGER);//10^16 is greater than 2^53
+  }
+
+  /**
+   * @return {@code null} if the plan contains a constant which can not be represented exactly.
+   */
+  @Nullable
+  static final SpeculativeEvaluator compile(final ExpressionPlan plan) {
+    checkNotNull(plan, "The argument %s must not be null", "plan");
+    final Writer writer = new Writer();
+    return writer.write(plan.getRoot())
+        ? new SpeculativeEvaluator(
+        Arrays.copyOf(writer.code, writer.codeSize),
+        Arrays.copyOf(writer.constantUnscaledValues, writer.constantsCount),
+        Arrays.copyOf(writer.constantScales, writer.constantsCount),
+        writer.maxStackSize,
+        plan.getSlotsCount(),
+        plan.getMathContext())
+        : null;
+  }
+
+  /**
+   * @return {@code null} if it is impossible to evaluate the plan exactly.
+   */
+  @Nullable
+  final BigDecimal evaluate() {
+    final double[] unscaledValues = new double[maxStackSize];
+    final int[] scales = new int[maxStackSize];
+    final double[] varUnscaledValues = new double[maxVars];
+    final int[] varScales = new int[maxVars];
+    int top = -1;
+    for (int i = 0; i < code.length; i++) {
+      final int instruction = code[i];
+      switch (instruction) {
+        case CONST: {
+          final int constantIdx = code[++i];
+          top++;
+          unscaledValues[top] = constantUnscaledValues[constantIdx];
+          scales[top] = constantScales[constantIdx];
+          break;
+        }
+        case LOAD: {
+          final int varIdx = code[++i];
+          top++;
+          unscaledValues[top] = varUnscaledValues[varIdx];
+          scales[top] = varScales[varIdx];
+          break;
+        }
+        case STORE: {
+          final int varIdx = code[++i];
+          varUnscaledValues[varIdx] = unscaledValues[top];
+          varScales[varIdx] = scales[top];
+          top--;
+          break;
+        }
+        default: {
+          final double u2 = unscaledValues[top];
+          final int s2 = scales[top];
+          top--;
+          final double u1 = unscaledValues[top];
+          final int s1 = scales[top];
+          final double u;
+          final int s;
+          switch (instruction) {
+            case ADD:
+            case SUB: {
+              final double signedU2 = instruction == ADD ? u2 : -u2;
+              if (s1 == s2) {
+                u = u1 + signedU2;
+                s = s1;
+              } else if (s1 > s2) {
+                final double alignedU2 = align(signedU2, s1 - s2);
+                u = u1 + alignedU2;
+                s = s1;
+              } else {
+                final double alignedU1 = align(u1, s2 - s1);
+                u = alignedU1 + signedU2;
+                s = s2;
+              }
+              break;
+            }
+            case MULT: {
+              u = u1 * u2;
+              s = s1 + s2;
+              break;
+            }
+            case DIV: {
+              if (u2 == 0) {
+                return null;
+              }
+              final long dividend = (long)u1;
+              final long divisor = (long)u2;
+              int extraScale = 0;
+              long scaledDividend = dividend;
+              while (scaledDividend % divisor != 0) {//find the exact quotient with the scale closest to the preferred scale s1 - s2
+                extraScale++;
+                if (extraScale >= POWERS_OF_TEN.length) {
+                  return null;
+                }
+                final double d = u1 * POWERS_OF_TEN[extraScale];
+                if (!(Math.abs(d) < MAX_EXACT_INTEGER)) {
+                  return null;
+                }
+                scaledDividend = (long)d;
+              }
+              u = scaledDividend / divisor;
+              s = s1 - s2 + extraScale;
+              break;
+            }
+            default: {
+              throw new AssertionError(String.format("Instruction %s is not accounted", instruction));
+            }
+          }
+          if (!(Math.abs(u) < maxUnscaledValue)) {//the result is either not exact, or requires rounding, or is NaN
+            return null;
+          }
+          unscaledValues[top] = u;
+          scales[top] = s;
+        }
+      }
+    }
+    assert top == 0;
+    return BigDecimal.valueOf((long)unscaledValues[0], scales[0]);
+  }
+
+  /**
+   * @return {@link Double#NaN} if the result is not exact.
+   */
+  private static final double align(final double unscaledValue, final int scaleDiff) {
+    final double result;
+    if (scaleDiff >= POWERS_OF_TEN.length) {
+      result = Double.NaN;
+    } else {
+      final double v = unscaledValue * POWERS_OF_TEN[scaleDiff];
+      result = Math.abs(v) < MAX_EXACT_INTEGER ? v : Double.NaN;
+    }
+    return result;
+  }
+
+  /**
+   * Counts how often speculative evaluation succeeds.
+   */
+  @ThreadSafe static final class Counters {
+    private final LongAdder evaluations;
+    private final LongAdder fallbacks;
+
+    Counters() {
+      evaluations = new LongAdder();
+      fallbacks = new LongAdder();
+    }
+
+    final void evaluation(final boolean fallback) {
+      evaluations.increment();
+      if (fallback) {
+        fallbacks.increment();
+      }
+    }
+
+    final long getEvaluationCount() {
+      return evaluations.sum();
+    }
+
+    final long getFallbackCount() {
+      return fallbacks.sum();
+    }
+
+    @Override
+    public final String toString() {
+      return "{evaluations=" + evaluations + ", fallbacks=" + fallbacks + '}';
+    }
+  }
+
+  private static final class Writer {
+    private int[] code;
+    private int codeSize;
+    private double[] constantUnscaledValues;
+    private int[] constantScales;
+    private int constantsCount;
+    private int stackSize;
+    private int maxStackSize;
+
+    private Writer() {
+      code = new int[16];
+      codeSize = 0;
+      constantUnscaledValues = new double[8];
+      constantScales = new int[8];
+      constantsCount = 0;
+      stackSize = 0;
+      maxStackSize = 0;
+    }
+
+    /**
+     * @return {@code false} if a constant can not be represented exactly.
+     */
+    private final boolean write(final Node node) {
+      final boolean result;
+      if (node instanceof Constant) {
+        final BigDecimal value = ((Constant)node).getValue();
+        if (value.unscaledValue()
+            .bitLength() <= 53) {
+          if (constantsCount == constantScales.length) {
+            constantUnscaledValues = Arrays.copyOf(constantUnscaledValues, 2 * constantsCount);
+            constantScales = Arrays.copyOf(constantScales, 2 * constantsCount);
+          }
+          constantUnscaledValues[constantsCount] = value.unscaledValue()
+              .longValueExact();
+          constantScales[constantsCount] = value.scale();
+          emit(1, CONST, constantsCount);
+          constantsCount++;
+          result = true;
+        } else {
+          result = false;
+        }
+      } else if (node instanceof Variable) {
+        emit(1, LOAD, ((Variable)node).getSlot());
+        result = true;
+      } else if (node instanceof Operation) {
+        final Operation operation = (Operation)node;
+        if (write(operation.getOperand1()) && write(operation.getOperand2())) {
+          emit(-1, instructionOf(operation.getOperator()));
+          result = true;
+        } else {
+          result = false;
+        }
+      } else if (node instanceof Let) {
+        final Let let = (Let)node;
+        if (write(let.getValue())) {
+          emit(-1, STORE, let.getVariable()
+              .getSlot());
+          result = write(let.getBody());
+        } else {
+          result = false;
+        }
+      } else if (node instanceof Shared) {
+        final Shared shared = (Shared)node;
+        if (write(shared.getExpression())) {
+          emit(-1, STORE, shared.getSlot());
+          emit(1, LOAD, shared.getSlot());
+          result = true;
+        } else {
+          result = false;
+        }
+      } else {
+        throw new AssertionError(String.format("%s is not accounted", node));
+      }
+      return result;
+    }
+
+    private final void emit(final int stackDelta, final int... instruction) {
+      if (codeSize + instruction.length > code.length) {
+        code = Arrays.copyOf(code, 2 * code.length);
+      }
+      System.arraycopy(instruction, 0, code, codeSize, instruction.length);
+      codeSize += instruction.length;
+      stackSize += stackDelta;
+      maxStackSize = Math.max(maxStackSize, stackSize);
+    }
+
+    private static final int instructionOf(final Word.LogicalType operator) {
+      final int result;
+      switch (operator) {
+        case OPERATOR_ADD: {
+          result = ADD;
+          break;
+        }
+        case OPERATOR_SUB: {
+          result = SUB;
+          break;
+        }
+        case OPERATOR_MULT: {
+          result = MULT;
+          break;
+        }
+        case OPERATOR_DIV: {
+          result = DIV;
+          break;
+        }
+        default: {
+          throw new AssertionError(String.format("%s is not accounted", operator));
+        }
+      }
+      return result;
+    }
+  }
+}
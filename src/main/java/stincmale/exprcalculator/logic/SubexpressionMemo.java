@@ -0,0 +1,417 @@
+package stincmale.exprcalculator.logic;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.exprcalculator.logic.ExpressionPlan.Constant;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Node;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Shared;
+import stincmale.exprcalculator.logic.ExpressionPlan.Variable;
+import stincmale.exprcalculator.logic.Word.LogicalType;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A bounded memo of results of subexpressions shared by all expressions calculated by {@link ExpressionCalculator}s that use it.
+ * <p>
+ * Subexpressions are hash-consed: a variable declared by a {@code let} is replaced with the subexpression of its value,
+ * which makes every subexpression closed, and equal subexpressions are represented by the same canonical {@link Subexpression}
+ * regardless of the expressions they occur in. Thus {@code let(a, 2, mult(a, 3))} shares the subexpression with {@code mult(2, 3)}.
+ * The canonical form of an expression, together with the structural hashes of all its subexpressions, is built once per
+ * distinct expression and {@link MathContext}, and is kept in the memo. A subexpression is looked up at its root,
+ * and its operands are only looked at if its result is not in the memo. Hence, calculating an expression that has been calculated before
+ * costs two lookups: of its canonical form, and of its result, while a subexpression that has been calculated once
+ * costs a lookup instead of arithmetic in any later expression, as long as it is in the memo.
+ * <p>
+ * The memo uses a frequency-aware eviction policy (W-TinyLFU) and is bounded by an {@linkplain #getWeight() estimate}
+ * of the memory occupied by its entries: half of the {@linkplain #getMaximumWeight() maximum weight} is occupied by canonical forms
+ * of expressions, and the other half by results. The weight of an entry includes all subexpressions it references,
+ * even though they are shared with other entries, so the estimate exceeds the occupied memory.
+ * A single instance may be shared by any number of {@link ExpressionCalculator}s regardless of their {@link MathContext}s.
+ * Subexpressions that fail, e.g. division by zero, are not memoized, and neither are expressions with {@code let} variables
+ * whose values are not constants but are not used, because such values must still be evaluated.
+ */
+@ThreadSafe public final class SubexpressionMemo {
+  private static final ExpressionValidator validator = new ExpressionValidator();
+
+  private final Cache<ExpressionKey, Subexpression> expressions;
+  private final Cache<Subexpression, BigDecimal> results;
+  private final Interner<Subexpression> interner;
+  private final long maximumWeight;
+
+  /**
+   * @param maximumWeight The maximal estimated number of bytes occupied by the memo. Must not be negative.
+   */
+  public SubexpressionMemo(final long maximumWeight) {
+    checkArgument(maximumWeight >= 0, "The argument %s=%s must not be negative", "maximumWeight", maximumWeight);
+    this.maximumWeight = maximumWeight;
+    expressions = Caffeine.newBuilder()
+        .maximumWeight(maximumWeight / 2)
+        .<ExpressionKey, Subexpression>weigher((key, subexpr) -> saturatedSum(key.weight(), subexpr.weight))
+        .executor(Runnable::run)//do maintenance in the threads that use the cache instead of a background thread
+        .recordStats()
+        .build();
+    results = Caffeine.newBuilder()
+        .maximumWeight(maximumWeight - maximumWeight / 2)
+        .<Subexpression, BigDecimal>weigher((subexpr, value) -> saturatedSum(saturatedSum(64, subexpr.weight), weight(value)))//64 for the node
+        .executor(Runnable::run)
+        .recordStats()
+        .build();
+    interner = Interners.newWeakInterner();
+  }
+
+  /**
+   * Calculates an expression the same way as {@link ExpressionCalculator} does, but looks up subexpressions in the memo
+   * before calculating them. Does not create exceptions if the expression is syntactically invalid.
+   *
+   * @return {@code null} if the expression can not be calculated, in which case it must be calculated without the memo to report
+   * the problem, or if the expression is {@linkplain ExpressionPlan#isDeep() too deep} to be walked recursively.
+   */
+  @Nullable
+  final BigDecimal evaluate(final String expr, final MathContext mc) {
+    checkNotNull(expr, "The argument %s must not be null", "expr");
+    checkNotNull(mc, "The argument %s must not be null", "mc");
+    final ExpressionKey key = new ExpressionKey(expr, mc);
+    @Nullable Subexpression root = expressions.getIfPresent(key);
+    if (root == null) {
+      root = canonical(expr, mc);
+      if (root == null) {//the expression is invalid
+        return null;
+      }
+      expressions.put(key, root);
+    }
+    @Nullable final BigDecimal result;
+    if (root == Subexpression.NOT_MEMOIZED) {
+      result = null;
+    } else if (root.operator == null) {//a constant
+      result = root.constant;
+    } else {
+      @Nullable final BigDecimal memoized = results.getIfPresent(root);
+      result = memoized == null ? calculate(root, new IdentityHashMap<>()) : memoized;
+    }
+    return result;
+  }
+
+  /**
+   * @return {@code null} if the expression is syntactically invalid.
+   */
+  @Nullable
+  private final Subexpression canonical(final String expr, final MathContext mc) {
+    @Nullable Subexpression result = null;
+    if (validator.validate(expr) == null) {
+      final ExpressionPlan plan;
+      try {
+        plan = ExpressionPlan.compile(new ParsedExpression(expr, mc));
+      } catch (final CalculationException e) {//e.g. a literal can not be represented with the mc
+        return null;
+      }
+      if (plan.isDeep()) {
+        result = Subexpression.NOT_MEMOIZED;
+      } else {
+        result = canonical(plan.getRoot(), new Subexpression[plan.getSlotsCount()], new boolean[plan.getSlotsCount()], mc);
+        if (result == null) {
+          result = Subexpression.NOT_MEMOIZED;
+        } else if (result.depth > ExpressionPlan.MAX_RECURSION_DEPTH) {//substituting variables may make a subexpression deeper than the plan
+          result = Subexpression.NOT_MEMOIZED;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param slots Subexpressions substituted for variables, indexed by {@linkplain Variable#getSlot() slots}.
+   * @param used Specifies, for each slot, whether the variable has been used since it was declared.
+   *
+   * @return {@code null} if the expression can not be memoized because the value of a {@code let} variable that is not used
+   * is not a constant, and thus must be evaluated despite not affecting the result, e.g. in {@code let(a, div(1, 0), 2)}.
+   */
+  @Nullable
+  private final Subexpression canonical(final Node node, final Subexpression[] slots, final boolean[] used, final MathContext mc) {
+    @Nullable final Subexpression result;
+    if (node instanceof Constant) {
+      result = interner.intern(new Subexpression(((Constant)node).getValue()));
+    } else if (node instanceof Variable) {
+      final int slot = ((Variable)node).getSlot();
+      result = slots[slot];
+      used[slot] = true;
+      assert result != null : String.format("Variable %s is not initialized", node);
+    } else if (node instanceof Operation) {
+      final Operation operation = (Operation)node;
+      @Nullable final Subexpression operand1 = canonical(operation.getOperand1(), slots, used, mc);
+      @Nullable final Subexpression operand2 = operand1 == null ? null : canonical(operation.getOperand2(), slots, used, mc);
+      result = operand2 == null ? null : interner.intern(new Subexpression(operation.getOperator(), mc, operand1, operand2));
+    } else if (node instanceof Let) {
+      final Let let = (Let)node;
+      final int slot = let.getVariable()
+          .getSlot();
+      @Nullable final Subexpression value = canonical(let.getValue(), slots, used, mc);
+      if (value == null) {
+        result = null;
+      } else {
+        slots[slot] = value;
+        used[slot] = false;
+        @Nullable final Subexpression body = canonical(let.getBody(), slots, used, mc);
+        result = body == null || (!used[slot] && value.operator != null) ? null : body;
+      }
+    } else if (node instanceof Shared) {
+      final Shared shared = (Shared)node;
+      result = canonical(shared.getExpression(), slots, used, mc);
+      slots[shared.getSlot()] = result;
+    } else {
+      throw new AssertionError(String.format("%s is not accounted", node));
+    }
+    return result;
+  }
+
+  /**
+   * @param calculated Results calculated by the current evaluation, so that a subexpression that occurs more than once
+   * is calculated at most once even if its result is not in the memo.
+   *
+   * @return {@code null} if an operation fails.
+   */
+  @Nullable
+  private final BigDecimal evaluate(final Subexpression subexpr, final Map<Subexpression, BigDecimal> calculated) {
+    @Nullable BigDecimal result;
+    if (subexpr.operator == null) {//a constant
+      result = subexpr.constant;
+    } else {
+      result = calculated.get(subexpr);
+      if (result == null) {
+        result = results.getIfPresent(subexpr);
+        result = result == null ? calculate(subexpr, calculated) : result;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Calculates an operation whose result is not in the memo, and memoizes the result.
+   *
+   * @param calculated See {@link #evaluate(Subexpression, Map)}.
+   *
+   * @return {@code null} if an operation fails.
+   */
+  @Nullable
+  private final BigDecimal calculate(final Subexpression operation, final Map<Subexpression, BigDecimal> calculated) {
+    final LogicalType operator = operation.operator;
+    assert operator != null && operation.mc != null && operation.operand1 != null && operation.operand2 != null;
+    @Nullable final BigDecimal v1 = evaluate(operation.operand1, calculated);
+    @Nullable final BigDecimal v2 = v1 == null ? null : evaluate(operation.operand2, calculated);
+    @Nullable BigDecimal result = null;
+    if (v2 != null) {
+      try {
+        result = operator.calculate(v1, v2, operation.mc);
+      } catch (final RuntimeException e) {
+        //the result remains null
+      }
+    }
+    if (result != null) {
+      results.put(operation, result);
+      calculated.put(operation, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return The maximal estimated number of bytes occupied by the memo.
+   */
+  public final long getMaximumWeight() {
+    return maximumWeight;
+  }
+
+  /**
+   * @return An estimate of the number of bytes occupied by the memo, which does not exceed {@link #getMaximumWeight()}
+   * for longer than it takes to evict entries.
+   */
+  public final long getWeight() {
+    return weightedSize(expressions) + weightedSize(results);
+  }
+
+  /**
+   * @return An approximate number of results of subexpressions in the memo.
+   */
+  public final long getSize() {
+    return results.estimatedSize();
+  }
+
+  /**
+   * @return The number of times a result of a subexpression was found in the memo.
+   */
+  public final long getHitCount() {
+    return results.stats()
+        .hitCount();
+  }
+
+  /**
+   * @return The number of times a result of a subexpression was not found in the memo.
+   */
+  public final long getMissCount() {
+    return results.stats()
+        .missCount();
+  }
+
+  /**
+   * @return The number of expressions and results of subexpressions evicted from the memo because it had reached its maximum weight.
+   */
+  public final long getEvictionCount() {
+    return expressions.stats()
+        .evictionCount() +
+        results.stats()
+            .evictionCount();
+  }
+
+  /**
+   * Removes all expressions and results from the memo. Does not reset the counters.
+   */
+  public final void clear() {
+    expressions.invalidateAll();
+    results.invalidateAll();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{size=" + getSize() + ", weight=" + getWeight() + ", maximumWeight=" + maximumWeight +
+        ", expressionsStats=" + expressions.stats() + ", resultsStats=" + results.stats() + '}';
+  }
+
+  /**
+   * @return A rough estimate of the number of bytes occupied by the {@code value} on a 64-bit JVM with compressed references.
+   */
+  static final int weight(final BigDecimal value) {
+    final int bigDecimalWeight = 40;
+    final int precision = value.precision();
+    return precision <= 18
+        ? bigDecimalWeight
+        : bigDecimalWeight + 40 + 16 + Integer.BYTES * (precision / 9 + 1);//BigInteger with int[] mag, 9 decimal digits fit in an int
+  }
+
+  private static final long weightedSize(final Cache<?, ?> cache) {
+    return cache.policy()
+        .eviction()
+        .orElseThrow()
+        .weightedSize()
+        .orElse(0);
+  }
+
+  private static final int saturatedSum(final int a, final int b) {
+    return (int)Math.min(Integer.MAX_VALUE, (long)a + b);
+  }
+
+  @Immutable private static final class ExpressionKey {
+    private final String expr;
+    private final MathContext mc;
+
+    private ExpressionKey(final String expr, final MathContext mc) {
+      this.expr = expr;
+      this.mc = mc;
+    }
+
+    /**
+     * Also accounts for the node of the {@link Cache}.
+     */
+    private final int weight() {
+      return saturatedSum(64 + 16 + 40 + 16, 2 * expr.length());
+    }
+
+    @Override
+    public final boolean equals(@Nullable final Object o) {
+      final boolean result;
+      if (this == o) {
+        result = true;
+      } else if (o instanceof ExpressionKey) {
+        final ExpressionKey obj = (ExpressionKey)o;
+        result = expr.equals(obj.expr) && mc.equals(obj.mc);
+      } else {
+        result = false;
+      }
+      return result;
+    }
+
+    @Override
+    public final int hashCode() {
+      return 31 * expr.hashCode() + mc.hashCode();
+    }
+  }
+
+  /**
+   * A closed subexpression: either a constant, or an operation on subexpressions with a {@link MathContext}.
+   * Operands are canonical, i.e. {@linkplain Interner interned}, so comparing subexpressions does not compare their operands
+   * structurally, and the {@linkplain #hashCode() hash}, which is structural, is computed once.
+   */
+  @Immutable private static final class Subexpression {
+    /**
+     * Stands for an expression that is not memoized because it is too deep, or because it has a {@code let} variable
+     * whose value is not a constant but is not used.
+     */
+    private static final Subexpression NOT_MEMOIZED = new Subexpression(BigDecimal.ZERO);
+
+    @Nullable private final BigDecimal constant;
+    @Nullable private final LogicalType operator;
+    @Nullable private final MathContext mc;
+    @Nullable private final Subexpression operand1;
+    @Nullable private final Subexpression operand2;
+    private final int depth;
+    /**
+     * The estimated number of bytes occupied by this subexpression, including its operands,
+     * which are accounted once if they are the same subexpression, but otherwise regardless of whether they share subexpressions.
+     */
+    private final int weight;
+    private final int hash;
+
+    private Subexpression(final BigDecimal constant) {
+      this.constant = constant;
+      operator = null;
+      mc = null;
+      operand1 = null;
+      operand2 = null;
+      depth = 1;
+      weight = 40 + SubexpressionMemo.weight(constant);
+      hash = constant.hashCode();
+    }
+
+    private Subexpression(final LogicalType operator, final MathContext mc, final Subexpression operand1, final Subexpression operand2) {
+      constant = null;
+      this.operator = operator;
+      this.mc = mc;
+      this.operand1 = operand1;
+      this.operand2 = operand2;
+      depth = 1 + Math.max(operand1.depth, operand2.depth);
+      weight = saturatedSum(40, operand1 == operand2 ? operand1.weight : saturatedSum(operand1.weight, operand2.weight));
+      hash = 31 * (31 * (31 * operator.hashCode() + mc.hashCode()) + operand1.hash) + operand2.hash;
+    }
+
+    @Override
+    public final boolean equals(@Nullable final Object o) {
+      final boolean result;
+      if (this == o) {
+        result = true;
+      } else if (o instanceof Subexpression) {
+        final Subexpression obj = (Subexpression)o;
+        result = hash == obj.hash && operator == obj.operator &&
+            Objects.equals(constant, obj.constant) &&//BigDecimal.equals also compares scales
+            Objects.equals(operand1, obj.operand1) && Objects.equals(operand2, obj.operand2) &&//operands are canonical, thus compared by ==
+            Objects.equals(mc, obj.mc);
+      } else {
+        result = false;
+      }
+      return result;
+    }
+
+    @Override
+    public final int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -1,13 +1,10 @@
 package stincmale.exprcalculator.logic;
 
-import com.google.common.collect.ImmutableMap;
 import java.math.BigDecimal;
 import java.math.MathContext;
-import java.util.Map;
 import java.util.Objects;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
-import org.apache.commons.lang3.StringUtils;
 import stincmale.exprcalculator.Main;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -64,7 +61,7 @@ import static stincmale.exprcalculator.logic.Word.Type.NUMERIC;
   }
 
   Word(final String word, final Type type, final int position, final MathContext mc, final LogicalTypeValuePair ltypeAndValueHolder) {
-    checkArgument(StringUtils.isNotBlank(word), "The argument %s=%s must not be blank", "word", word);
+    checkArgument(word != null && !word.isBlank(), "The argument %s=%s must not be blank", "word", word);
     checkNotNull(type, "The argument %s must not be null", "type");
     checkArgument(!type.isIgnorable(), "The argument %s=%s is invalid", "type", type);
     checkArgument(position >= 0, "The argument %s=%s must not be negative", "position", position);
@@ -128,7 +125,7 @@ import static stincmale.exprcalculator.logic.Word.Type.NUMERIC;
       final String word, final Type type, final MathContext mc, final LogicalTypeValuePair ltypeAndValueHolder) {
     switch (type) {
       case LITERAL: {
-        @Nullable final LogicalType ltype = LogicalType.operationsIndex.get(word.toLowerCase(Main.locale));
+        @Nullable final LogicalType ltype = LogicalType.operatorOf(word, 0, word.length());
         if (ltype == null) {
           ltypeAndValueHolder.setLogicalType(OPERAND_VAR)
               .setValue(null);
@@ -140,7 +137,8 @@ import static stincmale.exprcalculator.logic.Word.Type.NUMERIC;
       }
       case NUMERIC: {
         ltypeAndValueHolder.setLogicalType(OPERAND)
-            .setValue(new BigDecimal(word, mc));
+            .setValue(Literals.of(mc)
+                .parse(word, 0, word.length()));
         break;
       }
       case CLOSING_BRACKET: {
@@ -174,26 +172,31 @@ import static stincmale.exprcalculator.logic.Word.Type.NUMERIC;
   }
 
   enum LogicalType {
-    OPERATOR_LET(true, null),
-    OPERATOR_ADD(true, BigDecimal::add),
-    OPERATOR_SUB(true, BigDecimal::subtract),
-    OPERATOR_MULT(true, BigDecimal::multiply),
-    OPERATOR_DIV(true, BigDecimal::divide),
-    OPERAND(false, null),
-    OPERAND_VAR(false, null),
-    CALCULATION(false, null);
-
-    private final boolean operator;
+    OPERATOR_LET("let", null),
+    OPERATOR_ADD("add", BigDecimal::add),
+    OPERATOR_SUB("sub", BigDecimal::subtract),
+    OPERATOR_MULT("mult", BigDecimal::multiply),
+    OPERATOR_DIV("div", BigDecimal::divide),
+    OPERAND(null, null),
+    OPERAND_VAR(null, null),
+    CALCULATION(null, null);
+
+    private static final LogicalType[] operators = {OPERATOR_LET, OPERATOR_ADD, OPERATOR_SUB, OPERATOR_MULT, OPERATOR_DIV};
+
+    /**
+     * The name of the operator in lower case, {@code null} if this is not an operator.
+     */
+    @Nullable private final String keyword;
     @Nullable private final Operation operation;
 
     LogicalType(
-        final boolean operator, @Nullable Operation operation) {
-      this.operator = operator;
+        @Nullable final String keyword, @Nullable Operation operation) {
+      this.keyword = keyword;
       this.operation = operation;
     }
 
     final boolean isOperator() {
-      return operator;
+      return keyword != null;
     }
 
     final boolean isCalculationSupported() {
@@ -209,16 +212,42 @@ import static stincmale.exprcalculator.logic.Word.Type.NUMERIC;
       return operation.apply(v1, v2, mc);
     }
 
-    private static final Map<String, LogicalType> operationsIndex = ImmutableMap.of("let",
-        OPERATOR_LET,
-        "add",
-        OPERATOR_ADD,
-        "sub",
-        OPERATOR_SUB,
-        "mult",
-        OPERATOR_MULT,
-        "div",
-        OPERATOR_DIV);
+    /**
+     * Recognizes operators case-insensitively without allocating objects.
+     * The result is the same as if the lower-case (in {@link Main#locale}) form of the {@code literal} were compared with operator names.
+     *
+     * @param literal A string containing a {@link Type#LITERAL} word in the range {@code [fromIdx, toIdx)}.
+     * @return {@code null} if the word is not an operator.
+     */
+    @Nullable
+    static final LogicalType operatorOf(final String literal, final int fromIdx, final int toIdx) {
+      @Nullable LogicalType result = null;
+      for (final LogicalType operator : operators) {
+        if (equalsIgnoreAsciiCase(literal, fromIdx, toIdx, operator.keyword)) {
+          result = operator;
+          break;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Only ASCII letters are converted to lower case because no other symbol is converted to an ASCII letter
+     * by {@link String#toLowerCase(java.util.Locale)}, except for the Kelvin sign, which is not used in operator names.
+     */
+    private static final boolean equalsIgnoreAsciiCase(final String s, final int fromIdx, final int toIdx, final String lowerCaseAscii) {
+      if (toIdx - fromIdx != lowerCaseAscii.length()) {
+        return false;
+      }
+      for (int i = fromIdx; i < toIdx; i++) {
+        final char c = s.charAt(i);
+        final char lowerCaseC = (c >= 'A' && c <= 'Z') ? (char)(c + ('a' - 'A')) : c;
+        if (lowerCaseC != lowerCaseAscii.charAt(i - fromIdx)) {
+          return false;
+        }
+      }
+      return true;
+    }
 
     @FunctionalInterface
     private interface Operation {
@@ -0,0 +1,165 @@
+package stincmale.exprcalculator.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Metrics of calculations {@linkplain #record(long, boolean, int, int) recorded} by
+ * {@link stincmale.exprcalculator.logic.ExpressionCalculator}s that use them.
+ * Counters are striped, and so are {@linkplain LatencyHistogram histograms}, hence recording does not lock,
+ * and contention between threads is low. A calculator without metrics does not measure latencies at all.
+ * <p>
+ * The metrics may be {@linkplain #register() registered} in the platform MBean server under the name {@link #OBJECT_NAME}.
+ */
+@ThreadSafe public final class CalculationMetrics implements CalculationMetricsMXBean {
+  public static final String OBJECT_NAME = "stincmale.exprcalculator:type=CalculationMetrics";
+
+  private final LongAdder calculationsCount;
+  private final LongAdder failuresCount;
+  private final LongAdder tokensCount;
+  private final LongAccumulator maxStackDepth;
+  /**
+   * Latencies of successful calculations in nanoseconds.
+   */
+  private final LatencyHistogram latency;
+  /**
+   * Latencies of failed calculations in nanoseconds.
+   */
+  private final LatencyHistogram failureLatency;
+
+  public CalculationMetrics() {
+    calculationsCount = new LongAdder();
+    failuresCount = new LongAdder();
+    tokensCount = new LongAdder();
+    maxStackDepth = new LongAccumulator(Math::max, 0);
+    latency = new LatencyHistogram();
+    failureLatency = new LatencyHistogram();
+  }
+
+  /**
+   * @param latencyNanos The duration of the calculation in nanoseconds. Must not be negative.
+   * @param success {@code true} if the expression was calculated.
+   * @param tokenCount The number of tokens the expression was split into while calculating it,
+   * which is 0 if the calculator did not need to tokenize the expression. Must not be negative.
+   * @param maxStackDepth The maximal depth of the stack used to calculate the expression. Must not be negative.
+   */
+  public final void record(final long latencyNanos, final boolean success, final int tokenCount, final int maxStackDepth) {
+    checkArgument(tokenCount >= 0, "The argument %s=%s must not be negative", "tokenCount", tokenCount);
+    checkArgument(maxStackDepth >= 0, "The argument %s=%s must not be negative", "maxStackDepth", maxStackDepth);
+    calculationsCount.increment();
+    if (success) {
+      latency.record(latencyNanos);
+    } else {
+      failuresCount.increment();
+      failureLatency.record(latencyNanos);
+    }
+    if (tokenCount > 0) {
+      tokensCount.add(tokenCount);
+    }
+    if (maxStackDepth > 0) {
+      this.maxStackDepth.accumulate(maxStackDepth);
+    }
+  }
+
+  /**
+   * Registers the metrics in the {@linkplain ManagementFactory#getPlatformMBeanServer() platform MBean server} under the name {@link #OBJECT_NAME}.
+   *
+   * @throws IllegalStateException If registration fails, e.g. because other metrics have already been registered.
+   */
+  public final void register() throws IllegalStateException {
+    try {
+      ManagementFactory.getPlatformMBeanServer()
+          .registerMBean(this, objectName());
+    } catch (final JMException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Unregisters the metrics {@linkplain #register() registered} in the platform MBean server.
+   *
+   * @throws IllegalStateException If unregistration fails, e.g. because the metrics are not registered.
+   */
+  public final void unregister() throws IllegalStateException {
+    try {
+      ManagementFactory.getPlatformMBeanServer()
+          .unregisterMBean(objectName());
+    } catch (final JMException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public final long getCalculationCount() {
+    return calculationsCount.sum();
+  }
+
+  @Override
+  public final long getFailureCount() {
+    return failuresCount.sum();
+  }
+
+  @Override
+  public final long getTokenCount() {
+    return tokensCount.sum();
+  }
+
+  @Override
+  public final int getMaxStackDepth() {
+    return (int)maxStackDepth.get();
+  }
+
+  @Override
+  public final long getLatencyP50Micros() {
+    return TimeUnit.NANOSECONDS.toMicros(latency.percentile(0.5));
+  }
+
+  @Override
+  public final long getLatencyP99Micros() {
+    return TimeUnit.NANOSECONDS.toMicros(latency.percentile(0.99));
+  }
+
+  @Override
+  public final long getFailureLatencyP50Micros() {
+    return TimeUnit.NANOSECONDS.toMicros(failureLatency.percentile(0.5));
+  }
+
+  @Override
+  public final long getFailureLatencyP99Micros() {
+    return TimeUnit.NANOSECONDS.toMicros(failureLatency.percentile(0.99));
+  }
+
+  /**
+   * Values recorded concurrently with resetting may or may not be forgotten.
+   */
+  @Override
+  public final void reset() {
+    calculationsCount.reset();
+    failuresCount.reset();
+    tokensCount.reset();
+    maxStackDepth.reset();
+    latency.reset();
+    failureLatency.reset();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{calculations=" + getCalculationCount() + ", failures=" + getFailureCount() +
+        ", tokens=" + getTokenCount() + ", maxStackDepth=" + getMaxStackDepth() + ", latency=" + latency + ", failureLatency=" + failureLatency + '}';
+  }
+
+  private static final ObjectName objectName() {
+    try {
+      return new ObjectName(OBJECT_NAME);
+    } catch (final MalformedObjectNameException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package stincmale.exprcalculator.metrics;
+
+/**
+ * The management interface of {@link CalculationMetrics}. Latencies are reported in microseconds.
+ */
+public interface CalculationMetricsMXBean {
+  long getCalculationCount();
+
+  long getFailureCount();
+
+  long getTokenCount();
+
+  int getMaxStackDepth();
+
+  long getLatencyP50Micros();
+
+  long getLatencyP99Micros();
+
+  long getFailureLatencyP50Micros();
+
+  long getFailureLatencyP99Micros();
+
+  /**
+   * Resets all counters and histograms.
+   */
+  void reset();
+}
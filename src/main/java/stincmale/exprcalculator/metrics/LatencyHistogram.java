@@ -0,0 +1,130 @@
+package stincmale.exprcalculator.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A histogram of non-negative values, e.g. latencies in nanoseconds, that can be {@linkplain #record(long) recorded} concurrently
+ * without locking and allocating.
+ * <p>
+ * Values are counted in buckets whose width grows with the values, so that a {@linkplain #percentile(double) percentile}
+ * is reported with the relative error not greater than 1/{@value #SUB_BUCKETS_COUNT}, regardless of the magnitude of values.
+ * <p>
+ * The counts are striped: there are up to {@value #MAX_STRIPES_COUNT} copies of the buckets, and a thread records values
+ * in the copy chosen by its {@linkplain Thread#getId() identifier}, which reduces contention between threads.
+ */
+@ThreadSafe public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS_COUNT = bucketIdx(Long.MAX_VALUE) + 1;
+  private static final int MAX_STRIPES_COUNT = 8;
+
+  /**
+   * {@link #stripesCount} consecutive copies of {@link #BUCKETS_COUNT} buckets.
+   */
+  private final AtomicLongArray counts;
+  private final int stripesCount;
+
+  public LatencyHistogram() {
+    stripesCount = Math.min(MAX_STRIPES_COUNT, Integer.highestOneBit(Runtime.getRuntime()
+        .availableProcessors()));
+    counts = new AtomicLongArray(stripesCount * BUCKETS_COUNT);
+  }
+
+  /**
+   * @param value Must not be negative.
+   */
+  public final void record(final long value) {
+    checkArgument(value >= 0, "The argument %s=%s must not be negative", "value", value);
+    final int stripeIdx = (int)Thread.currentThread()
+        .getId() & (stripesCount - 1);
+    counts.incrementAndGet(stripeIdx * BUCKETS_COUNT + bucketIdx(value));
+  }
+
+  /**
+   * @return The number of {@linkplain #record(long) recorded} values.
+   */
+  public final long count() {
+    long result = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      result += counts.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * @param p The percentile, must be within (0, 1], e.g. 0.99 for the 99th percentile.
+   * @return The greatest value that may have been recorded in the bucket where the {@code p}-th percentile is,
+   * or {@code 0} if nothing was recorded.
+   */
+  public final long percentile(final double p) {
+    checkArgument(p > 0 && p <= 1, "The argument %s=%s must be within (0, 1]", "p", p);
+    final long[] snapshot = new long[BUCKETS_COUNT];
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      final long bucketCount = counts.get(i);
+      snapshot[i % BUCKETS_COUNT] += bucketCount;
+      count += bucketCount;
+    }
+    long result = 0;
+    if (count > 0) {
+      final long rank = Math.max(1, (long)Math.ceil(p * count));
+      long cumulativeCount = 0;
+      for (int i = 0; i < snapshot.length; i++) {
+        cumulativeCount += snapshot[i];
+        if (cumulativeCount >= rank) {
+          result = maxValue(i);
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Forgets all {@linkplain #record(long) recorded} values. Values recorded concurrently with resetting may or may not be forgotten.
+   */
+  public final void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "{count=" + count() + ", p50=" + percentile(0.5) + ", p99=" + percentile(0.99) + '}';
+  }
+
+  /**
+   * Values less than {@link #SUB_BUCKETS_COUNT} have their own buckets,
+   * each range [2<sup>n</sup>, 2<sup>n+1</sup>) of greater values is split into {@link #SUB_BUCKETS_COUNT} buckets of equal width.
+   */
+  static final int bucketIdx(final long value) {
+    final int result;
+    if (value < SUB_BUCKETS_COUNT) {
+      result = (int)value;
+    } else {
+      final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+      final int subBucketIdx = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS_COUNT - 1);
+      result = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS_COUNT + subBucketIdx;
+    }
+    return result;
+  }
+
+  /**
+   * @return The greatest value that belongs to the bucket.
+   */
+  static final long maxValue(final int bucketIdx) {
+    final long result;
+    if (bucketIdx < SUB_BUCKETS_COUNT) {
+      result = bucketIdx;
+    } else {
+      final int exponent = bucketIdx / SUB_BUCKETS_COUNT + SUB_BUCKET_BITS - 1;
+      final int subBucketIdx = bucketIdx % SUB_BUCKETS_COUNT;
+      final long minValue = (long)(SUB_BUCKETS_COUNT + subBucketIdx) << (exponent - SUB_BUCKET_BITS);
+      result = minValue + ((1L << (exponent - SUB_BUCKET_BITS)) - 1);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Contains metrics of calculations which may be exposed via JMX.
+ */
+package stincmale.exprcalculator.metrics;
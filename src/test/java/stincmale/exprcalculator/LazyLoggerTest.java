@@ -0,0 +1,50 @@
+package stincmale.exprcalculator;
+
+import org.apache.logging.log4j.spi.StandardLevel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class LazyLoggerTest {
+  public LazyLoggerTest() {
+  }
+
+  @AfterEach
+  public final void afterEach() {
+    LazyLogger.setThreshold(null);
+  }
+
+  @Test
+  public final void thresholdOff() {
+    LazyLogger.setThreshold(StandardLevel.OFF);
+    final LazyLogger logger = LazyLogger.getLogger(LazyLoggerTest.class);
+    assertFalse(logger.isErrorEnabled());
+    assertFalse(logger.isWarnEnabled());
+    assertFalse(logger.isInfoEnabled());
+    assertFalse(logger.isDebugEnabled());
+  }
+
+  @Test
+  public final void thresholdWarn() {
+    LazyLogger.setThreshold(StandardLevel.WARN);
+    final LazyLogger logger = LazyLogger.getLogger(LazyLoggerTest.class);
+    assertTrue(logger.isErrorEnabled());
+    assertTrue(logger.isWarnEnabled());
+    assertFalse(logger.isInfoEnabled());
+    assertFalse(logger.isDebugEnabled());
+  }
+
+  @Test
+  public final void thresholdDebug() {
+    LazyLogger.setThreshold(StandardLevel.DEBUG);
+    final LazyLogger logger = LazyLogger.getLogger(LazyLoggerTest.class);
+    assertTrue(logger.isErrorEnabled());
+    assertTrue(logger.isWarnEnabled());
+    assertTrue(logger.isInfoEnabled());
+    assertTrue(logger.isDebugEnabled());
+  }
+}
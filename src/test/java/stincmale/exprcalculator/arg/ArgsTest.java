@@ -3,11 +3,16 @@ package stincmale.exprcalculator.arg;
 import org.junit.jupiter.api.Test;
 import com.beust.jcommander.ParameterException;
 import java.math.MathContext;
+import java.nio.file.Paths;
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.spi.StandardLevel;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(Lifecycle.PER_METHOD)
 public final class ArgsTest {
@@ -29,6 +34,12 @@ public final class ArgsTest {
     assertEquals(Level.WARN, new Args(new String[] {"-log", "warn"}).getLoggingLevel());
   }
 
+  @Test
+  public final void standardLoggingLevel() {
+    assertEquals(StandardLevel.ERROR, new Args().getStandardLoggingLevel());//default value
+    assertEquals(StandardLevel.DEBUG, new Args(new String[] {"-v", "debug"}).getStandardLoggingLevel());
+  }
+
   @Test
   public final void loggingLevel4() {
     assertThrows(ParameterException.class, () -> new Args(new String[] {"-v"}));
@@ -57,6 +68,20 @@ public final class ArgsTest {
             .getPrecision());
   }
 
+  @Test
+  public final void exact() {
+    assertFalse(new Args().isExact());//default value
+    assertTrue(new Args(new String[] {"-e"}).isExact());
+    assertTrue(new Args(new String[] {"-exact", "-p", "0"}).isExact());
+  }
+
+  @Test
+  public final void metrics() {
+    assertFalse(new Args().isMetrics());//default value
+    assertTrue(new Args(new String[] {"-m"}).isMetrics());
+    assertTrue(new Args(new String[] {"-metrics", "-s"}).isMetrics());
+  }
+
   @Test
   public final void constructor1() {
     assertEquals(Level.OFF, new Args(new String[] {"-v", "OFF", "input"}, 0, 1).getLoggingLevel());
@@ -66,4 +91,85 @@ public final class ArgsTest {
   public final void constructor2() {
     assertThrows(ParameterException.class, () -> new Args(new String[] {"-v", "OFF", "input"}, 0, 2));
   }
-}
\ No newline at end of file
+
+  @Test
+  public final void batch1() {
+    final Args args = new Args();
+    assertFalse(args.isBatch());//default value
+    assertNull(args.getFile());//default value
+  }
+
+  @Test
+  public final void batch2() {
+    assertTrue(new Args(new String[] {"-batch"}).isBatch());
+  }
+
+  @Test
+  public final void batch3() {
+    final Args args = new Args(new String[] {"-b", "-f", "expressions.txt"});
+    assertTrue(args.isBatch());
+    assertEquals(Paths.get("expressions.txt"), args.getFile());
+  }
+
+  @Test
+  public final void check() {
+    assertFalse(new Args().isCheck());//default value
+    assertTrue(new Args(new String[] {"-c"}).isCheck());
+    assertTrue(new Args(new String[] {"-b", "-check"}).isCheck());
+  }
+
+  @Test
+  public final void daemon() {
+    final Args args = new Args();
+    assertFalse(args.isDaemon());//default value
+    assertFalse(args.isDaemonClient());//default value
+    assertEquals(9753, args.getDaemonPort());//default value
+    assertTrue(new Args(new String[] {"-d"}).isDaemon());
+    final Args clientArgs = new Args(new String[] {"-daemonClient", "-dp", "1234"});
+    assertTrue(clientArgs.isDaemonClient());
+    assertEquals(1234, clientArgs.getDaemonPort());
+    assertThrows(ParameterException.class, () -> new Args(new String[] {"-daemonPort", "65536"}));
+  }
+
+  @Test
+  public final void server() {
+    final Args args = new Args();
+    assertFalse(args.isServer());//default value
+    assertEquals(9754, args.getServerPort());//default value
+    final Args serverArgs = new Args(new String[] {"-server", "-sp", "1234"});
+    assertTrue(serverArgs.isServer());
+    assertEquals(1234, serverArgs.getServerPort());
+    assertThrows(ParameterException.class, () -> new Args(new String[] {"-serverPort", "0"}));
+  }
+
+  @Test
+  public final void workers1() {
+    assertEquals(Runtime.getRuntime()
+        .availableProcessors(), new Args().getWorkers());//default value
+  }
+
+  @Test
+  public final void workers2() {
+    assertEquals(3, new Args(new String[] {"-workers", "3"}).getWorkers());
+  }
+
+  @Test
+  public final void workers3() {
+    assertThrows(ParameterException.class, () -> new Args(new String[] {"-w", "0"}));
+  }
+
+  @Test
+  public final void reorderBufferSize1() {
+    assertEquals(10_000, new Args().getReorderBufferSize());//default value
+  }
+
+  @Test
+  public final void reorderBufferSize2() {
+    assertEquals(5, new Args(new String[] {"-rb", "5"}).getReorderBufferSize());
+  }
+
+  @Test
+  public final void reorderBufferSize3() {
+    assertThrows(ParameterException.class, () -> new Args(new String[] {"-reorderBuffer", "-1"}));
+  }
+}
@@ -1,12 +1,17 @@
 package stincmale.exprcalculator.arg;
 
 import com.beust.jcommander.ParameterException;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import stincmale.exprcalculator.Main;
 import org.apache.logging.log4j.Level;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(Lifecycle.PER_METHOD)
 public final class InputAndArgsTest {
@@ -37,4 +42,45 @@ public final class InputAndArgsTest {
   public final void constructor3() {
     assertThrows(ParameterException.class, () -> new InputAndArgs(new String[] {"-v", "OFF"}, null));
   }
-}
\ No newline at end of file
+
+  @Test
+  public final void batch1() throws IOException {
+    final InputAndArgs o = new InputAndArgs(
+        new String[] {"-v", "OFF", "-batch"},
+        new ByteArrayInputStream(("add(1, 2)" + Main.LN + "3").getBytes(Main.charset)));
+    assertTrue(o.getArguments()
+        .isBatch());
+    assertThrows(IllegalStateException.class, o::getInput);
+    try (BufferedReader in = o.newBatchInputReader()) {
+      assertEquals("add(1, 2)", in.readLine());
+      assertEquals("3", in.readLine());
+    }
+  }
+
+  @Test
+  public final void batch2() {
+    final InputAndArgs o = new InputAndArgs(new String[] {"-b", "-f", "nonexistent file"}, null);
+    assertThrows(ParameterException.class, o::newBatchInputReader);
+  }
+
+  @Test
+  public final void batch3() {
+    assertThrows(IllegalStateException.class, () -> new InputAndArgs(new String[] {"input"}, null).newBatchInputReader());
+  }
+
+  @Test
+  public final void daemon() {
+    final InputAndArgs o = new InputAndArgs(new String[] {"-d", "-dp", "1234"}, null);
+    assertTrue(o.getArguments()
+        .isDaemon());
+    assertThrows(IllegalStateException.class, o::getInput);
+  }
+
+  @Test
+  public final void server() {
+    final InputAndArgs o = new InputAndArgs(new String[] {"-s"}, null);
+    assertTrue(o.getArguments()
+        .isServer());
+    assertThrows(IllegalStateException.class, o::getInput);
+  }
+}
@@ -0,0 +1,150 @@
+package stincmale.exprcalculator.arg;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.Main;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class MappedFileReaderTest {
+  private static final List<String> CONTENTS = List.of(
+      "",
+      "\n",
+      "add(1, 2)",
+      "add(1, 2)\n",
+      "add(1, 2)\nlet(a, 5, add(a, a))\n\n-3.14",
+      "add(1, 2)\r\nmult(3, 4)\rdiv(1, 3)\r\r\n\n",
+      "абв(1, 2)\n" + "x".repeat(100) + "\nadd(т, 1)\r",
+      "add(1, 2)\r");
+  private static final int[] WINDOW_SIZES = {1, 2, 3, 7, 64, MappedFileReader.DEFAULT_WINDOW_SIZE};
+
+  public MappedFileReaderTest() {
+  }
+
+  @Test
+  public final void readLine() throws IOException {
+    for (final String content : CONTENTS) {
+      final Path file = Files.createTempFile(getClass().getSimpleName(), null);
+      try {
+        Files.writeString(file, content, Main.charset);
+        final List<String> expected = readLines(new BufferedReader(new StringReader(content)));
+        for (final int windowSize : WINDOW_SIZES) {
+          assertEquals(expected, readLines(new MappedFileReader(file, windowSize)), () -> content + ", windowSize=" + windowSize);
+        }
+      } finally {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  public final void read() throws IOException {
+    for (final String content : CONTENTS) {
+      final Path file = Files.createTempFile(getClass().getSimpleName(), null);
+      try {
+        Files.writeString(file, content, Main.charset);
+        for (final int windowSize : WINDOW_SIZES) {
+          try (final BufferedReader reader = new MappedFileReader(file, windowSize)) {
+            final StringBuilder actual = new StringBuilder();
+            for (int c = reader.read(); c != -1; c = reader.read()) {
+              actual.append((char)c);
+            }
+            assertEquals(content, actual.toString(), () -> content + ", windowSize=" + windowSize);
+          }
+          try (final BufferedReader reader = new MappedFileReader(file, windowSize)) {
+            final StringBuilder actual = new StringBuilder();
+            final char[] cbuf = new char[3];
+            for (int n = reader.read(cbuf, 0, cbuf.length); n != -1; n = reader.read(cbuf, 0, cbuf.length)) {
+              actual.append(cbuf, 0, n);
+            }
+            assertEquals(content, actual.toString(), () -> content + ", windowSize=" + windowSize);
+          }
+        }
+      } finally {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  public final void readAndReadLine() throws IOException {
+    for (final String content : CONTENTS) {
+      final Path file = Files.createTempFile(getClass().getSimpleName(), null);
+      try {
+        Files.writeString(file, content, Main.charset);
+        final List<String> expected = readAndReadLines(new BufferedReader(new StringReader(content)));
+        for (final int windowSize : WINDOW_SIZES) {
+          assertEquals(expected, readAndReadLines(new MappedFileReader(file, windowSize)), () -> content + ", windowSize=" + windowSize);
+        }
+      } finally {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  public final void skip() throws IOException {
+    final Path file = Files.createTempFile(getClass().getSimpleName(), null);
+    try {
+      Files.writeString(file, "add(1, 2)\nmult(3, 4)", Main.charset);
+      try (final BufferedReader reader = new MappedFileReader(file, 2)) {
+        assertEquals(11, reader.skip(11));
+        assertEquals("ult(3, 4)", reader.readLine());
+        assertEquals(0, reader.skip(1));
+        assertThrows(IllegalArgumentException.class, () -> reader.skip(-1));
+        assertThrows(IOException.class, () -> reader.mark(1));
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public final void close() throws IOException {
+    final Path file = Files.createTempFile(getClass().getSimpleName(), null);
+    try {
+      final BufferedReader reader = new MappedFileReader(file);
+      assertNull(reader.readLine());
+      reader.close();
+      assertThrows(IOException.class, reader::readLine);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static final List<String> readLines(final BufferedReader reader) throws IOException {
+    final List<String> result = new ArrayList<>();
+    try (reader) {
+      for (@Nullable String line = reader.readLine(); line != null; line = reader.readLine()) {
+        result.add(line);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Alternately reads a few characters and the rest of a line.
+   */
+  private static final List<String> readAndReadLines(final BufferedReader reader) throws IOException {
+    final List<String> result = new ArrayList<>();
+    try (reader) {
+      final char[] cbuf = new char[2];
+      for (int n = reader.read(cbuf, 0, cbuf.length); n != -1; n = reader.read(cbuf, 0, cbuf.length)) {
+        result.add(new String(cbuf, 0, n));
+        result.add(reader.readLine());
+      }
+    }
+    return result;
+  }
+}
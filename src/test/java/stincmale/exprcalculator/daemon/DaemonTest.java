@@ -0,0 +1,180 @@
+package stincmale.exprcalculator.daemon;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.Main;
+import stincmale.exprcalculator.logic.BatchCalculator;
+import stincmale.exprcalculator.logic.CalculationResult;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import stincmale.exprcalculator.logic.ExpressionPlanCache;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class DaemonTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+
+  private Daemon daemon;
+  private Thread daemonThread;
+
+  public DaemonTest() {
+  }
+
+  @BeforeEach
+  public final void beforeEach() throws IOException {
+    daemon = new Daemon(new ExpressionCalculator(mc, new ExpressionPlanCache(10)), mc, 4, 0);
+    daemonThread = new Thread(() -> {
+      try {
+        daemon.run();
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    daemonThread.start();
+  }
+
+  @AfterEach
+  public final void afterEach() throws IOException, InterruptedException {
+    daemon.close();
+    daemonThread.join();
+  }
+
+  @Test
+  public final void tryCalculate() throws IOException {
+    final ExpressionCalculator calculator = new ExpressionCalculator(mc);
+    try (DaemonClient client = new DaemonClient(daemon.getPort())) {
+      final CalculationResult success = client.tryCalculate("let(a, 5, add(a, div(a, 3)))");
+      assertTrue(success.isSuccess());
+      assertEquals(calculator.calculate("let(a, 5, add(a, div(a, 3)))")
+          .round(mc), success.getValue());
+      for (final String expr : List.of("div(1, 0)", "add(1, 2))", "(-3.14)", "", "add(1, $)")) {
+        final CalculationResult problem = client.tryCalculate(expr);
+        assertFalse(problem.isSuccess(), expr);
+        assertEquals(calculator.tryCalculate(expr)
+            .description(), problem.description(), expr);
+      }
+    }
+  }
+
+  @Test
+  public final void calculatePipelined() throws IOException {
+    final String input = input(new Random(0), 5_000);
+    final StringWriter expectedOut = new StringWriter();
+    final long expectedProblemsCount = new BatchCalculator(new ExpressionCalculator(mc), mc).calculate(
+        new BufferedReader(new StringReader(input)), expectedOut);
+    final StringWriter out = new StringWriter();
+    try (DaemonClient client = new DaemonClient(daemon.getPort())) {
+      assertEquals(expectedProblemsCount, client.calculate(new BufferedReader(new StringReader(input)), out));
+      assertEquals(expectedOut.toString(), out.toString());
+      assertEquals(0, client.calculate(new BufferedReader(new StringReader("")), out));//the connection can be reused
+    }
+  }
+
+  @Test
+  public final void calculateTooLong() throws IOException {
+    final String input = String.join(Main.LN, "add(1, 2)", "add(1, 2)" + " ".repeat(Protocol.MAX_PAYLOAD_LENGTH), "mult(3, 4)");
+    final StringWriter out = new StringWriter();
+    try (DaemonClient client = new DaemonClient(daemon.getPort())) {
+      assertEquals(1, client.calculate(new BufferedReader(new StringReader(input)), out));
+      assertEquals(String.join(Main.LN, "3", "Can not calculate expression", "12") + Main.LN, out.toString());
+      assertEquals(new BigDecimal("3"), client.tryCalculate("add(1, 2)")
+          .getValue());//the connection can be reused
+    }
+  }
+
+  @Test
+  public final void concurrentClients() throws InterruptedException, ExecutionException {
+    final int clientsCount = 8;
+    final ExecutorService executor = Executors.newFixedThreadPool(clientsCount);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < clientsCount; i++) {
+        final int seed = i;
+        futures.add(executor.submit(() -> {
+          final String input = input(new Random(seed), 1_000);
+          final StringWriter expectedOut = new StringWriter();
+          new BatchCalculator(new ExpressionCalculator(mc), mc).calculate(new BufferedReader(new StringReader(input)), expectedOut);
+          final StringWriter out = new StringWriter();
+          try (DaemonClient client = new DaemonClient(daemon.getPort())) {
+            client.calculate(new BufferedReader(new StringReader(input)), out);
+          }
+          assertEquals(expectedOut.toString(), out.toString());
+          return null;
+        }));
+      }
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public final void tooLongFrame() throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+      final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeInt(Protocol.MAX_PAYLOAD_LENGTH + 1);
+      out.flush();
+      assertThrows(EOFException.class, () -> new DataInputStream(socket.getInputStream()).readInt());
+    }
+  }
+
+  @Test
+  public final void longExpression() throws IOException {
+    try (DaemonClient client = new DaemonClient(daemon.getPort())) {
+      assertEquals("3000", client.tryCalculate(nested(3_000))//longer than the buffers of both the daemon and the client
+          .getValue()
+          .toPlainString());
+      client.tryCalculate(nested(100_000));//whatever the result is, there must be a reply
+      assertEquals("3", client.tryCalculate("add(1, 2)")
+          .getValue()
+          .toPlainString());
+    }
+  }
+
+  private static final String nested(final int depth) {
+    final StringBuilder result = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      result.append("add(1, ");
+    }
+    result.append('0');
+    for (int i = 0; i < depth; i++) {
+      result.append(')');
+    }
+    return result.toString();
+  }
+
+  private static final String input(final Random rnd, final int linesCount) {
+    final List<String> exprs = List.of("add(1, 2)", "div(1, 0)", "", "let(a, 5, add(a, a))", "(-3.14)", "mult(3, div(1, 3))", "add(1, 2))");
+    final StringBuilder result = new StringBuilder();
+    for (int i = 0; i < linesCount; i++) {
+      result.append(exprs.get(rnd.nextInt(exprs.size())))
+          .append(Main.LN);
+    }
+    return result.toString();
+  }
+}
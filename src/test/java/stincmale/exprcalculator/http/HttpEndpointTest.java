@@ -0,0 +1,174 @@
+package stincmale.exprcalculator.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.MathContext;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.Main;
+import stincmale.exprcalculator.logic.BatchCalculator;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import stincmale.exprcalculator.logic.ExpressionPlanCache;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class HttpEndpointTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+
+  private HttpEndpoint endpoint;
+  private Thread endpointThread;
+
+  public HttpEndpointTest() {
+  }
+
+  @BeforeEach
+  public final void beforeEach() throws IOException {
+    endpoint = new HttpEndpoint(new ExpressionCalculator(mc, new ExpressionPlanCache(10)), mc, 4, 0);
+    endpointThread = new Thread(() -> {
+      try {
+        endpoint.run();
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    endpointThread.start();
+  }
+
+  @AfterEach
+  public final void afterEach() throws InterruptedException {
+    endpoint.close();
+    endpointThread.join();
+  }
+
+  @Test
+  public final void calculate() throws IOException {
+    assertEquals(new Response(200, "6.666667" + Main.LN), request("POST", HttpEndpoint.CALCULATE_PATH, "let(a, 5, add(a, div(a, 3)))"));
+    assertEquals(new Response(200, "3" + Main.LN), request("POST", HttpEndpoint.CALCULATE_PATH, "add(1, 2)\r\n"));
+    assertEquals(
+        new Response(HttpEndpoint.STATUS_PROBLEM, new ExpressionCalculator(mc).tryCalculate("div(1, 0)")
+            .description() + Main.LN),
+        request("POST", HttpEndpoint.CALCULATE_PATH, "div(1, 0)"));
+  }
+
+  @Test
+  public final void calculateBatch() throws IOException {
+    final StringBuilder input = new StringBuilder();
+    final Random rnd = new Random(0);
+    final String[] exprs = {"add(1, 2)", "div(1, 0)", "", "let(a, 5, add(a, a))", "(-3.14)", "mult(3, div(1, 3))", "add(1, 2))"};
+    for (int i = 0; i < 5_000; i++) {
+      input.append(exprs[rnd.nextInt(exprs.length)])
+          .append(Main.LN);
+    }
+    final StringWriter expectedOut = new StringWriter();
+    new BatchCalculator(new ExpressionCalculator(mc), mc).calculate(new BufferedReader(new StringReader(input.toString())), expectedOut);
+    assertEquals(new Response(200, expectedOut.toString()), request("POST", HttpEndpoint.BATCH_PATH, input.toString()));
+    assertEquals(new Response(200, ""), request("POST", HttpEndpoint.BATCH_PATH, ""));
+  }
+
+  @Test
+  public final void stats() throws IOException {
+    for (int i = 0; i < 10; i++) {
+      request("POST", HttpEndpoint.CALCULATE_PATH, "add(1, 2)");
+    }
+    request("POST", HttpEndpoint.BATCH_PATH, "add(1, 2)" + Main.LN + "add(3, 4)" + Main.LN);
+    final Map<String, String> stats = requestStats();
+    assertEquals("11", stats.get("requests"));
+    assertEquals("12", stats.get("expressions"));
+    final long microBatches = Long.parseLong(stats.get("microBatches"));
+    assertTrue(microBatches > 0 && microBatches <= 12, stats::toString);
+    assertTrue(Long.parseLong(stats.get("latencyP50Micros")) <= Long.parseLong(stats.get("latencyP99Micros")), stats::toString);
+    assertTrue(Double.parseDouble(stats.get("requestsPerSecond")) > 0, stats::toString);
+    assertEquals(new Response(204, ""), request("DELETE", HttpEndpoint.STATS_PATH, null));
+    final Map<String, String> resetStats = requestStats();
+    assertEquals("0", resetStats.get("requests"));
+    assertEquals("0", resetStats.get("expressions"));
+    assertEquals("0", resetStats.get("latencyP99Micros"));
+  }
+
+  @Test
+  public final void wrongRequest() throws IOException {
+    assertEquals(405, request("GET", HttpEndpoint.CALCULATE_PATH, null).status);
+    assertEquals(404, request("POST", HttpEndpoint.CALCULATE_PATH + "/x", "add(1, 2)").status);
+    assertEquals(404, request("GET", "/", null).status);
+  }
+
+  private final Map<String, String> requestStats() throws IOException {
+    final Response response = request("GET", HttpEndpoint.STATS_PATH, null);
+    assertEquals(200, response.status);
+    return response.body.lines()
+        .map(line -> line.split(" "))
+        .collect(Collectors.toMap(nameAndValue -> nameAndValue[0], nameAndValue -> nameAndValue[1]));
+  }
+
+  private final Response request(final String method, final String path, @Nullable final String body) throws IOException {
+    final HttpURLConnection connection = (HttpURLConnection)new URL("http", "localhost", endpoint.getPort(), path).openConnection();
+    try {
+      connection.setRequestMethod(method);
+      if (body != null) {
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(body.getBytes(Main.charset));
+        }
+      }
+      final int status = connection.getResponseCode();
+      @Nullable final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      final String responseBody;
+      if (in == null) {
+        responseBody = "";
+      } else {
+        try (in) {
+          responseBody = new String(in.readAllBytes(), Main.charset);
+        }
+      }
+      return new Response(status, responseBody);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static final class Response {
+    private final int status;
+    private final String body;
+
+    private Response(final int status, final String body) {
+      this.status = status;
+      this.body = body;
+    }
+
+    @Override
+    public final boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Response)) {
+        return false;
+      }
+      final Response response = (Response)o;
+      return status == response.status && body.equals(response.body);
+    }
+
+    @Override
+    public final int hashCode() {
+      return 31 * status + body.hashCode();
+    }
+
+    @Override
+    public final String toString() {
+      return "{status=" + status + ", body=" + body + '}';
+    }
+  }
+}
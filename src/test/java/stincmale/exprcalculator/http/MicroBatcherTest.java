@@ -0,0 +1,52 @@
+package stincmale.exprcalculator.http;
+
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.logic.CalculationResult;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class MicroBatcherTest {
+  public MicroBatcherTest() {
+  }
+
+  @Test
+  public final void submit() {
+    try (MicroBatcher batcher = new MicroBatcher(new ExpressionCalculator(MathContext.DECIMAL32), 2)) {
+      final List<CompletableFuture<CalculationResult>> results = new ArrayList<>();
+      for (int i = 0; i < 10_000; i++) {
+        results.add(batcher.submit(i % 10 == 0 ? "div(1, 0)" : "add(" + i + ", 1)"));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        final CalculationResult result = results.get(i)
+            .join();
+        if (i % 10 == 0) {
+          assertFalse(result.isSuccess());
+        } else {
+          assertEquals(i + 1, result.getValue()
+              .intValueExact());
+        }
+      }
+      assertEquals(results.size(), batcher.calculatedCount());
+      assertTrue(batcher.batchesCount() >= results.size() / MicroBatcher.MAX_BATCH_SIZE);
+    }
+  }
+
+  @Test
+  public final void close() {
+    final MicroBatcher batcher = new MicroBatcher(new ExpressionCalculator(MathContext.DECIMAL32), 1);
+    batcher.close();
+    assertThrows(CancellationException.class, () -> batcher.submit("add(1, 2)")
+        .join());
+  }
+}
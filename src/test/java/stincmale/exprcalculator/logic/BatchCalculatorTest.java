@@ -0,0 +1,59 @@
+package stincmale.exprcalculator.logic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.MathContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.Main;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class BatchCalculatorTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+
+  public BatchCalculatorTest() {
+  }
+
+  @Test
+  public final void calculate() throws IOException {
+    final String input = String.join(Main.LN,
+        "add(1, 2)",
+        "div(1, 0)",
+        "",
+        "let(a, 5, add(a, a))",
+        "(-3.14)",
+        "mult(3, div(1, 3))");
+    final String expectedOutput = String.join(Main.LN,
+        "3",
+        "Problem with 'div' at index 0",
+        "Can not calculate expression",
+        "10",
+        "Problem with ')' at index 6",
+        "0.9999999") + Main.LN;
+    final StringWriter out = new StringWriter();
+    final long problemsCount = new BatchCalculator(new ExpressionCalculator(mc), mc).calculate(new BufferedReader(new StringReader(input)), out);
+    assertEquals(expectedOutput, out.toString());
+    assertEquals(3, problemsCount);
+  }
+
+  @Test
+  public final void calculateDeep() throws IOException {
+    final String input = String.join(Main.LN,
+        "add(1, 2)",
+        "add(1, ".repeat(20_000) + "1" + ")".repeat(20_000),
+        "mult(3, 4)");
+    final String expectedOutput = String.join(Main.LN,
+        "3",
+        "20001",
+        "12") + Main.LN;
+    final StringWriter out = new StringWriter();
+    final long problemsCount = new BatchCalculator(new ExpressionCalculator(mc, new ExpressionPlanCache(10)), mc).calculate(
+        new BufferedReader(new StringReader(input)), out);
+    assertEquals(expectedOutput, out.toString());
+    assertEquals(0, problemsCount);
+  }
+}
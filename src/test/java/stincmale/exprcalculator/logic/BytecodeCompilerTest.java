@@ -0,0 +1,78 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.MathContext;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class BytecodeCompilerTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+
+  public BytecodeCompilerTest() {
+  }
+
+  @Test
+  public final void compile() {
+    List.of(
+        "-3.14",
+        "add(1, 2)",
+        "mult  (3,div(1, 3) )",
+        "let(a, 5, let(b, mult(a, 10), add(b, a)))",
+        "let(a, let(b, let(d, 1, div(1, d)), add(b, b)), let(b, 20, add(a, b)))",
+        "add(let(a, 1, a), let(a, 2, a))",
+        "let(a, 1, let(b, 2, let(c, 3, let(d, 4, let(e, 5, sub(e, mult(d, add(c, div(b, a)))))))))",
+        "add(0, add(1, add(2, add(3, add(4, add(5, add(6, add(7, add(8, add(9, add(10, add(11, 300.5))))))))))))",
+        "let(d, sub(mult(add(8, 13), div(28, 24)), let(a, let(b, 10, add(b, b)), let(c, 20, add(a, c)))), add(div(d, 13), d))")
+        .forEach(expr -> {
+          final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression(expr, mc));
+          final BytecodeCompiler.Compiled compiled = BytecodeCompiler.compile(plan);
+          assertNotNull(compiled, expr);
+          assertEquals(plan.evaluateInterpreted(), compiled.evaluate(mc), expr);
+        });
+  }
+
+  @Test
+  public final void compileTooBig() {
+    final StringBuilder expr = new StringBuilder();
+    final int depth = 300;
+    for (int i = 0; i < depth; i++) {
+      expr.append("let(v")
+          .append(i)
+          .append(", ")
+          .append(i)
+          .append(", ");
+    }
+    expr.append("v0");
+    expr.append(")".repeat(depth));
+    assertNull(BytecodeCompiler.compile(ExpressionPlan.compile(new ParsedExpression(expr.toString(), mc))));
+  }
+
+  @Test
+  public final void tieredEvaluation() {
+    final String expr = "let(a, 2, add(div(a, 4), mult(a, 3)))";
+    final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression(expr, mc), 3, null, false);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(new ExpressionCalculator(mc).calculate(expr), plan.evaluate());
+    }
+    assertTrue(plan.isCompiled());
+  }
+
+  @Test
+  public final void tieredEvaluationProblem() {
+    final String expr = "add(1, let(a, 0, div(add(a, 1), a)))";
+    final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression(expr, mc), 1, null, false);
+    final String expectedDescription = assertThrows(CalculationException.class, () -> new ExpressionCalculator(mc).calculate(expr))
+        .description();
+    for (int i = 0; i < 3; i++) {
+      assertEquals(expectedDescription, assertThrows(CalculationException.class, plan::evaluate).description());
+    }
+    assertTrue(plan.isCompiled());
+  }
+}
@@ -0,0 +1,95 @@
+package stincmale.exprcalculator.logic;
+
+import java.io.IOException;
+import java.math.MathContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class CalculationEventsTest {
+  public CalculationEventsTest() {
+  }
+
+  @Test
+  public final void events() throws IOException {
+    final ExpressionCalculator calc = new ExpressionCalculator(MathContext.DECIMAL32);
+    final ExpressionCalculator planCalc = new ExpressionCalculator(MathContext.DECIMAL32, new ExpressionPlanCache(16));
+    final List<RecordedEvent> events = record(() -> {
+      calc.calculate("add(1, 2)");
+      calc.tryCalculate("div(1, 0)");
+      planCalc.calculate("mult(2, 3)");
+    });
+    final List<RecordedEvent> evaluateEvents = events(events, EvaluateEvent.NAME);
+    assertEquals(3, evaluateEvents.size());
+    final RecordedEvent evaluated = evaluateEvents.get(0);
+    assertEquals(9, evaluated.getInt("expressionLength"));
+    assertEquals(4, evaluated.getInt("tokenCount"));
+    assertTrue(evaluated.getInt("maxStackDepth") > 0);
+    assertTrue(evaluated.getDuration("tokenizingTime")
+        .toNanos() > 0);
+    assertTrue(evaluated.getBoolean("success"));
+    assertFalse(evaluateEvents.get(1)
+        .getBoolean("success"));
+    final List<RecordedEvent> failureEvents = events(events, FailureEvent.NAME);
+    assertEquals(1, failureEvents.size());
+    assertEquals(0, failureEvents.get(0)
+        .getInt("problemIdx"));
+    assertEquals("div", failureEvents.get(0)
+        .getString("problemWord"));
+    final List<RecordedEvent> parseEvents = events(events, ParseEvent.NAME);
+    assertEquals(1, parseEvents.size());
+    assertEquals(4, parseEvents.get(0)
+        .getInt("tokenCount"));
+  }
+
+  @Test
+  public final void disabledEvents() throws IOException {
+    final ExpressionCalculator calc = new ExpressionCalculator(MathContext.DECIMAL32);
+    final Path file = Files.createTempFile(getClass().getSimpleName(), ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.disable(EvaluateEvent.NAME);
+      recording.start();
+      calc.calculate("add(1, 2)");
+      recording.stop();
+      recording.dump(file);
+      assertTrue(events(RecordingFile.readAllEvents(file), EvaluateEvent.NAME).isEmpty());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static final List<RecordedEvent> record(final Runnable action) throws IOException {
+    final Path file = Files.createTempFile(CalculationEventsTest.class.getSimpleName(), ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(EvaluateEvent.NAME);
+      recording.enable(ParseEvent.NAME);
+      recording.enable(FailureEvent.NAME);
+      recording.start();
+      action.run();
+      recording.stop();
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static final List<RecordedEvent> events(final List<RecordedEvent> events, final String name) {
+    return events.stream()
+        .filter(event -> event.getEventType()
+            .getName()
+            .equals(name))
+        .collect(Collectors.toList());
+  }
+}
@@ -26,4 +26,14 @@ public final class CalculationExceptionTest {
     final String expected = "Problem with '5' at index 5:" + Main.LN + "\t1\n3456789" + Main.LN + "\t \n  ^";
     assertEquals(expected, new CalculationException(5, "\t1\n3456789").description());
   }
-}
\ No newline at end of file
+
+  @Test
+  public final void summary1() {
+    assertEquals("Problem with '5' at index 5", new CalculationException(5, "\t1\n3456789").summary());
+  }
+
+  @Test
+  public final void summary2() {
+    assertEquals("Can not calculate expression", new CalculationException("0123456789").summary());
+  }
+}
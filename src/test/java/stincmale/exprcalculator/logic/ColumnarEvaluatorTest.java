@@ -0,0 +1,62 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.MathContext;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class ColumnarEvaluatorTest {
+  private static final MathContext mc = MathContext.DECIMAL64;
+
+  public ColumnarEvaluatorTest() {
+  }
+
+  @Test
+  public final void evaluate() {
+    final ColumnarEvaluator evaluator = compile(
+        "let(z, div(x, y), add(mult(z, z), sub(mult(x, 0.5), let(w, mult(y, 2), add(w, mult(y, 2))))))", List.of("x", "y"));
+    final Random rnd = new Random(0);
+    for (final int rowsCount : new int[] {0, 1, 7, ColumnarEvaluator.BLOCK_SIZE - 1, ColumnarEvaluator.BLOCK_SIZE,
+        ColumnarEvaluator.BLOCK_SIZE + 1, 3 * ColumnarEvaluator.BLOCK_SIZE + 5}) {
+      final double[][] columns = new double[2][rowsCount + 3];
+      for (int row = 0; row < rowsCount; row++) {
+        columns[0][row] = rnd.nextDouble() * 1000 - 500;
+        columns[1][row] = rnd.nextDouble() * 1000 - 500;
+      }
+      final double[] results = new double[rowsCount];
+      evaluator.evaluate(columns, results);
+      for (int row = 0; row < rowsCount; row++) {
+        final double x = columns[0][row];
+        final double y = columns[1][row];
+        final double z = x / y;
+        final double w = y * 2;
+        assertEquals(z * z + (x * 0.5 - (w + y * 2)), results[row], rowsCount + " " + row);
+      }
+    }
+  }
+
+  @Test
+  public final void evaluateDivisionByZero() {
+    final double[] results = new double[3];
+    compile("div(x, y)", List.of("x", "y")).evaluate(new double[][] {{1, -1, 0}, {0, 0, 0}}, results);
+    assertEquals(Double.POSITIVE_INFINITY, results[0]);
+    assertEquals(Double.NEGATIVE_INFINITY, results[1]);
+    assertEquals(Double.NaN, results[2]);
+  }
+
+  @Test
+  public final void evaluateConstant() {
+    final double[] results = new double[2];
+    compile("add(1, 2)", List.of()).evaluate(new double[0][], results);
+    assertEquals(3, results[0]);
+    assertEquals(3, results[1]);
+  }
+
+  private static final ColumnarEvaluator compile(final String expr, final List<String> variables) {
+    return ColumnarEvaluator.compile(ExpressionPlan.compile(new ParsedExpression(expr, mc), variables, true), variables.size());
+  }
+}
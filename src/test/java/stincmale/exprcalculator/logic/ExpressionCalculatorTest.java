@@ -2,10 +2,18 @@ package stincmale.exprcalculator.logic;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /*
@@ -86,4 +94,99 @@ public final class ExpressionCalculatorTest {
         Math.round(calc.calculate("mult(3, div(1, 3))")
             .doubleValue()));
   }
-}
\ No newline at end of file
+
+  @Test
+  public final void tryCalculate() {
+    final List<String> expressions = List.of(
+        "let(a, 5, add(a, a))",
+        "",
+        "a",
+        "add(1,,2)",
+        "add(1.2.3, 4)",
+        "add(1, 2))",
+        "add((1, 2)",
+        "let(a, 1, add(let(a, 2, div(a, 1)), 1))",
+        "add(let(a, 1, a), a)",
+        "div(0, 0)",
+        "div(1, 3",
+        "add(1, $)");
+    for (final ExpressionCalculator calc : List.of(new ExpressionCalculator(mc), new ExpressionCalculator(mc, new ExpressionPlanCache(10)))) {
+      for (int i = 0; i < 2; i++) {//the second time the valid expression is found in the cache
+        for (final String expr : expressions) {
+          final CalculationResult result = calc.tryCalculate(expr);
+          assertEquals(expr, result.getExpression());
+          assertEquals(calculateOrDescribe(calc, expr), result.isSuccess() ? result.getValue() : result.description(), expr);
+        }
+      }
+    }
+  }
+
+  @Test
+  public final void tryCalculateProblem() {
+    final CalculationResult result = new ExpressionCalculator(mc).tryCalculate("add(1, div(2, 0))");
+    assertFalse(result.isSuccess());
+    assertEquals(7, result.getProblemIdx());
+    assertEquals("div", result.getProblemWord());
+    assertEquals("Problem with 'div' at index 7", result.summary());
+    assertEquals(result.description(), result.toException()
+        .description());
+    assertThrows(IllegalStateException.class, result::getValue);
+  }
+
+  @Test
+  public final void literalCanNotBeRounded() {
+    final String expr = "add(1.234, 1)";
+    for (final ExpressionCalculator calc : List.of(
+        new ExpressionCalculator(new MathContext(2, RoundingMode.UNNECESSARY)),
+        new ExpressionCalculator(new MathContext(2, RoundingMode.UNNECESSARY), new ExpressionPlanCache(10)))) {
+      final CalculationException e = assertThrows(CalculationException.class, () -> calc.calculate(expr));
+      assertEquals("Problem with ',' at index 9", e.summary());
+      final CalculationResult result = calc.tryCalculate(expr);
+      assertFalse(result.isSuccess());
+      assertEquals(9, result.getProblemIdx());
+      assertEquals("Problem with ',' at index 9", result.summary());
+    }
+  }
+
+  @Test
+  public final void calculateConcurrently() throws InterruptedException, ExecutionException {
+    final List<String> expressions = List.of(
+        "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))",
+        "let(d, sub(mult(add(8, 13), div(28, 24)), let(a, let(b, 10, add(b, b)), let(c, 20, add(a, c)))), add(div(d, 13), d))",
+        "add(let(a, 1, a), let(a, 2, a))",
+        "div(1, 0)");
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    final List<Object> expected = new ArrayList<>();
+    for (final String expr : expressions) {
+      expected.add(calculateOrDescribe(calc, expr));
+    }
+    final int threads = 4;
+    final ExecutorService ex = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(ex.submit(() -> {
+          for (int i = 0; i < 1_000; i++) {
+            final int idx = i % expressions.size();
+            assertEquals(expected.get(idx), calculateOrDescribe(calc, expressions.get(idx)));
+          }
+        }));
+      }
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      ex.shutdownNow();
+    }
+  }
+
+  private static final Object calculateOrDescribe(final ExpressionCalculator calc, final String expr) {
+    Object result;
+    try {
+      result = calc.calculate(expr);
+    } catch (final CalculationException e) {
+      result = e.description();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,99 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class ExpressionPlanCacheTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+  private static final List<String> validExpressions = List.of(
+      "-3.14",
+      "add(1, 2)",
+      "mult  (3,div(1, 3) )",
+      "let(a, let(b, let(d, 1, div(1, d)), add(b, b)), let(b, 20, add(a, b)))",
+      "let(a, 1, add(let(b, 2, div(b, 1)), -1))",
+      "add(let(a, 1, a), let(a, 2, a))",
+      "let(d, sub(mult(add(8, 13), div(28, 24)), let(a, let(b, 10, add(b, b)), let(c, 20, add(a, c)))), add(div(d, 13), d))");
+  private static final List<String> invalidExpressions = List.of(
+      "(123)",
+      "let(a, 1, add(let(a, 2, div(a, 1)), 1))",
+      "let(add, 1, div(a, 1))",
+      "a",
+      "let",
+      "+",
+      "let(a)",
+      "let(a, a)",
+      "let(let(a, 1, 2), 1, 2)",
+      "add(1,,2)",
+      "add(let(a, 1, a), a)",
+      "div(0,0)",
+      "add(div(1, 0), let(a))",
+      "let(a, 1, let(b, a, b))",
+      "add(1, 2, 3)");
+
+  public ExpressionPlanCacheTest() {
+  }
+
+  @Test
+  public final void calculate() {
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    final ExpressionCalculator cachingCalc = new ExpressionCalculator(mc, new ExpressionPlanCache(100));
+    for (int i = 0; i < 2; i++) {
+      validExpressions.forEach(expr -> assertEquals(calc.calculate(expr), cachingCalc.calculate(expr), expr));
+    }
+  }
+
+  @Test
+  public final void calculateInvalid() {
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    final ExpressionCalculator cachingCalc = new ExpressionCalculator(mc, new ExpressionPlanCache(100));
+    for (int i = 0; i < 2; i++) {
+      invalidExpressions.forEach(expr -> assertEquals(
+          assertThrows(CalculationException.class, () -> calc.calculate(expr), expr).description(),
+          assertThrows(CalculationException.class, () -> cachingCalc.calculate(expr), expr).description(),
+          expr));
+    }
+  }
+
+  @Test
+  public final void calculateDeep() {
+    final String expr = "add(1, ".repeat(20_000) + "1" + ")".repeat(20_000);
+    final ExpressionCalculator cachingCalc = new ExpressionCalculator(mc, new ExpressionPlanCache(100, 1, true, true, true));
+    for (int i = 0; i < 3; i++) {
+      assertEquals(new BigDecimal("20001"), cachingCalc.calculate(expr));
+      assertEquals(new BigDecimal("20001"), cachingCalc.tryCalculate(expr)
+          .getValue());
+    }
+  }
+
+  @Test
+  public final void counters() {
+    final ExpressionPlanCache cache = new ExpressionPlanCache(100);
+    final ExpressionCalculator calc = new ExpressionCalculator(mc, cache);
+    calc.calculate("add(1, 2)");
+    calc.calculate("add(1, 2)");
+    calc.calculate("add(1, 2)");
+    new ExpressionCalculator(MathContext.DECIMAL64, cache).calculate("add(1, 2)");
+    assertThrows(CalculationException.class, () -> calc.calculate("add(1, 2"));
+    assertEquals(2, cache.getHitCount());
+    assertEquals(3, cache.getMissCount());
+    assertEquals(2, cache.getSize());
+    assertEquals(0, cache.getEvictionCount());
+  }
+
+  @Test
+  public final void eviction() {
+    final ExpressionPlanCache cache = new ExpressionPlanCache(2);
+    final ExpressionCalculator calc = new ExpressionCalculator(mc, cache);
+    validExpressions.forEach(calc::calculate);
+    assertTrue(cache.getSize() <= 2, cache::toString);
+    assertEquals(validExpressions.size() - cache.getSize(), cache.getEvictionCount(), cache::toString);
+  }
+}
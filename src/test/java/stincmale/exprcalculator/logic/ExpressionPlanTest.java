@@ -0,0 +1,92 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Variable;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class ExpressionPlanTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+
+  public ExpressionPlanTest() {
+  }
+
+  @Test
+  public final void slots() {
+    final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression("let(a, let(b, 1, b), let(c, 2, add(a, c)))", mc));
+    assertEquals(2, plan.getSlotsCount());
+    final Let letA = (Let)plan.getRoot();
+    assertEquals(0, letA.getVariable()
+        .getSlot());
+    final Let letB = (Let)letA.getValue();
+    assertEquals(0, letB.getVariable()
+        .getSlot());
+    assertEquals(0, ((Variable)letB.getBody()).getSlot());
+    final Let letC = (Let)letA.getBody();
+    assertEquals(1, letC.getVariable()
+        .getSlot());
+    final Operation add = (Operation)letC.getBody();
+    assertEquals(0, ((Variable)add.getOperand1()).getSlot());
+    assertEquals(1, ((Variable)add.getOperand2()).getSlot());
+    assertEquals(new BigDecimal("3"), plan.evaluate());
+  }
+
+  @Test
+  public final void slotsNoVariables() {
+    assertEquals(0, ExpressionPlan.compile(new ParsedExpression("add(1, 2)", mc))
+        .getSlotsCount());
+  }
+
+  @Test
+  public final void evaluateDeep() {
+    final int depth = 20_000;
+    final String expr = "let(a, 2, " + "add(a, let(b, ".repeat(depth / 2) + "mult(a, 3)" + ", div(b, a)))".repeat(depth / 2) + ")";
+    final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression(expr, mc), 1, new SpeculativeEvaluator.Counters(), true, true);
+    assertTrue(plan.isDeep());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(new ExpressionCalculator(mc).calculate(expr), plan.evaluate());
+    }
+    assertFalse(plan.isCompiled());
+  }
+
+  @Test
+  public final void evaluateMaxRecursionDepth() {
+    final String expr = "let(a, 2, " + "add(a, ".repeat(ExpressionPlan.MAX_RECURSION_DEPTH - 3) + "mult(a, 3)" +
+        ")".repeat(ExpressionPlan.MAX_RECURSION_DEPTH - 3) + ")";
+    final BigDecimal expected = new ExpressionCalculator(mc).calculate(expr);
+    for (final boolean optimize : new boolean[] {false, true}) {
+      final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression(expr, mc), 1, new SpeculativeEvaluator.Counters(), optimize, true);
+      assertFalse(plan.isDeep());
+      for (int i = 0; i < 3; i++) {
+        assertEquals(expected, plan.evaluate());
+      }
+    }
+    assertEquals(ExpressionPlan.MAX_RECURSION_DEPTH, ExpressionPlan.compile(new ParsedExpression(expr, mc))
+        .getRoot()
+        .getDepth());
+  }
+
+  @Test
+  public final void defineVariableTwice() {
+    final String expr = "let(a, 1, let(a, 2, a))";
+    final String expectedDescription = assertThrows(CalculationException.class, () -> new ExpressionCalculator(mc).calculate(expr))
+        .description();
+    final CalculationException e = assertThrows(CalculationException.class, () -> ExpressionPlan.compile(new ParsedExpression(expr, mc)));
+    e.setExpression(expr);
+    assertEquals(expectedDescription, e.description());
+  }
+
+  @Test
+  public final void undeclaredVariable() {
+    assertThrows(CalculationException.class, () -> ExpressionPlan.compile(new ParsedExpression("add(let(a, 1, a), a)", mc)));
+  }
+}
@@ -10,7 +10,9 @@ import org.junit.jupiter.api.TestInstance.Lifecycle;
 import stincmale.exprcalculator.logic.Word.Type;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(Lifecycle.PER_METHOD)
 public final class ExpressionSpliteratorTest {
@@ -51,6 +53,19 @@ public final class ExpressionSpliteratorTest {
     assertThrows(CalculationException.class, () -> new ExpressionSpliterator("le-t(a, 10, add(a,1))", mc).forEachRemaining(w -> {}));
   }
 
+  @Test
+  public final void next() {
+    final ExpressionSpliterator spliterator = new ExpressionSpliterator("add(1, 2.3.4)", mc);
+    assertEquals("add", spliterator.next()
+        .getWord());
+    assertEquals("1", spliterator.next()
+        .getWord());
+    assertNull(spliterator.next());
+    assertTrue(spliterator.isFailed());
+    assertEquals(12, spliterator.getProblemIdx());
+    assertNull(spliterator.next());
+  }
+
   @Test
   public final void parseBracketsBalance1() {
     assertThrows(CalculationException.class, () -> new ExpressionSpliterator("(()", mc).forEachRemaining(w -> {}));
@@ -0,0 +1,118 @@
+package stincmale.exprcalculator.logic;
+
+import java.lang.management.ManagementFactory;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class ExpressionValidatorTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+  private static final List<String> expressions = List.of(
+      "let(a, 5, add(a, a))",
+      "let(a, let(b, 10, add(b, b)), let(b, 20, add(a, b)))",
+      "mult(add(2, 2), div(9, 3))",
+      "add(let(a, 1, a), let(a, 2, a))",
+      "let(a, 1, add(let(b, 2, div(b, 1)), -1))",
+      "LeT(Ab, 1., ADD(Ab, -.5))",
+      "-3.14",
+      "div(1, 0)",
+      "let(var, 1, add(let(var, 2, div(var, 1)), 1))",
+      "add(let(a, 1, a), a)",
+      "let(a, b, 1)",
+      "let(add, 1, 2)",
+      "add(1, 2, 3)",
+      "add(1)",
+      "(-3.14)",
+      "add(1,,2)",
+      "add(1.2.3, 4)",
+      "add(1, 2))",
+      "add((1, 2)",
+      "add(1, $)",
+      "a",
+      "",
+      "  ");
+
+  public ExpressionValidatorTest() {
+  }
+
+  @Test
+  public final void validate() {
+    final ExpressionValidator validator = new ExpressionValidator();
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    for (final String expr : expressions) {
+      assertSameAsCalculator(expr, validator, calc);
+    }
+    assertNull(validator.validate("div(1, 0)"));
+    final CalculationResult problem = validator.validate("let(a, 1, add(let(a, 2, div(a, 1)), 1))");
+    assertNotNull(problem);
+    assertEquals(18, problem.getProblemIdx());
+    assertEquals("a", problem.getProblemWord());
+  }
+
+  @Test
+  public final void validateRandom() {
+    final String alphabet = "(),  -.019abdlet_$";
+    final Random rnd = new Random(0);
+    final ExpressionValidator validator = new ExpressionValidator();
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    for (int i = 0; i < 30_000; i++) {
+      final StringBuilder expr = new StringBuilder(expressions.get(rnd.nextInt(expressions.size())));
+      for (int mutations = rnd.nextInt(4), j = 0; j < mutations; j++) {
+        final int idx = rnd.nextInt(expr.length() + 1);
+        if (idx < expr.length() && rnd.nextBoolean()) {
+          expr.deleteCharAt(idx);
+        } else {
+          expr.insert(idx, alphabet.charAt(rnd.nextInt(alphabet.length())));
+        }
+      }
+      assertSameAsCalculator(expr.toString(), validator, calc);
+    }
+  }
+
+  @Test
+  public final void noAllocation() {
+    final com.sun.management.ThreadMXBean threadMxBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread()
+        .getId();
+    final String expr = "let(a, 5, let(b, mult(a, 10), ADD(b, div(a, -3.14))))";
+    final ExpressionValidator validator = new ExpressionValidator();
+    final int iterations = 20_000;
+    for (int i = 0; i < iterations; i++) {//warm up and grow the arrays
+      assertNull(validator.validate(expr));
+    }
+    final long allocatedBytesBefore = threadMxBean.getThreadAllocatedBytes(threadId);
+    int validCount = 0;
+    for (int i = 0; i < iterations; i++) {
+      if (validator.validate(expr) == null) {
+        validCount++;
+      }
+    }
+    final long allocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+    assertEquals(iterations, validCount);
+    assertTrue(allocatedBytes < 1024, () -> String.format("%s bytes were allocated", allocatedBytes));
+  }
+
+  /**
+   * The validator must report the same problem the calculator reports, unless the problem is a division by zero,
+   * in which case the validator either finds no problem, or finds a problem the calculator does not reach.
+   */
+  private static final void assertSameAsCalculator(final String expr, final ExpressionValidator validator, final ExpressionCalculator calc) {
+    final CalculationResult expected = calc.tryCalculate(expr);
+    @Nullable final CalculationResult actual = validator.validate(expr);
+    if (expected.isSuccess()) {
+      assertNull(actual, expr);
+    } else if (!"div".equalsIgnoreCase(expected.getProblemWord())) {
+      assertNotNull(actual, expr);
+      assertEquals(expected.description(), actual.description(), expr);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.logic.Word.LogicalType;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class FixedPointEvaluatorTest {
+  private static final List<LogicalType> operators = List.of(
+      LogicalType.OPERATOR_ADD, LogicalType.OPERATOR_SUB, LogicalType.OPERATOR_MULT, LogicalType.OPERATOR_DIV);
+
+  public FixedPointEvaluatorTest() {
+  }
+
+  @Test
+  public final void supports() {
+    assertTrue(FixedPointEvaluator.supports(MathContext.DECIMAL32));
+    assertTrue(FixedPointEvaluator.supports(new MathContext(FixedPointEvaluator.MAX_PRECISION)));
+    assertFalse(FixedPointEvaluator.supports(MathContext.DECIMAL128));
+    assertFalse(FixedPointEvaluator.supports(MathContext.UNLIMITED));
+  }
+
+  @Test
+  public final void calculateRandom() {
+    final Random rnd = new Random(0);
+    for (final RoundingMode roundingMode : RoundingMode.values()) {
+      for (int precision = 1; precision <= FixedPointEvaluator.MAX_PRECISION; precision++) {
+        final MathContext mc = new MathContext(precision, roundingMode);
+        for (int i = 0; i < 500; i++) {
+          final BigDecimal v1 = randomValue(rnd);
+          final BigDecimal v2 = randomValue(rnd);
+          for (final LogicalType operator : operators) {
+            BigDecimal expected;
+            try {
+              expected = operator.calculate(v1, v2, mc);
+            } catch (final ArithmeticException e) {
+              expected = null;
+            }
+            if (expected == null) {
+              assertThrows(ArithmeticException.class, () -> FixedPointEvaluator.calculate(operator, v1, v2, mc),
+                  () -> operator + " " + v1 + " " + v2 + " " + mc);
+            } else {
+              assertEquals(expected, FixedPointEvaluator.calculate(operator, v1, v2, mc), operator + " " + v1 + " " + v2 + " " + mc);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public final void calculateEdgeCases() {
+    final MathContext mc = new MathContext(3, RoundingMode.HALF_EVEN);
+    final List<BigDecimal> values = List.of(
+        new BigDecimal("0"), new BigDecimal("0.000"), new BigDecimal("0E+3"), new BigDecimal("1"), new BigDecimal("-1"),
+        new BigDecimal("999.5"), new BigDecimal("-999.5"), new BigDecimal("0.0005"), new BigDecimal("3"), new BigDecimal("7.000"),
+        new BigDecimal("1E+10"), new BigDecimal("12345"), new BigDecimal("0.125"), new BigDecimal("-0.375"),
+        BigDecimal.valueOf(Long.MAX_VALUE), BigDecimal.valueOf(Long.MIN_VALUE), BigDecimal.valueOf(999_999_999_999_999_999L, 5));
+    for (final BigDecimal v1 : values) {
+      for (final BigDecimal v2 : values) {
+        for (final LogicalType operator : operators) {
+          BigDecimal expected;
+          try {
+            expected = operator.calculate(v1, v2, mc);
+          } catch (final ArithmeticException e) {
+            expected = null;
+          }
+          if (expected == null) {
+            assertThrows(ArithmeticException.class, () -> FixedPointEvaluator.calculate(operator, v1, v2, mc));
+          } else {
+            assertEquals(expected, FixedPointEvaluator.calculate(operator, v1, v2, mc), operator + " " + v1 + " " + v2);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public final void evaluate() {
+    final MathContext mc = new MathContext(8, RoundingMode.HALF_EVEN);
+    for (final String expr : List.of(
+        "add(1, mult(2, 3))",
+        "div(1, 3)",
+        "let(a, 0.1, let(b, div(2, 3), add(mult(a, b), sub(b, a))))",
+        "mult(mult(mult(123456789, 987654321), 123456789), 987654321)",
+        "add(1234567890123456789012345, 1)",
+        "div(100, 8)")) {
+      final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression(expr, mc));
+      assertEquals(plan.evaluateInterpreted(), FixedPointEvaluator.compile(plan)
+          .evaluate(), expr);
+    }
+  }
+
+  @Test
+  public final void evaluateProblem() {
+    final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression("add(1, div(1, sub(2, 2)))", MathContext.DECIMAL32));
+    assertThrows(ArithmeticException.class, () -> FixedPointEvaluator.compile(plan)
+        .evaluate());
+  }
+
+  @Test
+  public final void evaluateCached() {
+    final MathContext mc = MathContext.DECIMAL64;
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    final ExpressionCalculator cachingCalc = new ExpressionCalculator(mc, new ExpressionPlanCache(10, Integer.MAX_VALUE, false, false, true));
+    for (final String expr : List.of("div(1, 3)", "let(a, 5, let(b, mult(a, 10), add(b, a)))", "mult(0.1, 0.3)", "sub(1, 1.00)")) {
+      assertEquals(calc.calculate(expr), cachingCalc.calculate(expr), expr);
+    }
+    assertEquals(
+        assertThrows(CalculationException.class, () -> calc.calculate("add(1, div(2, 0))")).description(),
+        assertThrows(CalculationException.class, () -> cachingCalc.calculate("add(1, div(2, 0))")).description());
+  }
+
+  private static final BigDecimal randomValue(final Random rnd) {
+    final int digits = rnd.nextInt(21);
+    final BigInteger unscaledValue;
+    if (digits == 0) {
+      unscaledValue = BigInteger.ZERO;
+    } else {
+      final StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < digits; i++) {
+        sb.append(rnd.nextInt(10) < 7 ? rnd.nextInt(10) : (rnd.nextBoolean() ? 0 : 9));
+      }
+      unscaledValue = rnd.nextBoolean() ? new BigInteger(sb.toString()) : new BigInteger(sb.toString()).negate();
+    }
+    return new BigDecimal(unscaledValue, rnd.nextInt(26) - 5);
+  }
+}
@@ -0,0 +1,149 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class IncrementalExpressionTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+  private static final String expr = "let(z, div(x, y), add(mult(z, z), sub(mult(x, 2), let(w, mult(y, 2), add(w, div(w, x))))))";
+
+  public IncrementalExpressionTest() {
+  }
+
+  @Test
+  public final void evaluate() {
+    final IncrementalExpression incremental = new IncrementalExpression("add(x, mult(y, 2))", List.of("x", "y"), mc);
+    assertEquals(List.of("x", "y"), incremental.getVariables());
+    incremental.set(0, new BigDecimal("1"));
+    incremental.set("y", new BigDecimal("3"));
+    assertEquals(new BigDecimal("7"), incremental.evaluate());
+    incremental.set("x", new BigDecimal("1.5"));
+    assertEquals(new BigDecimal("7.5"), incremental.evaluate());
+    assertEquals(new BigDecimal("7.5"), incremental.evaluate());
+  }
+
+  @Test
+  public final void evaluateNestedLets() {
+    final IncrementalExpression incremental = new IncrementalExpression(
+        "let(a, let(e, add(x, 1), let(f, add(x, 2), mult(f, add(e, f)))), let(c, let(d, 1, x), add(a, mult(c, c))))",
+        List.of("x"),
+        new MathContext(30));
+    incremental.set(0, BigDecimal.TEN);
+    assertEquals(new BigDecimal("376"), incremental.evaluate());
+  }
+
+  @Test
+  public final void evaluateSameAsPrepared() {
+    final Random rnd = new Random(0);
+    final PreparedExpression prepared = new PreparedExpression(expr, List.of("x", "y"), mc);
+    final IncrementalExpression incremental = new IncrementalExpression(expr, List.of("x", "y"), mc);
+    final BigDecimal[] values = {BigDecimal.ONE, BigDecimal.ONE};
+    incremental.set(0, values[0]);
+    incremental.set(1, values[1]);
+    for (int i = 0; i < 1_000; i++) {
+      final int variableIdx = rnd.nextInt(values.length);
+      values[variableIdx] = BigDecimal.valueOf(rnd.nextInt(7) - 3, rnd.nextInt(2));//zeros make operations fail
+      incremental.set(variableIdx, values[variableIdx]);
+      final CalculationResult expected = result(() -> prepared.evaluate(values));
+      final CalculationResult actual = result(incremental::evaluate);
+      assertEquals(expected.isSuccess(), actual.isSuccess());
+      if (expected.isSuccess()) {
+        assertEquals(expected.getValue(), actual.getValue());
+      } else {
+        assertEquals(expected.description(), actual.description());
+      }
+    }
+  }
+
+  @Test
+  public final void evaluateOnlyDirtyPath() {
+    final int depth = 10;
+    final List<String> variables = new ArrayList<>();
+    for (int i = 0; i < 1 << depth; i++) {
+      variables.add("x" + i);
+    }
+    final IncrementalExpression incremental = new IncrementalExpression(sum(variables, 0, variables.size()), variables, mc);
+    for (int i = 0; i < variables.size(); i++) {
+      incremental.set(i, BigDecimal.ONE);
+    }
+    assertEquals(BigDecimal.valueOf(variables.size()), incremental.evaluate());
+    assertEquals(variables.size() - 1, incremental.getRecalculatedCount());
+    incremental.set(123, BigDecimal.TEN);
+    assertEquals(BigDecimal.valueOf(variables.size() + 9), incremental.evaluate());
+    assertEquals(depth, incremental.getRecalculatedCount());
+    incremental.set(123, BigDecimal.TEN);
+    incremental.evaluate();
+    assertEquals(0, incremental.getRecalculatedCount());
+  }
+
+  @Test
+  public final void evaluateStopsAtUnchangedValue() {
+    final IncrementalExpression incremental = new IncrementalExpression("add(add(mult(x, 0), y), let(a, add(x, 0), add(a, 1)))", List.of("x", "y"), mc);
+    incremental.set(0, BigDecimal.ONE);
+    incremental.set(1, BigDecimal.ONE);
+    assertEquals(new BigDecimal("3"), incremental.evaluate());
+    incremental.set(0, BigDecimal.TEN);
+    assertEquals(new BigDecimal("12"), incremental.evaluate());
+    assertEquals(4, incremental.getRecalculatedCount());//mult(x, 0), add(x, 0), add(a, 1) and the root
+  }
+
+  @Test
+  public final void evaluateProblem() {
+    final IncrementalExpression incremental = new IncrementalExpression("add(div(1, x), div(1, y))", List.of("x", "y"), mc);
+    incremental.set(0, BigDecimal.ZERO);
+    incremental.set(1, BigDecimal.ZERO);
+    final CalculationException e = assertThrows(CalculationException.class, incremental::evaluate);
+    assertEquals(4, e.toResult()
+        .getProblemIdx());
+    incremental.set(0, BigDecimal.ONE);
+    assertEquals(15, assertThrows(CalculationException.class, incremental::evaluate)
+        .toResult()
+        .getProblemIdx());
+    incremental.set(1, BigDecimal.ONE);
+    assertEquals(new BigDecimal("2"), incremental.evaluate());
+  }
+
+  @Test
+  public final void evaluateNoVariables() {
+    assertEquals(new BigDecimal("3"), new IncrementalExpression("add(1, 2)", List.of(), mc).evaluate());
+  }
+
+  @Test
+  public final void invalidArguments() {
+    assertThrows(IllegalArgumentException.class, () -> new IncrementalExpression("add(x, 1)", List.of("1x"), mc));
+    assertThrows(IllegalArgumentException.class, () -> new IncrementalExpression("add(x, 1)", List.of("x", "x"), mc));
+    assertThrows(CalculationException.class, () -> new IncrementalExpression("add(x, y)", List.of("x"), mc));
+    final IncrementalExpression incremental = new IncrementalExpression("add(x, y)", List.of("x", "y"), mc);
+    incremental.set(0, BigDecimal.ONE);
+    assertThrows(IllegalStateException.class, incremental::evaluate);
+    assertThrows(IndexOutOfBoundsException.class, () -> incremental.set(2, BigDecimal.ONE));
+    assertThrows(IllegalArgumentException.class, () -> incremental.set("z", BigDecimal.ONE));
+  }
+
+  private static final String sum(final List<String> variables, final int fromIdx, final int toIdx) {
+    return toIdx - fromIdx == 1
+        ? variables.get(fromIdx)
+        : "add(" + sum(variables, fromIdx, (fromIdx + toIdx) / 2) + ", " + sum(variables, (fromIdx + toIdx) / 2, toIdx) + ")";
+  }
+
+  private static final CalculationResult result(final Evaluation evaluation) {
+    try {
+      return CalculationResult.success(expr, evaluation.evaluate());
+    } catch (final CalculationException e) {
+      return e.toResult();
+    }
+  }
+
+  private interface Evaluation {
+    BigDecimal evaluate() throws CalculationException;
+  }
+}
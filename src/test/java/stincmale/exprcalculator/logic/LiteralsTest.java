@@ -0,0 +1,96 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class LiteralsTest {
+  private static final List<MathContext> mathContexts = List.of(
+      MathContext.DECIMAL32,
+      new MathContext(1, RoundingMode.HALF_EVEN),
+      new MathContext(3, RoundingMode.DOWN),
+      new MathContext(17, RoundingMode.CEILING),
+      MathContext.UNLIMITED);
+
+  public LiteralsTest() {
+  }
+
+  @Test
+  public final void parse() {
+    final Literals literals = Literals.of(MathContext.DECIMAL32);
+    assertEquals(new BigDecimal("1"), literals.parse("1", 0, 1));
+    assertEquals(new BigDecimal("-0.50"), literals.parse("add(-0.50, 1)", 4, 9));
+    assertEquals(new BigDecimal("1"), literals.parse("1.", 0, 2));
+    assertEquals(new BigDecimal("-0.5"), literals.parse("-.5", 0, 3));
+    assertEquals(new BigDecimal("1.234568"), literals.parse("1.23456789", 0, 10));
+  }
+
+  @Test
+  public final void parseRandom() {
+    final Random rnd = new Random(0);
+    for (final MathContext mc : mathContexts) {
+      final Literals literals = Literals.of(mc);
+      for (int i = 0; i < 20_000; i++) {
+        final String literal = randomLiteral(rnd);
+        final BigDecimal expected;
+        try {
+          expected = new BigDecimal(literal, mc);
+        } catch (final NumberFormatException e) {
+          assertThrows(NumberFormatException.class, () -> literals.parse(literal, 0, literal.length()), literal);
+          continue;
+        }
+        final BigDecimal actual = literals.parse(literal, 0, literal.length());
+        assertEquals(expected, actual, () -> literal + " " + mc);
+        assertEquals(expected.scale(), actual.scale(), () -> literal + " " + mc);
+      }
+    }
+  }
+
+  @Test
+  public final void parseMalformed() {
+    final Literals literals = Literals.of(MathContext.DECIMAL32);
+    for (final String literal : List.of("1.2.3", "-", "-.", ".", "1-2", "--1", "")) {
+      assertThrows(NumberFormatException.class, () -> literals.parse(literal, 0, literal.length()), literal);
+    }
+  }
+
+  @Test
+  public final void intern() {
+    final Literals literals = Literals.of(MathContext.DECIMAL32);
+    assertSame(literals, Literals.of(MathContext.DECIMAL32));
+    assertSame(literals.parse("add(0.25, 1)", 4, 8), literals.parse("0.25", 0, 4));
+    assertEquals(new BigDecimal("0.2"), Literals.of(new MathContext(1, RoundingMode.HALF_EVEN))
+        .parse("0.25", 0, 4));
+  }
+
+  @Test
+  public final void calculateMalformed() {
+    final ExpressionCalculator calc = new ExpressionCalculator(MathContext.DECIMAL32);
+    final CalculationException e = assertThrows(CalculationException.class, () -> calc.calculate("add(1.2.3, 4)"));
+    assertEquals("Problem with ',' at index 9", e.summary());
+  }
+
+  /**
+   * Produces both well-formed and malformed {@link Word.Type#NUMERIC} words, some of which are longer than {@link Literals#MAX_DIGITS}.
+   */
+  private static final String randomLiteral(final Random rnd) {
+    final StringBuilder result = new StringBuilder();
+    if (rnd.nextBoolean()) {
+      result.append('-');
+    }
+    final int length = rnd.nextInt(rnd.nextInt(10) == 0 ? 25 : 8);
+    for (int i = 0; i < length; i++) {
+      result.append(rnd.nextInt(12) == 0 ? '.' : (char)('0' + rnd.nextInt(10)));
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,123 @@
+package stincmale.exprcalculator.logic;
+
+import java.lang.management.ManagementFactory;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class PackedTokenizerTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+
+  public PackedTokenizerTest() {
+  }
+
+  @Test
+  public final void tokenize() {
+    final PackedTokenizer tokenizer = new PackedTokenizer();
+    List.of(
+        "let(a, let(b, 10, add(b, b)), let(b, 20, add(a,b)))",
+        "let ( \n _a_d   , -5.67, let(bw, mult \t (_a_d, 10  ), add(bw, _a_d)))",
+        "LeT(Ab, 1., ADD(ab, -.5))",
+        "Mult(дiv, DIV(ǅ, 7))",
+        "-3.14",
+        "add",
+        "",
+        "  ",
+        "()",
+        "le-t(a, 10, add(a,1))",
+        "(()",
+        "(()(()))",
+        ")(",
+        "add(1,, 2)",
+        "add(1.2.3, 4)",
+        "add(-, 4)",
+        "add(4, -.)",
+        "add(1, 2#)",
+        "#")
+        .forEach(expr -> assertSameAsSpliterator(expr, tokenizer));
+  }
+
+  @Test
+  public final void tokenizeRandom() {
+    final String alphabet = "aAdDlLeEtTvVmM_19-.,() \t#";
+    final Random rnd = new Random(0);
+    final PackedTokenizer tokenizer = new PackedTokenizer();
+    for (int i = 0; i < 20_000; i++) {
+      final StringBuilder expr = new StringBuilder();
+      for (int length = rnd.nextInt(20), j = 0; j < length; j++) {
+        expr.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+      }
+      assertSameAsSpliterator(expr.toString(), tokenizer);
+    }
+  }
+
+  @Test
+  public final void literalIdx() {
+    final PackedTokenizer tokenizer = new PackedTokenizer();
+    assertEquals(8, tokenizer.tokenize("add(1, let(a, 2, a))"));
+    assertEquals(2, tokenizer.literalsCount());
+    assertEquals(0, tokenizer.literalIdx(1));
+    assertTrue(tokenizer.literalIdx(3) < 0);
+    assertEquals(1, tokenizer.literalIdx(4));
+  }
+
+  @Test
+  public final void noAllocation() {
+    final com.sun.management.ThreadMXBean threadMxBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread()
+        .getId();
+    final String expr = "let(a, 5, let(b, mult(a, 10), ADD(b, div(a, -3.14))))";
+    final PackedTokenizer tokenizer = new PackedTokenizer();
+    final int iterations = 20_000;
+    long tokensCount = 0;
+    for (int i = 0; i < iterations; i++) {//warm up and grow the arrays
+      tokensCount += tokenizer.tokenize(expr);
+    }
+    final long allocatedBytesBefore = threadMxBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < iterations; i++) {
+      tokensCount += tokenizer.tokenize(expr);
+    }
+    final long allocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+    assertEquals(2L * iterations * 18, tokensCount);
+    assertTrue(allocatedBytes < 1024, () -> String.format("%s bytes were allocated", allocatedBytes));
+  }
+
+  private static final void assertSameAsSpliterator(final String expr, final PackedTokenizer tokenizer) {
+    @Nullable List<Word> expectedWords;
+    @Nullable String expectedProblem;
+    try {
+      expectedWords = StreamSupport.stream(new ExpressionSpliterator(expr, mc), false)
+          .collect(Collectors.toList());
+      expectedProblem = null;
+    } catch (final CalculationException e) {
+      expectedWords = null;
+      expectedProblem = e.description();
+    }
+    if (expectedWords == null) {
+      assertEquals(expectedProblem, assertThrows(CalculationException.class, () -> tokenizer.tokenize(expr), expr).description(), expr);
+    } else {
+      assertEquals(expectedWords.size(), tokenizer.tokenize(expr), expr);
+      int literalsCount = 0;
+      for (int i = 0; i < expectedWords.size(); i++) {
+        final Word word = expectedWords.get(i);
+        assertEquals(word.getPosition(), tokenizer.start(i), expr);
+        assertEquals(word.getWord(), expr.substring(tokenizer.start(i), tokenizer.start(i) + tokenizer.length(i)), expr);
+        assertEquals(word.getLogicalType(), tokenizer.logicalType(i), expr);
+        if (word.getLogicalType() == Word.LogicalType.OPERAND) {
+          assertEquals(literalsCount++, tokenizer.literalIdx(i), expr);
+        }
+      }
+      assertEquals(literalsCount, tokenizer.literalsCount(), expr);
+    }
+  }
+}
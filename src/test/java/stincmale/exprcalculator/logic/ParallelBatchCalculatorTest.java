@@ -0,0 +1,85 @@
+package stincmale.exprcalculator.logic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.Main;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class ParallelBatchCalculatorTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+
+  public ParallelBatchCalculatorTest() {
+  }
+
+  @Test
+  public final void calculate() throws IOException {
+    final String input = input();
+    final StringWriter expectedOut = new StringWriter();
+    final long expectedProblemsCount = new BatchCalculator(new ExpressionCalculator(mc), mc).calculate(
+        new BufferedReader(new StringReader(input)), expectedOut);
+    for (final int parallelism : new int[] {1, 4}) {
+      for (final int bufferSize : new int[] {1, 3, 100, 100_000}) {
+        final StringWriter out = new StringWriter();
+        final long problemsCount = new ParallelBatchCalculator(new ExpressionCalculator(mc, new ExpressionPlanCache(10)), mc, parallelism, bufferSize)
+            .calculate(new BufferedReader(new StringReader(input)), out);
+        assertEquals(expectedOut.toString(), out.toString(), () -> "parallelism=" + parallelism + ", bufferSize=" + bufferSize);
+        assertEquals(expectedProblemsCount, problemsCount);
+      }
+    }
+  }
+
+  @Test
+  public final void calculateDeep() throws IOException {
+    final String input = String.join(Main.LN,
+        "add(1, 2)",
+        "add(1, ".repeat(20_000) + "1" + ")".repeat(20_000),
+        "mult(3, 4)");
+    final StringWriter out = new StringWriter();
+    assertEquals(0, new ParallelBatchCalculator(new ExpressionCalculator(mc, new ExpressionPlanCache(10)), mc, 2, 2).calculate(
+        new BufferedReader(new StringReader(input)), out));
+    assertEquals(String.join(Main.LN, "3", "20001", "12") + Main.LN, out.toString());
+  }
+
+  @Test
+  public final void calculateEmpty() throws IOException {
+    final StringWriter out = new StringWriter();
+    assertEquals(0, new ParallelBatchCalculator(new ExpressionCalculator(mc), mc, 2, 2).calculate(new BufferedReader(new StringReader("")), out));
+    assertEquals("", out.toString());
+  }
+
+  /**
+   * Small expressions mixed with rare huge ones.
+   */
+  private static final String input() {
+    final List<String> smallExprs = List.of("add(1, 2)", "div(1, 0)", "", "let(a, 5, add(a, a))", "(-3.14)", "mult(3, div(1, 3))");
+    final Random rnd = new Random(0);
+    final StringBuilder result = new StringBuilder();
+    for (int i = 0; i < 2_000; i++) {
+      if (rnd.nextInt(100) == 0) {
+        final int depth = 500;
+        for (int j = 0; j < depth; j++) {
+          result.append("let(v")
+              .append(j)
+              .append(", ")
+              .append(i + j)
+              .append(", ");
+        }
+        result.append("div(v0, v1)")
+            .append(")".repeat(depth));
+      } else {
+        result.append(smallExprs.get(rnd.nextInt(smallExprs.size())));
+      }
+      result.append(Main.LN);
+    }
+    return result.toString();
+  }
+}
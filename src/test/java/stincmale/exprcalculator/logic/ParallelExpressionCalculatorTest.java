@@ -0,0 +1,101 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class ParallelExpressionCalculatorTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+  private static final List<String> expressions = List.of(
+      "-3.14",
+      "add(1, 2)",
+      "mult  (3,div(1, 3) )",
+      "let(a, 5, let(b, mult(a, 10), add(b, a)))",
+      "let(a, let(b, let(d, 1, div(1, d)), add(b, b)), let(b, 20, add(a, b)))",
+      "add(let(a, 1, a), let(a, 2, a))",
+      "let(a, 2, add(mult(add(a, 1), sub(a, 3)), div(let(b, a, mult(b, b)), add(a, let(c, 7, sub(c, a))))))",
+      "let(d, sub(mult(add(8, 13), div(28, 24)), let(a, let(b, 10, add(b, b)), let(c, 20, add(a, c)))), add(div(d, 13), d))",
+      "add(div(1, 0), mult(div(2, 0), 1))",
+      "add(mult(2, 3), let(a, 0, div(add(a, 1), a)))",
+      "let(a, 0, add(add(a, 1), div(add(a, 1), a)))",
+      "add(1, 2",
+      "(-3.14)",
+      "let(a, 1, let(a, 2, a))");
+  private ForkJoinPool pool;
+
+  public ParallelExpressionCalculatorTest() {
+  }
+
+  @BeforeEach
+  public final void beforeEach() {
+    pool = new ForkJoinPool(4);
+  }
+
+  @AfterEach
+  public final void afterEach() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public final void calculate() {
+    final ExpressionCalculator sequentialCalculator = new ExpressionCalculator(mc);
+    for (final int forkThreshold : new int[] {1, 2, 3, 5, ParallelExpressionCalculator.DEFAULT_FORK_THRESHOLD}) {
+      final ParallelExpressionCalculator calculator = new ParallelExpressionCalculator(mc, pool, forkThreshold);
+      for (final String expr : expressions) {
+        BigDecimal expected;
+        try {
+          expected = sequentialCalculator.calculate(expr);
+        } catch (final CalculationException e) {
+          expected = null;
+          final String expectedDescription = e.description();
+          assertEquals(expectedDescription, assertThrows(CalculationException.class, () -> calculator.calculate(expr)).description());
+        }
+        if (expected != null) {
+          assertEquals(expected, calculator.calculate(expr), () -> expr + ", forkThreshold=" + forkThreshold);
+        }
+      }
+    }
+  }
+
+  @Test
+  public final void calculateWide() {
+    final String expr = wideExpression(12);
+    assertEquals(new ExpressionCalculator(mc).calculate(expr), new ParallelExpressionCalculator(mc, pool, 16).calculate(expr));
+  }
+
+  @Test
+  public final void calculateDeep() {
+    final String leftSpine = "add(".repeat(20_000) + "1" + ", 1)".repeat(20_000);
+    final String letChain = "let(a, ".repeat(10_000) + "1" + ", add(a, 1))".repeat(10_000);
+    for (final int forkThreshold : new int[] {1, ParallelExpressionCalculator.DEFAULT_FORK_THRESHOLD}) {
+      final ParallelExpressionCalculator calculator = new ParallelExpressionCalculator(mc, pool, forkThreshold);
+      assertEquals(new BigDecimal("20001"), calculator.calculate(leftSpine));
+      assertEquals(new BigDecimal("10001"), calculator.calculate(letChain));
+    }
+  }
+
+  /**
+   * @return A balanced tree of operators with {@code 2^depth} leaves.
+   */
+  private static final String wideExpression(final int depth) {
+    final String result;
+    if (depth == 0) {
+      result = "let(x, 3, div(x, 7))";
+    } else {
+      final String operator = List.of("add", "sub", "mult")
+          .get(depth % 3);
+      final String subexpr = wideExpression(depth - 1);
+      result = operator + "(" + subexpr + ", " + subexpr + ")";
+    }
+    return result;
+  }
+}
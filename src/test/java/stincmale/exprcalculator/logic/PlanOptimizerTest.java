@@ -0,0 +1,164 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.logic.ExpressionPlan.Constant;
+import stincmale.exprcalculator.logic.ExpressionPlan.Let;
+import stincmale.exprcalculator.logic.ExpressionPlan.Operation;
+import stincmale.exprcalculator.logic.ExpressionPlan.Shared;
+import stincmale.exprcalculator.logic.ExpressionPlan.Variable;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class PlanOptimizerTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+  private static final List<MathContext> mathContexts = List.of(
+      MathContext.DECIMAL32,
+      new MathContext(3, RoundingMode.HALF_EVEN),
+      MathContext.UNLIMITED);
+  private static final List<String> literals = List.of("0", "1", "-1", "2", "3", "10", "-3.14", "0.25", "1.0", "7.000");
+
+  public PlanOptimizerTest() {
+  }
+
+  @Test
+  public final void foldConstants() {
+    final ExpressionPlan plan = optimized("add(1.0, mult(2, 3))", mc);
+    assertEquals(new BigDecimal("7.0"), ((Constant)plan.getRoot()).getValue());
+    assertEquals(0, plan.getSlotsCount());
+  }
+
+  @Test
+  public final void foldConstantsFailure() {
+    final ExpressionPlan plan = optimized("add(1, div(1, 0))", mc);
+    final Operation add = (Operation)plan.getRoot();
+    assertTrue(add.getOperand2() instanceof Operation);
+    assertEquals(
+        assertThrows(CalculationException.class, () -> new ExpressionCalculator(mc).calculate("add(1, div(1, 0))"))
+            .description(),
+        assertThrows(CalculationException.class, plan::evaluateInterpreted)
+            .description());
+  }
+
+  @Test
+  public final void inlineConstantVariable() {
+    assertEquals(new BigDecimal("4"), ((Constant)optimized("let(a, 2, mult(a, a))", mc).getRoot()).getValue());
+  }
+
+  @Test
+  public final void inlineSingleUseVariable() {
+    final Operation add = (Operation)optimized("let(a, div(1, 0), add(a, 1))", mc).getRoot();
+    assertEquals(Word.LogicalType.OPERATOR_DIV, ((Operation)add.getOperand1()).getOperator());
+  }
+
+  @Test
+  public final void notInlineVariableUsedAfterOperation() {
+    //inlining would make div(2, 0) be reported instead of div(1, 0)
+    assertTrue(optimized("let(a, div(1, 0), add(div(2, 0), a))", mc).getRoot() instanceof Let);
+  }
+
+  @Test
+  public final void notInlineValueAssigningVariables() {
+    //inlining the value of a would make the inner lets overwrite the slot of c
+    final String expr = "let(a, let(e, add(x, 1), let(f, add(x, 2), mult(f, add(e, f)))), let(c, let(d, 1, x), add(a, mult(c, c))))";
+    final MathContext mc = new MathContext(30);
+    for (final boolean optimize : new boolean[] {false, true}) {
+      final ExpressionPlan plan = ExpressionPlan.compile(new ParsedExpression(expr, mc), List.of("x"), optimize);
+      final BigDecimal[] values = new BigDecimal[plan.getSlotsCount()];
+      values[0] = BigDecimal.TEN;
+      assertEquals(new BigDecimal("376"), plan.evaluateInterpreted(values), () -> "optimize=" + optimize);
+    }
+  }
+
+  @Test
+  public final void eliminateCommonSubexpressions() {
+    final ExpressionPlan plan = optimized("let(a, div(1, 0), add(mult(a, 2), mult(a, 2)))", mc);
+    assertEquals(2, plan.getSlotsCount());
+    final Let let = (Let)plan.getRoot();
+    final Operation add = (Operation)let.getBody();
+    final Shared shared = (Shared)add.getOperand1();
+    assertEquals(1, shared.getSlot());
+    assertEquals(Word.LogicalType.OPERATOR_MULT, ((Operation)shared.getExpression()).getOperator());
+    assertEquals(1, ((Variable)add.getOperand2()).getSlot());
+  }
+
+  @Test
+  public final void notEliminateDifferentVariables() {
+    final ExpressionPlan plan = optimized("let(b, div(1, 0), add(let(a, add(b, 1), mult(a, a)), let(c, sub(b, 1), mult(c, c))))", mc);
+    final Operation add = (Operation)((Let)plan.getRoot()).getBody();
+    assertSame(Let.class, add.getOperand1()
+        .getClass());
+    assertSame(Let.class, add.getOperand2()
+        .getClass());
+  }
+
+  @Test
+  public final void optimizeRandom() {
+    final Random rnd = new Random(0);
+    for (final MathContext mc : mathContexts) {
+      for (int i = 0; i < 3_000; i++) {
+        final String expr = randomExpression(rnd, 5, 0);
+        final ExpressionPlan plan;
+        try {
+          plan = ExpressionPlan.compile(new ParsedExpression(expr, mc));
+        } catch (final CalculationException e) {
+          continue;
+        }
+        final ExpressionPlan optimizedPlan = ExpressionPlan.compile(new ParsedExpression(expr, mc), 1, null, true);
+        BigDecimal expected;
+        String expectedDescription;
+        try {
+          expected = plan.evaluateInterpreted();
+          expectedDescription = null;
+        } catch (final CalculationException e) {
+          expected = null;
+          expectedDescription = e.description();
+        }
+        for (int j = 0; j < 2; j++) {//the plan is compiled to bytecode after the first evaluation
+          try {
+            final BigDecimal actual = optimizedPlan.evaluate();
+            assertNotNull(expected, expr);
+            assertEquals(expected, actual, () -> expr + " " + mc);
+          } catch (final CalculationException e) {
+            assertEquals(expectedDescription, e.description(), () -> expr + " " + mc);
+          }
+        }
+      }
+    }
+  }
+
+  private static final ExpressionPlan optimized(final String expr, final MathContext mc) {
+    return ExpressionPlan.compile(new ParsedExpression(expr, mc), Integer.MAX_VALUE, null, true);
+  }
+
+  /**
+   * Produces expressions with repeated subexpressions by choosing from a small set of literals and operators.
+   */
+  private static final String randomExpression(final Random rnd, final int maxDepth, final int varsCount) {
+    final String result;
+    final int choice = rnd.nextInt(maxDepth <= 0 ? 2 : 8);
+    if (choice == 0 || (choice == 1 && varsCount == 0)) {
+      result = literals.get(rnd.nextInt(literals.size()));
+    } else if (choice == 1) {
+      result = "v" + rnd.nextInt(varsCount);
+    } else if (choice == 2) {
+      result = "let(v" + varsCount + ", " + randomExpression(rnd, maxDepth - 1, varsCount) + ", " +
+          randomExpression(rnd, maxDepth - 1, varsCount + 1) + ")";
+    } else {
+      final String operator = List.of("add", "sub", "mult", "div")
+          .get(rnd.nextInt(4));
+      result = operator + "(" + randomExpression(rnd, maxDepth - 1, varsCount) + ", " + randomExpression(rnd, maxDepth - 1, varsCount) + ")";
+    }
+    return result;
+  }
+}
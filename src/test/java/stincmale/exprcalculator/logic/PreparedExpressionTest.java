@@ -0,0 +1,142 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class PreparedExpressionTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+  private static final String expr = "let(z, div(x, y), add(mult(z, z), sub(mult(x, 2), mult(y, 2))))";
+
+  public PreparedExpressionTest() {
+  }
+
+  @Test
+  public final void evaluate() {
+    final PreparedExpression prepared = new PreparedExpression("add(x, mult(y, 2))", List.of("x", "y"), mc);
+    assertEquals(List.of("x", "y"), prepared.getVariables());
+    assertEquals(new BigDecimal("7"), prepared.evaluate(new BigDecimal("1"), new BigDecimal("3")));
+    assertEquals(new BigDecimal("0.5"), prepared.evaluate(new BigDecimal("1.5"), new BigDecimal("-0.5")));
+  }
+
+  @Test
+  public final void evaluateNoVariables() {
+    assertEquals(new BigDecimal("3"), new PreparedExpression("add(1, 2)", List.of(), mc).evaluate());
+  }
+
+  @Test
+  public final void evaluateDistinguishesVariables() {
+    assertEquals(new BigDecimal("8"), new PreparedExpression("sub(mult(x, 2), mult(y, 2))", List.of("x", "y"), mc)
+        .evaluate(new BigDecimal("5"), new BigDecimal("1")));
+  }
+
+  @Test
+  public final void evaluateRoundsValues() {
+    final MathContext mc = new MathContext(3, RoundingMode.HALF_EVEN);
+    assertEquals(
+        new ExpressionCalculator(mc).calculate("let(x, 1.2345, add(x, 0))"),
+        new PreparedExpression("add(x, 0)", List.of("x"), mc).evaluate(new BigDecimal("1.2345")));
+  }
+
+  @Test
+  public final void evaluateNestedLets() {
+    final String expr = "let(a, let(e, add(x, 1), let(f, add(x, 2), mult(f, add(e, f)))), let(c, let(d, 1, x), add(a, mult(c, c))))";
+    assertEquals(new BigDecimal("376"), new ExpressionCalculator(new MathContext(30)).calculate("let(x, 10, " + expr + ")"));
+    assertEquals(new BigDecimal("376"), new PreparedExpression(expr, List.of("x"), new MathContext(30)).evaluate(BigDecimal.TEN));
+    assertEquals(new BigDecimal("376"), new PreparedExpression(expr, List.of("x"), MathContext.DECIMAL32).evaluate(BigDecimal.TEN));
+  }
+
+  @Test
+  public final void evaluateProblem() {
+    final PreparedExpression prepared = new PreparedExpression("div(x, y)", List.of("x", "y"), mc);
+    assertThrows(CalculationException.class, () -> prepared.evaluate(BigDecimal.ONE, BigDecimal.ZERO));
+  }
+
+  @Test
+  public final void evaluateColumns() {
+    final Random rnd = new Random(0);
+    final MathContext mc = new MathContext(5, RoundingMode.HALF_UP);
+    final PreparedExpression prepared = new PreparedExpression(expr, List.of("x", "y"), mc);
+    final int rowsCount = 1_000;
+    final long[][] longColumns = new long[2][rowsCount];
+    final double[][] doubleColumns = new double[2][rowsCount];
+    final BigDecimal[][] columns = new BigDecimal[2][rowsCount];
+    for (int row = 0; row < rowsCount; row++) {
+      for (int i = 0; i < 2; i++) {
+        longColumns[i][row] = rnd.nextInt(2_000_000) - 1_000_000;
+        doubleColumns[i][row] = longColumns[i][row] / 64.0;
+        columns[i][row] = BigDecimal.valueOf(doubleColumns[i][row]);
+      }
+    }
+    longColumns[1][0] = 0;
+    doubleColumns[1][0] = 0;
+    columns[1][0] = BigDecimal.ZERO;
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    final BigDecimal[] results = new BigDecimal[rowsCount];
+    final BigDecimal[] longResults = new BigDecimal[rowsCount];
+    final BigDecimal[] doubleResults = new BigDecimal[rowsCount];
+    assertEquals(1, prepared.evaluate(columns, results));
+    assertEquals(1, prepared.evaluate(longColumns, longResults));
+    assertEquals(1, prepared.evaluate(doubleColumns, doubleResults));
+    assertNull(results[0]);
+    assertNull(longResults[0]);
+    assertNull(doubleResults[0]);
+    for (int row = 1; row < rowsCount; row++) {
+      assertEquals(calc.calculate(bound(columns[0][row], columns[1][row])), results[row]);
+      assertEquals(results[row], doubleResults[row]);
+      assertEquals(
+          calc.calculate(bound(BigDecimal.valueOf(longColumns[0][row]), BigDecimal.valueOf(longColumns[1][row]))),
+          longResults[row]);
+    }
+  }
+
+  @Test
+  public final void evaluateColumnsLongerThanResults() {
+    final BigDecimal[] results = new BigDecimal[2];
+    assertEquals(0, new PreparedExpression("add(x, 1)", List.of("x"), mc).evaluate(new long[][] {{1, 2, 3}}, results));
+    assertEquals(new BigDecimal("2"), results[0]);
+    assertEquals(new BigDecimal("3"), results[1]);
+  }
+
+  @Test
+  public final void evaluateBinary64() {
+    final PreparedExpression prepared = new PreparedExpression("add(x, div(y, 4))", List.of("x", "y"), mc);
+    final double[] results = new double[2];
+    prepared.evaluateBinary64(new double[][] {{1, 0.1}, {2, 0.2}}, results);
+    assertEquals(1.5, results[0]);
+    assertEquals(0.1 + 0.2 / 4, results[1]);
+    assertThrows(IllegalArgumentException.class, () -> prepared.evaluateBinary64(new double[][] {{1}}, results));
+  }
+
+  @Test
+  public final void invalidArguments() {
+    assertThrows(IllegalArgumentException.class, () -> new PreparedExpression("add(x, 1)", List.of("1x"), mc));
+    assertThrows(IllegalArgumentException.class, () -> new PreparedExpression("add(x, 1)", List.of("Add"), mc));
+    assertThrows(IllegalArgumentException.class, () -> new PreparedExpression("add(x, 1)", List.of("x", "x"), mc));
+    final PreparedExpression prepared = new PreparedExpression("add(x, 1)", List.of("x"), mc);
+    assertThrows(IllegalArgumentException.class, () -> prepared.evaluate());
+    assertThrows(IllegalArgumentException.class, () -> prepared.evaluate(new long[][] {{1}, {2}}, new BigDecimal[1]));
+    assertThrows(IllegalArgumentException.class, () -> prepared.evaluate(new long[][] {{1}}, new BigDecimal[2]));
+    assertThrows(IllegalArgumentException.class, () -> prepared.evaluate(new double[][] {{Double.NaN}}, new BigDecimal[1]));
+  }
+
+  @Test
+  public final void invalidExpression() {
+    assertThrows(CalculationException.class, () -> new PreparedExpression("add(x, y)", List.of("x"), mc));
+    assertThrows(CalculationException.class, () -> new PreparedExpression("let(x, 1, x)", List.of("x"), mc));
+    assertThrows(CalculationException.class, () -> new PreparedExpression("add(x, 1", List.of("x"), mc));
+  }
+
+  private static final String bound(final BigDecimal x, final BigDecimal y) {
+    return "let(x, " + x.toPlainString() + ", let(y, " + y.toPlainString() + ", " + expr + "))";
+  }
+}
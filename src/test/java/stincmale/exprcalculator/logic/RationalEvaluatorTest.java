@@ -0,0 +1,118 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class RationalEvaluatorTest {
+  private static final MathContext unlimitedMc = new MathContext(0, RoundingMode.HALF_EVEN);
+
+  public RationalEvaluatorTest() {
+  }
+
+  @Test
+  public final void calculate() {
+    final ExpressionCalculator calc = new ExpressionCalculator(unlimitedMc, null, null, true);
+    assertEquals(new BigDecimal("1"), calc.calculate("mult(div(1, 3), 3)"));
+    assertEquals(new BigDecimal("0.25"), calc.calculate("div(1, 4)"));
+    assertEquals(new BigDecimal("-0.5"), calc.calculate("div(1, -2)"));
+    assertEquals(new BigDecimal("1"), calc.calculate("add(div(0.1, 0.3), div(2, 3))"));
+    assertEquals(new BigDecimal("0"), calc.calculate("sub(div(1, 7), div(2, 14))"));
+    assertEquals(new BigDecimal("7"), calc.calculate("let(a, div(1, 3), let(b, div(7, a), mult(a, b)))"));
+    assertEquals(new BigDecimal("12345678901234567890.123456789"), calc.calculate("12345678901234567890.123456789"));
+  }
+
+  @Test
+  public final void calculateRounded() {
+    final ExpressionCalculator calc = new ExpressionCalculator(MathContext.DECIMAL32, null, null, true);
+    assertEquals(new BigDecimal("0.3333333"), calc.calculate("div(1, 3)"));
+    assertEquals(new BigDecimal("1"), calc.calculate("mult(div(1, 3), 3)"));
+    assertEquals(new BigDecimal("1.000000E+8"), calc.calculate("add(99999999.5, 0.1)"));
+    assertEquals(new BigDecimal("0.6666667"), new ExpressionCalculator(MathContext.DECIMAL32, null, null, true).tryCalculate("div(2, 3)")
+        .getValue());
+  }
+
+  @Test
+  public final void scale() {
+    for (final MathContext mc : List.of(unlimitedMc, MathContext.DECIMAL32, new MathContext(3, RoundingMode.HALF_EVEN))) {
+      final ExpressionCalculator calc = new ExpressionCalculator(mc, null, null, true);
+      final ExpressionCalculator inexactCalc = new ExpressionCalculator(mc);
+      for (final String expr : List.of(
+          "add(1.10, 1)",
+          "sub(2.50, 0.5)",
+          "mult(1.1, 1.10)",
+          "div(1.00, 2)",
+          "div(1, 4)",
+          "div(3.0, 1.5)",
+          "add(1000, 1000)",
+          "add(0.00, 0)",
+          "mult(0.0, 100)",
+          "let(a, 1.5, mult(a, 2.0))")) {
+        assertEquals(inexactCalc.calculate(expr), calc.calculate(expr), () -> expr + ", mc=" + mc);
+      }
+    }
+    final ExpressionCalculator calc = new ExpressionCalculator(MathContext.DECIMAL32, null, null, true);
+    assertEquals(new BigDecimal("1.0"), calc.calculate("mult(div(1, 3), 3.0)"));
+    assertEquals(new BigDecimal("1.000000E+8"), calc.calculate("add(99999999.5, 0.10)"));//the precision is not enough for the scale 2
+  }
+
+  @Test
+  public final void longChain() {
+    final StringBuilder expr = new StringBuilder("1");
+    for (int i = 1; i <= 300; i++) {
+      expr.insert(0, i % 2 == 0 ? "mult(" : "div(")
+          .append(", ")
+          .append(i)
+          .append(')');
+    }
+    final ExpressionCalculator calc = new ExpressionCalculator(new MathContext(50), null, null, true);
+    final ExpressionCalculator inexactCalc = new ExpressionCalculator(new MathContext(1_000));
+    assertEquals(inexactCalc.calculate(expr.toString())
+        .round(new MathContext(50)), calc.calculate(expr.toString()));
+  }
+
+  @Test
+  public final void calculateDeep() {
+    final String expr = "add(div(1, 3), ".repeat(19_999) + "div(2, 3)" + ")".repeat(19_999);
+    final ExpressionCalculator calc = new ExpressionCalculator(unlimitedMc, null, null, true);
+    assertEquals(new BigDecimal("6667"), calc.calculate(expr));
+    assertEquals(new BigDecimal("6667"), calc.tryCalculate(expr)
+        .getValue());
+  }
+
+  @Test
+  public final void calculateProblem() {
+    final ExpressionCalculator calc = new ExpressionCalculator(unlimitedMc, null, null, true);
+    final ExpressionCalculator inexactCalc = new ExpressionCalculator(unlimitedMc);
+    for (final String expr : List.of("add(1, 2", "let(a, 1, b)", "add(1, div(2, 0))", "(1)")) {
+      assertEquals(inexactCalc.tryCalculate(expr)
+          .description(), calc.tryCalculate(expr)
+          .description(), expr);
+      assertEquals(inexactCalc.tryCalculate(expr)
+          .description(), assertThrows(CalculationException.class, () -> calc.calculate(expr))
+          .description(), expr);
+    }
+    final CalculationResult repeatingDecimal = calc.tryCalculate("let(a, 1, div(a, 3))");
+    assertFalse(repeatingDecimal.isSuccess());
+    assertEquals(0, repeatingDecimal.getProblemIdx());
+    assertEquals("let", repeatingDecimal.getProblemWord());
+    assertEquals(0, calc.tryCalculate("div(1, sub(div(1, 3), div(2, 6)))")
+        .getProblemIdx());
+    assertEquals(4, calc.tryCalculate("add(0." + "0".repeat(RationalEvaluator.MAX_CONSTANT_SCALE) + "1, 1)")
+        .getProblemIdx());
+  }
+
+  @Test
+  public final void illegalArguments() {
+    assertThrows(IllegalArgumentException.class, () -> new ExpressionCalculator(unlimitedMc, new ExpressionPlanCache(1), null, true));
+    assertThrows(IllegalArgumentException.class, () -> new ExpressionCalculator(unlimitedMc, null, new SubexpressionMemo(1), true));
+  }
+}
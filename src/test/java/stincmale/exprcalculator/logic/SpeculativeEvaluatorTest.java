@@ -0,0 +1,120 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class SpeculativeEvaluatorTest {
+  private static final List<MathContext> mathContexts = List.of(
+      MathContext.DECIMAL32,
+      new MathContext(8, RoundingMode.HALF_EVEN),
+      new MathContext(3, RoundingMode.HALF_EVEN),
+      MathContext.DECIMAL64,
+      MathContext.UNLIMITED);
+  private static final List<String> literals = List.of("0", "1", "-1", "2", "3", "10", "28", "-3.14", "0.25", "0.1", "1.0", "100", "7.000", "-0.003");
+
+  public SpeculativeEvaluatorTest() {
+  }
+
+  @Test
+  public final void evaluate() {
+    final MathContext mc = MathContext.DECIMAL32;
+    assertEquals(new BigDecimal("3"), evaluate("add(1, 2)", mc));
+    assertEquals(new BigDecimal("3.0"), evaluate("add(1.0, 2)", mc));
+    assertEquals(new BigDecimal("0.25"), evaluate("div(1, 4)", mc));
+    assertEquals(new BigDecimal("3.0"), evaluate("div(6.0, 2)", mc));
+    assertEquals(new BigDecimal("-6.28"), evaluate("let(a, -3.14, add(a, a))", mc));
+    assertNull(evaluate("div(1, 3)", mc));
+    assertNull(evaluate("div(1, 0)", mc));
+    assertNull(evaluate("mult(12345, 12345)", mc));
+  }
+
+  @Test
+  public final void evaluateNearMaxExactInteger() {
+    final MathContext mc = MathContext.DECIMAL64;
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    final ExpressionCalculator speculativeCalc = new ExpressionCalculator(mc, new ExpressionPlanCache(10, Integer.MAX_VALUE, true, false, false));
+    for (final String expr : List.of(
+        "mult(3, 3002399751580331)",
+        "mult(53.971, sub(mult(1, 100000000000), -75928444503))",
+        "mult(2, 4503599627370495)",
+        "add(4503599627370496, 4503599627370497)",
+        "sub(-4503599627370496, 4503599627370497)")) {
+      final BigDecimal expected = calc.calculate(expr);
+      assertEquals(expected, speculativeCalc.calculate(expr), expr);
+      assertEquals(expected, speculativeCalc.calculate(expr), expr);
+    }
+    assertEquals(new BigDecimal("9007199254740993"), speculativeCalc.calculate("mult(3, 3002399751580331)"));
+    assertEquals(new BigDecimal("9007199254740990"), evaluate("mult(2, 4503599627370495)", mc));
+    assertNull(evaluate("mult(3, 3002399751580331)", mc));
+  }
+
+  @Test
+  public final void evaluateRandom() {
+    final Random rnd = new Random(0);
+    for (final MathContext mc : mathContexts) {
+      final ExpressionCalculator calc = new ExpressionCalculator(mc);
+      int successCount = 0;
+      for (int i = 0; i < 3_000; i++) {
+        final String expr = randomExpression(rnd, 4, 0);
+        final BigDecimal expected;
+        try {
+          expected = calc.calculate(expr);
+        } catch (final CalculationException e) {
+          continue;
+        }
+        @Nullable final BigDecimal actual = evaluate(expr, mc);
+        if (actual != null) {
+          assertEquals(expected, actual, () -> expr + " " + mc);
+          successCount++;
+        }
+      }
+      assertTrue(successCount > 0, mc::toString);
+    }
+  }
+
+  @Test
+  public final void counters() {
+    final ExpressionPlanCache cache = new ExpressionPlanCache(10, Integer.MAX_VALUE, true, false, false);
+    final ExpressionCalculator calc = new ExpressionCalculator(MathContext.DECIMAL32, cache);
+    assertEquals(new BigDecimal("7"), calc.calculate("add(1, mult(2, 3))"));
+    assertEquals(new BigDecimal("7"), calc.calculate("add(1, mult(2, 3))"));
+    assertEquals(new BigDecimal("0.3333333"), calc.calculate("div(1, 3)"));
+    assertEquals(3, cache.getSpeculativeEvaluationCount());
+    assertEquals(1, cache.getSpeculativeEvaluationFallbackCount());
+  }
+
+  @Nullable
+  private static final BigDecimal evaluate(final String expr, final MathContext mc) {
+    @Nullable final SpeculativeEvaluator evaluator = SpeculativeEvaluator.compile(ExpressionPlan.compile(new ParsedExpression(expr, mc)));
+    return evaluator == null ? null : evaluator.evaluate();
+  }
+
+  private static final String randomExpression(final Random rnd, final int maxDepth, final int varsCount) {
+    final String result;
+    final int choice = rnd.nextInt(maxDepth <= 0 ? 2 : 8);
+    if (choice == 0 || (choice == 1 && varsCount == 0)) {
+      result = literals.get(rnd.nextInt(literals.size()));
+    } else if (choice == 1) {
+      result = "v" + rnd.nextInt(varsCount);
+    } else if (choice == 2) {
+      result = "let(v" + varsCount + ", " + randomExpression(rnd, maxDepth - 1, varsCount) + ", " +
+          randomExpression(rnd, maxDepth - 1, varsCount + 1) + ")";
+    } else {
+      final String operator = List.of("add", "sub", "mult", "div")
+          .get(rnd.nextInt(4));
+      result = operator + "(" + randomExpression(rnd, maxDepth - 1, varsCount) + ", " + randomExpression(rnd, maxDepth - 1, varsCount) + ")";
+    }
+    return result;
+  }
+}
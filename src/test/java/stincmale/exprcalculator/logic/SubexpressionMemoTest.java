@@ -0,0 +1,154 @@
+package stincmale.exprcalculator.logic;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class SubexpressionMemoTest {
+  private static final MathContext mc = MathContext.DECIMAL32;
+  private static final List<String> expressions = List.of(
+      "-3.14",
+      "add(1, 2)",
+      "add(1, 2.0)",
+      "mult  (3,div(1, 3) )",
+      "let(a, let(b, let(d, 1, div(1, d)), add(b, b)), let(b, 20, add(a, b)))",
+      "let(a, 1, add(let(b, 2, div(b, 1)), -1))",
+      "add(let(a, 1, a), let(a, 2, a))",
+      "let(d, sub(mult(add(8, 13), div(28, 24)), let(a, let(b, 10, add(b, b)), let(c, 20, add(a, c)))), add(div(d, 13), d))",
+      "let(a, 1, add(let(a, 2, div(a, 1)), 1))",
+      "add(let(a, 1, a), a)",
+      "div(0,0)",
+      "add(div(1, 0), let(a))",
+      "add(mult(2, 3), div(1, sub(2, 2)))",
+      "add(1, 2, 3)",
+      "let(a, div(1, 0), 2)",
+      "let(a, add(1, 2), 2)",
+      "let(a, 1, let(b, div(a, 0), a))");
+
+  public SubexpressionMemoTest() {
+  }
+
+  @Test
+  public final void calculate() {
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    final ExpressionCalculator memoCalc = new ExpressionCalculator(mc, null, new SubexpressionMemo(1 << 20));
+    for (int i = 0; i < 2; i++) {
+      expressions.forEach(expr -> {
+        final CalculationResult expected = calc.tryCalculate(expr);
+        final CalculationResult actual = memoCalc.tryCalculate(expr);
+        assertEquals(expected.isSuccess(), actual.isSuccess(), expr);
+        if (expected.isSuccess()) {
+          assertEquals(expected.getValue(), actual.getValue(), expr);
+          assertEquals(expected.getValue(), memoCalc.calculate(expr), expr);
+        } else {
+          assertEquals(expected.description(), actual.description(), expr);
+          assertEquals(expected.description(), assertThrows(CalculationException.class, () -> memoCalc.calculate(expr), expr).description(), expr);
+        }
+      });
+    }
+  }
+
+  @Test
+  public final void unusedLetValue() {
+    final MathContext mc = new MathContext(2, RoundingMode.UNNECESSARY);
+    final ExpressionCalculator calc = new ExpressionCalculator(mc);
+    final SubexpressionMemo memo = new SubexpressionMemo(1 << 20);
+    final ExpressionCalculator memoCalc = new ExpressionCalculator(mc, null, memo);
+    for (final String expr : List.of("let(a, div(1, 0), 2)", "let(a, 1.234, 2)", "let(a, add(1.234, 1), 2)")) {
+      final String expected = calc.tryCalculate(expr)
+          .description();
+      assertEquals(expected, memoCalc.tryCalculate(expr)
+          .description(), expr);
+      assertEquals(expected, assertThrows(CalculationException.class, () -> memoCalc.calculate(expr), expr).description(), expr);
+    }
+    assertEquals(0, memo.getSize());
+  }
+
+  @Test
+  public final void calculateDeep() {
+    final String expr = "add(1, ".repeat(20_000) + "1" + ")".repeat(20_000);
+    final ExpressionCalculator memoCalc = new ExpressionCalculator(mc, null, new SubexpressionMemo(1 << 20));
+    assertEquals(new BigDecimal("20001"), memoCalc.calculate(expr));
+    assertEquals(new BigDecimal("20001"), memoCalc.tryCalculate(expr)
+        .getValue());
+  }
+
+  @Test
+  public final void repeatedSubexpression() {
+    final SubexpressionMemo memo = new SubexpressionMemo(1 << 20);
+    final ExpressionCalculator calc = new ExpressionCalculator(mc, null, memo);
+    assertEquals(new BigDecimal("7"), calc.calculate("add(1, mult(2, 3))"));
+    assertEquals(0, memo.getHitCount());
+    assertEquals(2, memo.getMissCount());
+    assertEquals(new BigDecimal("5"), calc.calculate("sub(mult(2, 3), 1)"));
+    assertEquals(1, memo.getHitCount());
+    assertEquals(new BigDecimal("6"), calc.calculate("let(a, 2, mult(a, 3))"));
+    assertEquals(2, memo.getHitCount());
+    assertEquals(new BigDecimal("7"), calc.calculate("add(1, let(b, mult(2, 3), b))"));
+    assertEquals(3, memo.getHitCount());//the whole expression is the same as the first one
+    assertEquals(3, memo.getMissCount());
+    assertEquals(3, memo.getSize());
+    assertEquals(new BigDecimal("7"), calc.calculate("add(1, mult(2, 3))"));
+    assertEquals(4, memo.getHitCount());//a single lookup of the result of the whole expression
+    assertEquals(3, memo.getMissCount());
+    new ExpressionCalculator(MathContext.DECIMAL64, null, memo).calculate("mult(2, 3)");
+    assertEquals(4, memo.getMissCount());
+    calc.calculate("mult(2, 3.0)");
+    assertEquals(5, memo.getMissCount());
+  }
+
+  @Test
+  public final void calculateSharedNotMemoized() {
+    final StringBuilder expr = new StringBuilder("let(aa, 1, ");
+    String previousVariable = "aa";
+    for (int i = 1; i < 64; i++) {
+      final String variable = "a" + (char)('a' + i / 26) + (char)('a' + i % 26);
+      expr.append("let(")
+          .append(variable)
+          .append(", add(")
+          .append(previousVariable)
+          .append(", ")
+          .append(previousVariable)
+          .append("), ");
+      previousVariable = variable;
+    }
+    expr.append(previousVariable)
+        .append(")".repeat(64));
+    final SubexpressionMemo memo = new SubexpressionMemo(0);
+    assertEquals(new ExpressionCalculator(mc).calculate(expr.toString()), new ExpressionCalculator(mc, null, memo).calculate(expr.toString()));
+    assertEquals(0, memo.getSize());
+  }
+
+  @Test
+  public final void weight() {
+    final SubexpressionMemo memo = new SubexpressionMemo(1 << 14);
+    final ExpressionCalculator calc = new ExpressionCalculator(mc, null, memo);
+    for (int i = 0; i < 1_000; i++) {
+      calc.calculate("add(" + i + ", mult(2, " + i + "))");
+      assertTrue(memo.getWeight() <= memo.getMaximumWeight(), memo::toString);
+    }
+    assertTrue(memo.getWeight() > 0);
+    assertTrue(memo.getEvictionCount() > 0);
+    memo.clear();
+    assertEquals(0, memo.getWeight());
+    assertEquals(0, memo.getSize());
+  }
+
+  @Test
+  public final void weightOfValue() {
+    assertTrue(SubexpressionMemo.weight(new BigDecimal("1".repeat(100))) > SubexpressionMemo.weight(BigDecimal.ONE));
+  }
+
+  @Test
+  public final void illegalArguments() {
+    assertThrows(IllegalArgumentException.class, () -> new SubexpressionMemo(-1));
+  }
+}
@@ -0,0 +1,91 @@
+package stincmale.exprcalculator.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class CalculationMetricsTest {
+  public CalculationMetricsTest() {
+  }
+
+  @Test
+  public final void record() {
+    final CalculationMetrics metrics = new CalculationMetrics();
+    metrics.record(TimeUnit.MICROSECONDS.toNanos(10), true, 5, 3);
+    metrics.record(TimeUnit.MICROSECONDS.toNanos(1_000), false, 2, 7);
+    metrics.record(TimeUnit.MICROSECONDS.toNanos(10), true, 0, 0);
+    assertEquals(3, metrics.getCalculationCount());
+    assertEquals(1, metrics.getFailureCount());
+    assertEquals(7, metrics.getTokenCount());
+    assertEquals(7, metrics.getMaxStackDepth());
+    assertWithinRelativeError(10, metrics.getLatencyP50Micros());
+    assertWithinRelativeError(10, metrics.getLatencyP99Micros());
+    assertWithinRelativeError(1_000, metrics.getFailureLatencyP99Micros());
+    metrics.reset();
+    assertEquals(0, metrics.getCalculationCount());
+    assertEquals(0, metrics.getMaxStackDepth());
+    assertEquals(0, metrics.getLatencyP99Micros());
+  }
+
+  @Test
+  public final void calculate() {
+    final CalculationMetrics metrics = new CalculationMetrics();
+    final ExpressionCalculator calc = new ExpressionCalculator(MathContext.DECIMAL32, null, null, false, metrics);
+    assertEquals(new BigDecimal("3"), calc.calculate("add(1, 2)"));
+    assertEquals(1, metrics.getCalculationCount());
+    assertEquals(0, metrics.getFailureCount());
+    assertEquals(4, metrics.getTokenCount());
+    assertEquals(3, metrics.getMaxStackDepth());
+    assertFalse(calc.tryCalculate("div(1, 0)")
+        .isSuccess());
+    assertThrows(RuntimeException.class, () -> calc.calculate("add(1, 2"));
+    assertEquals(3, metrics.getCalculationCount());
+    assertEquals(2, metrics.getFailureCount());
+    assertTrue(metrics.getTokenCount() > 4);
+  }
+
+  @Test
+  public final void register() throws JMException {
+    final CalculationMetrics metrics = new CalculationMetrics();
+    metrics.record(TimeUnit.MICROSECONDS.toNanos(10), true, 5, 3);
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = new ObjectName(CalculationMetrics.OBJECT_NAME);
+    metrics.register();
+    try {
+      assertThrows(IllegalStateException.class, () -> new CalculationMetrics().register());
+      assertEquals(1L, server.getAttribute(name, "CalculationCount"));
+      assertEquals(3, server.getAttribute(name, "MaxStackDepth"));
+      server.invoke(name, "reset", null, null);
+      assertEquals(0L, server.getAttribute(name, "CalculationCount"));
+    } finally {
+      metrics.unregister();
+    }
+    assertFalse(server.isRegistered(name));
+    assertThrows(IllegalStateException.class, metrics::unregister);
+  }
+
+  @Test
+  public final void illegalArguments() {
+    final CalculationMetrics metrics = new CalculationMetrics();
+    assertThrows(IllegalArgumentException.class, () -> metrics.record(-1, true, 0, 0));
+    assertThrows(IllegalArgumentException.class, () -> metrics.record(0, true, -1, 0));
+    assertThrows(IllegalArgumentException.class, () -> metrics.record(0, true, 0, -1));
+  }
+
+  private static final void assertWithinRelativeError(final long expected, final long actual) {
+    assertTrue(actual >= expected && actual <= expected + expected / 16, () -> "expected=" + expected + ", actual=" + actual);
+  }
+}
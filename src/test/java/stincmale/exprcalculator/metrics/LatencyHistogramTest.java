@@ -0,0 +1,75 @@
+package stincmale.exprcalculator.metrics;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(Lifecycle.PER_METHOD)
+public final class LatencyHistogramTest {
+  public LatencyHistogramTest() {
+  }
+
+  @Test
+  public final void buckets() {
+    final Random rnd = new Random(0);
+    for (int i = 0; i < 100_000; i++) {
+      final long value = i < 1_000 ? i : rnd.nextLong() >>> (1 + rnd.nextInt(Long.SIZE - 1));
+      final int bucketIdx = LatencyHistogram.bucketIdx(value);
+      assertTrue(value <= LatencyHistogram.maxValue(bucketIdx), () -> String.valueOf(value));
+      assertTrue(bucketIdx == 0 || value > LatencyHistogram.maxValue(bucketIdx - 1), () -> String.valueOf(value));
+    }
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.maxValue(LatencyHistogram.bucketIdx(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public final void percentile() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentile(0.5));
+    for (int i = 1; i <= 1_000; i++) {
+      histogram.record(i * 1_000L);
+    }
+    assertEquals(1_000, histogram.count());
+    assertWithinRelativeError(500_000, histogram.percentile(0.5));
+    assertWithinRelativeError(990_000, histogram.percentile(0.99));
+    assertWithinRelativeError(1_000_000, histogram.percentile(1));
+    histogram.reset();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.percentile(0.99));
+  }
+
+  @Test
+  public final void concurrentRecording() throws InterruptedException {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 1; j <= 1_000; j++) {
+          histogram.record(j * 1_000L);
+        }
+      });
+      threads[i].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(threads.length * 1_000, histogram.count());
+    assertWithinRelativeError(500_000, histogram.percentile(0.5));
+    assertWithinRelativeError(1_000_000, histogram.percentile(1));
+  }
+
+  @Test
+  public final void illegalArguments() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertThrows(IllegalArgumentException.class, () -> histogram.record(-1));
+    assertThrows(IllegalArgumentException.class, () -> histogram.percentile(0));
+    assertThrows(IllegalArgumentException.class, () -> histogram.percentile(1.01));
+  }
+
+  private static final void assertWithinRelativeError(final long expected, final long actual) {
+    assertTrue(actual >= expected && actual <= expected + expected / 16, () -> "expected=" + expected + ", actual=" + actual);
+  }
+}
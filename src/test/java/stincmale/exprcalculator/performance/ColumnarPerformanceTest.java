@@ -0,0 +1,96 @@
+package stincmale.exprcalculator.performance;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stincmale.exprcalculator.logic.PreparedExpression;
+import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+
+/**
+ * Compares the throughput in rows per second of {@link PreparedExpression#evaluate(double[][], BigDecimal[])}
+ * and {@link PreparedExpression#evaluateBinary64(double[][], double[])}.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class ColumnarPerformanceTest {
+  private static final int ROWS_COUNT = 100_000;
+  private static final String EXPRESSION = "let(z, div(x, y), add(mult(z, z), sub(mult(x, 0.5), mult(y, 2))))";
+
+  public ColumnarPerformanceTest() {
+  }
+
+  @Test
+  void run() throws RunnerException {
+    final ChainedOptionsBuilder jmhOptions = new OptionsBuilder()
+        .jvmArgs("-Xms1536m", "-Xmx1536m")
+        .jvmArgsAppend("-server", "-disableassertions")
+        .shouldDoGC(true)
+        .syncIterations(true)
+        .shouldFailOnError(true)
+        .threads(1)
+        .timeout(milliseconds(5_000))
+        .forks(1)
+        .warmupTime(milliseconds(200))
+        .warmupIterations(4)
+        .measurementTime(milliseconds(200))
+        .measurementIterations(3);
+    new Runner(jmhOptions.include(ColumnarPerformanceTest.class.getName() + ".*")
+        .mode(Mode.Throughput)
+        .timeUnit(TimeUnit.SECONDS)
+        .build())
+        .run();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS_COUNT)
+  public void bigDecimal(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.prepared.evaluate(state.columns, state.results));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS_COUNT)
+  public void binary64(final BenchmarkState state, final Blackhole bh) {
+    state.prepared.evaluateBinary64(state.columns, state.binary64Results);
+    bh.consume(state.binary64Results);
+  }
+
+  @State(Scope.Thread)
+  public static class BenchmarkState {
+    private PreparedExpression prepared;
+    private double[][] columns;
+    private BigDecimal[] results;
+    private double[] binary64Results;
+
+    public BenchmarkState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setupTrial() {
+      prepared = new PreparedExpression(EXPRESSION, List.of("x", "y"), MathContext.DECIMAL64);
+      final Random rnd = new Random(0);
+      columns = new double[2][ROWS_COUNT];
+      for (int row = 0; row < ROWS_COUNT; row++) {
+        columns[0][row] = rnd.nextInt(2_000_000) / 64.0;
+        columns[1][row] = (rnd.nextInt(2_000_000) + 1) / 64.0;
+      }
+      results = new BigDecimal[ROWS_COUNT];
+      binary64Results = new double[ROWS_COUNT];
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package stincmale.exprcalculator.performance;
+
+import java.math.MathContext;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import stincmale.exprcalculator.logic.ExpressionPlanCache;
+import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+
+/*
+ * Measures throughput of a single ExpressionCalculator shared by 1 thread and by as many threads as there are available processors.
+ * With perfect scaling the throughput reported for the latter is the former multiplied by the number of threads.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class ConcurrentPerformanceTest {
+  public ConcurrentPerformanceTest() {
+  }
+
+  @Test
+  void run() throws RunnerException {
+    final int availableProcessors = Runtime.getRuntime()
+        .availableProcessors();
+    for (final int threads : availableProcessors == 1 ? new int[] {1} : new int[] {1, availableProcessors}) {
+      final ChainedOptionsBuilder jmhOptions = new OptionsBuilder()
+          .jvmArgs("-Xms1536m", "-Xmx1536m")
+          .jvmArgsAppend("-server", "-disableassertions")
+          .shouldDoGC(true)
+          .syncIterations(true)
+          .shouldFailOnError(true)
+          .threads(threads)
+          .timeout(milliseconds(5_000))
+          .forks(1)
+          .warmupTime(milliseconds(200))
+          .warmupIterations(4)
+          .measurementTime(milliseconds(200))
+          .measurementIterations(3);
+      new Runner(jmhOptions.include(ConcurrentPerformanceTest.class.getName() + ".*")
+          .mode(Mode.Throughput)
+          .timeUnit(TimeUnit.MILLISECONDS)
+          .build())
+          .run();
+    }
+  }
+
+  @Benchmark
+  public void calculate(final BenchmarkState state, final Blackhole bh) {
+    final List<String> expressions = state.expressions;
+    bh.consume(state.calculator.calculate(expressions.get(ThreadLocalRandom.current()
+        .nextInt(expressions.size()))));
+  }
+
+  @State(Scope.Benchmark)
+  public static class BenchmarkState {
+    @Param({"false", "true"}) private boolean planCache;
+    private List<String> expressions;
+    private ExpressionCalculator calculator;
+
+    public BenchmarkState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setupTrial() {
+      expressions = PerformanceTest.expressions();
+      calculator = new ExpressionCalculator(MathContext.DECIMAL32, planCache ? new ExpressionPlanCache(1_000) : null);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package stincmale.exprcalculator.performance;
+
+import java.math.MathContext;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+
+/**
+ * Compares the time needed to calculate a long chain of {@code div}s and {@code mult}s
+ * {@linkplain ExpressionCalculator#ExpressionCalculator(MathContext, stincmale.exprcalculator.logic.ExpressionPlanCache,
+ * stincmale.exprcalculator.logic.SubexpressionMemo, boolean) exactly} and with a large precision, which is how exact results
+ * were approximated before.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class ExactPerformanceTest {
+  private static final MathContext resultMc = MathContext.DECIMAL64;
+  private static final MathContext largeMc = new MathContext(1_000);
+  private static final String expr;
+
+  static {
+    final StringBuilder exprBuilder = new StringBuilder("1");
+    for (int i = 1; i <= 100; i++) {
+      exprBuilder.insert(0, i % 2 == 0 ? "mult(" : "div(")
+          .append(", ")
+          .append(i % 17 + 1)
+          .append(')');
+    }
+    expr = exprBuilder.toString();
+  }
+
+  public ExactPerformanceTest() {
+  }
+
+  @Test
+  void run() throws RunnerException {
+    final ChainedOptionsBuilder jmhOptions = new OptionsBuilder()
+        .jvmArgs("-Xms1536m", "-Xmx1536m")
+        .jvmArgsAppend("-server", "-disableassertions")
+        .shouldDoGC(true)
+        .syncIterations(true)
+        .shouldFailOnError(true)
+        .threads(1)
+        .timeout(milliseconds(5_000))
+        .forks(1)
+        .warmupTime(milliseconds(200))
+        .warmupIterations(4)
+        .measurementTime(milliseconds(200))
+        .measurementIterations(3);
+    new Runner(jmhOptions.include(ExactPerformanceTest.class.getName() + ".*")
+        .mode(Mode.AverageTime)
+        .timeUnit(TimeUnit.MICROSECONDS)
+        .build())
+        .run();
+  }
+
+  @Benchmark
+  public void largePrecision(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.calculator.calculate(expr)
+        .round(resultMc));
+  }
+
+  @Benchmark
+  public void exact(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.exactCalculator.calculate(expr));
+  }
+
+  @State(Scope.Thread)
+  public static class BenchmarkState {
+    private ExpressionCalculator calculator;
+    private ExpressionCalculator exactCalculator;
+
+    public BenchmarkState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setupTrial() {
+      calculator = new ExpressionCalculator(largeMc);
+      exactCalculator = new ExpressionCalculator(resultMc, null, null, true);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package stincmale.exprcalculator.performance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.MathContext;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import stincmale.exprcalculator.Main;
+import stincmale.exprcalculator.http.HttpEndpoint;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import stincmale.exprcalculator.logic.ExpressionPlanCache;
+
+/*
+ * Loads HttpEndpoint with concurrent clients sending single-expression requests over persistent connections,
+ * and prints the statistics reported by the endpoint, i.e. requests per second and the 50th and the 99th percentiles of the latency.
+ * The statistics are reset after the warmup.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class HttpLoadTest {
+  private static final int CLIENTS_COUNT = 32;
+  private static final long WARMUP_MILLIS = 1_000;
+  private static final long MEASUREMENT_MILLIS = 2_000;
+
+  static {
+    System.setProperty("http.maxConnections", String.valueOf(CLIENTS_COUNT));//otherwise most clients do not reuse connections
+  }
+
+  public HttpLoadTest() {
+  }
+
+  @Test
+  void run() throws IOException, InterruptedException, ExecutionException {
+    final MathContext mc = MathContext.DECIMAL32;
+    final HttpEndpoint endpoint = new HttpEndpoint(new ExpressionCalculator(mc, new ExpressionPlanCache(1_000)), mc, Runtime.getRuntime()
+        .availableProcessors(), 0);
+    final Thread endpointThread = new Thread(() -> {
+      try {
+        endpoint.run();
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    endpointThread.start();
+    try {
+      final List<String> expressions = PerformanceTest.expressions();
+      load(endpoint.getPort(), expressions, WARMUP_MILLIS);
+      request(endpoint.getPort(), "DELETE", HttpEndpoint.STATS_PATH, null);
+      load(endpoint.getPort(), expressions, MEASUREMENT_MILLIS);
+      System.out.println(getClass().getSimpleName() + " with " + CLIENTS_COUNT + " clients" + Main.LN +
+          request(endpoint.getPort(), "GET", HttpEndpoint.STATS_PATH, null));
+    } finally {
+      endpoint.close();
+      endpointThread.join();
+    }
+  }
+
+  private static final void load(final int port, final List<String> expressions, final long millis)
+      throws InterruptedException, ExecutionException {
+    final ExecutorService clients = Executors.newFixedThreadPool(CLIENTS_COUNT);
+    try {
+      final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < CLIENTS_COUNT; i++) {
+        futures.add(clients.submit(() -> {
+          while (System.nanoTime() - deadlineNanos < 0) {
+            request(port, "POST", HttpEndpoint.CALCULATE_PATH, expressions.get(ThreadLocalRandom.current()
+                .nextInt(expressions.size())));
+          }
+        }));
+      }
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      clients.shutdownNow();
+    }
+  }
+
+  /**
+   * Connections are reused by {@link HttpURLConnection} if the response is read completely and the connection is not disconnected.
+   */
+  private static final String request(final int port, final String method, final String path, @Nullable final String body) {
+    try {
+      final HttpURLConnection connection = (HttpURLConnection)new URL("http", "localhost", port, path).openConnection();
+      connection.setRequestMethod(method);
+      if (body != null) {
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(body.getBytes(Main.charset));
+        }
+      }
+      final InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (in == null) {
+        return "";
+      } else {
+        try (in) {
+          return new String(in.readAllBytes(), Main.charset);
+        }
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
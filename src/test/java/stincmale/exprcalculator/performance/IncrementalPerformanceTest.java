@@ -0,0 +1,117 @@
+package stincmale.exprcalculator.performance;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stincmale.exprcalculator.logic.IncrementalExpression;
+import stincmale.exprcalculator.logic.PreparedExpression;
+import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+
+/**
+ * Compares the time needed to get the result of an expression with {@link #VARIABLES_COUNT} variables after changing one of them
+ * by {@link PreparedExpression#evaluate(BigDecimal...)}, which evaluates the whole expression,
+ * and by {@link IncrementalExpression#evaluate()}.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class IncrementalPerformanceTest {
+  private static final int VARIABLES_COUNT = 1 << 10;
+
+  public IncrementalPerformanceTest() {
+  }
+
+  @Test
+  void run() throws RunnerException {
+    final ChainedOptionsBuilder jmhOptions = new OptionsBuilder()
+        .jvmArgs("-Xms1536m", "-Xmx1536m")
+        .jvmArgsAppend("-server", "-disableassertions")
+        .shouldDoGC(true)
+        .syncIterations(true)
+        .shouldFailOnError(true)
+        .threads(1)
+        .timeout(milliseconds(5_000))
+        .forks(1)
+        .warmupTime(milliseconds(200))
+        .warmupIterations(4)
+        .measurementTime(milliseconds(200))
+        .measurementIterations(3);
+    new Runner(jmhOptions.include(IncrementalPerformanceTest.class.getName() + ".*")
+        .mode(Mode.AverageTime)
+        .timeUnit(TimeUnit.MICROSECONDS)
+        .build())
+        .run();
+  }
+
+  @Benchmark
+  public void prepared(final BenchmarkState state, final Blackhole bh) {
+    state.values[ThreadLocalRandom.current()
+        .nextInt(VARIABLES_COUNT)] = state.nextValue();
+    bh.consume(state.prepared.evaluate(state.values));
+  }
+
+  @Benchmark
+  public void incremental(final BenchmarkState state, final Blackhole bh) {
+    state.incremental.set(ThreadLocalRandom.current()
+        .nextInt(VARIABLES_COUNT), state.nextValue());
+    bh.consume(state.incremental.evaluate());
+  }
+
+  @State(Scope.Thread)
+  public static class BenchmarkState {
+    private PreparedExpression prepared;
+    private IncrementalExpression incremental;
+    private BigDecimal[] values;
+
+    public BenchmarkState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setupTrial() {
+      final List<String> variables = new ArrayList<>();
+      for (int i = 0; i < VARIABLES_COUNT; i++) {
+        variables.add("x" + i);
+      }
+      final String expr = expression(variables, 0, VARIABLES_COUNT);
+      prepared = new PreparedExpression(expr, variables, MathContext.DECIMAL64);
+      incremental = new IncrementalExpression(expr, variables, MathContext.DECIMAL64);
+      values = new BigDecimal[VARIABLES_COUNT];
+      for (int i = 0; i < VARIABLES_COUNT; i++) {
+        values[i] = nextValue();
+        incremental.set(i, values[i]);
+      }
+      incremental.evaluate();
+    }
+
+    private final BigDecimal nextValue() {
+      return BigDecimal.valueOf(ThreadLocalRandom.current()
+          .nextInt(1, 1_000_000), 2);
+    }
+
+    /**
+     * @return A balanced tree of alternating {@code add}s and {@code mult}s.
+     */
+    private static final String expression(final List<String> variables, final int fromIdx, final int toIdx) {
+      final int middleIdx = (fromIdx + toIdx) / 2;
+      return toIdx - fromIdx == 1
+          ? variables.get(fromIdx)
+          : (Integer.numberOfTrailingZeros(toIdx - fromIdx) % 2 == 0 ? "add(" : "mult(") +
+              expression(variables, fromIdx, middleIdx) + ", " + expression(variables, middleIdx, toIdx) + ")";
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package stincmale.exprcalculator.performance;
+
+import java.math.MathContext;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import stincmale.exprcalculator.logic.SubexpressionMemo;
+import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+
+/**
+ * Compares the time needed to calculate distinct expressions that share a subexpression,
+ * and expressions from the {@code expressions} resource, which are calculated repeatedly, with and without a {@link SubexpressionMemo}.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class MemoPerformanceTest {
+  private static final MathContext mc = new MathContext(1_000);
+  private static final String sharedSubexpression = "div(mult(div(1, 3), div(2, 7)), add(div(5, 11), div(13, 17)))";
+
+  public MemoPerformanceTest() {
+  }
+
+  @Test
+  void run() throws RunnerException {
+    final ChainedOptionsBuilder jmhOptions = new OptionsBuilder()
+        .jvmArgs("-Xms1536m", "-Xmx1536m")
+        .jvmArgsAppend("-server", "-disableassertions")
+        .shouldDoGC(true)
+        .syncIterations(true)
+        .shouldFailOnError(true)
+        .threads(1)
+        .timeout(milliseconds(5_000))
+        .forks(1)
+        .warmupTime(milliseconds(200))
+        .warmupIterations(4)
+        .measurementTime(milliseconds(200))
+        .measurementIterations(3);
+    new Runner(jmhOptions.include(MemoPerformanceTest.class.getName() + ".*")
+        .mode(Mode.AverageTime)
+        .timeUnit(TimeUnit.MICROSECONDS)
+        .build())
+        .run();
+  }
+
+  @Benchmark
+  public void withoutMemo(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.calculator.tryCalculate(expression()));
+  }
+
+  @Benchmark
+  public void withMemo(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.memoCalculator.tryCalculate(expression()));
+  }
+
+  @Benchmark
+  public void repeatedWithoutMemo(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.calculator.tryCalculate(repeatedExpression(state)));
+  }
+
+  @Benchmark
+  public void repeatedWithMemo(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.memoCalculator.tryCalculate(repeatedExpression(state)));
+  }
+
+  private static final String repeatedExpression(final BenchmarkState state) {
+    return state.expressions.get(ThreadLocalRandom.current()
+        .nextInt(state.expressions.size()));
+  }
+
+  /**
+   * @return One of many distinct expressions that contain {@link #sharedSubexpression}.
+   */
+  private static final String expression() {
+    return "add(" + ThreadLocalRandom.current()
+        .nextInt(1_000_000) + ", " + sharedSubexpression + ")";
+  }
+
+  @State(Scope.Thread)
+  public static class BenchmarkState {
+    private List<String> expressions;
+    private ExpressionCalculator calculator;
+    private ExpressionCalculator memoCalculator;
+
+    public BenchmarkState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setupTrial() {
+      expressions = PerformanceTest.expressions();
+      calculator = new ExpressionCalculator(mc);
+      memoCalculator = new ExpressionCalculator(mc, null, new SubexpressionMemo(1 << 24));
+    }
+  }
+}
@@ -27,6 +27,7 @@ import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import stincmale.exprcalculator.logic.ExpressionCalculator;
+import stincmale.exprcalculator.logic.ExpressionValidator;
 import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
 
 /*
@@ -69,32 +70,53 @@ public class PerformanceTest {
     bh.consume(state.calculator.calculate(expressions.get(idx)));
   }
 
+  @Benchmark
+  public void validate(final BenchmarkState state, final Blackhole bh) {
+    final List<String> expressions = state.expressions;
+    final int size = state.expressions.size();
+    final int idx = size == 1
+        ? 0
+        : ThreadLocalRandom.current().nextInt(0, state.expressions.size() - 1);
+    bh.consume(state.validator.validate(expressions.get(idx)));
+  }
+
+  /**
+   * @return Expressions from the {@code expressions} resource.
+   */
+  static final List<String> expressions() {
+    @Nullable
+    final URL expressionsUrl = PerformanceTest.class.getClassLoader()
+        .getResource("expressions");
+    if (expressionsUrl == null) {
+      throw new RuntimeException("Can't locate expressions");
+    }
+    final List<String> result;
+    try (final Stream<String> lines = Files.lines(Paths.get(expressionsUrl.toURI()))) {
+      result = lines.filter(line -> !(line.isEmpty() || line.startsWith("#")))
+          .collect(Collectors.toUnmodifiableList());
+    } catch (final URISyntaxException | IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (result.isEmpty()) {
+      throw new RuntimeException("There are no expressions to measure against");
+    }
+    return result;
+  }
+
   @State(Scope.Benchmark)
   public static class BenchmarkState {
     private List<String> expressions;
     private ExpressionCalculator calculator;
+    private ExpressionValidator validator;
 
     public BenchmarkState() {
     }
 
     @Setup(Level.Trial)
     public final void setupTrial() {
-      @Nullable
-      final URL expressionsUrl = PerformanceTest.class.getClassLoader()
-          .getResource("expressions");
-      if (expressionsUrl == null) {
-        throw new RuntimeException("Can't locate expressions");
-      }
-      try (final Stream<String> lines = Files.lines(Paths.get(expressionsUrl.toURI()))) {
-        expressions = lines.filter(line -> !(line.isEmpty() || line.startsWith("#")))
-                .collect(Collectors.toUnmodifiableList());
-      } catch (final URISyntaxException | IOException e) {
-        throw new RuntimeException(e);
-      }
-      if (expressions.isEmpty()) {
-        throw new RuntimeException("There are no expressions to measure against");
-      }
+      expressions = PerformanceTest.expressions();
       calculator = new ExpressionCalculator(MathContext.DECIMAL32);
+      validator = new ExpressionValidator();
     }
   }
 }
@@ -0,0 +1,239 @@
+package stincmale.exprcalculator.performance;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stincmale.exprcalculator.logic.CalculationResult;
+import stincmale.exprcalculator.logic.ExpressionCalculator;
+import stincmale.exprcalculator.logic.ExpressionValidator;
+import stincmale.exprcalculator.logic.PreparedExpression;
+import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+
+/*
+ * Measures synthetic expressions whose nesting depth, let depth, length of literals and precision are parameters, see BenchmarkState.
+ * Each expression is measured by
+ *   tokenize: ExpressionValidator, which tokenizes the expression and checks its syntax, but neither converts literals nor does arithmetic;
+ *   evaluate: PreparedExpression, which evaluates a pre-parsed expression;
+ *   calculate: ExpressionCalculator without caches, i.e. end to end.
+ * The *Concurrently variants share the state between as many threads as there are available processors,
+ * and are not run if there is only one.
+ *
+ * Allocation is reported by the GC profiler (gc.alloc.rate.norm is the number of bytes allocated per operation),
+ * and the results are written as JSON to the file specified by the system property RESULT_PROPERTY,
+ * e.g. -Dexprcalculator.benchmark.result=$HOME/exprcalculator-benchmarks/$(git rev-parse --short HEAD).json,
+ * so that results of different commits can be compared.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class SyntheticPerformanceTest {
+  private static final String RESULT_PROPERTY = "exprcalculator.benchmark.result";
+  private static final String DEFAULT_RESULT = "target/benchmarks/" + SyntheticPerformanceTest.class.getSimpleName() + ".json";
+  private static final String FREE_VARIABLE = "x";
+
+  public SyntheticPerformanceTest() {
+  }
+
+  @Test
+  void run() throws RunnerException {
+    final Path result = Paths.get(System.getProperty(RESULT_PROPERTY, DEFAULT_RESULT));
+    try {
+      @Nullable final Path resultDirectory = result.toAbsolutePath()
+          .getParent();
+      if (resultDirectory != null) {
+        Files.createDirectories(resultDirectory);
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    final ChainedOptionsBuilder jmhOptions = new OptionsBuilder()
+        .jvmArgs("-Xms1536m", "-Xmx1536m")
+        .jvmArgsAppend("-server", "-disableassertions")
+        .shouldDoGC(true)
+        .syncIterations(true)
+        .shouldFailOnError(true)
+        .threads(1)
+        .timeout(milliseconds(5_000))
+        .forks(1)
+        .warmupTime(milliseconds(200))
+        .warmupIterations(4)
+        .measurementTime(milliseconds(500))
+        .measurementIterations(5)
+        .addProfiler(GCProfiler.class)
+        .resultFormat(ResultFormatType.JSON)
+        .result(result.toString());
+    jmhOptions.include(SyntheticPerformanceTest.class.getName() + ".*");
+    if (Runtime.getRuntime()
+        .availableProcessors() == 1) {
+      jmhOptions.exclude(SyntheticPerformanceTest.class.getName() + ".*Concurrently");
+    }
+    new Runner(jmhOptions.mode(Mode.AverageTime)
+        .timeUnit(TimeUnit.MICROSECONDS)
+        .build())
+        .run();
+  }
+
+  @Benchmark
+  public void tokenize(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.validator.validate(state.expr));
+  }
+
+  @Benchmark
+  public void evaluate(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.prepared.evaluate(state.freeVariableValue));
+  }
+
+  @Benchmark
+  public void calculate(final BenchmarkState state, final Blackhole bh) {
+    bh.consume(state.calculator.calculate(state.expr));
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void tokenizeConcurrently(final BenchmarkState state, final Blackhole bh) {
+    tokenize(state, bh);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void evaluateConcurrently(final BenchmarkState state, final Blackhole bh) {
+    evaluate(state, bh);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void calculateConcurrently(final BenchmarkState state, final Blackhole bh) {
+    calculate(state, bh);
+  }
+
+  /**
+   * Generates the expression {@code let(x, <literal>, <lets>)}, where {@code <lets>} is {@link #letDepth} nested {@code let}s
+   * whose values depend on the preceding variables and whose innermost body is {@code <body>}.
+   * {@code <body>} is {@link #nestingDepth} nested operators which cycle through {@code add}, {@code mult}, {@code sub}, {@code div},
+   * and whose second operands alternate between literals and variables. All literals have {@link #literalLength} digits,
+   * none of which is zero, and the arithmetic is done with the {@link #precision}.
+   * <p>
+   * {@link PreparedExpression} evaluates {@code <lets>} with the free variable {@code x}, which prevents folding the expression to a constant.
+   */
+  @State(Scope.Benchmark)
+  public static class BenchmarkState {
+    @Param({"8", "128"}) private int nestingDepth;
+    @Param({"0", "8"}) private int letDepth;
+    @Param({"1", "32"}) private int literalLength;
+    @Param({"7", "34"}) private int precision;
+    private String expr;
+    private BigDecimal freeVariableValue;
+    private ExpressionValidator validator;
+    private PreparedExpression prepared;
+    private ExpressionCalculator calculator;
+
+    public BenchmarkState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setupTrial() {
+      final Random rnd = new Random(0);
+      final String freeVariableLiteral = literal(rnd, literalLength);
+      final String lets = lets(rnd, letDepth, nestingDepth, literalLength);
+      expr = "let(" + FREE_VARIABLE + ", " + freeVariableLiteral + ", " + lets + ")";
+      freeVariableValue = new BigDecimal(freeVariableLiteral);
+      final MathContext mc = new MathContext(precision, RoundingMode.HALF_EVEN);
+      validator = new ExpressionValidator();
+      prepared = new PreparedExpression(lets, List.of(FREE_VARIABLE), mc);
+      calculator = new ExpressionCalculator(mc);
+      @Nullable final CalculationResult problem = validator.validate(expr);
+      if (problem != null) {
+        throw new RuntimeException(problem.description());
+      }
+      final BigDecimal calculated = calculator.calculate(expr);
+      final BigDecimal evaluated = prepared.evaluate(freeVariableValue);
+      if (calculated.compareTo(evaluated) != 0) {
+        throw new RuntimeException(String.format("%s was calculated as %s, but evaluated as %s", expr, calculated, evaluated));
+      }
+    }
+
+    private static final String lets(final Random rnd, final int letDepth, final int nestingDepth, final int literalLength) {
+      final StringBuilder result = new StringBuilder();
+      String innermostVariable = FREE_VARIABLE;
+      for (int i = 0; i < letDepth; i++) {
+        final String variable = variable(i);
+        result.append("let(")
+            .append(variable)
+            .append(", add(")
+            .append(innermostVariable)
+            .append(", ")
+            .append(literal(rnd, literalLength))
+            .append("), ");
+        innermostVariable = variable;
+      }
+      result.append(body(rnd, nestingDepth, literalLength, innermostVariable));
+      for (int i = 0; i < letDepth; i++) {
+        result.append(')');
+      }
+      return result.toString();
+    }
+
+    private static final String body(final Random rnd, final int nestingDepth, final int literalLength, final String variable) {
+      final String[] operators = {"add", "mult", "sub", "div"};
+      final StringBuilder result = new StringBuilder();
+      for (int i = nestingDepth - 1; i >= 0; i--) {
+        result.append(operators[i % operators.length])
+            .append('(');
+      }
+      result.append(variable);
+      for (int i = 0; i < nestingDepth; i++) {
+        result.append(", ")
+            .append(i % 2 == 0 ? literal(rnd, literalLength) : variable)
+            .append(')');
+      }
+      return result.toString();
+    }
+
+    /**
+     * @return A positive literal with {@code length} non-zero digits, and with the decimal point in the middle if there are at least two.
+     */
+    private static final String literal(final Random rnd, final int length) {
+      final StringBuilder result = new StringBuilder();
+      for (int i = 0; i < length; i++) {
+        if (i == (length + 1) / 2 && length > 1) {
+          result.append('.');
+        }
+        result.append((char)('1' + rnd.nextInt(9)));
+      }
+      return result.toString();
+    }
+
+    private static final String variable(final int idx) {
+      final StringBuilder result = new StringBuilder("v");
+      for (int i = idx; i >= 0; i = i / 26 - 1) {
+        result.append((char)('a' + i % 26));
+      }
+      return result.toString();
+    }
+  }
+}